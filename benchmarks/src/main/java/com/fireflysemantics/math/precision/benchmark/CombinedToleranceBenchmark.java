@@ -0,0 +1,130 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.PrecisionAssert;
+import com.fireflysemantics.math.precision.Tolerance;
+
+/**
+ * Compares the combined absolute, relative and ulp comparison of
+ * {@link PrecisionAssert#equals(double, double, double, double, int)} with
+ * chaining the three separate methods. Scores are reported per compared pair;
+ * the bulk benchmarks count the mismatches by resuming after each one, so
+ * they compare every pair as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CombinedToleranceBenchmark {
+
+	/** Number of pairs compared per invocation. */
+	static final int SIZE = 1024;
+
+	/** Absolute tolerance. */
+	private static final double ABSOLUTE_EPS = 1e-300;
+
+	/** Relative tolerance. */
+	private static final double RELATIVE_EPS = 1e-14;
+
+	/** Allowed ulps. */
+	private static final int MAX_ULPS = 2;
+
+	private static final Tolerance COMBINED = Tolerance.combined(ABSOLUTE_EPS, RELATIVE_EPS, MAX_ULPS);
+
+	@Param
+	public Distribution distribution;
+
+	private final double[] x = new double[SIZE];
+	private final double[] y = new double[SIZE];
+
+	@Setup
+	public void setUp() {
+		distribution.fill(new Random(1089), x, y);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int chained() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equals(x[i], y[i], ABSOLUTE_EPS)
+					|| PrecisionAssert.equalsWithRelativeTolerance(x[i], y[i], RELATIVE_EPS)
+					|| PrecisionAssert.equals(x[i], y[i], MAX_ULPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int fused() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equals(x[i], y[i], ABSOLUTE_EPS, RELATIVE_EPS, MAX_ULPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int fusedMismatch() {
+		int count = 0;
+		int from = 0;
+		int index;
+		while ((index = PrecisionAssert.mismatch(x, from, y, from, SIZE
+				- from, ABSOLUTE_EPS, RELATIVE_EPS, MAX_ULPS)) >= 0) {
+			count++;
+			from += index
+					+ 1;
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int toleranceMismatch() {
+		int count = 0;
+		int from = 0;
+		int index;
+		while ((index = COMBINED.mismatch(x, from, y, from, SIZE
+				- from)) >= 0) {
+			count++;
+			from += index
+					+ 1;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.util.Random;
+
+/**
+ * Input distributions for the benchmarks. Each distribution fills a pair of
+ * arrays; rounding benchmarks only use the first one.
+ */
+public enum Distribution {
+
+	/** Values of the same sign a few ulps apart. */
+	SAME_SIGN {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				x[i] = random.nextDouble()
+						* 1000;
+				y[i] = x[i]
+						+ random.nextInt(4)
+								* Math.ulp(x[i]);
+			}
+		}
+	},
+
+	/** Values of opposite signs, half of them straddling zero. */
+	OPPOSITE_SIGN {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				if (random.nextBoolean()) {
+					x[i] = Double.MIN_VALUE
+							* random.nextInt(3);
+					y[i] = -Double.MIN_VALUE
+							* random.nextInt(3);
+				} else {
+					x[i] = random.nextDouble()
+							* 1000;
+					y[i] = -x[i];
+				}
+			}
+		}
+	},
+
+	/** Half of the values are {@code NaN}. */
+	NAN_HEAVY {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				x[i] = random.nextBoolean() ? Double.NaN : random.nextDouble();
+				y[i] = random.nextBoolean() ? Double.NaN : x[i];
+			}
+		}
+	},
+
+	/** Short decimals that are exact ties at two decimal places. */
+	NEAR_TIE {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				x[i] = (10
+						* (random.nextInt(2000000)
+								- 1000000)
+						+ 5)
+						/ 1000d;
+				y[i] = Math.nextUp(x[i]);
+			}
+		}
+	},
+
+	/** Magnitudes between 1e12 and 1e300. */
+	LARGE {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				x[i] = (random.nextDouble()
+						+ 1)
+						* Math.pow(10, 12
+								+ random.nextInt(288));
+				y[i] = x[i]
+						* (1
+								+ 1e-15);
+			}
+		}
+	},
+
+	/** Magnitudes between the subnormals and 1e-12. */
+	TINY {
+		@Override
+		void fill(Random random, double[] x, double[] y) {
+			for (int i = 0; i < x.length; i++) {
+				x[i] = (random.nextDouble()
+						+ 1)
+						* Math.pow(10, -12
+								- random.nextInt(310));
+				y[i] = Math.nextUp(x[i]);
+			}
+		}
+	};
+
+	/**
+	 * Fills both arrays with values from this distribution.
+	 *
+	 * @param random
+	 *            source of randomness.
+	 * @param x
+	 *            first values.
+	 * @param y
+	 *            second values, same length as {@code x}.
+	 */
+	abstract void fill(Random random, double[] x, double[] y);
+}
@@ -0,0 +1,179 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.PrecisionAssert;
+
+/**
+ * Measures the comparison methods of {@link PrecisionAssert}. Scores are
+ * reported per compared pair.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PrecisionAssertBenchmark {
+
+	/** Number of pairs compared per invocation. */
+	static final int SIZE = 1024;
+
+	/** Absolute and relative tolerance. */
+	private static final double EPS = 1e-12;
+
+	/** Allowed ulps. */
+	private static final int MAX_ULPS = 2;
+
+	@Param
+	public Distribution distribution;
+
+	private final double[] x = new double[SIZE];
+	private final double[] y = new double[SIZE];
+
+	@Setup
+	public void setUp() {
+		distribution.fill(new Random(1089), x, y);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equals() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equals(x[i], y[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsUlps() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equals(x[i], y[i], MAX_ULPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsEps() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equals(x[i], y[i], EPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsWithRelativeTolerance() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equalsWithRelativeTolerance(x[i], y[i], EPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsIncludingNaN() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equalsIncludingNaN(x[i], y[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsIncludingNaNUlps() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equalsIncludingNaN(x[i], y[i], MAX_ULPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int equalsIncludingNaNEps() {
+		int count = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (PrecisionAssert.equalsIncludingNaN(x[i], y[i], EPS)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int compareToUlps() {
+		int sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += PrecisionAssert.compareTo(x[i], y[i], MAX_ULPS);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int compareToEps() {
+		int sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += PrecisionAssert.compareTo(x[i], y[i], EPS);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double representableDelta() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += PrecisionAssert.representableDelta(x[i], EPS);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.RoundDouble;
+import com.fireflysemantics.math.precision.RoundingContext;
+
+/**
+ * Measures the rounding methods of {@link RoundDouble}. Scores are reported
+ * per rounded value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RoundDoubleBenchmark {
+
+	/** Number of values rounded per invocation. */
+	static final int SIZE = 1024;
+
+	@Param
+	public Distribution distribution;
+
+	@Param({ "2", "8" })
+	public int scale;
+
+	@Param({ "4", "6" })
+	public int roundingMethod;
+
+	private final double[] x = new double[SIZE];
+	private final double[] rounded = new double[SIZE];
+
+	private RoundingContext context;
+
+	@Setup
+	public void setUp() {
+		distribution.fill(new Random(1089), x, new double[SIZE]);
+		context = RoundingContext.of(scale, RoundingMode.valueOf(roundingMethod));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double round() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += RoundDouble.round(x[i], scale, roundingMethod);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double roundHalfUp() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += RoundDouble.round(x[i], scale);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double roundContext() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += context.round(x[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double[] roundArray() {
+		RoundDouble.round(x, scale, roundingMethod, rounded);
+		return rounded;
+	}
+
+	/**
+	 * Baseline: the {@link BigDecimal} based rounding the library used before
+	 * the primitive fast path.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double roundBigDecimal() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			final double r = new BigDecimal(Double.toString(x[i])).setScale(scale, roundingMethod).doubleValue();
+			sum += r;
+		}
+		return sum;
+	}
+}
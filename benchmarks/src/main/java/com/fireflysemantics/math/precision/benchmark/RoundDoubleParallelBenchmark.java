@@ -0,0 +1,70 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.RoundDouble;
+
+/**
+ * Measures sequential against parallel bulk rounding of large arrays. Scores
+ * are reported per array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundDoubleParallelBenchmark {
+
+	@Param({ "1000000", "10000000" })
+	public int size;
+
+	private double[] x;
+	private double[] rounded;
+
+	@Setup
+	public void setUp() {
+		x = new double[size];
+		rounded = new double[size];
+		Distribution.SAME_SIGN.fill(new Random(1089), x, new double[size]);
+	}
+
+	@Benchmark
+	public double[] sequential() {
+		RoundDouble.round(x, 2, BigDecimal.ROUND_HALF_UP, rounded);
+		return rounded;
+	}
+
+	@Benchmark
+	public double[] parallel() {
+		RoundDouble.roundParallel(x, 2, BigDecimal.ROUND_HALF_UP, rounded);
+		return rounded;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.RoundDouble;
+import com.fireflysemantics.math.precision.RoundedDecimalParser;
+
+/**
+ * Measures parsing decimal text into rounded values. Scores are reported per
+ * value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RoundedDecimalParserBenchmark {
+
+	/** Number of values parsed per invocation. */
+	static final int SIZE = 1024;
+
+	@Param({ "SAME_SIGN", "NEAR_TIE" })
+	public Distribution distribution;
+
+	@Param({ "2", "8" })
+	public int scale;
+
+	private final String[] text = new String[SIZE];
+	private final double[] parsed = new double[SIZE];
+	private byte[] column;
+	private RoundedDecimalParser parser;
+
+	@Setup
+	public void setUp() {
+		final double[] x = new double[SIZE];
+		distribution.fill(new Random(1089), x, new double[SIZE]);
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < SIZE; i++) {
+			text[i] = Double.toString(x[i]);
+			sb.append(i == 0 ? "" : ",")
+					.append(text[i]);
+		}
+		column = sb.toString()
+				.getBytes(StandardCharsets.US_ASCII);
+		parser = RoundedDecimalParser.of(scale, RoundingMode.HALF_UP);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double parse() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += parser.parse(text[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double[] parseDelimited() {
+		parser.parseDelimited(column, 0, column.length, (byte) ',', parsed, 0);
+		return parsed;
+	}
+
+	/**
+	 * Baseline: {@link Double#parseDouble(String)} followed by rounding.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public double parseThenRound() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			sum += RoundDouble.round(Double.parseDouble(text[i]), scale);
+		}
+		return sum;
+	}
+}
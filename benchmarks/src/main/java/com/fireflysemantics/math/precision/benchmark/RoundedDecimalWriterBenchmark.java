@@ -0,0 +1,104 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision.benchmark;
+
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fireflysemantics.math.precision.RoundDouble;
+import com.fireflysemantics.math.precision.RoundedDecimalWriter;
+
+/**
+ * Measures writing rounded values as text. Scores are reported per value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RoundedDecimalWriterBenchmark {
+
+	/** Number of values written per invocation. */
+	static final int SIZE = 1024;
+
+	@Param({ "SAME_SIGN", "NEAR_TIE" })
+	public Distribution distribution;
+
+	@Param({ "2", "8" })
+	public int scale;
+
+	private final double[] x = new double[SIZE];
+	private final StringBuilder sb = new StringBuilder(SIZE
+			* 32);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE
+			* 32);
+	private RoundedDecimalWriter writer;
+
+	@Setup
+	public void setUp() {
+		distribution.fill(new Random(1089), x, new double[SIZE]);
+		writer = RoundedDecimalWriter.of(scale, RoundingMode.HALF_UP);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public StringBuilder appendStringBuilder() {
+		sb.setLength(0);
+		for (int i = 0; i < SIZE; i++) {
+			writer.append(sb, x[i]).append(',');
+		}
+		return sb;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public ByteBuffer writeByteBuffer() {
+		buffer.clear();
+		for (int i = 0; i < SIZE; i++) {
+			writer.write(x[i], buffer);
+			buffer.put((byte) ',');
+		}
+		return buffer;
+	}
+
+	/**
+	 * Baseline: rounding followed by {@link StringBuilder#append(double)}.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public StringBuilder roundThenAppend() {
+		sb.setLength(0);
+		for (int i = 0; i < SIZE; i++) {
+			sb.append(RoundDouble.round(x[i], scale))
+					.append(',');
+		}
+		return sb;
+	}
+}
@@ -0,0 +1,55 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Validates ranges of arrays and buffers before bulk operations.
+ */
+final class ArrayRange {
+
+	/**
+	 * Private constructor.
+	 */
+	private ArrayRange() {
+	}
+
+	/**
+	 * Checks that {@code [offset, offset + length)} lies within
+	 * {@code [0, capacity)}.
+	 *
+	 * @param capacity
+	 *            the length of the array or buffer.
+	 * @param offset
+	 *            the first index of the range.
+	 * @param length
+	 *            the number of elements in the range.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is not within the array.
+	 */
+	static void check(int capacity, int offset, int length) {
+		if (offset < 0
+				|| length < 0
+				|| offset > capacity
+						- length) {
+			throw new ArrayIndexOutOfBoundsException("Range ["
+					+ offset
+					+ ", "
+					+ offset
+					+ " + "
+					+ length
+					+ ") out of bounds for length "
+					+ capacity);
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Streaming sum of doubles with Kahan-Babu&scaron;ka (Neumaier) compensation.
+ * <p>
+ * Every addition is split into its rounded sum and its exact rounding error,
+ * and the errors are summed separately. The result is as accurate as if it
+ * had been computed in twice the working precision and then rounded, and it
+ * carries the a-priori error bound
+ * {@code EPSILON * |sum| + gamma(n - 1)^2 * sum(|x|)} of
+ * Ogita, Rump and Oishi, where {@code gamma(k) = k * EPSILON / (1 - k * EPSILON)}
+ * and {@link PrecisionConstants#EPSILON EPSILON} is the unit roundoff.
+ * Products can be accumulated exactly with {@link #addProduct(double, double)},
+ * which gives a compensated dot product with the bound
+ * {@code EPSILON * |dot| + gamma(n)^2 * sum(|x * y|)} of their Dot2
+ * theorem.
+ * </p>
+ * <p>
+ * Instances are not thread safe. Accumulate into one instance per thread and
+ * {@link #merge(CompensatedSum) merge} them afterwards; merging in a fixed
+ * order gives a reproducible result.
+ * </p>
+ */
+public class CompensatedSum {
+
+	/** 2<sup>27</sup> + 1, which splits a double into two halves of 26 bits. */
+	private static final double SPLITTER = 134217729d;
+
+	/** Rounded sum of the terms. */
+	private double sum;
+
+	/** Sum of the rounding errors of {@link #sum}. */
+	private double compensation;
+
+	/** Uncompensated sum, returned when the compensated sum is NaN. */
+	private double simpleSum;
+
+	/** Sum of the magnitudes of the terms, for the error bound. */
+	private double sumAbs;
+
+	/** Number of values added. */
+	private long count;
+
+	/** Number of terms summed, including those added by merges. */
+	private long terms;
+
+	/** Whether products have been added, which need the dot product bound. */
+	private boolean products;
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param x
+	 *            the value to add.
+	 */
+	public void add(double x) {
+		addTerm(x);
+		simpleSum += x;
+		sumAbs += Math.abs(x);
+		count++;
+		terms++;
+	}
+
+	/**
+	 * Adds every element of an array.
+	 *
+	 * @param values
+	 *            the values to add.
+	 */
+	public void add(double[] values) {
+		addRange(values, 0, values.length);
+	}
+
+	/**
+	 * Adds {@code length} elements of {@code values} starting at
+	 * {@code offset}.
+	 *
+	 * @param values
+	 *            the values to add.
+	 * @param offset
+	 *            index of the first value to add.
+	 * @param length
+	 *            number of values to add.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public void add(double[] values, int offset, int length) {
+		ArrayRange.check(values.length, offset, length);
+		addRange(values, offset, length);
+	}
+
+	/**
+	 * Adds the product {@code x * y}. The product is split into its rounded
+	 * value and its exact rounding error, which are both added, so that a sum
+	 * of products is a compensated dot product. The split is exact unless the
+	 * product or the factors are within a factor of 2<sup>27</sup> of
+	 * overflow or underflow, in which case only the rounded product is added.
+	 *
+	 * @param x
+	 *            the first factor.
+	 * @param y
+	 *            the second factor.
+	 */
+	public void addProduct(double x, double y) {
+		final double product = x
+				* y;
+		final double error = productError(x, y, product);
+		addTerm(product);
+		compensation += error;
+		simpleSum += product;
+		// |x * y| itself, not only its rounded value
+		sumAbs += Math.abs(product)
+				+ Math.abs(error);
+		count++;
+		terms++;
+		products = true;
+	}
+
+	/**
+	 * Adds the sum accumulated by another instance to this one.
+	 *
+	 * @param other
+	 *            the sum to merge, unchanged.
+	 */
+	public void merge(CompensatedSum other) {
+		addTerm(other.sum);
+		compensation += other.compensation;
+		simpleSum += other.simpleSum;
+		sumAbs += other.sumAbs;
+		count += other.count;
+		// the merged partial sum is one more term of the summation
+		terms += other.terms
+				+ 1;
+		products |= other.products;
+	}
+
+	/**
+	 * Clears the sum.
+	 */
+	public void reset() {
+		sum = 0;
+		compensation = 0;
+		simpleSum = 0;
+		sumAbs = 0;
+		count = 0;
+		terms = 0;
+		products = false;
+	}
+
+	/**
+	 * Returns the compensated sum of the values added. If the compensated sum
+	 * is NaN because of infinite values, the infinite uncompensated sum is
+	 * returned.
+	 *
+	 * @return the sum, 0 if no value has been added.
+	 */
+	public double getSum() {
+		final double result = sum
+				+ compensation;
+		if (Double.isNaN(result)
+				&& Double.isInfinite(simpleSum)) {
+			return simpleSum;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of values added.
+	 *
+	 * @return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns an upper bound of the absolute difference between
+	 * {@link #getSum()} and the exact sum of the values added.
+	 *
+	 * @return the error bound, or NaN if the sum is NaN.
+	 */
+	public double getErrorBound() {
+		final double result = getSum();
+		// a dot product of n terms has n product errors on top of the n - 1
+		// additions
+		final double gamma = SumResult.gamma(products ? terms
+				: terms
+						- 1);
+		// sumAbs is itself rounded with a relative error of at most gamma
+		return PrecisionConstants.EPSILON
+				* Math.abs(result)
+				+ gamma
+						* gamma
+						* (sumAbs
+								/ (1
+										- gamma));
+	}
+
+	/**
+	 * Returns the sum, its error bound and the count as an immutable result.
+	 *
+	 * @return the result.
+	 */
+	public SumResult getResult() {
+		return new SumResult(getSum(), count, getErrorBound());
+	}
+
+	@Override
+	public String toString() {
+		return "CompensatedSum[sum="
+				+ getSum()
+				+ ", count="
+				+ count
+				+ "]";
+	}
+
+	/**
+	 * Adds a range that has already been checked.
+	 */
+	void addRange(double[] values, int offset, int length) {
+		double s = sum;
+		double c = compensation;
+		double simple = simpleSum;
+		double abs = sumAbs;
+		for (int i = offset; i < offset
+				+ length; i++) {
+			final double x = values[i];
+			final double t = s
+					+ x;
+			if (Math.abs(s) >= Math.abs(x)) {
+				c += (s
+						- t)
+						+ x;
+			} else {
+				c += (x
+						- t)
+						+ s;
+			}
+			s = t;
+			simple += x;
+			abs += Math.abs(x);
+		}
+		sum = s;
+		compensation = c;
+		simpleSum = simple;
+		sumAbs = abs;
+		count += length;
+		terms += length;
+	}
+
+	/**
+	 * Adds the products of two ranges that have already been checked.
+	 */
+	void addProducts(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			addProduct(x[xOffset
+					+ i], y[yOffset
+							+ i]);
+		}
+	}
+
+	/**
+	 * Adds a term to the compensated sum, accumulating the exact rounding
+	 * error of the addition.
+	 */
+	private void addTerm(double x) {
+		final double t = sum
+				+ x;
+		if (Math.abs(sum) >= Math.abs(x)) {
+			compensation += (sum
+					- t)
+					+ x;
+		} else {
+			compensation += (x
+					- t)
+					+ sum;
+		}
+		sum = t;
+	}
+
+	/**
+	 * Computes the rounding error of {@code product = x * y} with Dekker's
+	 * algorithm.
+	 *
+	 * @return the error, or 0 if it cannot be computed exactly.
+	 */
+	static double productError(double x, double y, double product) {
+		double c = SPLITTER
+				* x;
+		final double xHigh = c
+				- (c
+						- x);
+		final double xLow = x
+				- xHigh;
+		c = SPLITTER
+				* y;
+		final double yHigh = c
+				- (c
+						- y);
+		final double yLow = y
+				- yHigh;
+		final double error = xLow
+				* yLow
+				- (((product
+						- xHigh
+								* yHigh)
+						- xLow
+								* yHigh)
+						- xHigh
+								* yLow);
+		return Double.isInfinite(error)
+				|| Double.isNaN(error) ? 0 : error;
+	}
+}
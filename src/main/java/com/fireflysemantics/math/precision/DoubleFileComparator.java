@@ -0,0 +1,339 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compares two files of little-endian doubles, such as model outputs of two
+ * builds, within an ulp, absolute or relative tolerance.
+ * <p>
+ * The files are memory mapped in chunks with {@link FileChannel#map} and the
+ * chunks are compared in parallel on the common {@link ForkJoinPool}. Only
+ * the summaries of the chunks live on the heap, so heap usage does not depend
+ * on the file size.
+ * </p>
+ * <p>
+ * The {@link #main(String[])} method runs a comparison from the command line.
+ * </p>
+ */
+public final class DoubleFileComparator {
+
+	/** Default number of mismatch offsets reported. */
+	public static final int DEFAULT_MAX_OFFSETS = 16;
+
+	/** Default number of bytes mapped per chunk. */
+	static final long DEFAULT_CHUNK_SIZE = 1L << 26;
+
+	private final Tolerance tolerance;
+	private final int maxOffsets;
+	private final long chunkSize;
+
+	DoubleFileComparator(Tolerance tolerance, int maxOffsets, long chunkSize) {
+		this.tolerance = tolerance;
+		this.maxOffsets = maxOffsets;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Creates a comparator using the given tolerance. Two NaN values match
+	 * whether or not the tolerance includes NaN.
+	 *
+	 * @param tolerance
+	 *            the tolerance deciding whether two values match.
+	 * @return a new comparator.
+	 */
+	public static DoubleFileComparator of(Tolerance tolerance) {
+		return new DoubleFileComparator(tolerance, DEFAULT_MAX_OFFSETS, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a comparator using
+	 * {@link PrecisionAssert#equals(double, double, int)}.
+	 *
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between two matching values.
+	 * @return a new comparator.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxUlps} is negative.
+	 */
+	public static DoubleFileComparator ulps(int maxUlps) {
+		return of(Tolerance.ulps(maxUlps));
+	}
+
+	/**
+	 * Creates a comparator using
+	 * {@link PrecisionAssert#equals(double, double, double)}.
+	 *
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return a new comparator.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public static DoubleFileComparator absolute(double eps) {
+		return of(Tolerance.absolute(eps));
+	}
+
+	/**
+	 * Creates a comparator using
+	 * {@link PrecisionAssert#equalsWithRelativeTolerance(double, double, double)}.
+	 *
+	 * @param eps
+	 *            Amount of allowed relative error.
+	 * @return a new comparator.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public static DoubleFileComparator relative(double eps) {
+		return of(Tolerance.relative(eps));
+	}
+
+	/**
+	 * Returns a comparator reporting a different number of mismatch offsets.
+	 *
+	 * @param maxOffsets
+	 *            the number of offsets of the first mismatches to report.
+	 * @return a new comparator with the same tolerance.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxOffsets} is negative.
+	 */
+	public DoubleFileComparator withMaxOffsets(int maxOffsets) {
+		if (maxOffsets < 0) {
+			throw new IllegalArgumentException("maxOffsets must not be negative: "
+					+ maxOffsets);
+		}
+		return new DoubleFileComparator(tolerance, maxOffsets, chunkSize);
+	}
+
+	/**
+	 * Compares two files of little-endian doubles of the same size.
+	 *
+	 * @param expected
+	 *            the reference file.
+	 * @param actual
+	 *            the file to check.
+	 * @return the summary of the comparison.
+	 * @throws IllegalArgumentException
+	 *             if the files differ in size or their size is not a multiple
+	 *             of 8 bytes.
+	 * @throws IOException
+	 *             if a file cannot be read.
+	 */
+	public DoubleFileComparison compare(Path expected, Path actual) throws IOException {
+		try (FileChannel x = FileChannel.open(expected, StandardOpenOption.READ);
+				FileChannel y = FileChannel.open(actual, StandardOpenOption.READ)) {
+			final long size = x.size();
+			if (size != y.size()
+					|| size
+							% Double.BYTES != 0) {
+				throw new IllegalArgumentException("files must have the same size, a multiple of "
+						+ Double.BYTES
+						+ " bytes: "
+						+ size
+						+ " and "
+						+ y.size());
+			}
+			final long chunks = (size
+					+ chunkSize
+					- 1)
+					/ chunkSize;
+			try {
+				return ForkJoinPool.commonPool().invoke(new CompareTask(x, y, size, 0, chunks));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Compares the values in {@code [offset, offset + length)} bytes of both
+	 * channels.
+	 */
+	DoubleFileComparison compareChunk(FileChannel x, FileChannel y, long offset, long length)
+			throws IOException {
+		final DoubleBuffer a = x.map(FileChannel.MapMode.READ_ONLY, offset, length)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer();
+		final DoubleBuffer b = y.map(FileChannel.MapMode.READ_ONLY, offset, length)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer();
+		final int count = a.remaining();
+		final long[] offsets = new long[maxOffsets];
+		int reported = 0;
+		long mismatches = 0;
+		long nanDisagreements = 0;
+		long maxUlpDistance = 0;
+		long maxUlpOffset = -1;
+		for (int i = 0; i < count; i++) {
+			final double u = a.get(i);
+			final double v = b.get(i);
+			if (Double.isNaN(u)
+					|| Double.isNaN(v)) {
+				if (Double.isNaN(u)
+						&& Double.isNaN(v)) {
+					continue;
+				}
+				nanDisagreements++;
+			} else {
+				final long distance = PrecisionAssert.ulpDistance(u, v);
+				if (distance > maxUlpDistance
+						|| maxUlpOffset < 0) {
+					maxUlpDistance = distance;
+					maxUlpOffset = offset
+							+ (long) i
+									* Double.BYTES;
+				}
+				if (tolerance.test(u, v)) {
+					continue;
+				}
+			}
+			if (reported < maxOffsets) {
+				offsets[reported++] = offset
+						+ (long) i
+								* Double.BYTES;
+			}
+			mismatches++;
+		}
+		return new DoubleFileComparison(count, mismatches, nanDisagreements, maxUlpDistance, maxUlpOffset,
+				reported == maxOffsets ? offsets : Arrays.copyOf(offsets, reported));
+	}
+
+	/**
+	 * Compares two files from the command line and prints the summary.
+	 * <p>
+	 * Usage: {@code <expected> <actual> [--ulps n | --abs eps | --rel eps]
+	 * [--first n]}. The default tolerance is 0 ulps. The exit status is 0 if
+	 * the files match, 1 if they do not and 2 on a usage or read error.
+	 * </p>
+	 *
+	 * @param args
+	 *            the command line arguments.
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Runs the command line and returns its exit status.
+	 */
+	static int run(String[] args, PrintStream out, PrintStream err) {
+		if (args.length < 2) {
+			return usage(err, "two files are required");
+		}
+		DoubleFileComparator comparator = ulps(0);
+		int maxOffsets = DEFAULT_MAX_OFFSETS;
+		try {
+			for (int i = 2; i < args.length; i += 2) {
+				if (i
+						+ 1 == args.length) {
+					return usage(err, "missing value of "
+							+ args[i]);
+				}
+				final String value = args[i
+						+ 1];
+				switch (args[i]) {
+				case "--ulps":
+					comparator = ulps(Integer.parseInt(value));
+					break;
+				case "--abs":
+					comparator = absolute(Double.parseDouble(value));
+					break;
+				case "--rel":
+					comparator = relative(Double.parseDouble(value));
+					break;
+				case "--first":
+					maxOffsets = Integer.parseInt(value);
+					break;
+				default:
+					return usage(err, "unknown option "
+							+ args[i]);
+				}
+			}
+			final DoubleFileComparison comparison = comparator.withMaxOffsets(maxOffsets)
+					.compare(Paths.get(args[0]), Paths.get(args[1]));
+			out.println(comparison);
+			return comparison.isMatch() ? 0 : 1;
+		} catch (IllegalArgumentException e) {
+			return usage(err, e.getMessage());
+		} catch (IOException e) {
+			err.println(e);
+			return 2;
+		}
+	}
+
+	/**
+	 * Prints the usage and returns the error exit status.
+	 */
+	private static int usage(PrintStream err, String message) {
+		err.println(message);
+		err.println("usage: DoubleFileComparator <expected> <actual> [--ulps n | --abs eps | --rel eps] [--first n]");
+		return 2;
+	}
+
+	/**
+	 * Compares a range of chunks, splitting it in halves.
+	 */
+	private final class CompareTask extends RecursiveTask<DoubleFileComparison> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel x;
+		private final FileChannel y;
+		private final long size;
+		private final long from;
+		private final long to;
+
+		CompareTask(FileChannel x, FileChannel y, long size, long from, long to) {
+			this.x = x;
+			this.y = y;
+			this.size = size;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected DoubleFileComparison compute() {
+			if (to
+					- from <= 1) {
+				final long offset = from
+						* chunkSize;
+				try {
+					return compareChunk(x, y, offset, Math.min(chunkSize, size
+							- offset));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			final long mid = (from
+					+ to) >>> 1;
+			final CompareTask next = new CompareTask(x, y, size, mid, to);
+			next.fork();
+			final DoubleFileComparison first = new CompareTask(x, y, size, from, mid).compute();
+			return first.merge(next.join(), maxOffsets);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+
+/**
+ * Summary of comparing two files of little-endian doubles with a
+ * {@link DoubleFileComparator}.
+ * <p>
+ * Two values match if both are NaN or they are equal within the tolerance of
+ * the comparator. A NaN disagreement is a position where exactly one value is
+ * NaN; it also counts as a mismatch.
+ * </p>
+ */
+public final class DoubleFileComparison {
+
+	private final long length;
+	private final long mismatches;
+	private final long nanDisagreements;
+	private final long maxUlpDistance;
+	private final long maxUlpOffset;
+	private final long[] firstMismatchOffsets;
+
+	DoubleFileComparison(long length, long mismatches, long nanDisagreements, long maxUlpDistance,
+			long maxUlpOffset, long[] firstMismatchOffsets) {
+		this.length = length;
+		this.mismatches = mismatches;
+		this.nanDisagreements = nanDisagreements;
+		this.maxUlpDistance = maxUlpDistance;
+		this.maxUlpOffset = maxUlpOffset;
+		this.firstMismatchOffsets = firstMismatchOffsets;
+	}
+
+	/**
+	 * Returns the number of values compared in each file.
+	 *
+	 * @return the number of values.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of positions where the values do not match.
+	 *
+	 * @return the number of mismatches.
+	 */
+	public long getMismatchCount() {
+		return mismatches;
+	}
+
+	/**
+	 * Returns the number of positions where exactly one value is NaN.
+	 *
+	 * @return the number of NaN disagreements.
+	 */
+	public long getNaNDisagreementCount() {
+		return nanDisagreements;
+	}
+
+	/**
+	 * Returns the largest {@link PrecisionAssert#ulpDistance(double, double)
+	 * ulp distance} between two values that are not NaN.
+	 *
+	 * @return the largest distance, or 0 if no such pair was compared.
+	 */
+	public long getMaxUlpDistance() {
+		return maxUlpDistance;
+	}
+
+	/**
+	 * Returns the byte offset of the first pair at the largest ulp distance.
+	 *
+	 * @return the offset, or -1 if no pair that is not NaN was compared.
+	 */
+	public long getMaxUlpOffset() {
+		return maxUlpOffset;
+	}
+
+	/**
+	 * Returns the byte offsets of the first mismatches, in ascending order.
+	 *
+	 * @return a new array of at most the number of offsets the comparator
+	 *         reports.
+	 */
+	public long[] getFirstMismatchOffsets() {
+		return firstMismatchOffsets.clone();
+	}
+
+	/**
+	 * Returns whether all values match.
+	 *
+	 * @return {@code true} if there is no mismatch.
+	 */
+	public boolean isMatch() {
+		return mismatches == 0;
+	}
+
+	/**
+	 * Combines the summary of a range with the one of the range directly
+	 * after it, keeping at most {@code maxOffsets} mismatch offsets.
+	 */
+	DoubleFileComparison merge(DoubleFileComparison next, int maxOffsets) {
+		final long[] offsets;
+		if (firstMismatchOffsets.length >= maxOffsets
+				|| next.firstMismatchOffsets.length == 0) {
+			offsets = firstMismatchOffsets;
+		} else {
+			final int count = Math.min(maxOffsets, firstMismatchOffsets.length
+					+ next.firstMismatchOffsets.length);
+			offsets = Arrays.copyOf(firstMismatchOffsets, count);
+			System.arraycopy(next.firstMismatchOffsets, 0, offsets, firstMismatchOffsets.length, count
+					- firstMismatchOffsets.length);
+		}
+		final boolean nextMax = next.maxUlpOffset >= 0
+				&& (maxUlpOffset < 0
+						|| next.maxUlpDistance > maxUlpDistance);
+		return new DoubleFileComparison(length
+				+ next.length,
+				mismatches
+						+ next.mismatches,
+				nanDisagreements
+						+ next.nanDisagreements,
+				nextMax ? next.maxUlpDistance : maxUlpDistance, nextMax ? next.maxUlpOffset : maxUlpOffset,
+				offsets);
+	}
+
+	@Override
+	public String toString() {
+		return "values: "
+				+ length
+				+ ", mismatches: "
+				+ mismatches
+				+ ", NaN disagreements: "
+				+ nanDisagreements
+				+ ", max ulp distance: "
+				+ maxUlpDistance
+				+ (maxUlpOffset < 0 ? "" : " at offset "
+						+ maxUlpOffset)
+				+ ", first mismatch offsets: "
+				+ Arrays.toString(firstMismatchOffsets);
+	}
+}
@@ -0,0 +1,311 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts ranges of double arrays in place into the order of
+ * {@link Double#compare(double, double)}, like
+ * {@link java.util.Arrays#sort(double[], int, int)}, without allocating.
+ * <p>
+ * {@code Arrays.sort} and {@code Arrays.parallelSort} may allocate a buffer as
+ * large as the range, e.g. when the input consists of a few ascending runs.
+ * This introsort uses a three way partition, which keeps ranges with many
+ * duplicates linear, recurses into the smaller part only, and falls back to
+ * heapsort when partitions are unbalanced, so it uses {@code O(log n)} stack
+ * and no heap memory.
+ * </p>
+ */
+final class DoubleSort {
+
+	/** Size below which ranges are sorted by insertion. */
+	private static final int INSERTION_THRESHOLD = 32;
+
+	/** Bits of negative zero. */
+	private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0d);
+
+	/**
+	 * Private constructor.
+	 */
+	private DoubleSort() {
+	}
+
+	/**
+	 * Sorts a checked range.
+	 *
+	 * @param a
+	 *            the array.
+	 * @param from
+	 *            the first index, inclusive.
+	 * @param to
+	 *            the last index, exclusive.
+	 */
+	static void sort(double[] a, int from, int to) {
+		final int end = prepare(a, from, to);
+		introsort(a, from, end, depthLimit(end
+				- from));
+		restoreNegativeZeros(a, from, end);
+	}
+
+	/**
+	 * Sorts a checked range, sorting both sides of each partition larger than
+	 * the threshold in parallel on the common
+	 * {@link java.util.concurrent.ForkJoinPool ForkJoinPool}.
+	 *
+	 * @param a
+	 *            the array.
+	 * @param from
+	 *            the first index, inclusive.
+	 * @param to
+	 *            the last index, exclusive.
+	 * @param threshold
+	 *            the positive size below which ranges are sorted sequentially.
+	 */
+	static void parallelSort(double[] a, int from, int to, int threshold) {
+		final int end = prepare(a, from, to);
+		new SortTask(a, from, end, depthLimit(end
+				- from), threshold).invoke();
+		restoreNegativeZeros(a, from, end);
+	}
+
+	/**
+	 * Moves NaN values to the end of the range, so the rest can be sorted with
+	 * primitive comparisons.
+	 *
+	 * @return the end of the non-NaN part.
+	 */
+	private static int prepare(double[] a, int from, int to) {
+		int end = to;
+		for (int i = from; i < end;) {
+			final double v = a[i];
+			if (v != v) {
+				a[i] = a[--end];
+				a[end] = v;
+			} else {
+				i++;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Puts negative zeros before positive zeros, which primitive comparisons
+	 * consider equal.
+	 */
+	private static void restoreNegativeZeros(double[] a, int from, int end) {
+		// the zeros are contiguous after sorting; only their signs may be out
+		// of order
+		int low = from;
+		int high = end;
+		while (low < high) {
+			final int middle = (low
+					+ high) >>> 1;
+			if (a[middle] < 0) {
+				low = middle
+						+ 1;
+			} else {
+				high = middle;
+			}
+		}
+		int negative = 0;
+		int i = low;
+		for (; i < end
+				&& a[i] == 0; i++) {
+			if (Double.doubleToRawLongBits(a[i]) == NEGATIVE_ZERO_BITS) {
+				negative++;
+			}
+		}
+		for (int j = low; j < i; j++) {
+			a[j] = j
+					- low < negative ? -0d : 0d;
+		}
+	}
+
+	/**
+	 * Returns twice the floor of the binary logarithm of the size, after
+	 * which heapsort takes over.
+	 */
+	private static int depthLimit(int size) {
+		return 2
+				* (32
+						- Integer.numberOfLeadingZeros(Math.max(size, 1)));
+	}
+
+	/**
+	 * Sorts a NaN-free range, recursing into the smaller side of each
+	 * partition and looping on the larger one.
+	 */
+	private static void introsort(double[] a, int from, int to, int depth) {
+		while (to
+				- from > INSERTION_THRESHOLD) {
+			if (depth-- == 0) {
+				heapsort(a, from, to);
+				return;
+			}
+			final long bounds = partition(a, from, to);
+			final int less = (int) (bounds >>> 32);
+			final int greater = (int) bounds;
+			if (less
+					- from < to
+							- greater) {
+				introsort(a, from, less, depth);
+				from = greater;
+			} else {
+				introsort(a, greater, to, depth);
+				to = less;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+
+	/**
+	 * Partitions a range into values less than, equal to and greater than the
+	 * median of three.
+	 *
+	 * @return the end of the smaller values in the upper and the start of the
+	 *         greater values in the lower 32 bits.
+	 */
+	private static long partition(double[] a, int from, int to) {
+		final double pivot = median(a[from], a[(from
+				+ to) >>> 1], a[to
+						- 1]);
+		int less = from;
+		int i = from;
+		int greater = to;
+		while (i < greater) {
+			final double v = a[i];
+			if (v < pivot) {
+				a[i++] = a[less];
+				a[less++] = v;
+			} else if (v > pivot) {
+				a[i] = a[--greater];
+				a[greater] = v;
+			} else {
+				i++;
+			}
+		}
+		return ((long) less << 32)
+				| greater;
+	}
+
+	private static double median(double x, double y, double z) {
+		if (x < y) {
+			return y < z ? y : x < z ? z : x;
+		}
+		return x < z ? x : y < z ? z : y;
+	}
+
+	private static void insertionSort(double[] a, int from, int to) {
+		for (int i = from
+				+ 1; i < to; i++) {
+			final double v = a[i];
+			int j = i
+					- 1;
+			while (j >= from
+					&& a[j] > v) {
+				a[j
+						+ 1] = a[j];
+				j--;
+			}
+			a[j
+					+ 1] = v;
+		}
+	}
+
+	private static void heapsort(double[] a, int from, int to) {
+		final int size = to
+				- from;
+		for (int i = (size >>> 1)
+				- 1; i >= 0; i--) {
+			siftDown(a, from, i, size);
+		}
+		for (int last = size
+				- 1; last > 0; last--) {
+			final double max = a[from];
+			a[from] = a[from
+					+ last];
+			a[from
+					+ last] = max;
+			siftDown(a, from, 0, last);
+		}
+	}
+
+	private static void siftDown(double[] a, int from, int node, int size) {
+		final double v = a[from
+				+ node];
+		int i = node;
+		int child;
+		while ((child = 2
+				* i
+				+ 1) < size) {
+			if (child
+					+ 1 < size
+					&& a[from
+							+ child] < a[from
+									+ child
+									+ 1]) {
+				child++;
+			}
+			if (!(v < a[from
+					+ child])) {
+				break;
+			}
+			a[from
+					+ i] = a[from
+							+ child];
+			i = child;
+		}
+		a[from
+				+ i] = v;
+	}
+
+	/**
+	 * Sorts the two sides of a partition in parallel while they are larger
+	 * than the threshold.
+	 */
+	private static final class SortTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] a;
+		private final int from;
+		private final int to;
+		private final int depth;
+		private final int threshold;
+
+		SortTask(double[] a, int from, int to, int depth, int threshold) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to
+					- from <= threshold
+					|| depth == 0) {
+				introsort(a, from, to, depth);
+				return;
+			}
+			final long bounds = partition(a, from, to);
+			invokeAll(new SortTask(a, from, (int) (bounds >>> 32), depth
+					- 1, threshold),
+					new SortTask(a, (int) bounds, to, depth
+							- 1, threshold));
+		}
+	}
+}
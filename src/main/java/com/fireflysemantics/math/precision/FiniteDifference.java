@@ -0,0 +1,535 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Numerical derivatives, gradients and Jacobians by finite differences.
+ * <p>
+ * The step for a coordinate {@code x} is {@code step * max(|x|, 1)},
+ * adjusted with {@link PrecisionAssert#representableDelta(double, double)} so
+ * that {@code x + h} and {@code x} differ by exactly the step that the
+ * difference is divided by. The default step of a stencil of accuracy order
+ * {@code p} is {@code EPSILON^(1 / (p + 1))}, which balances truncation and
+ * roundoff errors.
+ * </p>
+ * <p>
+ * Engines are immutable and thread safe. A gradient or Jacobian evaluates the
+ * function on a single work copy of the point, changing one coordinate at a
+ * time, and evaluates the function at the unperturbed point at most once.
+ * The parallel methods split the coordinates into chunks that each use one
+ * work copy; the function must then be thread safe, and must not keep or
+ * modify the array it is given.
+ * </p>
+ */
+public final class FiniteDifference {
+
+	/**
+	 * Default number of coordinates below which the parallel methods stop
+	 * splitting.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 16;
+
+	/**
+	 * Finite difference stencils for the first derivative, with their
+	 * offsets in steps and weights.
+	 */
+	public enum Stencil {
+		/** {@code (f(x + h) - f(x)) / h}, first order. */
+		FORWARD(1, new int[] { 0, 1 }, new double[] { -1, 1 }),
+		/** {@code (f(x) - f(x - h)) / h}, first order. */
+		BACKWARD(1, new int[] { -1, 0 }, new double[] { -1, 1 }),
+		/** {@code (f(x + h) - f(x - h)) / 2h}, second order. */
+		CENTRAL(2, new int[] { -1, 1 }, new double[] { -0.5, 0.5 }),
+		/** Five-point central difference, fourth order. */
+		CENTRAL_5(4, new int[] { -2, -1, 1, 2 }, new double[] { 1d
+				/ 12, -8d
+						/ 12,
+				8d
+						/ 12,
+				-1d
+						/ 12 }),
+		/** Seven-point central difference, sixth order. */
+		CENTRAL_7(6, new int[] { -3, -2, -1, 1, 2, 3 }, new double[] { -1d
+				/ 60, 9d
+						/ 60,
+				-45d
+						/ 60,
+				45d
+						/ 60,
+				-9d
+						/ 60,
+				1d
+						/ 60 });
+
+		/** Accuracy order. */
+		final int order;
+
+		/** Offsets of the evaluation points, in steps. */
+		final int[] offsets;
+
+		/** Weights of the evaluations. */
+		final double[] weights;
+
+		/** Whether the function is evaluated at the unperturbed point. */
+		final boolean usesCenter;
+
+		Stencil(int order, int[] offsets, double[] weights) {
+			this.order = order;
+			this.offsets = offsets;
+			this.weights = weights;
+			boolean center = false;
+			for (int offset : offsets) {
+				center |= offset == 0;
+			}
+			this.usesCenter = center;
+		}
+
+		/**
+		 * Returns the accuracy order of the stencil.
+		 *
+		 * @return the order.
+		 */
+		public int getOrder() {
+			return order;
+		}
+
+		/**
+		 * Returns {@code EPSILON^(1 / (order + 1))}.
+		 *
+		 * @return the default relative step.
+		 */
+		public double getDefaultStep() {
+			return Math.pow(PrecisionConstants.EPSILON, 1d
+					/ (order
+							+ 1));
+		}
+	}
+
+	/**
+	 * Function of several variables with several values, writing its values
+	 * into a buffer instead of allocating them.
+	 */
+	public interface VectorFunction {
+
+		/**
+		 * Evaluates the function.
+		 *
+		 * @param x
+		 *            the point, not to be modified.
+		 * @param values
+		 *            buffer receiving the values.
+		 */
+		void apply(double[] x, double[] values);
+	}
+
+	/** The stencil. */
+	private final Stencil stencil;
+
+	/** Step relative to {@code max(|x|, 1)}. */
+	private final double step;
+
+	private FiniteDifference(Stencil stencil, double step) {
+		this.stencil = stencil;
+		this.step = step;
+	}
+
+	/**
+	 * Returns an engine using a stencil with its default step.
+	 *
+	 * @param stencil
+	 *            the stencil.
+	 * @return the engine.
+	 */
+	public static FiniteDifference of(Stencil stencil) {
+		return new FiniteDifference(stencil, stencil.getDefaultStep());
+	}
+
+	/**
+	 * Returns an engine using a stencil and a relative step.
+	 *
+	 * @param stencil
+	 *            the stencil.
+	 * @param step
+	 *            the step relative to {@code max(|x|, 1)}.
+	 * @return the engine.
+	 * @throws IllegalArgumentException
+	 *             if {@code step} is not positive and finite.
+	 */
+	public static FiniteDifference of(Stencil stencil, double step) {
+		if (!(step > 0
+				&& step < Double.POSITIVE_INFINITY)) {
+			throw new IllegalArgumentException("step must be positive and finite: "
+					+ step);
+		}
+		return new FiniteDifference(stencil, step);
+	}
+
+	/**
+	 * Returns the stencil.
+	 *
+	 * @return the stencil.
+	 */
+	public Stencil getStencil() {
+		return stencil;
+	}
+
+	/**
+	 * Returns the step relative to {@code max(|x|, 1)}.
+	 *
+	 * @return the relative step.
+	 */
+	public double getStep() {
+		return step;
+	}
+
+	/**
+	 * Returns the step used at a coordinate, so that {@code x + h - x} is
+	 * exactly {@code h}.
+	 *
+	 * @param x
+	 *            the coordinate.
+	 * @return the step.
+	 */
+	public double step(double x) {
+		return PrecisionAssert.representableDelta(x, step
+				* Math.max(Math.abs(x), 1));
+	}
+
+	/**
+	 * Computes the derivative of a function of one variable.
+	 *
+	 * @param f
+	 *            the function.
+	 * @param x
+	 *            the point.
+	 * @return the derivative.
+	 */
+	public double derivative(DoubleUnaryOperator f, double x) {
+		final double h = step(x);
+		final int[] offsets = stencil.offsets;
+		final double[] weights = stencil.weights;
+		double sum = 0;
+		for (int k = 0; k < offsets.length; k++) {
+			sum += weights[k]
+					* f.applyAsDouble(x
+							+ offsets[k]
+									* h);
+		}
+		return sum
+				/ h;
+	}
+
+	/**
+	 * Computes the gradient of a function of several variables.
+	 *
+	 * @param f
+	 *            the function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param gradient
+	 *            array receiving the partial derivatives, at least as long as
+	 *            {@code x}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code gradient} is shorter than {@code x}.
+	 */
+	public void gradient(ToDoubleFunction<double[]> f, double[] x, double[] gradient) {
+		ArrayRange.check(gradient.length, 0, x.length);
+		final double center = stencil.usesCenter ? f.applyAsDouble(x.clone()) : Double.NaN;
+		gradientRange(f, x, center, gradient, 0, x.length);
+	}
+
+	/**
+	 * Computes the gradient of a function of several variables, splitting the
+	 * coordinates across the common {@link java.util.concurrent.ForkJoinPool
+	 * ForkJoinPool} in chunks of at most {@link #DEFAULT_PARALLEL_THRESHOLD}
+	 * coordinates.
+	 *
+	 * @param f
+	 *            the thread safe function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param gradient
+	 *            array receiving the partial derivatives, at least as long as
+	 *            {@code x}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code gradient} is shorter than {@code x}.
+	 */
+	public void gradientParallel(ToDoubleFunction<double[]> f, double[] x, double[] gradient) {
+		gradientParallel(f, x, gradient, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Computes the gradient of a function of several variables, splitting the
+	 * coordinates across the common {@link java.util.concurrent.ForkJoinPool
+	 * ForkJoinPool}. The result is the same as {@link #gradient}.
+	 *
+	 * @param f
+	 *            the thread safe function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param gradient
+	 *            array receiving the partial derivatives, at least as long as
+	 *            {@code x}.
+	 * @param threshold
+	 *            Number of coordinates below which a chunk is differentiated
+	 *            sequentially.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code gradient} is shorter than {@code x}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public void gradientParallel(ToDoubleFunction<double[]> f, double[] x, double[] gradient, int threshold) {
+		ArrayRange.check(gradient.length, 0, x.length);
+		checkThreshold(threshold);
+		final double center = stencil.usesCenter ? f.applyAsDouble(x.clone()) : Double.NaN;
+		new DifferenceTask(f, null, x, center, null, gradient, null, 0, x.length, threshold).invoke();
+	}
+
+	/**
+	 * Computes the Jacobian of a function with {@code jacobian.length}
+	 * values, i.e. {@code jacobian[i][j]} receives the derivative of value
+	 * {@code i} with respect to coordinate {@code j}.
+	 *
+	 * @param f
+	 *            the function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param jacobian
+	 *            matrix receiving the derivatives, one row per value, each at
+	 *            least as long as {@code x}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if a row is shorter than {@code x}.
+	 */
+	public void jacobian(VectorFunction f, double[] x, double[][] jacobian) {
+		checkJacobian(x, jacobian);
+		final double[] center = center(f, x, jacobian.length);
+		jacobianRange(f, x, center, jacobian, 0, x.length);
+	}
+
+	/**
+	 * Computes the Jacobian as defined by
+	 * {@link #jacobian(VectorFunction, double[], double[][])}, splitting the
+	 * coordinates across the common {@link java.util.concurrent.ForkJoinPool
+	 * ForkJoinPool} in chunks of at most {@link #DEFAULT_PARALLEL_THRESHOLD}
+	 * coordinates.
+	 *
+	 * @param f
+	 *            the thread safe function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param jacobian
+	 *            matrix receiving the derivatives, one row per value, each at
+	 *            least as long as {@code x}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if a row is shorter than {@code x}.
+	 */
+	public void jacobianParallel(VectorFunction f, double[] x, double[][] jacobian) {
+		jacobianParallel(f, x, jacobian, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Computes the Jacobian as defined by
+	 * {@link #jacobian(VectorFunction, double[], double[][])}, splitting the
+	 * coordinates across the common {@link java.util.concurrent.ForkJoinPool
+	 * ForkJoinPool}.
+	 *
+	 * @param f
+	 *            the thread safe function.
+	 * @param x
+	 *            the point, unchanged.
+	 * @param jacobian
+	 *            matrix receiving the derivatives, one row per value, each at
+	 *            least as long as {@code x}.
+	 * @param threshold
+	 *            Number of coordinates below which a chunk is differentiated
+	 *            sequentially.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if a row is shorter than {@code x}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public void jacobianParallel(VectorFunction f, double[] x, double[][] jacobian, int threshold) {
+		checkJacobian(x, jacobian);
+		checkThreshold(threshold);
+		final double[] center = center(f, x, jacobian.length);
+		new DifferenceTask(null, f, x, Double.NaN, center, null, jacobian, 0, x.length, threshold).invoke();
+	}
+
+	@Override
+	public String toString() {
+		return "FiniteDifference[stencil="
+				+ stencil
+				+ ", step="
+				+ step
+				+ "]";
+	}
+
+	private static void checkThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive: "
+					+ threshold);
+		}
+	}
+
+	private static void checkJacobian(double[] x, double[][] jacobian) {
+		for (double[] row : jacobian) {
+			ArrayRange.check(row.length, 0, x.length);
+		}
+	}
+
+	/**
+	 * Evaluates a vector function at the unperturbed point if the stencil
+	 * needs it.
+	 */
+	private double[] center(VectorFunction f, double[] x, int rows) {
+		if (!stencil.usesCenter) {
+			return null;
+		}
+		final double[] values = new double[rows];
+		f.apply(x.clone(), values);
+		return values;
+	}
+
+	/**
+	 * Computes the partial derivatives {@code from} to {@code to - 1} on one
+	 * work copy of the point.
+	 */
+	private void gradientRange(ToDoubleFunction<double[]> f, double[] x, double center, double[] gradient,
+			int from, int to) {
+		final int[] offsets = stencil.offsets;
+		final double[] weights = stencil.weights;
+		final double[] work = x.clone();
+		for (int j = from; j < to; j++) {
+			final double xj = x[j];
+			final double h = step(xj);
+			double sum = 0;
+			for (int k = 0; k < offsets.length; k++) {
+				if (offsets[k] == 0) {
+					sum += weights[k]
+							* center;
+				} else {
+					work[j] = xj
+							+ offsets[k]
+									* h;
+					sum += weights[k]
+							* f.applyAsDouble(work);
+				}
+			}
+			work[j] = xj;
+			gradient[j] = sum
+					/ h;
+		}
+	}
+
+	/**
+	 * Computes the Jacobian columns {@code from} to {@code to - 1} on one work
+	 * copy of the point and one value buffer.
+	 */
+	private void jacobianRange(VectorFunction f, double[] x, double[] center, double[][] jacobian, int from,
+			int to) {
+		final int[] offsets = stencil.offsets;
+		final double[] weights = stencil.weights;
+		final int rows = jacobian.length;
+		final double[] work = x.clone();
+		final double[] values = new double[rows];
+		final double[] sums = new double[rows];
+		for (int j = from; j < to; j++) {
+			final double xj = x[j];
+			final double h = step(xj);
+			Arrays.fill(sums, 0);
+			for (int k = 0; k < offsets.length; k++) {
+				final double[] evaluated;
+				if (offsets[k] == 0) {
+					evaluated = center;
+				} else {
+					work[j] = xj
+							+ offsets[k]
+									* h;
+					f.apply(work, values);
+					evaluated = values;
+				}
+				final double weight = weights[k];
+				for (int i = 0; i < rows; i++) {
+					sums[i] += weight
+							* evaluated[i];
+				}
+			}
+			work[j] = xj;
+			for (int i = 0; i < rows; i++) {
+				jacobian[i][j] = sums[i]
+						/ h;
+			}
+		}
+	}
+
+	/**
+	 * Splits the coordinates of a gradient or Jacobian in halves until each
+	 * chunk is no larger than the threshold.
+	 */
+	private final class DifferenceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The scalar function, {@code null} for a Jacobian. */
+		private final ToDoubleFunction<double[]> scalar;
+		/** The vector function, {@code null} for a gradient. */
+		private final VectorFunction vector;
+		private final double[] x;
+		private final double scalarCenter;
+		private final double[] vectorCenter;
+		private final double[] gradient;
+		private final double[][] jacobian;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		DifferenceTask(ToDoubleFunction<double[]> scalar, VectorFunction vector, double[] x, double scalarCenter,
+				double[] vectorCenter, double[] gradient, double[][] jacobian, int from, int to, int threshold) {
+			this.scalar = scalar;
+			this.vector = vector;
+			this.x = x;
+			this.scalarCenter = scalarCenter;
+			this.vectorCenter = vectorCenter;
+			this.gradient = gradient;
+			this.jacobian = jacobian;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to
+					- from <= threshold) {
+				if (scalar != null) {
+					gradientRange(scalar, x, scalarCenter, gradient, from, to);
+				} else {
+					jacobianRange(vector, x, vectorCenter, jacobian, from, to);
+				}
+				return;
+			}
+			final int middle = (from
+					+ to) >>> 1;
+			invokeAll(new DifferenceTask(scalar, vector, x, scalarCenter, vectorCenter, gradient, jacobian, from,
+					middle, threshold),
+					new DifferenceTask(scalar, vector, x, scalarCenter, vectorCenter, gradient, jacobian, middle, to,
+							threshold));
+		}
+	}
+}
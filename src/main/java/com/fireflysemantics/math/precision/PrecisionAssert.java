@@ -13,8 +13,10 @@
   */
 package com.fireflysemantics.math.precision;
 
+import java.nio.DoubleBuffer;
+
 /**
- * Supports comparison of double values.
+ * Supports comparison of double and float values.
  */
 public class PrecisionAssert {
 
@@ -24,6 +26,12 @@ public class PrecisionAssert {
 	private static final long POSITIVE_ZERO_DOUBLE_BITS = Double.doubleToRawLongBits(+0.0);
 	/** Negative zero bits. */
 	private static final long NEGATIVE_ZERO_DOUBLE_BITS = Double.doubleToRawLongBits(-0.0);
+	/** Offset to order signed float numbers lexicographically. */
+	private static final int SGN_MASK_FLOAT = 0x80000000;
+	/** Positive zero float bits. */
+	private static final int POSITIVE_ZERO_FLOAT_BITS = Float.floatToRawIntBits(+0.0f);
+	/** Negative zero float bits. */
+	private static final int NEGATIVE_ZERO_FLOAT_BITS = Float.floatToRawIntBits(-0.0f);
 
 	/**
 	 * Private constructor.
@@ -140,9 +148,19 @@ public class PrecisionAssert {
 	 *         numbers or they are within range of each other.
 	 */
 	public static boolean equals(double x, double y, double eps) {
-		return equals(x, y, 1)
-				|| Math.abs(y
-						- x) <= eps;
+		if (withinUlps(x, y, 1)) {
+			if (PrecisionMetrics.ENABLED) {
+				PrecisionMetrics.record(PrecisionMetrics.Path.ABSOLUTE_ULP);
+			}
+			return true;
+		}
+		final boolean within = Math.abs(y
+				- x) <= eps;
+		if (PrecisionMetrics.ENABLED) {
+			PrecisionMetrics.record(within ? PrecisionMetrics.Path.ABSOLUTE_EPS
+					: PrecisionMetrics.Path.ABSOLUTE_FAIL);
+		}
+		return within;
 	}
 
 	/**
@@ -161,7 +179,10 @@ public class PrecisionAssert {
 	 * @since 3.1
 	 */
 	public static boolean equalsWithRelativeTolerance(double x, double y, double eps) {
-		if (equals(x, y, 1)) {
+		if (withinUlps(x, y, 1)) {
+			if (PrecisionMetrics.ENABLED) {
+				PrecisionMetrics.record(PrecisionMetrics.Path.RELATIVE_ULP);
+			}
 			return true;
 		}
 
@@ -170,9 +191,161 @@ public class PrecisionAssert {
 				- y)
 				/ absoluteMax);
 
+		if (PrecisionMetrics.ENABLED) {
+			PrecisionMetrics.record(relativeDifference <= eps ? PrecisionMetrics.Path.RELATIVE_EPS
+					: PrecisionMetrics.Path.RELATIVE_FAIL);
+		}
 		return relativeDifference <= eps;
 	}
 
+	/**
+	 * Returns {@code true} if the arguments are equal under an absolute, a
+	 * relative or an ulp tolerance, i.e. the result of
+	 *
+	 * <pre>
+	 * equals(x, y, absoluteEps) || equalsWithRelativeTolerance(x, y, relativeEps) || equals(x, y, maxUlps)
+	 * </pre>
+	 *
+	 * in a single pass. The relative test is evaluated without division as
+	 * {@code |x - y| <= relativeEps * max(|x|, |y|)} when that product is a
+	 * finite normal number and {@code max(|x|, |y|)} is normal, and as the
+	 * quotient of {@link #equalsWithRelativeTolerance(double, double, double)}
+	 * otherwise, e.g. for subnormal values, an infinite {@code relativeEps} or
+	 * a difference that overflows. The result can therefore only differ from
+	 * the chained methods when the relative difference is within rounding of
+	 * {@code relativeEps}. The ulp distance is only computed for
+	 * pairs that fail the other two tests.
+	 * <p>
+	 * NaN is not equal to anything. An infinity is equal to itself, to an
+	 * adjacent value, and to any value if {@code absoluteEps} is infinite, as
+	 * for the chained methods; the relative test never accepts it.
+	 * </p>
+	 *
+	 * @param x
+	 *            First value.
+	 * @param y
+	 *            Second value.
+	 * @param absoluteEps
+	 *            Amount of allowed absolute error.
+	 * @param relativeEps
+	 *            Amount of allowed relative error.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}. Adjacent values are always
+	 *            equal.
+	 * @return {@code true} if the values are equal under any of the
+	 *         tolerances.
+	 */
+	public static boolean equals(double x, double y, double absoluteEps, double relativeEps, int maxUlps) {
+		final double difference = Math.abs(x
+				- y);
+		// NaN operands and equal infinities give a NaN difference, which
+		// fails both comparisons
+		if (difference <= absoluteEps) {
+			return true;
+		}
+		final double absX = Math.abs(x);
+		final double absY = Math.abs(y);
+		final double max = absX > absY ? absX : absY;
+		if (max < Double.POSITIVE_INFINITY) {
+			// both values are finite
+			final double bound = relativeEps
+					* max;
+			if (difference < Double.POSITIVE_INFINITY
+					&& max >= Double.MIN_NORMAL
+					&& bound >= Double.MIN_NORMAL
+					&& bound < Double.POSITIVE_INFINITY) {
+				if (difference <= bound) {
+					return true;
+				}
+			} else if (difference
+					/ max <= relativeEps) {
+				// the rare subnormal or overflowing operands take the
+				// quotient of the chained method, which the product would
+				// not match beyond rounding
+				return true;
+			}
+		}
+		// the absolute and relative tests accept adjacent values
+		return ulpDistance(x, y) <= Math.max(1, maxUlps);
+	}
+
+	/**
+	 * Returns true if both arrays have the same length and every pair of
+	 * elements is equal as defined by
+	 * {@link #equals(double, double, double, double, int) equals(x[i], y[i],
+	 * absoluteEps, relativeEps, maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param absoluteEps
+	 *            Amount of allowed absolute error.
+	 * @param relativeEps
+	 *            Amount of allowed relative error.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x[i]} and {@code y[i]}.
+	 * @return {@code true} if the arrays are element-wise equal.
+	 */
+	public static boolean equals(double[] x, double[] y, double absoluteEps, double relativeEps, int maxUlps) {
+		return x.length == y.length
+				&& mismatchRange(x, 0, y, 0, x.length, absoluteEps, relativeEps, maxUlps) < 0;
+	}
+
+	/**
+	 * Finds the first pair of elements in the given ranges that is not equal
+	 * as defined by {@link #equals(double, double, double, double, int)
+	 * equals(x, y, absoluteEps, relativeEps, maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @param absoluteEps
+	 *            Amount of allowed absolute error.
+	 * @param relativeEps
+	 *            Amount of allowed relative error.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between the elements.
+	 * @return the index of the first mismatch relative to the offsets, or -1
+	 *         if there is none.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length, double absoluteEps,
+			double relativeEps, int maxUlps) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		return mismatchRange(x, xOffset, y, yOffset, length, absoluteEps, relativeEps, maxUlps);
+	}
+
+	/**
+	 * Finds the first pair of checked ranges that is not equal under the
+	 * combined tolerance.
+	 */
+	static int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length, double absoluteEps,
+			double relativeEps, int maxUlps) {
+		for (int i = 0; i < length; i++) {
+			if (!equals(x[xOffset
+					+ i],
+					y[yOffset
+							+ i],
+					absoluteEps, relativeEps, maxUlps)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Returns true if both arguments are NaN or are equal or within the range
 	 * of allowed error (inclusive).
@@ -219,6 +392,18 @@ public class PrecisionAssert {
 	 */
 	public static boolean equals(final double x, final double y, final int maxUlps) {
 
+		if (PrecisionMetrics.ENABLED) {
+			PrecisionMetrics.recordUlps(x, y);
+		}
+		return withinUlps(x, y, maxUlps);
+	}
+
+	/**
+	 * {@link #equals(double, double, int)} without the metrics, so the
+	 * tolerance checks that start with a 1-ulp check and the bulk comparisons
+	 * are not counted as ulp comparisons.
+	 */
+	static boolean withinUlps(final double x, final double y, final int maxUlps) {
 		final long xInt = Double.doubleToRawLongBits(x);
 		final long yInt = Double.doubleToRawLongBits(y);
 
@@ -260,6 +445,58 @@ public class PrecisionAssert {
 
 	}
 
+	/**
+	 * Returns the number of ulps between two numbers, i.e. one more than the
+	 * number of floating point values strictly between them. Positive and
+	 * negative zero are zero ulps apart. For every {@code maxUlps}
+	 * {@link #equals(double,double,int) equals(x, y, maxUlps)} is equivalent
+	 * to {@code ulpDistance(x, y) <= maxUlps}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @return the distance in ulps, or {@link Long#MAX_VALUE} if either value
+	 *         is NaN or the distance between values of opposite signs does not
+	 *         fit into a {@code long}.
+	 */
+	public static long ulpDistance(final double x, final double y) {
+		if (Double.isNaN(x)
+				|| Double.isNaN(y)) {
+			return Long.MAX_VALUE;
+		}
+
+		final long xInt = Double.doubleToRawLongBits(x);
+		final long yInt = Double.doubleToRawLongBits(y);
+
+		if (((xInt
+				^ yInt)
+				& SGN_MASK) == 0l) {
+			// number have same sign, there is no risk of overflow
+			return Math.abs(xInt
+					- yInt);
+		}
+
+		// number have opposite signs, take care of overflow
+		final long deltaPlus;
+		final long deltaMinus;
+		if (xInt < yInt) {
+			deltaPlus = yInt
+					- POSITIVE_ZERO_DOUBLE_BITS;
+			deltaMinus = xInt
+					- NEGATIVE_ZERO_DOUBLE_BITS;
+		} else {
+			deltaPlus = xInt
+					- POSITIVE_ZERO_DOUBLE_BITS;
+			deltaMinus = yInt
+					- NEGATIVE_ZERO_DOUBLE_BITS;
+		}
+		return deltaPlus > Long.MAX_VALUE
+				- deltaMinus ? Long.MAX_VALUE
+						: deltaPlus
+								+ deltaMinus;
+	}
+
 	/**
 	 * Returns true if both arguments are NaN or if they are equal as defined by
 	 * {@link #equals(double,double,int) equals(x, y, maxUlps)}.
@@ -284,6 +521,541 @@ public class PrecisionAssert {
 						: equals(x, y, maxUlps);
 	}
 
+	/**
+	 * Returns true if both arrays have the same length and every pair of
+	 * elements is equal as defined by {@link #equals(double,double,int)
+	 * equals(x[i], y[i], maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x[i]} and {@code y[i]}.
+	 * @return {@code true} if the arrays are element-wise equal.
+	 */
+	public static boolean equals(double[] x, double[] y, int maxUlps) {
+		return x.length == y.length
+				&& reportedMismatch(x, 0, y, 0, x.length, maxUlps) < 0;
+	}
+
+	/**
+	 * Finds the index of the first pair of elements that is not equal as
+	 * defined by {@link #equals(double,double,int) equals(x[i], y[i],
+	 * maxUlps)}. Like {@link java.util.Arrays#equals(double[], double[])
+	 * Arrays} the length of the shorter array is returned if it is a prefix of
+	 * the longer one.
+	 * <p>
+	 * On Java 17 and later the comparison is vectorized when the
+	 * {@code jdk.incubator.vector} module is added to the runtime.
+	 * </p>
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x[i]} and {@code y[i]}.
+	 * @return the index of the first mismatch, or -1 if the arrays have the
+	 *         same length and no mismatch.
+	 */
+	public static int mismatch(double[] x, double[] y, int maxUlps) {
+		final int length = Math.min(x.length, y.length);
+		final int index = reportedMismatch(x, 0, y, 0, length, maxUlps);
+		if (index >= 0) {
+			return index;
+		}
+		return x.length == y.length ? -1 : length;
+	}
+
+	/**
+	 * Finds the first pair of elements in the given ranges that is not equal
+	 * as defined by {@link #equals(double,double,int) equals(x, y, maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between the elements.
+	 * @return the index of the first mismatch relative to the offsets, or -1
+	 *         if there is none.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length, int maxUlps) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		return reportedMismatch(x, xOffset, y, yOffset, length, maxUlps);
+	}
+
+	/**
+	 * Compares checked array ranges with {@link UlpKernel} and reports a
+	 * mismatch to {@link PrecisionEvents}.
+	 */
+	private static int reportedMismatch(double[] x, int xOffset, double[] y, int yOffset, int length,
+			int maxUlps) {
+		final Object event = PrecisionEvents.beginMismatch();
+		final int index = UlpKernel.mismatch(x, xOffset, y, yOffset, length, maxUlps);
+		PrecisionEvents.endMismatch(event, x, xOffset, y, yOffset, length, maxUlps, index);
+		return index;
+	}
+
+	/**
+	 * Returns true if both buffers have the same number of remaining elements
+	 * and every pair of them is equal as defined by
+	 * {@link #equals(double,double,int) equals(x, y, maxUlps)}. The positions
+	 * of the buffers are not changed.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between the elements.
+	 * @return {@code true} if the buffers are element-wise equal.
+	 * @see #mismatch(DoubleBuffer, DoubleBuffer, int)
+	 */
+	public static boolean equals(DoubleBuffer x, DoubleBuffer y, int maxUlps) {
+		return mismatch(x, y, maxUlps) < 0;
+	}
+
+	/**
+	 * Finds the first pair of remaining elements that is not equal as defined
+	 * by {@link #equals(double,double,int) equals(x, y, maxUlps)}. Like
+	 * {@link #mismatch(double[], double[], int)} the number of remaining
+	 * elements of the shorter buffer is returned if it is a prefix of the
+	 * longer one. The positions of the buffers are not changed.
+	 * <p>
+	 * Off-heap data is compared without copying: a direct
+	 * {@link java.nio.ByteBuffer} in either byte order is viewed with
+	 * {@link java.nio.ByteBuffer#asDoubleBuffer()}, and a
+	 * {@code MemorySegment} with {@code asByteBuffer().order(...)
+	 * .asDoubleBuffer()}. Buffers backed by arrays use the same kernel as
+	 * {@link #mismatch(double[], double[], int)}.
+	 * </p>
+	 * <p>
+	 * There is no {@code MemorySegment} overload. A multi-release jar must
+	 * expose the same public API on every runtime, so the overload could not
+	 * be added only to the Java 17 classes. It would also link against
+	 * {@code jdk.incubator.foreign}, which later JDKs removed. The Vector API
+	 * is only used internally, behind a scalar fallback.
+	 * </p>
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between the elements.
+	 * @return the index of the first mismatch relative to the positions, or
+	 *         -1 if both buffers have the same number of remaining elements and
+	 *         no mismatch.
+	 */
+	public static int mismatch(DoubleBuffer x, DoubleBuffer y, int maxUlps) {
+		final int length = Math.min(x.remaining(), y.remaining());
+		final int xPosition = x.position();
+		final int yPosition = y.position();
+		int index = -1;
+		if (x.hasArray()
+				&& y.hasArray()) {
+			index = reportedMismatch(x.array(), x.arrayOffset()
+					+ xPosition, y.array(),
+					y.arrayOffset()
+							+ yPosition,
+					length, maxUlps);
+		} else {
+			final Object event = PrecisionEvents.beginMismatch();
+			for (int i = 0; i < length; i++) {
+				if (!withinUlps(x.get(xPosition
+						+ i),
+						y.get(yPosition
+								+ i),
+						maxUlps)) {
+					index = i;
+					break;
+				}
+			}
+			PrecisionEvents.endMismatch(event, x, y, length, maxUlps, index);
+		}
+		if (index >= 0) {
+			return index;
+		}
+		return x.remaining() == y.remaining() ? -1 : length;
+	}
+
+	/**
+	 * Compares two numbers given some amount of allowed error.
+	 *
+	 * @param x
+	 *            the first number
+	 * @param y
+	 *            the second number
+	 * @param eps
+	 *            the amount of error to allow when checking for equality
+	 * @return
+	 * 		<ul>
+	 *         <li>0 if {@link #equals(float, float, float) equals(x, y,
+	 *         eps)}</li>
+	 *         <li>&lt; 0 if !{@link #equals(float, float, float) equals(x, y,
+	 *         eps)} &amp;&amp; x &lt; y</li>
+	 *         <li>> 0 if !{@link #equals(float, float, float) equals(x, y,
+	 *         eps)} &amp;&amp; x > y</li>
+	 *         </ul>
+	 */
+	public static int compareTo(float x, float y, float eps) {
+		if (equals(x, y, eps)) {
+			return 0;
+		} else if (x < y) {
+			return -1;
+		}
+		return 1;
+	}
+
+	/**
+	 * Compares two numbers given some amount of allowed error. Two float
+	 * numbers are considered equal if there are {@code (maxUlps - 1)} (or
+	 * fewer) float values between them.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            {@code x} and {@code y}.
+	 * @return
+	 * 		<ul>
+	 *         <li>0 if {@link #equals(float, float, int) equals(x, y,
+	 *         maxUlps)}</li>
+	 *         <li>&lt; 0 if !{@link #equals(float, float, int) equals(x, y,
+	 *         maxUlps)} &amp;&amp; x &lt; y</li>
+	 *         <li>> 0 if !{@link #equals(float, float, int) equals(x, y,
+	 *         maxUlps)} &amp;&amp; x > y</li>
+	 *         </ul>
+	 */
+	public static int compareTo(final float x, final float y, final int maxUlps) {
+		if (equals(x, y, maxUlps)) {
+			return 0;
+		} else if (x < y) {
+			return -1;
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns true iff they are equal as defined by
+	 * {@link #equals(float,float,int) equals(x, y, 1)}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @return {@code true} if the values are equal.
+	 */
+	public static boolean equals(float x, float y) {
+		return equals(x, y, 1);
+	}
+
+	/**
+	 * Returns true if both arguments are NaN or neither is NaN and they are
+	 * equal as defined by {@link #equals(float,float) equals(x, y, 1)}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @return {@code true} if the values are equal or both are NaN.
+	 */
+	public static boolean equalsIncludingNaN(float x, float y) {
+		return (x != x
+				|| y != y)
+						? !(x != x
+								^ y != y)
+						: equals(x, y, 1);
+	}
+
+	/**
+	 * Returns {@code true} if there is no float value strictly between the
+	 * arguments or the difference between them is within the range of allowed
+	 * error (inclusive).
+	 *
+	 * @param x
+	 *            First value.
+	 * @param y
+	 *            Second value.
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return {@code true} if the values are two adjacent float numbers or
+	 *         they are within range of each other.
+	 */
+	public static boolean equals(float x, float y, float eps) {
+		return equals(x, y, 1)
+				|| Math.abs(y
+						- x) <= eps;
+	}
+
+	/**
+	 * Returns {@code true} if there is no float value strictly between the
+	 * arguments or the relative difference between them is smaller or equal to
+	 * the given tolerance. The relative difference is computed in float
+	 * arithmetic.
+	 *
+	 * @param x
+	 *            First value.
+	 * @param y
+	 *            Second value.
+	 * @param eps
+	 *            Amount of allowed relative error.
+	 * @return {@code true} if the values are two adjacent float numbers or
+	 *         they are within range of each other.
+	 */
+	public static boolean equalsWithRelativeTolerance(float x, float y, float eps) {
+		if (equals(x, y, 1)) {
+			return true;
+		}
+
+		final float absoluteMax = Math.max(Math.abs(x), Math.abs(y));
+		final float relativeDifference = Math.abs((x
+				- y)
+				/ absoluteMax);
+
+		return relativeDifference <= eps;
+	}
+
+	/**
+	 * Returns true if both arguments are NaN or are equal or within the range
+	 * of allowed error (inclusive).
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @param eps
+	 *            the amount of absolute error to allow.
+	 * @return {@code true} if the values are equal or within range of each
+	 *         other, or both are NaN.
+	 */
+	public static boolean equalsIncludingNaN(float x, float y, float eps) {
+		return equalsIncludingNaN(x, y)
+				|| (Math.abs(y
+						- x) <= eps);
+	}
+
+	/**
+	 * Returns true if both arguments are equal or within the range of allowed
+	 * error (inclusive).
+	 * <p>
+	 * Two float numbers are considered equal if there are {@code (maxUlps - 1)}
+	 * (or fewer) float values between them, i.e. two adjacent float numbers
+	 * are considered equal. Ulps are counted in the float format, so a float
+	 * ulp is 2<sup>29</sup> times a double ulp of the same magnitude.
+	 * </p>
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            {@code x} and {@code y}.
+	 * @return {@code true} if there are fewer than {@code maxUlps} float values
+	 *         between {@code x} and {@code y}.
+	 */
+	public static boolean equals(final float x, final float y, final int maxUlps) {
+
+		final int xInt = Float.floatToRawIntBits(x);
+		final int yInt = Float.floatToRawIntBits(y);
+
+		final boolean isEqual;
+		if (((xInt
+				^ yInt)
+				& SGN_MASK_FLOAT) == 0) {
+			// number have same sign, there is no risk of overflow
+			isEqual = Math.abs(xInt
+					- yInt) <= maxUlps;
+		} else {
+			// number have opposite signs, take care of overflow
+			final int deltaPlus;
+			final int deltaMinus;
+			if (xInt < yInt) {
+				deltaPlus = yInt
+						- POSITIVE_ZERO_FLOAT_BITS;
+				deltaMinus = xInt
+						- NEGATIVE_ZERO_FLOAT_BITS;
+			} else {
+				deltaPlus = xInt
+						- POSITIVE_ZERO_FLOAT_BITS;
+				deltaMinus = yInt
+						- NEGATIVE_ZERO_FLOAT_BITS;
+			}
+
+			if (deltaPlus > maxUlps) {
+				isEqual = false;
+			} else {
+				isEqual = deltaMinus <= (maxUlps
+						- deltaPlus);
+			}
+
+		}
+
+		return isEqual
+				&& !Float.isNaN(x)
+				&& !Float.isNaN(y);
+
+	}
+
+	/**
+	 * Returns the number of float ulps between two numbers. For every
+	 * {@code maxUlps} {@link #equals(float,float,int) equals(x, y, maxUlps)}
+	 * is equivalent to {@code ulpDistance(x, y) <= maxUlps}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @return the distance in float ulps, or {@link Long#MAX_VALUE} if either
+	 *         value is NaN.
+	 */
+	public static long ulpDistance(final float x, final float y) {
+		if (Float.isNaN(x)
+				|| Float.isNaN(y)) {
+			return Long.MAX_VALUE;
+		}
+
+		final int xInt = Float.floatToRawIntBits(x);
+		final int yInt = Float.floatToRawIntBits(y);
+
+		if (((xInt
+				^ yInt)
+				& SGN_MASK_FLOAT) == 0) {
+			// number have same sign, there is no risk of overflow
+			return Math.abs(xInt
+					- yInt);
+		}
+
+		// number have opposite signs, the sum of the magnitudes fits a long
+		return (long) (xInt & ~SGN_MASK_FLOAT)
+				+ (yInt & ~SGN_MASK_FLOAT);
+	}
+
+	/**
+	 * Returns true if both arguments are NaN or if they are equal as defined by
+	 * {@link #equals(float,float,int) equals(x, y, maxUlps)}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            {@code x} and {@code y}.
+	 * @return {@code true} if both arguments are NaN or if there are less than
+	 *         {@code maxUlps} float values between {@code x} and {@code y}.
+	 */
+	public static boolean equalsIncludingNaN(float x, float y, int maxUlps) {
+		return (x != x
+				|| y != y)
+						? !(x != x
+								^ y != y)
+						: equals(x, y, maxUlps);
+	}
+
+	/**
+	 * Returns true if both arrays have the same length and every pair of
+	 * elements is equal as defined by {@link #equals(float,float,int)
+	 * equals(x[i], y[i], maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            {@code x[i]} and {@code y[i]}.
+	 * @return {@code true} if the arrays are element-wise equal.
+	 */
+	public static boolean equals(float[] x, float[] y, int maxUlps) {
+		return x.length == y.length
+				&& reportedMismatch(x, 0, y, 0, x.length, maxUlps) < 0;
+	}
+
+	/**
+	 * Finds the index of the first pair of elements that is not equal as
+	 * defined by {@link #equals(float,float,int) equals(x[i], y[i], maxUlps)}.
+	 * The length of the shorter array is returned if it is a prefix of the
+	 * longer one.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            {@code x[i]} and {@code y[i]}.
+	 * @return the index of the first mismatch, or -1 if the arrays have the
+	 *         same length and no mismatch.
+	 */
+	public static int mismatch(float[] x, float[] y, int maxUlps) {
+		final int length = Math.min(x.length, y.length);
+		final int index = reportedMismatch(x, 0, y, 0, length, maxUlps);
+		if (index >= 0) {
+			return index;
+		}
+		return x.length == y.length ? -1 : length;
+	}
+
+	/**
+	 * Finds the first pair of elements in the given ranges that is not equal
+	 * as defined by {@link #equals(float,float,int) equals(x, y, maxUlps)}.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of float values between
+	 *            the elements.
+	 * @return the index of the first mismatch relative to the offsets, or -1
+	 *         if there is none.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static int mismatch(float[] x, int xOffset, float[] y, int yOffset, int length, int maxUlps) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		return reportedMismatch(x, xOffset, y, yOffset, length, maxUlps);
+	}
+
+	/**
+	 * Compares checked float array ranges with {@link UlpKernel} and reports a
+	 * mismatch to {@link PrecisionEvents}.
+	 */
+	private static int reportedMismatch(float[] x, int xOffset, float[] y, int yOffset, int length,
+			int maxUlps) {
+		final Object event = PrecisionEvents.beginMismatch();
+		final int index = UlpKernel.mismatch(x, xOffset, y, yOffset, length, maxUlps);
+		PrecisionEvents.endMismatch(event, x, xOffset, y, yOffset, length, maxUlps, index);
+		return index;
+	}
+
 	/**
 	 * Computes a number {@code delta} close to {@code originalDelta} with the
 	 * property that
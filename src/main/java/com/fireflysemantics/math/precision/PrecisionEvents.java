@@ -0,0 +1,138 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Hooks reporting slow paths and failed bulk comparisons as Java Flight
+ * Recorder events. JFR events need Java 11, so on Java 8 every hook is an
+ * empty method that the JIT removes. On Java 17 and later this class is
+ * replaced by one emitting {@code jdk.jfr} events, see the multi-release
+ * sources.
+ * <p>
+ * A hook pair brackets the measured work: {@code begin...} returns an event
+ * token, or {@code null}, that is passed to the matching {@code end...} hook
+ * with the values to record.
+ * </p>
+ */
+final class PrecisionEvents {
+
+	/**
+	 * Private constructor.
+	 */
+	private PrecisionEvents() {
+	}
+
+	/**
+	 * Starts timing a {@link java.math.BigDecimal} rounding.
+	 *
+	 * @return the event token.
+	 */
+	static Object beginRounding() {
+		return null;
+	}
+
+	/**
+	 * Reports a {@link java.math.BigDecimal} rounding.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginRounding()}.
+	 * @param x
+	 *            the rounded value.
+	 * @param scale
+	 *            the scale.
+	 * @param roundingMethod
+	 *            the rounding method.
+	 */
+	static void endRounding(Object event, double x, int scale, int roundingMethod) {
+	}
+
+	/**
+	 * Starts timing a bulk ulp comparison.
+	 *
+	 * @return the event token.
+	 */
+	static Object beginMismatch() {
+		return null;
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of checked array ranges.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the relative index of the first mismatch, or -1.
+	 */
+	static void endMismatch(Object event, double[] x, int xOffset, double[] y, int yOffset, int length,
+			int maxUlps, int first) {
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of checked float array ranges.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the relative index of the first mismatch, or -1.
+	 */
+	static void endMismatch(Object event, float[] x, int xOffset, float[] y, int yOffset, int length,
+			int maxUlps, int first) {
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of the remaining elements of two buffers.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the index of the first mismatch relative to the positions, or
+	 *            -1.
+	 */
+	static void endMismatch(Object event, DoubleBuffer x, DoubleBuffer y, int length, int maxUlps, int first) {
+	}
+}
@@ -0,0 +1,289 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the decision paths taken by the double comparisons of
+ * {@link PrecisionAssert}, e.g. how many {@code equals(x, y, eps)} calls pass
+ * only through the absolute tolerance rather than the 1-ulp check.
+ * <p>
+ * Metrics are off by default and enabled by starting the JVM with
+ * {@code -D}{@value #ENABLED_PROPERTY}{@code =true}. The switch is read once
+ * into a static final field, so when it is off the JIT removes the counting
+ * code and the comparisons cost exactly what they did before. When it is on
+ * each decision increments a striped {@link LongAdder}, which stays cheap
+ * under contention. The bulk comparisons of arrays and buffers are not
+ * counted, so the counts do not depend on whether they are vectorized.
+ * </p>
+ * <p>
+ * {@link #snapshot()} reads the counters, {@link #reset()} clears them, and
+ * {@link #registerMBean()} publishes them over JMX.
+ * </p>
+ */
+public final class PrecisionMetrics {
+
+	/** System property enabling the metrics. */
+	public static final String ENABLED_PROPERTY = "com.fireflysemantics.math.precision.metrics";
+
+	/** Name under which {@link #registerMBean()} registers the MBean. */
+	public static final String OBJECT_NAME = "com.fireflysemantics.math.precision:type=PrecisionMetrics";
+
+	/** Whether the metrics are enabled, constant for the life of the JVM. */
+	static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * Decision paths of the comparisons.
+	 */
+	public enum Path {
+		/** {@code equals(x, y, eps)} passed the 1-ulp check. */
+		ABSOLUTE_ULP,
+		/** {@code equals(x, y, eps)} passed only the absolute tolerance. */
+		ABSOLUTE_EPS,
+		/** {@code equals(x, y, eps)} failed. */
+		ABSOLUTE_FAIL,
+		/** {@code equalsWithRelativeTolerance} passed the 1-ulp check. */
+		RELATIVE_ULP,
+		/** {@code equalsWithRelativeTolerance} passed only the relative tolerance. */
+		RELATIVE_EPS,
+		/** {@code equalsWithRelativeTolerance} failed. */
+		RELATIVE_FAIL,
+		/** {@code equals(x, y, maxUlps)} compared values of the same sign. */
+		ULPS_SAME_SIGN,
+		/** {@code equals(x, y, maxUlps)} compared values of opposite signs. */
+		ULPS_OPPOSITE_SIGN,
+		/** {@code equals(x, y, maxUlps)} compared a NaN value. */
+		ULPS_NAN
+	}
+
+	/** The paths. */
+	private static final Path[] PATHS = Path.values();
+
+	/** Counters indexed by path ordinal. */
+	private static final LongAdder[] COUNTERS = new LongAdder[PATHS.length];
+
+	static {
+		for (int i = 0; i < COUNTERS.length; i++) {
+			COUNTERS[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Private constructor.
+	 */
+	private PrecisionMetrics() {
+	}
+
+	/**
+	 * Returns whether the metrics are enabled.
+	 *
+	 * @return {@code true} if the system property {@value #ENABLED_PROPERTY}
+	 *         was {@code true} when the class was loaded.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Returns the current counts. Counts of comparisons running concurrently
+	 * may or may not be included.
+	 *
+	 * @return the counts.
+	 */
+	public static Snapshot snapshot() {
+		final long[] counts = new long[PATHS.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = COUNTERS[i].sum();
+		}
+		return new Snapshot(counts);
+	}
+
+	/**
+	 * Returns the current counts and resets them, so that consecutive
+	 * snapshots cover disjoint intervals.
+	 *
+	 * @return the counts.
+	 */
+	public static Snapshot snapshotAndReset() {
+		final long[] counts = new long[PATHS.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = COUNTERS[i].sumThenReset();
+		}
+		return new Snapshot(counts);
+	}
+
+	/**
+	 * Resets all counts to zero.
+	 */
+	public static void reset() {
+		for (LongAdder counter : COUNTERS) {
+			counter.reset();
+		}
+	}
+
+	/**
+	 * Registers a {@link PrecisionMetricsMXBean} under {@link #OBJECT_NAME}
+	 * with the platform MBean server, unless it is already registered.
+	 *
+	 * @return the name of the MBean.
+	 * @throws IllegalStateException
+	 *             if the MBean cannot be registered.
+	 */
+	public static synchronized ObjectName registerMBean() {
+		try {
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new MXBean(), name);
+			}
+			return name;
+		} catch (JMException ex) {
+			throw new IllegalStateException("cannot register "
+					+ OBJECT_NAME, ex);
+		}
+	}
+
+	/**
+	 * Counts a path. Callers check {@link #ENABLED} first.
+	 */
+	static void record(Path path) {
+		COUNTERS[path.ordinal()].increment();
+	}
+
+	/**
+	 * Counts the path of an ulp comparison.
+	 */
+	static void recordUlps(double x, double y) {
+		if (x != x
+				|| y != y) {
+			record(Path.ULPS_NAN);
+		} else if ((Double.doubleToRawLongBits(x)
+				^ Double.doubleToRawLongBits(y)) < 0) {
+			record(Path.ULPS_OPPOSITE_SIGN);
+		} else {
+			record(Path.ULPS_SAME_SIGN);
+		}
+	}
+
+	/**
+	 * Immutable counts of the decision paths.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+
+		Snapshot(long[] counts) {
+			this.counts = counts;
+		}
+
+		/**
+		 * Returns the count of a path.
+		 *
+		 * @param path
+		 *            the path.
+		 * @return the number of times the path was taken.
+		 */
+		public long get(Path path) {
+			return counts[path.ordinal()];
+		}
+
+		/**
+		 * Returns the counts of all paths.
+		 *
+		 * @return a new map from path to count.
+		 */
+		public Map<Path, Long> toMap() {
+			final Map<Path, Long> map = new EnumMap<>(Path.class);
+			for (Path path : PATHS) {
+				map.put(path, counts[path.ordinal()]);
+			}
+			return map;
+		}
+
+		@Override
+		public String toString() {
+			return "PrecisionMetrics.Snapshot"
+					+ toMap();
+		}
+	}
+
+	/**
+	 * Exposes the counters over JMX.
+	 */
+	private static final class MXBean implements PrecisionMetricsMXBean {
+
+		@Override
+		public boolean isEnabled() {
+			return ENABLED;
+		}
+
+		@Override
+		public long getAbsoluteUlpCount() {
+			return COUNTERS[Path.ABSOLUTE_ULP.ordinal()].sum();
+		}
+
+		@Override
+		public long getAbsoluteEpsCount() {
+			return COUNTERS[Path.ABSOLUTE_EPS.ordinal()].sum();
+		}
+
+		@Override
+		public long getAbsoluteFailCount() {
+			return COUNTERS[Path.ABSOLUTE_FAIL.ordinal()].sum();
+		}
+
+		@Override
+		public long getRelativeUlpCount() {
+			return COUNTERS[Path.RELATIVE_ULP.ordinal()].sum();
+		}
+
+		@Override
+		public long getRelativeEpsCount() {
+			return COUNTERS[Path.RELATIVE_EPS.ordinal()].sum();
+		}
+
+		@Override
+		public long getRelativeFailCount() {
+			return COUNTERS[Path.RELATIVE_FAIL.ordinal()].sum();
+		}
+
+		@Override
+		public long getUlpsSameSignCount() {
+			return COUNTERS[Path.ULPS_SAME_SIGN.ordinal()].sum();
+		}
+
+		@Override
+		public long getUlpsOppositeSignCount() {
+			return COUNTERS[Path.ULPS_OPPOSITE_SIGN.ordinal()].sum();
+		}
+
+		@Override
+		public long getUlpsNaNCount() {
+			return COUNTERS[Path.ULPS_NAN.ordinal()].sum();
+		}
+
+		@Override
+		public void reset() {
+			PrecisionMetrics.reset();
+		}
+	}
+}
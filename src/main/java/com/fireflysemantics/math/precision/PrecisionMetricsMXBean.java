@@ -0,0 +1,79 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * JMX view of the {@link PrecisionMetrics} counters, registered with
+ * {@link PrecisionMetrics#registerMBean()}. Each count is the number of times
+ * the corresponding {@link PrecisionMetrics.Path} was taken.
+ */
+public interface PrecisionMetricsMXBean {
+
+	/**
+	 * Returns whether the metrics are enabled.
+	 *
+	 * @return {@code true} if the counters are updated.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ABSOLUTE_ULP}.
+	 */
+	long getAbsoluteUlpCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ABSOLUTE_EPS}.
+	 */
+	long getAbsoluteEpsCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ABSOLUTE_FAIL}.
+	 */
+	long getAbsoluteFailCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#RELATIVE_ULP}.
+	 */
+	long getRelativeUlpCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#RELATIVE_EPS}.
+	 */
+	long getRelativeEpsCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#RELATIVE_FAIL}.
+	 */
+	long getRelativeFailCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ULPS_SAME_SIGN}.
+	 */
+	long getUlpsSameSignCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ULPS_OPPOSITE_SIGN}.
+	 */
+	long getUlpsOppositeSignCount();
+
+	/**
+	 * @return the count of {@link PrecisionMetrics.Path#ULPS_NAN}.
+	 */
+	long getUlpsNaNCount();
+
+	/**
+	 * Resets all counts to zero.
+	 */
+	void reset();
+}
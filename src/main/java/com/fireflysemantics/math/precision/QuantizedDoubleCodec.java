@@ -0,0 +1,506 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.RoundingMode;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses double values that are rounded to a scale by storing them as
+ * delta encoded scaled longs.
+ * <p>
+ * Each value is rounded with {@link RoundingContext#toScaledLong(double)};
+ * the difference to the previous unscaled value is zigzag encoded, so that
+ * small negative and positive differences are small, and written as a
+ * variable length integer of 7 bits per byte. Prices and measurements rounded
+ * to a few digits mostly take one or two bytes per value instead of eight.
+ * Decoding applies {@link RoundDouble#fromScaledLong(long, int)} and returns
+ * exactly the bits of {@link RoundingContext#round(double)}: values without
+ * an unscaled representation, i.e. NaN, infinities, negative zeros and values
+ * whose unscaled value overflows a {@code long}, are stored as their raw
+ * rounded bits.
+ * </p>
+ * <p>
+ * Values are encoded in independent blocks. A block starts with its number
+ * of values and its first value is not delta encoded, so blocks can be
+ * streamed with {@link #encodeBlock(double[], int, int, ByteBuffer)} and
+ * {@link #decodeBlock(ByteBuffer, double[], int)} without further framing.
+ * {@link #encode(double[], int, int, ByteBuffer)} writes a whole column with
+ * a header and a block offset table, which {@link QuantizedDoubleColumn}
+ * reads with random access to each block. The encoding does not depend on
+ * the byte order of the buffers.
+ * </p>
+ * <p>
+ * Codecs are immutable and thread safe.
+ * </p>
+ */
+public final class QuantizedDoubleCodec {
+
+	/** Default number of values per block of a column. */
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	/** Varint marking a value that is stored as raw bits. */
+	static final int ESCAPE = 0;
+
+	/** Largest number of bytes of a varint encoded long. */
+	static final int MAX_VARINT_LENGTH = 10;
+
+	private final RoundingContext context;
+
+	private final int blockSize;
+
+	private QuantizedDoubleCodec(RoundingContext context, int blockSize) {
+		this.context = context;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Returns a codec for a scale and rounding mode with blocks of
+	 * {@link #DEFAULT_BLOCK_SIZE} values.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the codec.
+	 */
+	public static QuantizedDoubleCodec of(int scale, RoundingMode mode) {
+		return of(scale, mode, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns a codec for a scale, rounding mode and block size.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @param blockSize
+	 *            number of values per block of a column.
+	 * @return the codec.
+	 * @throws IllegalArgumentException
+	 *             if {@code blockSize} is not positive.
+	 */
+	public static QuantizedDoubleCodec of(int scale, RoundingMode mode, int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be positive: "
+					+ blockSize);
+		}
+		return new QuantizedDoubleCodec(RoundingContext.of(scale, mode), blockSize);
+	}
+
+	/**
+	 * Returns the rounding context of this codec.
+	 *
+	 * @return the context.
+	 */
+	public RoundingContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Returns the number of values per block of a column.
+	 *
+	 * @return the block size.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns an upper bound of the number of bytes
+	 * {@link #encode(double[], int, int, ByteBuffer)} writes.
+	 *
+	 * @param length
+	 *            number of values.
+	 * @return the largest encoded length of a column.
+	 * @throws IllegalArgumentException
+	 *             if {@code length} is negative.
+	 */
+	public long maxEncodedLength(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("length must not be negative: "
+					+ length);
+		}
+		final long blocks = blockCount(length, blockSize);
+		return 3L
+				* 5
+				+ 4
+						* (blocks
+								+ 1)
+				+ 5
+						* blocks
+				+ (long) MAX_VARINT_LENGTH
+						* length;
+	}
+
+	/**
+	 * Rounds and encodes {@code length} values starting at {@code offset} as a
+	 * single block at the position of {@code dst}, and advances the position.
+	 *
+	 * @param src
+	 *            the values.
+	 * @param offset
+	 *            index of the first value.
+	 * @param length
+	 *            number of values.
+	 * @param dst
+	 *            the destination.
+	 * @return the number of bytes written.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 * @throws BufferOverflowException
+	 *             if the block does not fit. The position of {@code dst} is
+	 *             not changed in that case.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public int encodeBlock(double[] src, int offset, int length, ByteBuffer dst) {
+		ArrayRange.check(src.length, offset, length);
+		final int start = dst.position();
+		try {
+			writeBlock(src, offset, length, dst);
+		} catch (BufferOverflowException ex) {
+			((Buffer) dst).position(start);
+			throw ex;
+		}
+		return dst.position()
+				- start;
+	}
+
+	/**
+	 * Decodes the block at the position of {@code src} into {@code dst}
+	 * starting at {@code offset}, and advances the position.
+	 *
+	 * @param src
+	 *            the encoded block.
+	 * @param dst
+	 *            the array receiving the values, with room for
+	 *            {@link #blockLength(ByteBuffer)} values.
+	 * @param offset
+	 *            index receiving the first value.
+	 * @return the number of values decoded.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the values do not fit into {@code dst}. The position of
+	 *             {@code src} is not changed in that case.
+	 * @throws java.nio.BufferUnderflowException
+	 *             if the block is truncated.
+	 * @throws IllegalArgumentException
+	 *             if the block is malformed.
+	 */
+	public int decodeBlock(ByteBuffer src, double[] dst, int offset) {
+		final int length = blockLength(src);
+		ArrayRange.check(dst.length, offset, length);
+		readVarint(src);
+		readValues(src, context.scale, dst, offset, length);
+		return length;
+	}
+
+	/**
+	 * Returns the number of values of the block at the position of
+	 * {@code src} without changing the position.
+	 *
+	 * @param src
+	 *            the encoded block.
+	 * @return the number of values.
+	 * @throws java.nio.BufferUnderflowException
+	 *             if the block is truncated.
+	 * @throws IllegalArgumentException
+	 *             if the block is malformed.
+	 */
+	public static int blockLength(ByteBuffer src) {
+		final int position = src.position();
+		final long length = readVarint(src);
+		((Buffer) src).position(position);
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid block length: "
+					+ length);
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Rounds and encodes {@code length} values starting at {@code offset} as a
+	 * column of blocks of {@link #getBlockSize()} values at the position of
+	 * {@code dst}, and advances the position.
+	 * <p>
+	 * The column starts with the scale, the number of values and the block
+	 * size as varints, followed by the offset of each block and of the end of
+	 * the column relative to its start as 4 byte big endian integers, and the
+	 * blocks.
+	 * </p>
+	 *
+	 * @param src
+	 *            the values.
+	 * @param offset
+	 *            index of the first value.
+	 * @param length
+	 *            number of values.
+	 * @param dst
+	 *            the destination, with room for at least
+	 *            {@link #maxEncodedLength(int)} bytes to be sure it fits.
+	 * @return the number of bytes written.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 * @throws BufferOverflowException
+	 *             if the column does not fit. The position of {@code dst} is
+	 *             not changed in that case.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public int encode(double[] src, int offset, int length, ByteBuffer dst) {
+		ArrayRange.check(src.length, offset, length);
+		final int start = dst.position();
+		try {
+			writeVarint(dst, zigzag(context.scale));
+			writeVarint(dst, length);
+			writeVarint(dst, blockSize);
+			final int blocks = blockCount(length, blockSize);
+			final int table = dst.position();
+			if (dst.remaining() < 4
+					* (blocks
+							+ 1)) {
+				throw new BufferOverflowException();
+			}
+			((Buffer) dst).position(table
+					+ 4
+							* (blocks
+									+ 1));
+			for (int block = 0; block < blocks; block++) {
+				putInt(dst, table
+						+ 4
+								* block,
+						dst.position()
+								- start);
+				final int from = block
+						* blockSize;
+				writeBlock(src, offset
+						+ from, Math.min(blockSize, length
+								- from),
+						dst);
+			}
+			putInt(dst, table
+					+ 4
+							* blocks,
+					dst.position()
+							- start);
+		} catch (BufferOverflowException ex) {
+			((Buffer) dst).position(start);
+			throw ex;
+		}
+		return dst.position()
+				- start;
+	}
+
+	/**
+	 * Returns the number of blocks of a column.
+	 */
+	static int blockCount(int length, int blockSize) {
+		return (int) ((length
+				+ (long) blockSize
+				- 1)
+				/ blockSize);
+	}
+
+	/**
+	 * Writes a block of a checked range.
+	 */
+	private void writeBlock(double[] src, int offset, int length, ByteBuffer dst) {
+		writeVarint(dst, length);
+		long previous = 0;
+		for (int i = offset; i < offset
+				+ length; i++) {
+			final double x = src[i];
+			if (x == x
+					&& !Double.isInfinite(x)) {
+				long unscaled;
+				try {
+					unscaled = context.toScaledLong(x);
+				} catch (ArithmeticException ex) {
+					// the unscaled value overflows, unless the rounding mode
+					// is UNNECESSARY, when round throws as well
+					writeEscape(dst, context.round(x));
+					continue;
+				}
+				final long delta = unscaled
+						- previous;
+				// a negative value rounded to zero keeps its sign, and the
+				// zigzag encoding of Long.MIN_VALUE cannot be shifted past
+				// the escape
+				if (!(unscaled == 0
+						&& Double.doubleToRawLongBits(x) < 0)
+						&& delta != Long.MIN_VALUE) {
+					writeVarint(dst, zigzag(delta)
+							+ 1);
+					previous = unscaled;
+					continue;
+				}
+			}
+			writeEscape(dst, context.round(x));
+		}
+	}
+
+	/**
+	 * Reads the values of a block after its length.
+	 */
+	static void readValues(ByteBuffer src, int scale, double[] dst, int offset, int length) {
+		long previous = 0;
+		for (int i = offset; i < offset
+				+ length; i++) {
+			final long code = readVarint(src);
+			if (code == ESCAPE) {
+				dst[i] = Double.longBitsToDouble(readLong(src));
+			} else {
+				previous += unzigzag(code
+						- 1);
+				dst[i] = RoundDouble.fromScaledLong(previous, scale);
+			}
+		}
+	}
+
+	/**
+	 * Reads the value at an index of a block after its length.
+	 */
+	static double readValue(ByteBuffer src, int scale, int index) {
+		long previous = 0;
+		for (int i = 0;; i++) {
+			final long code = readVarint(src);
+			if (code == ESCAPE) {
+				final long bits = readLong(src);
+				if (i == index) {
+					return Double.longBitsToDouble(bits);
+				}
+			} else {
+				previous += unzigzag(code
+						- 1);
+				if (i == index) {
+					return RoundDouble.fromScaledLong(previous, scale);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a value as raw bits after the escape.
+	 */
+	private static void writeEscape(ByteBuffer dst, double rounded) {
+		final long bits = Double.doubleToRawLongBits(rounded);
+		dst.put((byte) ESCAPE);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			dst.put((byte) (bits >>> shift));
+		}
+	}
+
+	private static long readLong(ByteBuffer src) {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits = (bits << 8)
+					| (src.get()
+							& 0xff);
+		}
+		return bits;
+	}
+
+	/**
+	 * Writes an unsigned varint of 7 bits per byte, least significant first.
+	 */
+	static void writeVarint(ByteBuffer dst, long value) {
+		while ((value & ~0x7fL) != 0) {
+			dst.put((byte) ((value
+					& 0x7f)
+					| 0x80));
+			value >>>= 7;
+		}
+		dst.put((byte) value);
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the varint is longer than {@value #MAX_VARINT_LENGTH}
+	 *             bytes.
+	 */
+	static long readVarint(ByteBuffer src) {
+		long value = 0;
+		for (int shift = 0; shift < 7
+				* MAX_VARINT_LENGTH; shift += 7) {
+			final byte b = src.get();
+			value |= (long) (b
+					& 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint at "
+				+ (src.position()
+						- MAX_VARINT_LENGTH));
+	}
+
+	/**
+	 * Writes a big endian int at an index.
+	 */
+	private static void putInt(ByteBuffer dst, int index, int value) {
+		for (int i = 0; i < 4; i++) {
+			dst.put(index
+					+ i, (byte) (value >>> (24
+							- 8
+									* i)));
+		}
+	}
+
+	/**
+	 * Reads a big endian int at an index.
+	 */
+	static int getInt(ByteBuffer src, int index) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8)
+					| (src.get(index
+							+ i)
+							& 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * Maps signed values to unsigned ones of similar magnitude: 0, -1, 1, -2,
+	 * ... to 0, 1, 2, 3, ...
+	 */
+	static long zigzag(long value) {
+		return (value << 1)
+				^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1)
+				^ -(value
+						& 1);
+	}
+
+	@Override
+	public String toString() {
+		return "QuantizedDoubleCodec[scale="
+				+ context.scale
+				+ ", mode="
+				+ context.mode
+				+ ", blockSize="
+				+ blockSize
+				+ "]";
+	}
+}
@@ -0,0 +1,283 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a column written by
+ * {@link QuantizedDoubleCodec#encode(double[], int, int, ByteBuffer)}, with
+ * random access to its blocks.
+ * <p>
+ * Decoding a block costs one pass over its bytes; {@link #get(int)} decodes
+ * the block of the value up to the value. The column reads its own view of
+ * the buffer and is safe to share between threads as long as the bytes are
+ * not modified.
+ * </p>
+ */
+public final class QuantizedDoubleColumn {
+
+	/** The column, starting at index 0. */
+	private final ByteBuffer data;
+
+	private final int scale;
+
+	private final int size;
+
+	private final int blockSize;
+
+	private final int blockCount;
+
+	/** Index of the block offset table. */
+	private final int table;
+
+	private QuantizedDoubleColumn(ByteBuffer data, int scale, int size, int blockSize, int table) {
+		this.data = data;
+		this.scale = scale;
+		this.size = size;
+		this.blockSize = blockSize;
+		this.blockCount = QuantizedDoubleCodec.blockCount(size, blockSize);
+		this.table = table;
+	}
+
+	/**
+	 * Reads the header of the column at the position of {@code src} and
+	 * advances the position past the column.
+	 *
+	 * @param src
+	 *            the encoded column.
+	 * @return the column, a view of the bytes of {@code src}.
+	 * @throws BufferUnderflowException
+	 *             if the column is truncated.
+	 * @throws IllegalArgumentException
+	 *             if the header is malformed.
+	 */
+	public static QuantizedDoubleColumn read(ByteBuffer src) {
+		final ByteBuffer data = src.slice();
+		final long scale = QuantizedDoubleCodec.unzigzag(QuantizedDoubleCodec.readVarint(data));
+		final long size = QuantizedDoubleCodec.readVarint(data);
+		final long blockSize = QuantizedDoubleCodec.readVarint(data);
+		if (scale != (int) scale
+				|| size > Integer.MAX_VALUE
+				|| blockSize < 1
+				|| blockSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Malformed column header: scale "
+					+ scale
+					+ ", size "
+					+ size
+					+ ", block size "
+					+ blockSize);
+		}
+		final int table = data.position();
+		final int blocks = QuantizedDoubleCodec.blockCount((int) size, (int) blockSize);
+		if (data.limit()
+				- table < 4L
+						* (blocks
+								+ 1)) {
+			throw new BufferUnderflowException();
+		}
+		final int end = QuantizedDoubleCodec.getInt(data, table
+				+ 4
+						* blocks);
+		if (end < table
+				+ 4
+						* blocks
+				|| end > data.limit()) {
+			throw new BufferUnderflowException();
+		}
+		// through Buffer, as the ByteBuffer overrides do not exist on Java 8
+		((Buffer) data).position(0)
+				.limit(end);
+		((Buffer) src).position(src.position()
+				+ end);
+		return new QuantizedDoubleColumn(data, (int) scale, (int) size, (int) blockSize, table);
+	}
+
+	/**
+	 * Returns the number of digits to the right of the decimal point the
+	 * values were rounded to.
+	 *
+	 * @return the scale.
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return the size.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of values per block; the last block may be shorter.
+	 *
+	 * @return the block size.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the number of blocks.
+	 *
+	 * @return the block count.
+	 */
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Returns the number of bytes of the encoded column.
+	 *
+	 * @return the encoded length.
+	 */
+	public int getEncodedLength() {
+		return data.limit();
+	}
+
+	/**
+	 * Returns the number of values of a block.
+	 *
+	 * @param block
+	 *            the block index.
+	 * @return the number of values.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such block.
+	 */
+	public int blockLength(int block) {
+		checkBlock(block);
+		return Math.min(blockSize, size
+				- block
+						* blockSize);
+	}
+
+	/**
+	 * Decodes a block into {@code dst} starting at {@code offset}.
+	 *
+	 * @param block
+	 *            the block index.
+	 * @param dst
+	 *            the array receiving the values.
+	 * @param offset
+	 *            index receiving the first value.
+	 * @return the number of values decoded, {@link #blockLength(int)}.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such block.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the values do not fit into {@code dst}.
+	 */
+	public int decodeBlock(int block, double[] dst, int offset) {
+		final int length = blockLength(block);
+		ArrayRange.check(dst.length, offset, length);
+		final ByteBuffer src = blockData(block);
+		QuantizedDoubleCodec.readValues(src, scale, dst, offset, length);
+		return length;
+	}
+
+	/**
+	 * Returns a value.
+	 *
+	 * @param index
+	 *            the index of the value.
+	 * @return the rounded value.
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is not within the column.
+	 */
+	public double get(int index) {
+		if (index < 0
+				|| index >= size) {
+			throw new IndexOutOfBoundsException("Index "
+					+ index
+					+ " out of bounds for size "
+					+ size);
+		}
+		final int block = index
+				/ blockSize;
+		return QuantizedDoubleCodec.readValue(blockData(block), scale, index
+				- block
+						* blockSize);
+	}
+
+	/**
+	 * Decodes all values into {@code dst} starting at {@code offset}.
+	 *
+	 * @param dst
+	 *            the array receiving the values.
+	 * @param offset
+	 *            index receiving the first value.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the values do not fit into {@code dst}.
+	 */
+	public void decode(double[] dst, int offset) {
+		ArrayRange.check(dst.length, offset, size);
+		for (int block = 0; block < blockCount; block++) {
+			offset += decodeBlock(block, dst, offset);
+		}
+	}
+
+	/**
+	 * Decodes all values.
+	 *
+	 * @return a new array of the values.
+	 */
+	public double[] toArray() {
+		final double[] values = new double[size];
+		decode(values, 0);
+		return values;
+	}
+
+	/**
+	 * Returns a view of a block positioned after its length.
+	 */
+	private ByteBuffer blockData(int block) {
+		final ByteBuffer src = data.duplicate();
+		((Buffer) src).position(QuantizedDoubleCodec.getInt(data, table
+				+ 4
+						* block));
+		if (QuantizedDoubleCodec.readVarint(src) != blockLength(block)) {
+			throw new IllegalArgumentException("Malformed block "
+					+ block);
+		}
+		return src;
+	}
+
+	private void checkBlock(int block) {
+		if (block < 0
+				|| block >= blockCount) {
+			throw new IndexOutOfBoundsException("No block "
+					+ block
+					+ ", block count "
+					+ blockCount);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "QuantizedDoubleColumn[scale="
+				+ scale
+				+ ", size="
+				+ size
+				+ ", blockSize="
+				+ blockSize
+				+ ", encodedLength="
+				+ data.limit()
+				+ "]";
+	}
+}
@@ -14,6 +14,12 @@
 package com.fireflysemantics.math.precision;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Supports comparison and rounding of double values.
@@ -23,6 +29,53 @@ public class RoundDouble {
 	/** Positive zero. */
 	private static final double POSITIVE_ZERO = 0d;
 
+	/**
+	 * Sentinel returned by {@link #scaledValue(double, int, int)} when the
+	 * primitive fast path cannot decide the result.
+	 */
+	static final long NO_FAST_PATH = Long.MIN_VALUE;
+
+	/** Largest scale magnitude for which {@code 10^scale} is an exact double. */
+	static final int MAX_EXACT_SCALE = 22;
+
+	/** Powers of ten that are exactly representable as doubles. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** 2<sup>52</sup>, above which the fraction of a double is not exact. */
+	static final double TWO_POW_52 = 4503599627370496d;
+
+	/**
+	 * 2<sup>53</sup>, above which {@link Double#toString(double)} may print the
+	 * exact integer digits instead of the shortest decimal.
+	 */
+	private static final double TWO_POW_53 = 9007199254740992d;
+
+	/**
+	 * Exclusive bound on scaled integers whose decimal value is guaranteed to
+	 * be reproduced by {@link Double#toString(double)} (15 significant digits).
+	 */
+	private static final long MAX_EXACT_DIGITS = 1000000000000000L;
+
+	/** 2<sup>53</sup>, up to which every {@code long} is an exact double. */
+	private static final long MAX_EXACT_LONG = 1L << 53;
+
+	/**
+	 * Default number of elements below which
+	 * {@link #roundParallel(double[], int, int, double[])} stops splitting.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Scale beyond which the decimal printed by {@link Double#toString(double)}
+	 * has no digit, since it has at most 20 digits down from
+	 * {@link Double#MIN_VALUE}.
+	 */
+	private static final int MAX_DECIMAL_SCALE = 350;
+
+	/** Result of {@link #compareDecimal} when the comparison is not exact. */
+	static final int UNDECIDED = 2;
+
 	/**
 	 * Private constructor.
 	 */
@@ -49,6 +102,14 @@ public class RoundDouble {
 	 * {@link BigDecimal}. If {@code x} is infinite or {@code NaN}, then the
 	 * value of {@code x} is returned unchanged, regardless of the other
 	 * parameters.
+	 * <p>
+	 * The result is the same as rounding the decimal representation
+	 * {@link Double#toString(double) Double.toString(x)} with
+	 * {@link BigDecimal#setScale(int, int)}. Values whose scaled magnitude fits
+	 * exactly into a {@code long} are rounded with primitive arithmetic only;
+	 * undecidable near ties, huge scales and huge magnitudes fall back to
+	 * {@link BigDecimal}.
+	 * </p>
 	 *
 	 * @param x
 	 *            Value to round.
@@ -65,6 +126,599 @@ public class RoundDouble {
 	 *             mode.
 	 */
 	public static double round(double x, int scale, int roundingMethod) {
+		if (Double.isNaN(x)) {
+			return Double.NaN;
+		} else if (Double.isInfinite(x)) {
+			return x;
+		}
+		final long scaled = scaledValue(x, scale, roundingMethod);
+		if (scaled == NO_FAST_PATH) {
+			return roundBigDecimal(x, scale, roundingMethod);
+		}
+		// MATH-1089: negative values rounded to zero result in negative zero
+		return scaled == 0 ? POSITIVE_ZERO
+				* x : scaledToDouble(scaled, scale);
+	}
+
+	/**
+	 * Rounds the given value to the specified number of decimal places with a
+	 * {@link RoundingMode}, as defined by {@link #round(double, int, int)}.
+	 * Loops rounding many values to the same scale should hold the
+	 * {@link RoundingContext} instead.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the rounded value.
+	 * @throws ArithmeticException
+	 *             if {@code mode} is {@link RoundingMode#UNNECESSARY} and the
+	 *             specified scaling operation would require rounding.
+	 */
+	public static double round(double x, int scale, RoundingMode mode) {
+		return RoundingContext.of(scale, mode)
+				.round(x);
+	}
+
+	/**
+	 * Rounds the given value to the specified number of significant digits.
+	 * If {@code x} is infinite or {@code NaN}, then the value of {@code x} is
+	 * returned unchanged, and zero keeps its sign.
+	 * <p>
+	 * The result is the same as rounding the decimal representation
+	 * {@link Double#toString(double) Double.toString(x)} with
+	 * {@link BigDecimal#round(MathContext)}. The decimal exponent is found
+	 * exactly with primitive arithmetic for magnitudes in
+	 * [10<sup>-22</sup>, 2<sup>53</sup>), and the value is then rounded to the
+	 * corresponding scale like {@link #round(double, int, RoundingMode)}.
+	 * </p>
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param digits
+	 *            Number of significant digits to keep.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the rounded value.
+	 * @throws ArithmeticException
+	 *             if {@code mode} is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} has more than {@code digits} significant digits.
+	 * @throws IllegalArgumentException
+	 *             if {@code digits} is not positive.
+	 */
+	public static double roundSignificant(double x, int digits, RoundingMode mode) {
+		if (digits < 1) {
+			throw new IllegalArgumentException("digits must be positive: "
+					+ digits);
+		}
+		return roundSignificantChecked(x, digits, mode);
+	}
+
+	/**
+	 * Rounds every element of {@code values} in place as defined by
+	 * {@link #roundSignificant(double, int, RoundingMode)}.
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @param digits
+	 *            Number of significant digits to keep.
+	 * @param mode
+	 *            the rounding mode.
+	 * @throws IllegalArgumentException
+	 *             if {@code digits} is not positive.
+	 */
+	public static void roundSignificant(double[] values, int digits, RoundingMode mode) {
+		roundSignificant(values, 0, values, 0, values.length, digits, mode);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset} as
+	 * defined by {@link #roundSignificant(double, int, RoundingMode)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @param digits
+	 *            Number of significant digits to keep.
+	 * @param mode
+	 *            the rounding mode.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws IllegalArgumentException
+	 *             if {@code digits} is not positive.
+	 */
+	public static void roundSignificant(double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+			int digits, RoundingMode mode) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		if (digits < 1) {
+			throw new IllegalArgumentException("digits must be positive: "
+					+ digits);
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = roundSignificantChecked(src[srcOffset
+							+ i], digits, mode);
+		}
+	}
+
+	/**
+	 * Rounds to significant digits once {@code digits} has been checked.
+	 */
+	private static double roundSignificantChecked(double x, int digits, RoundingMode mode) {
+		if (x == 0
+				|| Double.isNaN(x)
+				|| Double.isInfinite(x)) {
+			return x;
+		}
+		// rounding at the leading digit's position minus (digits - 1) is the
+		// same as rounding with a MathContext of that precision
+		final long scale = digits
+				- 1L
+				- decimalExponent(x);
+		if (scale > MAX_DECIMAL_SCALE) {
+			// more digits than Double.toString prints: nothing to round
+			return x;
+		}
+		return RoundingContext.of((int) scale, mode)
+				.round(x);
+	}
+
+	/**
+	 * Returns the exponent of the leading digit of the decimal printed by
+	 * {@link Double#toString(double)} for a finite non-zero value, i.e.
+	 * {@code floor(log10(|decimal|))}.
+	 */
+	static int decimalExponent(double x) {
+		final double magnitude = Math.abs(x);
+		// Math.log10 is semi-monotonic and within an ulp, so the estimate is
+		// off by at most one next to a power of ten
+		final int estimate = (int) Math.floor(Math.log10(magnitude));
+		final int below = compareDecimal(magnitude, 1, -estimate);
+		if (below != UNDECIDED) {
+			if (below < 0) {
+				return estimate
+						- 1;
+			}
+			final int above = compareDecimal(magnitude, 1, -estimate
+					- 1);
+			if (above != UNDECIDED) {
+				return above < 0 ? estimate
+						: estimate
+								+ 1;
+			}
+		}
+		final BigDecimal decimal = new BigDecimal(Double.toString(magnitude));
+		return decimal.precision()
+				- decimal.scale()
+				- 1;
+	}
+
+	/**
+	 * Rounds the given value to significant digits using {@link BigDecimal}.
+	 * This is the reference implementation
+	 * {@link #roundSignificant(double, int, RoundingMode)} must agree with.
+	 */
+	static double roundSignificantBigDecimal(double x, int digits, RoundingMode mode) {
+		if (Double.isNaN(x)
+				|| Double.isInfinite(x)) {
+			return x;
+		}
+		final double rounded = new BigDecimal(Double.toString(x)).round(new MathContext(digits, mode))
+				.doubleValue();
+		return rounded == POSITIVE_ZERO ? POSITIVE_ZERO
+				* x : rounded;
+	}
+
+	/**
+	 * Rounds every element of {@code values} in place as defined by
+	 * {@link #round(double, int, int)}.
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 */
+	public static void round(double[] values, int scale, int roundingMethod) {
+		round(values, 0, values, 0, values.length, scale, roundingMethod);
+	}
+
+	/**
+	 * Rounds every element of {@code src} into the same index of {@code dst}
+	 * as defined by {@link #round(double, int, int)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @param dst
+	 *            Array receiving the rounded values, at least as long as
+	 *            {@code src}. May be {@code src} itself.
+	 */
+	public static void round(double[] src, int scale, int roundingMethod, double[] dst) {
+		round(src, 0, dst, 0, src.length, scale, roundingMethod);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset} as
+	 * defined by {@link #round(double, int, int)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static void round(double[] src, int srcOffset, double[] dst, int dstOffset, int length, int scale,
+			int roundingMethod) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		roundRange(src, srcOffset, dst, dstOffset, length, scale, roundingMethod);
+	}
+
+	/**
+	 * Rounds the remaining elements of a buffer in place as defined by
+	 * {@link #round(double, int, int)}, without copying them to the heap.
+	 * <p>
+	 * Off-heap data can be viewed as a {@code DoubleBuffer} in either byte
+	 * order with {@link java.nio.ByteBuffer#asDoubleBuffer()}; a
+	 * {@code MemorySegment} can be viewed as a {@code ByteBuffer} with its
+	 * {@code asByteBuffer()} method, as there is no overload for it, see
+	 * {@link PrecisionAssert#mismatch(DoubleBuffer, DoubleBuffer, int)}. The
+	 * position of the buffer is not changed.
+	 * </p>
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @throws java.nio.ReadOnlyBufferException
+	 *             if the buffer is read-only.
+	 */
+	public static void round(DoubleBuffer values, int scale, int roundingMethod) {
+		round(values, scale, roundingMethod, values);
+	}
+
+	/**
+	 * Rounds the remaining elements of {@code src} into {@code dst}, starting
+	 * at its position, as defined by {@link #round(double, int, int)}. The
+	 * positions of the buffers are not changed.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @param dst
+	 *            Buffer receiving the rounded values. May be {@code src}
+	 *            itself.
+	 * @throws BufferOverflowException
+	 *             if {@code dst} has fewer elements remaining than
+	 *             {@code src}.
+	 * @throws java.nio.ReadOnlyBufferException
+	 *             if {@code dst} is read-only.
+	 */
+	public static void round(DoubleBuffer src, int scale, int roundingMethod, DoubleBuffer dst) {
+		final int length = src.remaining();
+		if (dst.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		final int srcPosition = src.position();
+		final int dstPosition = dst.position();
+		if (src.hasArray()
+				&& dst.hasArray()) {
+			roundRange(src.array(), src.arrayOffset()
+					+ srcPosition, dst.array(),
+					dst.arrayOffset()
+							+ dstPosition,
+					length, scale, roundingMethod);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst.put(dstPosition
+					+ i, round(src.get(srcPosition
+							+ i), scale, roundingMethod));
+		}
+	}
+
+	/**
+	 * Rounds every element of {@code src} into the same index of {@code dst}
+	 * as defined by {@link #round(double, int, int)}, splitting the work across
+	 * the common {@link java.util.concurrent.ForkJoinPool ForkJoinPool} in
+	 * chunks of at most {@link #DEFAULT_PARALLEL_THRESHOLD} elements.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @param dst
+	 *            Array receiving the rounded values, at least as long as
+	 *            {@code src}. May be {@code src} itself.
+	 */
+	public static void roundParallel(double[] src, int scale, int roundingMethod, double[] dst) {
+		roundParallel(src, 0, dst, 0, src.length, scale, roundingMethod, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset} as
+	 * defined by {@link #round(double, int, int)}, splitting the work across
+	 * the common {@link java.util.concurrent.ForkJoinPool ForkJoinPool}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @param threshold
+	 *            Number of elements below which a chunk is rounded
+	 *            sequentially.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public static void roundParallel(double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+			int scale, int roundingMethod, int threshold) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive: "
+					+ threshold);
+		}
+		if (length <= threshold) {
+			roundRange(src, srcOffset, dst, dstOffset, length, scale, roundingMethod);
+		} else {
+			new RoundTask(src, srcOffset, dst, dstOffset, length, scale, roundingMethod, threshold).invoke();
+		}
+	}
+
+	/**
+	 * Rounds a range that has already been checked.
+	 */
+	private static void roundRange(double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+			int scale, int roundingMethod) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = round(src[srcOffset
+							+ i], scale, roundingMethod);
+		}
+	}
+
+	/**
+	 * Rounds the given value to the specified number of decimal places and
+	 * returns it as a scaled {@code long}, i.e. the unscaled value
+	 * {@code round(x, scale, mode) * 10^scale}. This replaces rounding,
+	 * multiplying and {@link Math#round(double)}, which rounds twice: the
+	 * value is rounded once with the same semantics as
+	 * {@link #round(double, int, RoundingMode)}, and
+	 * {@link #fromScaledLong(long, int)} converts the result back to that
+	 * rounded double, except that a negative value rounded to zero loses its
+	 * sign.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the rounded unscaled value.
+	 * @throws ArithmeticException
+	 *             if {@code x} is not finite, if the unscaled value does not
+	 *             fit into a {@code long}, or if {@code mode} is
+	 *             {@link RoundingMode#UNNECESSARY} and the specified scaling
+	 *             operation would require rounding.
+	 */
+	public static long toScaledLong(double x, int scale, RoundingMode mode) {
+		return RoundingContext.of(scale, mode)
+				.toScaledLong(x);
+	}
+
+	/**
+	 * Converts every element of {@code src} into a scaled long at the same
+	 * index of {@code dst} as defined by
+	 * {@link #toScaledLong(double, int, RoundingMode)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @param dst
+	 *            Array receiving the unscaled values, at least as long as
+	 *            {@code src}.
+	 * @throws ArithmeticException
+	 *             if a value cannot be converted.
+	 */
+	public static void toScaledLong(double[] src, int scale, RoundingMode mode, long[] dst) {
+		toScaledLong(src, 0, dst, 0, src.length, scale, mode);
+	}
+
+	/**
+	 * Converts {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into scaled longs in {@code dst} starting at
+	 * {@code dstOffset} as defined by
+	 * {@link #toScaledLong(double, int, RoundingMode)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the unscaled values.
+	 * @param dstOffset
+	 *            Index receiving the first unscaled value.
+	 * @param length
+	 *            Number of values to convert.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws ArithmeticException
+	 *             if a value cannot be converted.
+	 */
+	public static void toScaledLong(double[] src, int srcOffset, long[] dst, int dstOffset, int length, int scale,
+			RoundingMode mode) {
+		RoundingContext.of(scale, mode)
+				.toScaledLong(src, srcOffset, dst, dstOffset, length);
+	}
+
+	/**
+	 * Converts a scaled long back to a double, i.e. returns
+	 * {@code unscaled * 10^-scale} correctly rounded to the nearest double as
+	 * {@link BigDecimal#doubleValue()} does. For the result of
+	 * {@link #toScaledLong(double, int, RoundingMode)} this is the value
+	 * {@link #round(double, int, RoundingMode)} returns.
+	 *
+	 * @param unscaled
+	 *            the unscaled value.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @return the double nearest to the scaled decimal.
+	 */
+	public static double fromScaledLong(long unscaled, int scale) {
+		if (scale >= -MAX_EXACT_SCALE
+				&& scale <= MAX_EXACT_SCALE
+				&& unscaled <= MAX_EXACT_LONG
+				&& unscaled >= -MAX_EXACT_LONG) {
+			// a single operation on exact operands is correctly rounded
+			return scaledToDouble(unscaled, scale);
+		}
+		return BigDecimal.valueOf(unscaled, scale)
+				.doubleValue();
+	}
+
+	/**
+	 * Converts every element of {@code src} into a double at the same index
+	 * of {@code dst} as defined by {@link #fromScaledLong(long, int)}.
+	 *
+	 * @param src
+	 *            Unscaled values.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param dst
+	 *            Array receiving the doubles, at least as long as
+	 *            {@code src}.
+	 */
+	public static void fromScaledLong(long[] src, int scale, double[] dst) {
+		fromScaledLong(src, 0, dst, 0, src.length, scale);
+	}
+
+	/**
+	 * Converts {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into doubles in {@code dst} starting at
+	 * {@code dstOffset} as defined by {@link #fromScaledLong(long, int)}.
+	 *
+	 * @param src
+	 *            Unscaled values.
+	 * @param srcOffset
+	 *            Index of the first unscaled value.
+	 * @param dst
+	 *            Array receiving the doubles.
+	 * @param dstOffset
+	 *            Index receiving the first double.
+	 * @param length
+	 *            Number of values to convert.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static void fromScaledLong(long[] src, int srcOffset, double[] dst, int dstOffset, int length,
+			int scale) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = fromScaledLong(src[srcOffset
+							+ i], scale);
+		}
+	}
+
+	/**
+	 * Computes the unscaled value of
+	 * {@code new BigDecimal(Double.toString(x)).setScale(scale, roundingMethod)}
+	 * for a finite value using {@link BigDecimal}.
+	 *
+	 * @throws ArithmeticException
+	 *             if the unscaled value does not fit into a {@code long}.
+	 */
+	static long toScaledLongBigDecimal(double x, int scale, int roundingMethod) {
+		final BigInteger unscaled = new BigDecimal(Double.toString(x)).setScale(scale, roundingMethod)
+				.unscaledValue();
+		if (unscaled.bitLength() > 63) {
+			throw new ArithmeticException("Overflow: "
+					+ x
+					+ " at scale "
+					+ scale);
+		}
+		return unscaled.longValue();
+	}
+
+	/**
+	 * Rounds the given value using {@link BigDecimal}. This is the reference
+	 * implementation the primitive fast path must agree with. Every call is
+	 * reported to {@link PrecisionEvents}.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @return the rounded value.
+	 */
+	static double roundBigDecimal(double x, int scale, int roundingMethod) {
+		final Object event = PrecisionEvents.beginRounding();
 		try {
 			final double rounded =
 					(new BigDecimal(Double.toString(x)).setScale(scale, roundingMethod)).doubleValue();
@@ -79,6 +733,276 @@ public class RoundDouble {
 			} else {
 				return Double.NaN;
 			}
+		} finally {
+			PrecisionEvents.endRounding(event, x, scale, roundingMethod);
+		}
+	}
+
+	/**
+	 * Computes the unscaled value of
+	 * {@code new BigDecimal(Double.toString(x)).setScale(scale, roundingMethod)}
+	 * using primitive arithmetic only.
+	 * <p>
+	 * The decimal printed by {@link Double#toString(double)} lies within half
+	 * an ulp of {@code x}, so the rounding decision taken on {@code x * 10^scale}
+	 * is the same as the one taken on the decimal whenever the scaled value is
+	 * further than that error from a rounding boundary. Close to a boundary the
+	 * decimal is compared exactly against the boundary when the boundary has
+	 * at most 15 significant digits; otherwise the fast path gives up.
+	 * </p>
+	 *
+	 * @param x
+	 *            finite value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @return the rounded unscaled value, or {@link #NO_FAST_PATH} if the
+	 *         result has to be computed with {@link BigDecimal}.
+	 */
+	static long scaledValue(double x, int scale, int roundingMethod) {
+		if (scale < -MAX_EXACT_SCALE
+				|| scale >= MAX_EXACT_SCALE) {
+			return NO_FAST_PATH;
+		}
+		final double y;
+		final double scaledUlp;
+		if (scale >= 0) {
+			y = x
+					* POWERS_OF_TEN[scale];
+			scaledUlp = Math.ulp(x)
+					* POWERS_OF_TEN[scale];
+		} else {
+			y = x
+					/ POWERS_OF_TEN[-scale];
+			scaledUlp = Math.ulp(x)
+					/ POWERS_OF_TEN[-scale];
+		}
+		if (!(Math.abs(y) < TWO_POW_52)) {
+			return NO_FAST_PATH;
+		}
+		// twice the worst case distance between y and the scaled decimal
+		final double margin = scaledUlp
+				+ Math.ulp(y);
+		if (margin >= 0.25) {
+			return NO_FAST_PATH;
+		}
+		final double floor = Math.floor(y);
+		final double fraction = y
+				- floor;
+		final long lower = (long) floor;
+
+		switch (roundingMethod) {
+		case BigDecimal.ROUND_HALF_UP:
+		case BigDecimal.ROUND_HALF_DOWN:
+		case BigDecimal.ROUND_HALF_EVEN:
+			if (fraction < 0.5
+					- margin) {
+				return lower;
+			} else if (fraction > 0.5
+					+ margin) {
+				return lower
+						+ 1;
+			}
+			return roundNearTie(x, scale, roundingMethod, lower);
+		case BigDecimal.ROUND_UP:
+		case BigDecimal.ROUND_DOWN:
+		case BigDecimal.ROUND_CEILING:
+		case BigDecimal.ROUND_FLOOR:
+			if (fraction > margin
+					&& fraction < 1
+							- margin) {
+				return roundDirected(x, roundingMethod, lower, lower
+						+ 1);
+			}
+			return roundNearInteger(x, scale, roundingMethod, fraction <= margin ? lower
+					: lower
+							+ 1);
+		default:
+			// ROUND_UNNECESSARY and invalid methods are reported by BigDecimal
+			return NO_FAST_PATH;
+		}
+	}
+
+	/**
+	 * Converts an unscaled value to a double the same way
+	 * {@link BigDecimal#doubleValue()} does, i.e. correctly rounded.
+	 *
+	 * @param unscaled
+	 *            unscaled value with magnitude of at most 2<sup>53</sup>.
+	 * @param scale
+	 *            scale in {@code [-22, 22]}.
+	 * @return {@code unscaled * 10^-scale} rounded to the nearest double.
+	 */
+	static double scaledToDouble(long unscaled, int scale) {
+		return scale >= 0 ? unscaled
+				/ POWERS_OF_TEN[scale]
+				: unscaled
+						* POWERS_OF_TEN[-scale];
+	}
+
+	/**
+	 * Picks the floor or ceiling of the scaled decimal for a directed rounding
+	 * method.
+	 *
+	 * @param x
+	 *            the value being rounded, for its sign.
+	 * @param roundingMethod
+	 *            one of the directed rounding methods defined in
+	 *            {@link BigDecimal}.
+	 * @param floor
+	 *            the floor of the scaled decimal.
+	 * @param ceiling
+	 *            the ceiling of the scaled decimal.
+	 * @return the rounded unscaled value.
+	 */
+	static long roundDirected(double x, int roundingMethod, long floor, long ceiling) {
+		switch (roundingMethod) {
+		case BigDecimal.ROUND_UP:
+			return x < 0 ? floor : ceiling;
+		case BigDecimal.ROUND_DOWN:
+			return x < 0 ? ceiling : floor;
+		case BigDecimal.ROUND_CEILING:
+			return ceiling;
+		default:
+			return floor;
+		}
+	}
+
+	/**
+	 * Rounds a scaled decimal that is close to the integer {@code nearest}
+	 * using a directed rounding method.
+	 */
+	private static long roundNearInteger(double x, int scale, int roundingMethod, long nearest) {
+		final int cmp = compareDecimal(x, nearest, scale);
+		if (cmp == UNDECIDED) {
+			return NO_FAST_PATH;
+		}
+		return roundDirected(x, roundingMethod, cmp < 0 ? nearest
+				- 1 : nearest,
+				cmp > 0 ? nearest
+						+ 1 : nearest);
+	}
+
+	/**
+	 * Rounds a scaled decimal that is close to {@code lower + 0.5} using a half
+	 * rounding method.
+	 */
+	private static long roundNearTie(double x, int scale, int roundingMethod, long lower) {
+		final int cmp = compareDecimal(x, 10
+				* lower
+				+ 5, scale
+						+ 1);
+		if (cmp == UNDECIDED) {
+			return NO_FAST_PATH;
+		} else if (cmp < 0) {
+			return lower;
+		} else if (cmp > 0) {
+			return lower
+					+ 1;
+		}
+		return roundTie(x, roundingMethod, lower);
+	}
+
+	/**
+	 * Rounds a scaled decimal that is exactly {@code lower + 0.5} using a half
+	 * rounding method.
+	 *
+	 * @param x
+	 *            the value being rounded, for its sign.
+	 * @param roundingMethod
+	 *            one of the half rounding methods defined in
+	 *            {@link BigDecimal}.
+	 * @param lower
+	 *            the floor of the scaled decimal.
+	 * @return the rounded unscaled value.
+	 */
+	static long roundTie(double x, int roundingMethod, long lower) {
+		switch (roundingMethod) {
+		case BigDecimal.ROUND_HALF_UP:
+			return x < 0 ? lower : lower
+					+ 1;
+		case BigDecimal.ROUND_HALF_DOWN:
+			return x < 0 ? lower
+					+ 1 : lower;
+		default:
+			return (lower & 1) == 0 ? lower : lower
+					+ 1;
+		}
+	}
+
+	/**
+	 * Compares the decimal printed by {@link Double#toString(double)} for
+	 * {@code x} against {@code unscaled * 10^-scale}.
+	 * <p>
+	 * Below 2<sup>53</sup> a decimal with at most 15 significant digits is
+	 * printed back exactly by {@code Double.toString} if and only if it rounds
+	 * to {@code x}. Otherwise both the printed decimal and {@code x} lie on the
+	 * same side of it.
+	 * </p>
+	 *
+	 * @return -1, 0 or 1 as the printed decimal is less than, equal to or
+	 *         greater than the given decimal, or {@link #UNDECIDED}.
+	 */
+	static int compareDecimal(double x, long unscaled, int scale) {
+		if (scale > MAX_EXACT_SCALE
+				|| !(Math.abs(x) < TWO_POW_53)
+				|| unscaled >= MAX_EXACT_DIGITS
+				|| unscaled <= -MAX_EXACT_DIGITS) {
+			return UNDECIDED;
+		}
+		final double boundary = scaledToDouble(unscaled, scale);
+		if (x < boundary) {
+			return -1;
+		} else if (x > boundary) {
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Splits a bulk rounding operation in halves until each chunk is no
+	 * larger than the threshold.
+	 */
+	private static final class RoundTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] src;
+		private final int srcOffset;
+		private final double[] dst;
+		private final int dstOffset;
+		private final int length;
+		private final int scale;
+		private final int roundingMethod;
+		private final int threshold;
+
+		RoundTask(double[] src, int srcOffset, double[] dst, int dstOffset, int length, int scale,
+				int roundingMethod, int threshold) {
+			this.src = src;
+			this.srcOffset = srcOffset;
+			this.dst = dst;
+			this.dstOffset = dstOffset;
+			this.length = length;
+			this.scale = scale;
+			this.roundingMethod = roundingMethod;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (length <= threshold) {
+				roundRange(src, srcOffset, dst, dstOffset, length, scale, roundingMethod);
+				return;
+			}
+			final int half = length >>> 1;
+			invokeAll(new RoundTask(src, srcOffset, dst, dstOffset, half, scale, roundingMethod, threshold),
+					new RoundTask(src, srcOffset
+							+ half, dst, dstOffset
+									+ half,
+							length
+									- half,
+							scale, roundingMethod, threshold));
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,352 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+
+/**
+ * Supports rounding of float values.
+ */
+public class RoundFloat {
+
+	/** Positive zero. */
+	private static final float POSITIVE_ZERO = 0f;
+
+	/** Largest scale magnitude for which {@code 10^scale} is an exact float. */
+	static final int MAX_EXACT_SCALE = 10;
+
+	/** Powers of ten that are exactly representable as floats. */
+	private static final float[] POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+			1e10f };
+
+	/** The same powers of ten as doubles, for scaling. */
+	private static final double[] DOUBLE_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+			1e10 };
+
+	/**
+	 * 2<sup>24</sup>, the bound on unscaled values that are exact floats and
+	 * above which {@link Float#toString(float)} may print the exact integer
+	 * digits instead of the shortest decimal.
+	 */
+	private static final double TWO_POW_24 = 16777216d;
+
+	/**
+	 * Exclusive bound on scaled integers whose decimal value is guaranteed to
+	 * be reproduced by {@link Float#toString(float)} (6 significant digits).
+	 */
+	private static final long MAX_EXACT_DIGITS = 1000000L;
+
+	/** Result of {@link #compareDecimal} when the comparison is not exact. */
+	private static final int UNDECIDED = 2;
+
+	/**
+	 * Private constructor.
+	 */
+	private RoundFloat() {
+	}
+
+	/**
+	 * Rounds the given value to the specified number of decimal places. The
+	 * value is rounded using the {@link BigDecimal#ROUND_HALF_UP} method.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @return the rounded value as a float.
+	 */
+	public static float round(float x, int scale) {
+		return round(x, scale, BigDecimal.ROUND_HALF_UP);
+	}
+
+	/**
+	 * Rounds the given value to the specified number of decimal places. The
+	 * value is rounded using the given method which is any method defined in
+	 * {@link BigDecimal}. If {@code x} is infinite or {@code NaN}, then the
+	 * value of {@code x} is returned unchanged, regardless of the other
+	 * parameters.
+	 * <p>
+	 * The result is the same as rounding the decimal representation
+	 * {@link Float#toString(float) Float.toString(x)} with
+	 * {@link BigDecimal#setScale(int, int)}. Like
+	 * {@link RoundDouble#round(double, int, int)} values whose scaled magnitude
+	 * is below 2<sup>24</sup> are rounded with primitive arithmetic only.
+	 * </p>
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @return the rounded value.
+	 * @throws ArithmeticException
+	 *             if {@code roundingMethod == ROUND_UNNECESSARY} and the
+	 *             specified scaling operation would require rounding.
+	 * @throws IllegalArgumentException
+	 *             if {@code roundingMethod} does not represent a valid rounding
+	 *             mode.
+	 */
+	public static float round(float x, int scale, int roundingMethod) {
+		if (Float.isNaN(x)) {
+			return Float.NaN;
+		} else if (Float.isInfinite(x)) {
+			return x;
+		}
+		final long scaled = scaledValue(x, scale, roundingMethod);
+		if (scaled == RoundDouble.NO_FAST_PATH) {
+			return roundBigDecimal(x, scale, roundingMethod);
+		}
+		// MATH-1089: negative values rounded to zero result in negative zero
+		return scaled == 0 ? POSITIVE_ZERO
+				* x : scaledToFloat(scaled, scale);
+	}
+
+	/**
+	 * Rounds every element of {@code values} in place as defined by
+	 * {@link #round(float, int, int)}.
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 */
+	public static void round(float[] values, int scale, int roundingMethod) {
+		round(values, 0, values, 0, values.length, scale, roundingMethod);
+	}
+
+	/**
+	 * Rounds every element of {@code src} into the same index of {@code dst}
+	 * as defined by {@link #round(float, int, int)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @param dst
+	 *            Array receiving the rounded values, at least as long as
+	 *            {@code src}. May be {@code src} itself.
+	 */
+	public static void round(float[] src, int scale, int roundingMethod, float[] dst) {
+		round(src, 0, dst, 0, src.length, scale, roundingMethod);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset} as
+	 * defined by {@link #round(float, int, int)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static void round(float[] src, int srcOffset, float[] dst, int dstOffset, int length, int scale,
+			int roundingMethod) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = round(src[srcOffset
+							+ i], scale, roundingMethod);
+		}
+	}
+
+	/**
+	 * Rounds the given value using {@link BigDecimal}. This is the reference
+	 * implementation the primitive fast path must agree with.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @return the rounded value.
+	 */
+	static float roundBigDecimal(float x, int scale, int roundingMethod) {
+		try {
+			final float rounded =
+					(new BigDecimal(Float.toString(x)).setScale(scale, roundingMethod)).floatValue();
+			// MATH-1089: negative values rounded to zero result in negative zero
+			return rounded == POSITIVE_ZERO ? POSITIVE_ZERO
+					* x : rounded;
+		} catch (NumberFormatException ex) {
+			if (Float.isInfinite(x)) {
+				return x;
+			} else {
+				return Float.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Computes the unscaled value of
+	 * {@code new BigDecimal(Float.toString(x)).setScale(scale, roundingMethod)}
+	 * using primitive arithmetic only. The value is scaled in double precision,
+	 * which is exact enough that the only error to account for is the half
+	 * float ulp between {@code x} and its printed decimal. See
+	 * {@link RoundDouble#scaledValue(double, int, int)}.
+	 *
+	 * @param x
+	 *            finite value to round.
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param roundingMethod
+	 *            Rounding method as defined in {@link BigDecimal}.
+	 * @return the rounded unscaled value, or {@link RoundDouble#NO_FAST_PATH}
+	 *         if the result has to be computed with {@link BigDecimal}.
+	 */
+	static long scaledValue(float x, int scale, int roundingMethod) {
+		if (scale < -MAX_EXACT_SCALE
+				|| scale >= MAX_EXACT_SCALE) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		final double y;
+		final double scaledUlp;
+		if (scale >= 0) {
+			y = x
+					* DOUBLE_POWERS_OF_TEN[scale];
+			scaledUlp = Math.ulp(x)
+					* DOUBLE_POWERS_OF_TEN[scale];
+		} else {
+			y = x
+					/ DOUBLE_POWERS_OF_TEN[-scale];
+			scaledUlp = Math.ulp(x)
+					/ DOUBLE_POWERS_OF_TEN[-scale];
+		}
+		if (!(Math.abs(y) < TWO_POW_24)) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		// twice the worst case distance between y and the scaled decimal
+		final double margin = scaledUlp
+				+ Math.ulp(y);
+		if (margin >= 0.25) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		final double floor = Math.floor(y);
+		final double fraction = y
+				- floor;
+		final long lower = (long) floor;
+
+		switch (roundingMethod) {
+		case BigDecimal.ROUND_HALF_UP:
+		case BigDecimal.ROUND_HALF_DOWN:
+		case BigDecimal.ROUND_HALF_EVEN:
+			if (fraction < 0.5
+					- margin) {
+				return lower;
+			} else if (fraction > 0.5
+					+ margin) {
+				return lower
+						+ 1;
+			}
+			final int tie = compareDecimal(x, 10
+					* lower
+					+ 5, scale
+							+ 1);
+			if (tie == UNDECIDED) {
+				return RoundDouble.NO_FAST_PATH;
+			} else if (tie != 0) {
+				return tie < 0 ? lower : lower
+						+ 1;
+			}
+			return RoundDouble.roundTie(x, roundingMethod, lower);
+		case BigDecimal.ROUND_UP:
+		case BigDecimal.ROUND_DOWN:
+		case BigDecimal.ROUND_CEILING:
+		case BigDecimal.ROUND_FLOOR:
+			if (fraction > margin
+					&& fraction < 1
+							- margin) {
+				return RoundDouble.roundDirected(x, roundingMethod, lower, lower
+						+ 1);
+			}
+			final long nearest = fraction <= margin ? lower
+					: lower
+							+ 1;
+			final int cmp = compareDecimal(x, nearest, scale);
+			if (cmp == UNDECIDED) {
+				return RoundDouble.NO_FAST_PATH;
+			}
+			return RoundDouble.roundDirected(x, roundingMethod, cmp < 0 ? nearest
+					- 1 : nearest,
+					cmp > 0 ? nearest
+							+ 1 : nearest);
+		default:
+			// ROUND_UNNECESSARY and invalid methods are reported by BigDecimal
+			return RoundDouble.NO_FAST_PATH;
+		}
+	}
+
+	/**
+	 * Converts an unscaled value to a float the same way
+	 * {@link BigDecimal#floatValue()} does, i.e. correctly rounded.
+	 *
+	 * @param unscaled
+	 *            unscaled value with magnitude of at most 2<sup>24</sup>.
+	 * @param scale
+	 *            scale in {@code [-10, 10]}.
+	 * @return {@code unscaled * 10^-scale} rounded to the nearest float.
+	 */
+	static float scaledToFloat(long unscaled, int scale) {
+		return scale >= 0 ? unscaled
+				/ POWERS_OF_TEN[scale]
+				: unscaled
+						* POWERS_OF_TEN[-scale];
+	}
+
+	/**
+	 * Compares the decimal printed by {@link Float#toString(float)} for
+	 * {@code x} against {@code unscaled * 10^-scale}. Below 2<sup>24</sup> a
+	 * decimal with at most 6 significant digits is printed back exactly if and
+	 * only if it rounds to {@code x}.
+	 *
+	 * @return -1, 0 or 1 as the printed decimal is less than, equal to or
+	 *         greater than the given decimal, or {@link #UNDECIDED}.
+	 */
+	private static int compareDecimal(float x, long unscaled, int scale) {
+		if (scale > MAX_EXACT_SCALE
+				|| !(Math.abs(x) < TWO_POW_24)
+				|| unscaled >= MAX_EXACT_DIGITS
+				|| unscaled <= -MAX_EXACT_DIGITS) {
+			return UNDECIDED;
+		}
+		final float boundary = scaledToFloat(unscaled, scale);
+		if (x < boundary) {
+			return -1;
+		} else if (x > boundary) {
+			return 1;
+		}
+		return 0;
+	}
+}
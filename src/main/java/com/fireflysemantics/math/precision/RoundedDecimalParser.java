@@ -0,0 +1,519 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal text directly into double values rounded to a scale.
+ * <p>
+ * The result is always the same as
+ * {@link RoundDouble#round(double, int, RoundingMode) round}{@code (}
+ * {@link Double#parseDouble(String) Double.parseDouble(text)}{@code , scale,
+ * mode)}. Text of the form {@code [+-]digits[.digits][(e|E)[+-]digits]} with
+ * at most 15 significant digits and a magnitude in [10<sup>-300</sup>,
+ * 10<sup>15</sup>) is parsed and rounded in one pass with integer
+ * arithmetic: for such text {@code Double.toString} of the parsed value
+ * prints the same decimal, so rounding the digits of the text is exact. Any
+ * other text, including {@code NaN}, {@code Infinity} and invalid input, is
+ * handled by parsing and rounding it the usual way.
+ * </p>
+ * <p>
+ * Parsers are immutable and thread safe.
+ * </p>
+ */
+public final class RoundedDecimalParser {
+
+	/** Largest number of significant digits parsed on the fast path. */
+	private static final int MAX_DIGITS = 15;
+
+	/** Smallest decimal exponent of a value parsed on the fast path. */
+	private static final int MIN_EXPONENT = -300;
+
+	/** Largest exponent following the e of a value parsed on the fast path. */
+	private static final int MAX_EXPONENT_DIGITS = 4;
+
+	/** Powers of ten that fit into a long. */
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = 10
+					* POWERS_OF_TEN[i
+							- 1];
+		}
+	}
+
+	private final RoundingContext context;
+	private final int scale;
+	private final RoundingMode mode;
+
+	private RoundedDecimalParser(RoundingContext context) {
+		this.context = context;
+		this.scale = context.getScale();
+		this.mode = context.getRoundingMode();
+	}
+
+	/**
+	 * Returns a parser rounding to a scale and rounding mode.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the parser.
+	 */
+	public static RoundedDecimalParser of(int scale, RoundingMode mode) {
+		return new RoundedDecimalParser(RoundingContext.of(scale, mode));
+	}
+
+	/**
+	 * Returns the rounding context of this parser.
+	 *
+	 * @return the context.
+	 */
+	public RoundingContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Parses and rounds text.
+	 *
+	 * @param text
+	 *            the text.
+	 * @return the rounded value.
+	 * @throws NumberFormatException
+	 *             if the text is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             the value cannot be represented at the scale.
+	 */
+	public double parse(CharSequence text) {
+		return parse(text, null, null, 0, text.length());
+	}
+
+	/**
+	 * Parses and rounds a range of text.
+	 *
+	 * @param text
+	 *            the text.
+	 * @param start
+	 *            index of the first character.
+	 * @param end
+	 *            index after the last character.
+	 * @return the rounded value.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 * @throws NumberFormatException
+	 *             if the range is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             the value cannot be represented at the scale.
+	 */
+	public double parse(CharSequence text, int start, int end) {
+		if (start < 0
+				|| end > text.length()
+				|| start > end) {
+			throw new IndexOutOfBoundsException("range ["
+					+ start
+					+ ", "
+					+ end
+					+ ") of length "
+					+ text.length());
+		}
+		return parse(text, null, null, start, end);
+	}
+
+	/**
+	 * Parses and rounds a range of ASCII bytes.
+	 *
+	 * @param bytes
+	 *            the bytes.
+	 * @param offset
+	 *            index of the first byte.
+	 * @param length
+	 *            number of bytes.
+	 * @return the rounded value.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 * @throws NumberFormatException
+	 *             if the range is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             the value cannot be represented at the scale.
+	 */
+	public double parse(byte[] bytes, int offset, int length) {
+		ArrayRange.check(bytes.length, offset, length);
+		return parse(null, bytes, null, offset, offset
+				+ length);
+	}
+
+	/**
+	 * Parses and rounds a range of ASCII bytes of a buffer, such as a direct
+	 * buffer filled from a socket. The position of the buffer is not changed.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @param index
+	 *            index of the first byte.
+	 * @param length
+	 *            number of bytes.
+	 * @return the rounded value.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not within the limit of the buffer.
+	 * @throws NumberFormatException
+	 *             if the range is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             the value cannot be represented at the scale.
+	 */
+	public double parse(ByteBuffer buffer, int index, int length) {
+		if (index < 0
+				|| length < 0
+				|| index > buffer.limit()
+						- length) {
+			throw new IndexOutOfBoundsException("range of "
+					+ length
+					+ " bytes at "
+					+ index
+					+ " exceeds limit "
+					+ buffer.limit());
+		}
+		return parse(null, null, buffer, index, index
+				+ length);
+	}
+
+	/**
+	 * Parses the fields of delimited text, such as a column of a CSV file or
+	 * a line of a feed, into consecutive elements of {@code dst}.
+	 *
+	 * @param text
+	 *            the text.
+	 * @param start
+	 *            index of the first character.
+	 * @param end
+	 *            index after the last character.
+	 * @param delimiter
+	 *            the character separating the fields.
+	 * @param dst
+	 *            array receiving the rounded values.
+	 * @param dstOffset
+	 *            index receiving the first value.
+	 * @return the number of values parsed, one more than the number of
+	 *         delimiters in the range.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range of text is out of bounds or {@code dst} is too
+	 *             short.
+	 * @throws NumberFormatException
+	 *             if a field is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public int parseDelimited(CharSequence text, int start, int end, char delimiter, double[] dst,
+			int dstOffset) {
+		if (start < 0
+				|| end > text.length()
+				|| start > end) {
+			throw new IndexOutOfBoundsException("range ["
+					+ start
+					+ ", "
+					+ end
+					+ ") of length "
+					+ text.length());
+		}
+		int count = 0;
+		int from = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end
+					|| text.charAt(i) == delimiter) {
+				dst[dstOffset
+						+ count++] = parse(text, null, null, from, i);
+				from = i
+						+ 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parses the fields of delimited ASCII bytes into consecutive elements of
+	 * {@code dst}.
+	 *
+	 * @param bytes
+	 *            the bytes.
+	 * @param offset
+	 *            index of the first byte.
+	 * @param length
+	 *            number of bytes.
+	 * @param delimiter
+	 *            the byte separating the fields.
+	 * @param dst
+	 *            array receiving the rounded values.
+	 * @param dstOffset
+	 *            index receiving the first value.
+	 * @return the number of values parsed, one more than the number of
+	 *         delimiters in the range.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range of bytes is out of bounds or {@code dst} is too
+	 *             short.
+	 * @throws NumberFormatException
+	 *             if a field is not a number accepted by
+	 *             {@link Double#parseDouble(String)}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public int parseDelimited(byte[] bytes, int offset, int length, byte delimiter, double[] dst,
+			int dstOffset) {
+		ArrayRange.check(bytes.length, offset, length);
+		final int end = offset
+				+ length;
+		int count = 0;
+		int from = offset;
+		for (int i = offset; i <= end; i++) {
+			if (i == end
+					|| bytes[i] == delimiter) {
+				dst[dstOffset
+						+ count++] = parse(null, bytes, null, from, i);
+				from = i
+						+ 1;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "RoundedDecimalParser[scale="
+				+ scale
+				+ ", mode="
+				+ mode
+				+ "]";
+	}
+
+	/**
+	 * Parses a checked range of exactly one of the sources.
+	 */
+	private double parse(CharSequence text, byte[] bytes, ByteBuffer buffer, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end) {
+			final int c = at(text, bytes, buffer, i);
+			if (c == '-'
+					|| c == '+') {
+				negative = c == '-';
+				i++;
+			}
+		}
+		// the digits without trailing zeros, which are counted separately
+		long digits = 0;
+		int significant = 0;
+		int zeros = 0;
+		int exponent = 0;
+		int count = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			final int c = at(text, bytes, buffer, i);
+			if (c >= '0'
+					&& c <= '9') {
+				count++;
+				if (point) {
+					exponent--;
+				}
+				if (c == '0') {
+					if (significant > 0) {
+						zeros++;
+					}
+					continue;
+				}
+				significant += zeros
+						+ 1;
+				if (significant > MAX_DIGITS) {
+					return fallback(text, bytes, buffer, start, end);
+				}
+				digits = digits
+						* POWERS_OF_TEN[zeros
+								+ 1]
+						+ (c
+								- '0');
+				zeros = 0;
+			} else if (c == '.'
+					&& !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (count == 0) {
+			return fallback(text, bytes, buffer, start, end);
+		}
+		if (i < end) {
+			final int c = at(text, bytes, buffer, i++);
+			if (c != 'e'
+					&& c != 'E') {
+				return fallback(text, bytes, buffer, start, end);
+			}
+			boolean negativeExponent = false;
+			if (i < end) {
+				final int sign = at(text, bytes, buffer, i);
+				if (sign == '-'
+						|| sign == '+') {
+					negativeExponent = sign == '-';
+					i++;
+				}
+			}
+			if (i == end
+					|| end
+							- i > MAX_EXPONENT_DIGITS) {
+				return fallback(text, bytes, buffer, start, end);
+			}
+			int e = 0;
+			for (; i < end; i++) {
+				final int d = at(text, bytes, buffer, i);
+				if (d < '0'
+						|| d > '9') {
+					return fallback(text, bytes, buffer, start, end);
+				}
+				e = 10
+						* e
+						+ (d
+								- '0');
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (digits == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		// the value is digits * 10^exponent
+		exponent += zeros;
+		final int leading = significant
+				- 1
+				+ exponent;
+		if (leading < MIN_EXPONENT
+				|| leading >= MAX_DIGITS) {
+			return fallback(text, bytes, buffer, start, end);
+		}
+		final int dropped = -scale
+				- exponent;
+		if (dropped <= 0) {
+			// nothing to round: the result is the parsed value
+			if (exponent < -RoundDouble.MAX_EXACT_SCALE
+					|| exponent > RoundDouble.MAX_EXACT_SCALE) {
+				return fallback(text, bytes, buffer, start, end);
+			}
+			final double value = RoundDouble.scaledToDouble(digits, -exponent);
+			return negative ? -value : value;
+		}
+		if (scale < -RoundDouble.MAX_EXACT_SCALE
+				|| scale > RoundDouble.MAX_EXACT_SCALE) {
+			return fallback(text, bytes, buffer, start, end);
+		}
+		final long quotient;
+		final long remainder;
+		final long half;
+		if (dropped < POWERS_OF_TEN.length) {
+			quotient = digits
+					/ POWERS_OF_TEN[dropped];
+			remainder = digits
+					% POWERS_OF_TEN[dropped];
+			half = 5
+					* POWERS_OF_TEN[dropped
+							- 1];
+		} else {
+			// all digits are dropped and they are below half
+			quotient = 0;
+			remainder = digits;
+			half = Long.MAX_VALUE;
+		}
+		final long unscaled = remainder == 0 ? quotient
+				: quotient
+						+ (roundAway(negative, quotient, remainder, half) ? 1 : 0);
+		if (unscaled == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		final double value = RoundDouble.scaledToDouble(unscaled, scale);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Returns whether a magnitude with a non-zero dropped remainder is
+	 * rounded away from zero.
+	 */
+	private boolean roundAway(boolean negative, long quotient, long remainder, long half) {
+		switch (mode) {
+		case UP:
+			return true;
+		case DOWN:
+			return false;
+		case CEILING:
+			return !negative;
+		case FLOOR:
+			return negative;
+		case HALF_UP:
+			return remainder >= half;
+		case HALF_DOWN:
+			return remainder > half;
+		case HALF_EVEN:
+			return remainder > half
+					|| (remainder == half
+							&& (quotient & 1) != 0);
+		default:
+			throw new ArithmeticException("Rounding necessary");
+		}
+	}
+
+	/**
+	 * Parses and rounds a range the usual way.
+	 */
+	private double fallback(CharSequence text, byte[] bytes, ByteBuffer buffer, int start, int end) {
+		final String string;
+		if (text != null) {
+			string = text.subSequence(start, end)
+					.toString();
+		} else if (bytes != null) {
+			string = new String(bytes, start, end
+					- start, StandardCharsets.ISO_8859_1);
+		} else {
+			final byte[] copy = new byte[end
+					- start];
+			for (int i = 0; i < copy.length; i++) {
+				copy[i] = buffer.get(start
+						+ i);
+			}
+			string = new String(copy, StandardCharsets.ISO_8859_1);
+		}
+		return context.round(Double.parseDouble(string));
+	}
+
+	/**
+	 * Returns the character at an index of the source that is not null.
+	 */
+	private static int at(CharSequence text, byte[] bytes, ByteBuffer buffer, int index) {
+		if (text != null) {
+			return text.charAt(index);
+		} else if (bytes != null) {
+			return bytes[index];
+		}
+		return buffer.get(index);
+	}
+}
@@ -0,0 +1,416 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Rounds double values to a scale and writes them as plain decimal text,
+ * without creating intermediate strings.
+ * <p>
+ * The text is the decimal {@code Double.toString(x)} rounded with
+ * {@link BigDecimal#setScale(int, RoundingMode)} and printed with
+ * {@link BigDecimal#toPlainString()}, e.g. {@code 1.50} for {@code 1.5} at
+ * scale 2 and {@code 1200} for {@code 1234} at scale -2. Parsing it gives
+ * exactly {@link RoundingContext#round(double)}. A negative value rounded to
+ * zero is written with its sign, e.g. {@code -0.00}. NaN and infinities are
+ * written as by {@link Double#toString(double)}.
+ * </p>
+ * <p>
+ * Writers are immutable and thread safe. The digits are produced from the
+ * primitive unscaled value of {@link RoundingContext}; only values that it
+ * rounds with {@link BigDecimal} allocate.
+ * </p>
+ */
+public final class RoundedDecimalWriter {
+
+	/** Largest number of characters written for a fast path value. */
+	private static final int MAX_DIGITS = 19;
+
+	/** Powers of ten that fit into a long. */
+	private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < MAX_DIGITS; i++) {
+			POWERS_OF_TEN[i] = 10
+					* POWERS_OF_TEN[i
+							- 1];
+		}
+	}
+
+	private final RoundingContext context;
+
+	private RoundedDecimalWriter(RoundingContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Returns a writer for a scale and rounding mode.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the writer.
+	 */
+	public static RoundedDecimalWriter of(int scale, RoundingMode mode) {
+		return new RoundedDecimalWriter(RoundingContext.of(scale, mode));
+	}
+
+	/**
+	 * Returns the rounding context of this writer.
+	 *
+	 * @return the context.
+	 */
+	public RoundingContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Appends the rounded value to a {@link StringBuilder}.
+	 *
+	 * @param sb
+	 *            the builder.
+	 * @param x
+	 *            Value to round.
+	 * @return {@code sb}.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public StringBuilder append(StringBuilder sb, double x) {
+		final long unscaled = unscaled(x);
+		if (unscaled == RoundDouble.NO_FAST_PATH) {
+			return sb.append(text(x));
+		}
+		final int start = sb.length();
+		final int length = length(x, unscaled);
+		sb.setLength(start
+				+ length);
+		// fill in the digits from the last one
+		final int scale = context.getScale();
+		long magnitude = Math.abs(unscaled);
+		int i = start
+				+ length;
+		if (scale > 0) {
+			for (int j = 0; j < scale; j++) {
+				sb.setCharAt(--i, (char) ('0'
+						+ magnitude
+								% 10));
+				magnitude /= 10;
+			}
+			sb.setCharAt(--i, '.');
+		} else if (unscaled != 0) {
+			for (int j = scale; j < 0; j++) {
+				sb.setCharAt(--i, '0');
+			}
+		}
+		do {
+			sb.setCharAt(--i, (char) ('0'
+					+ magnitude
+							% 10));
+			magnitude /= 10;
+		} while (magnitude != 0);
+		if (i > start) {
+			sb.setCharAt(--i, '-');
+		}
+		return sb;
+	}
+
+	/**
+	 * Appends the rounded value to an {@link Appendable}.
+	 *
+	 * @param <A>
+	 *            the type of the appendable.
+	 * @param out
+	 *            the appendable.
+	 * @param x
+	 *            Value to round.
+	 * @return {@code out}.
+	 * @throws IOException
+	 *             if {@code out} fails.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public <A extends Appendable> A append(A out, double x) throws IOException {
+		final long unscaled = unscaled(x);
+		if (unscaled == RoundDouble.NO_FAST_PATH) {
+			out.append(text(x));
+			return out;
+		}
+		final int length = length(x, unscaled);
+		for (int i = 0; i < length; i++) {
+			out.append(charAt(x, unscaled, length, i));
+		}
+		return out;
+	}
+
+	/**
+	 * Writes the rounded value into a {@code char[]}.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param dst
+	 *            the destination.
+	 * @param offset
+	 *            index of the first character to write.
+	 * @return the number of characters written.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the text does not fit. Nothing is written in that case.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public int write(double x, char[] dst, int offset) {
+		final long unscaled = unscaled(x);
+		if (unscaled == RoundDouble.NO_FAST_PATH) {
+			final String text = text(x);
+			ArrayRange.check(dst.length, offset, text.length());
+			text.getChars(0, text.length(), dst, offset);
+			return text.length();
+		}
+		final int length = length(x, unscaled);
+		ArrayRange.check(dst.length, offset, length);
+		final int scale = context.getScale();
+		long magnitude = Math.abs(unscaled);
+		int i = offset
+				+ length;
+		if (scale > 0) {
+			for (int j = 0; j < scale; j++) {
+				dst[--i] = (char) ('0'
+						+ magnitude
+								% 10);
+				magnitude /= 10;
+			}
+			dst[--i] = '.';
+		} else if (unscaled != 0) {
+			for (int j = scale; j < 0; j++) {
+				dst[--i] = '0';
+			}
+		}
+		do {
+			dst[--i] = (char) ('0'
+					+ magnitude
+							% 10);
+			magnitude /= 10;
+		} while (magnitude != 0);
+		if (i > offset) {
+			dst[--i] = '-';
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the rounded value as ASCII at the position of a
+	 * {@link ByteBuffer}, such as a direct buffer backing a file or socket,
+	 * and advances the position.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @param dst
+	 *            the destination.
+	 * @return the number of bytes written.
+	 * @throws BufferOverflowException
+	 *             if the text does not fit. Nothing is written in that case.
+	 * @throws java.nio.ReadOnlyBufferException
+	 *             if {@code dst} is read-only.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public int write(double x, ByteBuffer dst) {
+		final long unscaled = unscaled(x);
+		if (unscaled == RoundDouble.NO_FAST_PATH) {
+			final String text = text(x);
+			if (dst.remaining() < text.length()) {
+				throw new BufferOverflowException();
+			}
+			for (int i = 0; i < text.length(); i++) {
+				dst.put((byte) text.charAt(i));
+			}
+			return text.length();
+		}
+		final int length = length(x, unscaled);
+		if (dst.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		final int start = dst.position();
+		final int scale = context.getScale();
+		long magnitude = Math.abs(unscaled);
+		int i = start
+				+ length;
+		if (scale > 0) {
+			for (int j = 0; j < scale; j++) {
+				dst.put(--i, (byte) ('0'
+						+ magnitude
+								% 10));
+				magnitude /= 10;
+			}
+			dst.put(--i, (byte) '.');
+		} else if (unscaled != 0) {
+			for (int j = scale; j < 0; j++) {
+				dst.put(--i, (byte) '0');
+			}
+		}
+		do {
+			dst.put(--i, (byte) ('0'
+					+ magnitude
+							% 10));
+			magnitude /= 10;
+		} while (magnitude != 0);
+		if (i > start) {
+			dst.put(--i, (byte) '-');
+		}
+		// through Buffer, as ByteBuffer.position(int) does not exist on Java 8
+		((Buffer) dst).position(start
+				+ length);
+		return length;
+	}
+
+	/**
+	 * Returns the rounded value as text, allocating a string.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @return the text written by the other methods.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public String toString(double x) {
+		return append(new StringBuilder(24), x).toString();
+	}
+
+	@Override
+	public String toString() {
+		return "RoundedDecimalWriter[scale="
+				+ context.getScale()
+				+ ", mode="
+				+ context.getRoundingMode()
+				+ "]";
+	}
+
+	/**
+	 * Returns the rounded unscaled value of a finite value, or
+	 * {@link RoundDouble#NO_FAST_PATH} if the text has to be produced by
+	 * {@link #text(double)}.
+	 */
+	private long unscaled(double x) {
+		if (x != x
+				|| Double.isInfinite(x)) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		return context.unscaledValue(x);
+	}
+
+	/**
+	 * Produces the text with {@link BigDecimal}, for special values and
+	 * values off the fast path.
+	 */
+	private String text(double x) {
+		if (x != x
+				|| Double.isInfinite(x)) {
+			return Double.toString(x);
+		}
+		final BigDecimal rounded = new BigDecimal(Double.toString(x)).setScale(context.getScale(),
+				context.getRoundingMode());
+		if (rounded.signum() != 0) {
+			return rounded.toPlainString();
+		}
+		final String zero = BigDecimal.ZERO.setScale(Math.max(0, context.getScale()))
+				.toPlainString();
+		return negative(x) ? "-"
+				+ zero : zero;
+	}
+
+	/**
+	 * Returns the number of characters of an unscaled value: the sign, the
+	 * integer digits, at least one, and for a positive scale the point and
+	 * the fraction digits.
+	 */
+	private int length(double x, long unscaled) {
+		final int scale = context.getScale();
+		final long magnitude = Math.abs(unscaled);
+		int digits = 1;
+		while (digits < MAX_DIGITS
+				&& magnitude >= POWERS_OF_TEN[digits]) {
+			digits++;
+		}
+		final int sign = negative(x) ? 1 : 0;
+		if (scale <= 0) {
+			return sign
+					+ (magnitude == 0 ? 1
+							: digits
+									- scale);
+		}
+		return sign
+				+ Math.max(digits, scale
+						+ 1)
+				+ 1;
+	}
+
+	/**
+	 * Returns the character at an index of the text of an unscaled value of
+	 * the given length.
+	 */
+	private char charAt(double x, long unscaled, int length, int index) {
+		if (negative(x)) {
+			if (index == 0) {
+				return '-';
+			}
+			index--;
+			length--;
+		}
+		final int scale = context.getScale();
+		// position of the digit counted from the last unscaled digit
+		int position = length
+				- 1
+				- index;
+		if (scale > 0) {
+			if (position == scale) {
+				return '.';
+			} else if (position > scale) {
+				position--;
+			}
+		} else if (unscaled != 0) {
+			// trailing zeros of a negative scale
+			position += scale;
+			if (position < 0) {
+				return '0';
+			}
+		}
+		if (position >= MAX_DIGITS) {
+			return '0';
+		}
+		return (char) ('0'
+				+ Math.abs(unscaled
+						/ POWERS_OF_TEN[position]
+						% 10));
+	}
+
+	/**
+	 * Returns whether the sign is written: for negative values, including
+	 * those rounded to zero.
+	 */
+	private static boolean negative(double x) {
+		return Double.doubleToRawLongBits(x) < 0;
+	}
+}
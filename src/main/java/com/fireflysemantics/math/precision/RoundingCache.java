@@ -0,0 +1,436 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the results of {@link RoundingContext#round(double)} for
+ * streams that round the same values over and over.
+ * <p>
+ * The cache is an open addressed table of primitive longs keyed by the raw
+ * bits of the value. It is divided into buckets of {@value #WAYS} slots; a
+ * value can only live in the bucket its hash selects, and when the bucket is
+ * full an entry is evicted with the CLOCK algorithm, i.e. the first entry
+ * after the bucket's hand that has not been read since the hand last passed
+ * it. Values that are read once are therefore evicted before values that
+ * repeat.
+ * </p>
+ * <p>
+ * Caches are thread safe. Each bucket has a version that is odd while the
+ * bucket is written: reads take no lock and fall back to rounding when a
+ * write interferes, and a thread that finds a bucket locked rounds without
+ * caching rather than waiting. Hits, misses and evictions are counted with
+ * {@link LongAdder}s.
+ * </p>
+ * <p>
+ * Rounding on the primitive fast path of {@link RoundingContext} costs only a
+ * few arithmetic operations, so the cache pays off for values that are
+ * rounded with {@link java.math.BigDecimal}, e.g. at large scales or
+ * magnitudes. Check {@link #getHitCount()} and {@link #getMissCount()} on
+ * real data. NaN values are not cached.
+ * </p>
+ */
+public final class RoundingCache {
+
+	/** Number of slots per bucket. */
+	public static final int WAYS = 8;
+
+	/** Largest number of slots. */
+	public static final int MAX_CAPACITY = 1 << 28;
+
+	/** Key of an empty slot, a NaN which is never cached. */
+	private static final long EMPTY = 0x7ff8000000000000L;
+
+	private final RoundingContext context;
+
+	/** Number of bits of the bucket index. */
+	private final int bucketBits;
+
+	/** Key and value bits of each slot, interleaved. */
+	private final AtomicLongArray table;
+
+	/** Version of each bucket, odd while the bucket is written. */
+	private final AtomicIntegerArray versions;
+
+	/** Whether each slot has been read since the hand passed it. */
+	private final byte[] referenced;
+
+	/** CLOCK hand of each bucket, written while the bucket is locked. */
+	private final byte[] hands;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private RoundingCache(RoundingContext context, int capacity) {
+		this.context = context;
+		final int buckets = capacity
+				/ WAYS;
+		this.bucketBits = Integer.numberOfTrailingZeros(buckets);
+		this.table = new AtomicLongArray(2
+				* capacity);
+		this.versions = new AtomicIntegerArray(buckets);
+		this.referenced = new byte[capacity];
+		this.hands = new byte[buckets];
+		for (int i = 0; i < capacity; i++) {
+			table.set(2
+					* i, EMPTY);
+		}
+	}
+
+	/**
+	 * Returns a cache for a scale and rounding mode.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @param capacity
+	 *            the number of cached values, rounded up to a power of two of
+	 *            at least {@value #WAYS}.
+	 * @return the cache.
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} is not positive or greater than
+	 *             {@value #MAX_CAPACITY}.
+	 */
+	public static RoundingCache of(int scale, RoundingMode mode, int capacity) {
+		return of(RoundingContext.of(scale, mode), capacity);
+	}
+
+	/**
+	 * Returns a cache for a rounding context.
+	 *
+	 * @param context
+	 *            the context rounding the values.
+	 * @param capacity
+	 *            the number of cached values, rounded up to a power of two of
+	 *            at least {@value #WAYS}.
+	 * @return the cache.
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} is not positive or greater than
+	 *             {@value #MAX_CAPACITY}.
+	 */
+	public static RoundingCache of(RoundingContext context, int capacity) {
+		if (capacity < 1
+				|| capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity must be in [1, "
+					+ MAX_CAPACITY
+					+ "]: "
+					+ capacity);
+		}
+		final int slots = Math.max(WAYS, Integer.highestOneBit(capacity
+				- 1)
+				<< 1);
+		return new RoundingCache(context, slots);
+	}
+
+	/**
+	 * Returns the rounding context of this cache.
+	 *
+	 * @return the context.
+	 */
+	public RoundingContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 *
+	 * @return the capacity.
+	 */
+	public int getCapacity() {
+		return referenced.length;
+	}
+
+	/**
+	 * Rounds a value as defined by {@link RoundingContext#round(double)},
+	 * returning the cached result if there is one.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @return the rounded value.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public double round(double x) {
+		if (x != x) {
+			misses.increment();
+			return Double.NaN;
+		}
+		final long key = Double.doubleToRawLongBits(x);
+		final int bucket = bucket(key);
+		final int version = versions.get(bucket);
+		if ((version
+				& 1) == 0) {
+			final int first = bucket
+					* WAYS;
+			for (int slot = first; slot < first
+					+ WAYS; slot++) {
+				final long k = table.get(2
+						* slot);
+				if (k == key) {
+					final long value = table.get(2
+							* slot
+							+ 1);
+					if (versions.get(bucket) != version) {
+						break;
+					}
+					if (referenced[slot] == 0) {
+						referenced[slot] = 1;
+					}
+					hits.increment();
+					return Double.longBitsToDouble(value);
+				}
+				if (k == EMPTY) {
+					// slots are filled in order and never emptied
+					break;
+				}
+			}
+		}
+		misses.increment();
+		final double rounded = context.round(x);
+		store(bucket, key, rounded);
+		return rounded;
+	}
+
+	/**
+	 * Rounds every element of {@code values} in place as defined by
+	 * {@link #round(double)}.
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale. The elements
+	 *             before it have been rounded.
+	 */
+	public void round(double[] values) {
+		round(values, 0, values, 0, values.length);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset} as
+	 * defined by {@link #round(double)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public void round(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = round(src[srcOffset
+							+ i]);
+		}
+	}
+
+	/**
+	 * Returns the number of calls answered from the cache.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of calls that rounded the value, including NaN values
+	 * and reads that were interrupted by a write.
+	 *
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of entries replaced by the CLOCK algorithm.
+	 *
+	 * @return the eviction count.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the fraction of calls answered from the cache.
+	 *
+	 * @return the hit rate in {@code [0, 1]}, or NaN if there were no calls.
+	 */
+	public double getHitRate() {
+		final long hit = hits.sum();
+		final long total = hit
+				+ misses.sum();
+		return total == 0 ? Double.NaN : (double) hit
+				/ total;
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counts to zero.
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	/**
+	 * Removes all entries. Rounding in other threads may add entries while
+	 * the cache is cleared.
+	 */
+	public void clear() {
+		for (int bucket = 0; bucket < versions.length(); bucket++) {
+			int version;
+			do {
+				version = versions.get(bucket);
+			} while ((version
+					& 1) != 0
+					|| !versions.compareAndSet(bucket, version, version
+							+ 1));
+			final int first = bucket
+					* WAYS;
+			for (int slot = first; slot < first
+					+ WAYS; slot++) {
+				table.set(2
+						* slot, EMPTY);
+				referenced[slot] = 0;
+			}
+			hands[bucket] = 0;
+			versions.set(bucket, version
+					+ 2);
+		}
+	}
+
+	/**
+	 * Adds an entry unless another thread is writing the bucket.
+	 */
+	private void store(int bucket, long key, double rounded) {
+		final int version = versions.get(bucket);
+		if ((version
+				& 1) != 0
+				|| !versions.compareAndSet(bucket, version, version
+						+ 1)) {
+			return;
+		}
+		final int first = bucket
+				* WAYS;
+		int slot = -1;
+		for (int i = first; i < first
+				+ WAYS; i++) {
+			final long k = table.get(2
+					* i);
+			if (k == key) {
+				// added by another thread since the read
+				versions.set(bucket, version
+						+ 2);
+				return;
+			}
+			if (k == EMPTY) {
+				slot = i;
+				break;
+			}
+		}
+		if (slot < 0) {
+			slot = evict(bucket);
+		}
+		table.set(2
+				* slot, key);
+		table.set(2
+				* slot
+				+ 1, Double.doubleToRawLongBits(rounded));
+		referenced[slot] = 0;
+		versions.set(bucket, version
+				+ 2);
+	}
+
+	/**
+	 * Advances the hand of a locked, full bucket to the first slot that has
+	 * not been read since the hand last passed it.
+	 *
+	 * @return the slot to replace.
+	 */
+	private int evict(int bucket) {
+		final int first = bucket
+				* WAYS;
+		int hand = hands[bucket];
+		// readers may set the bits again, so stop after two rounds
+		for (int i = 0; i < 2
+				* WAYS
+				&& referenced[first
+						+ hand] != 0; i++) {
+			referenced[first
+					+ hand] = 0;
+			hand = (hand
+					+ 1)
+					& (WAYS
+							- 1);
+		}
+		hands[bucket] = (byte) ((hand
+				+ 1)
+				& (WAYS
+						- 1));
+		evictions.increment();
+		return first
+				+ hand;
+	}
+
+	/**
+	 * Selects the bucket of a key from the high bits of a multiplicative hash.
+	 */
+	private int bucket(long key) {
+		return bucketBits == 0 ? 0
+				: (int) ((key
+						* 0x9e3779b97f4a7c15L) >>> (64
+								- bucketBits));
+	}
+
+	@Override
+	public String toString() {
+		return "RoundingCache[scale="
+				+ context.scale
+				+ ", mode="
+				+ context.mode
+				+ ", capacity="
+				+ getCapacity()
+				+ ", hits="
+				+ getHitCount()
+				+ ", misses="
+				+ getMissCount()
+				+ "]";
+	}
+}
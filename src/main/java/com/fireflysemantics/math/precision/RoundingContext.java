@@ -0,0 +1,544 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounds double values to a fixed scale with a fixed {@link RoundingMode},
+ * with the same results as {@link RoundDouble#round(double, int, int)}.
+ * <p>
+ * Contexts are immutable and thread safe. They are obtained with
+ * {@link #of(int, RoundingMode)}, which returns cached instances for the
+ * scales where rounding can be done with primitive arithmetic. A context
+ * precomputes the power of ten of its scale and has one implementation per
+ * rounding mode, so a loop holding a context rounds each value without
+ * validating or dispatching on its arguments.
+ * </p>
+ */
+public abstract class RoundingContext {
+
+	/** Number of cached scales on either side of zero. */
+	private static final int MAX_CACHED_SCALE = RoundDouble.MAX_EXACT_SCALE;
+
+	/** The rounding modes. */
+	private static final RoundingMode[] MODES = RoundingMode.values();
+
+	/** Contexts indexed by scale and rounding mode. */
+	private static final RoundingContext[] CACHE;
+
+	static {
+		CACHE = new RoundingContext[(2
+				* MAX_CACHED_SCALE
+				+ 1)
+				* MODES.length];
+		for (int scale = -MAX_CACHED_SCALE; scale <= MAX_CACHED_SCALE; scale++) {
+			for (RoundingMode mode : MODES) {
+				CACHE[index(scale, mode)] = create(scale, mode);
+			}
+		}
+	}
+
+	/** Number of digits to the right of the decimal point. */
+	final int scale;
+
+	/** The rounding mode. */
+	final RoundingMode mode;
+
+	/** The rounding method as defined in {@link BigDecimal}. */
+	final int roundingMethod;
+
+	/** Whether {@code 10^|scale|} is exact and the fast path applies. */
+	final boolean exact;
+
+	/** Whether the scale is non-negative, i.e. scaling multiplies. */
+	final boolean multiply;
+
+	/** {@code 10^|scale|}. */
+	final double power;
+
+	RoundingContext(int scale, RoundingMode mode, int roundingMethod) {
+		this.scale = scale;
+		this.mode = mode;
+		this.roundingMethod = roundingMethod;
+		this.exact = scale >= -RoundDouble.MAX_EXACT_SCALE
+				&& scale < RoundDouble.MAX_EXACT_SCALE;
+		this.multiply = scale >= 0;
+		this.power = exact ? RoundDouble.scaledToDouble(1, -Math.abs(scale)) : Double.NaN;
+	}
+
+	/**
+	 * Returns the context for a scale and rounding mode.
+	 *
+	 * @param scale
+	 *            Number of digits to the right of the decimal point.
+	 * @param mode
+	 *            the rounding mode.
+	 * @return the context, cached for scales in {@code [-22, 22]}.
+	 */
+	public static RoundingContext of(int scale, RoundingMode mode) {
+		if (scale >= -MAX_CACHED_SCALE
+				&& scale <= MAX_CACHED_SCALE) {
+			return CACHE[index(scale, mode)];
+		}
+		return create(scale, mode);
+	}
+
+	/**
+	 * Returns the number of digits to the right of the decimal point.
+	 *
+	 * @return the scale.
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the rounding mode.
+	 *
+	 * @return the rounding mode.
+	 */
+	public RoundingMode getRoundingMode() {
+		return mode;
+	}
+
+	/**
+	 * Rounds a value as defined by {@link RoundDouble#round(double, int, int)}
+	 * with the scale and rounding mode of this context.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @return the rounded value.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             {@code x} cannot be represented at the scale.
+	 */
+	public final double round(double x) {
+		if (x != x) {
+			return Double.NaN;
+		} else if (Double.isInfinite(x)) {
+			return x;
+		}
+		final long scaled = unscaledValue(x);
+		if (scaled == RoundDouble.NO_FAST_PATH) {
+			return RoundDouble.roundBigDecimal(x, scale, roundingMethod);
+		}
+		// MATH-1089: negative values rounded to zero result in negative zero
+		if (scaled == 0) {
+			return 0d
+					* x;
+		}
+		return multiply ? scaled
+				/ power
+				: scaled
+						* power;
+	}
+
+	/**
+	 * Rounds every element of {@code values} in place.
+	 *
+	 * @param values
+	 *            Values to round.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public final void round(double[] values) {
+		roundRange(values, 0, values, 0, values.length);
+	}
+
+	/**
+	 * Rounds {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into {@code dst} starting at {@code dstOffset}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the rounded values. May be {@code src}
+	 *            itself if {@code srcOffset == dstOffset}; otherwise the
+	 *            ranges must not overlap.
+	 * @param dstOffset
+	 *            Index receiving the first rounded value.
+	 * @param length
+	 *            Number of values to round.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws ArithmeticException
+	 *             if the rounding mode is {@link RoundingMode#UNNECESSARY} and
+	 *             a value cannot be represented at the scale.
+	 */
+	public final void round(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		roundRange(src, srcOffset, dst, dstOffset, length);
+	}
+
+	/**
+	 * Rounds a value like {@link #round(double)} and returns the rounded value
+	 * as a scaled {@code long}, i.e. its unscaled value
+	 * {@code round(x) * 10^scale}. The value is rounded once, so the result
+	 * is exactly the unscaled value of
+	 * {@code new BigDecimal(Double.toString(x)).setScale(scale, mode)}.
+	 *
+	 * @param x
+	 *            Value to round.
+	 * @return the rounded unscaled value.
+	 * @throws ArithmeticException
+	 *             if {@code x} is not finite, if the unscaled value does not
+	 *             fit into a {@code long}, or if the rounding mode is
+	 *             {@link RoundingMode#UNNECESSARY} and {@code x} cannot be
+	 *             represented at the scale.
+	 */
+	public final long toScaledLong(double x) {
+		if (x != x
+				|| Double.isInfinite(x)) {
+			throw new ArithmeticException("Not a finite value: "
+					+ x);
+		}
+		final long scaled = unscaledValue(x);
+		if (scaled == RoundDouble.NO_FAST_PATH) {
+			return RoundDouble.toScaledLongBigDecimal(x, scale, roundingMethod);
+		}
+		return scaled;
+	}
+
+	/**
+	 * Converts {@code length} elements of {@code src} starting at
+	 * {@code srcOffset} into scaled longs in {@code dst} starting at
+	 * {@code dstOffset}, as defined by {@link #toScaledLong(double)}.
+	 *
+	 * @param src
+	 *            Values to round.
+	 * @param srcOffset
+	 *            Index of the first value to round.
+	 * @param dst
+	 *            Array receiving the unscaled values.
+	 * @param dstOffset
+	 *            Index receiving the first unscaled value.
+	 * @param length
+	 *            Number of values to convert.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws ArithmeticException
+	 *             if a value cannot be converted. The elements of {@code dst}
+	 *             before it have been written.
+	 */
+	public final void toScaledLong(double[] src, int srcOffset, long[] dst, int dstOffset, int length) {
+		ArrayRange.check(src.length, srcOffset, length);
+		ArrayRange.check(dst.length, dstOffset, length);
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = toScaledLong(src[srcOffset
+							+ i]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RoundingContext[scale="
+				+ scale
+				+ ", mode="
+				+ mode
+				+ "]";
+	}
+
+	/**
+	 * Rounds a range that has already been checked.
+	 */
+	private void roundRange(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset
+					+ i] = round(src[srcOffset
+							+ i]);
+		}
+	}
+
+	/**
+	 * Computes the rounded unscaled value of a finite value with primitive
+	 * arithmetic.
+	 *
+	 * @return the unscaled value, or {@link RoundDouble#NO_FAST_PATH} if it
+	 *         has to be computed with {@link BigDecimal}.
+	 */
+	final long unscaledValue(double x) {
+		return exact ? scaledValue(x) : RoundDouble.NO_FAST_PATH;
+	}
+
+	/**
+	 * Computes the rounded unscaled value like
+	 * {@link RoundDouble#scaledValue(double, int, int)}, for a finite value
+	 * and a scale whose power of ten is exact.
+	 */
+	private long scaledValue(double x) {
+		final double y;
+		final double scaledUlp;
+		if (multiply) {
+			y = x
+					* power;
+			scaledUlp = Math.ulp(x)
+					* power;
+		} else {
+			y = x
+					/ power;
+			scaledUlp = Math.ulp(x)
+					/ power;
+		}
+		if (!(Math.abs(y) < RoundDouble.TWO_POW_52)) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		// twice the worst case distance between y and the scaled decimal
+		final double margin = scaledUlp
+				+ Math.ulp(y);
+		if (margin >= 0.25) {
+			return RoundDouble.NO_FAST_PATH;
+		}
+		final double floor = Math.floor(y);
+		return roundScaled(x, y
+				- floor, margin, (long) floor);
+	}
+
+	/**
+	 * Rounds the scaled value {@code lower + fraction}, which lies within
+	 * {@code margin / 2} of the scaled decimal of {@code x}.
+	 *
+	 * @return the rounded unscaled value, or {@link RoundDouble#NO_FAST_PATH}.
+	 */
+	abstract long roundScaled(double x, double fraction, double margin, long lower);
+
+	/**
+	 * Creates the context for a scale and rounding mode.
+	 */
+	private static RoundingContext create(int scale, RoundingMode mode) {
+		switch (mode) {
+		case UP:
+			return new Up(scale);
+		case DOWN:
+			return new Down(scale);
+		case CEILING:
+			return new Ceiling(scale);
+		case FLOOR:
+			return new Floor(scale);
+		case HALF_UP:
+			return new HalfUp(scale);
+		case HALF_DOWN:
+			return new HalfDown(scale);
+		case HALF_EVEN:
+			return new HalfEven(scale);
+		default:
+			return new Unnecessary(scale);
+		}
+	}
+
+	private static int index(int scale, RoundingMode mode) {
+		return (scale
+				+ MAX_CACHED_SCALE)
+				* MODES.length
+				+ mode.ordinal();
+	}
+
+	/**
+	 * Rounds to the nearest neighbour, resolving ties in the subclass.
+	 */
+	private abstract static class Half extends RoundingContext {
+
+		Half(int scale, RoundingMode mode, int roundingMethod) {
+			super(scale, mode, roundingMethod);
+		}
+
+		@Override
+		final long roundScaled(double x, double fraction, double margin, long lower) {
+			if (fraction < 0.5
+					- margin) {
+				return lower;
+			} else if (fraction > 0.5
+					+ margin) {
+				return lower
+						+ 1;
+			}
+			final int cmp = RoundDouble.compareDecimal(x, 10
+					* lower
+					+ 5, scale
+							+ 1);
+			if (cmp == RoundDouble.UNDECIDED) {
+				return RoundDouble.NO_FAST_PATH;
+			} else if (cmp < 0) {
+				return lower;
+			} else if (cmp > 0) {
+				return lower
+						+ 1;
+			}
+			return tie(x, lower);
+		}
+
+		/**
+		 * Rounds a scaled decimal that is exactly {@code lower + 0.5}.
+		 */
+		abstract long tie(double x, long lower);
+	}
+
+	private static final class HalfUp extends Half {
+
+		HalfUp(int scale) {
+			super(scale, RoundingMode.HALF_UP, BigDecimal.ROUND_HALF_UP);
+		}
+
+		@Override
+		long tie(double x, long lower) {
+			return x < 0 ? lower : lower
+					+ 1;
+		}
+	}
+
+	private static final class HalfDown extends Half {
+
+		HalfDown(int scale) {
+			super(scale, RoundingMode.HALF_DOWN, BigDecimal.ROUND_HALF_DOWN);
+		}
+
+		@Override
+		long tie(double x, long lower) {
+			return x < 0 ? lower
+					+ 1 : lower;
+		}
+	}
+
+	private static final class HalfEven extends Half {
+
+		HalfEven(int scale) {
+			super(scale, RoundingMode.HALF_EVEN, BigDecimal.ROUND_HALF_EVEN);
+		}
+
+		@Override
+		long tie(double x, long lower) {
+			return (lower & 1) == 0 ? lower : lower
+					+ 1;
+		}
+	}
+
+	/**
+	 * Rounds to the floor or ceiling, picked in the subclass.
+	 */
+	private abstract static class Directed extends RoundingContext {
+
+		Directed(int scale, RoundingMode mode, int roundingMethod) {
+			super(scale, mode, roundingMethod);
+		}
+
+		@Override
+		final long roundScaled(double x, double fraction, double margin, long lower) {
+			if (fraction > margin
+					&& fraction < 1
+							- margin) {
+				return pick(x, lower, lower
+						+ 1);
+			}
+			final long nearest = fraction <= margin ? lower
+					: lower
+							+ 1;
+			final int cmp = RoundDouble.compareDecimal(x, nearest, scale);
+			if (cmp == RoundDouble.UNDECIDED) {
+				return RoundDouble.NO_FAST_PATH;
+			}
+			return pick(x, cmp < 0 ? nearest
+					- 1 : nearest,
+					cmp > 0 ? nearest
+							+ 1 : nearest);
+		}
+
+		/**
+		 * Picks the floor or ceiling of the scaled decimal.
+		 */
+		abstract long pick(double x, long floor, long ceiling);
+	}
+
+	private static final class Up extends Directed {
+
+		Up(int scale) {
+			super(scale, RoundingMode.UP, BigDecimal.ROUND_UP);
+		}
+
+		@Override
+		long pick(double x, long floor, long ceiling) {
+			return x < 0 ? floor : ceiling;
+		}
+	}
+
+	private static final class Down extends Directed {
+
+		Down(int scale) {
+			super(scale, RoundingMode.DOWN, BigDecimal.ROUND_DOWN);
+		}
+
+		@Override
+		long pick(double x, long floor, long ceiling) {
+			return x < 0 ? ceiling : floor;
+		}
+	}
+
+	private static final class Ceiling extends Directed {
+
+		Ceiling(int scale) {
+			super(scale, RoundingMode.CEILING, BigDecimal.ROUND_CEILING);
+		}
+
+		@Override
+		long pick(double x, long floor, long ceiling) {
+			return ceiling;
+		}
+	}
+
+	private static final class Floor extends Directed {
+
+		Floor(int scale) {
+			super(scale, RoundingMode.FLOOR, BigDecimal.ROUND_FLOOR);
+		}
+
+		@Override
+		long pick(double x, long floor, long ceiling) {
+			return floor;
+		}
+	}
+
+	/**
+	 * Returns the scaled decimal if it is an integer and fails otherwise.
+	 */
+	private static final class Unnecessary extends RoundingContext {
+
+		Unnecessary(int scale) {
+			super(scale, RoundingMode.UNNECESSARY, BigDecimal.ROUND_UNNECESSARY);
+		}
+
+		@Override
+		long roundScaled(double x, double fraction, double margin, long lower) {
+			if (fraction > margin
+					&& fraction < 1
+							- margin) {
+				throw new ArithmeticException("Rounding necessary");
+			}
+			final long nearest = fraction <= margin ? lower
+					: lower
+							+ 1;
+			final int cmp = RoundDouble.compareDecimal(x, nearest, scale);
+			if (cmp == RoundDouble.UNDECIDED) {
+				return RoundDouble.NO_FAST_PATH;
+			} else if (cmp != 0) {
+				throw new ArithmeticException("Rounding necessary");
+			}
+			return nearest;
+		}
+	}
+}
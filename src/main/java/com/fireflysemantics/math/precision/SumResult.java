@@ -0,0 +1,137 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Immutable result of a summation: the computed sum, the number of values
+ * summed and an a-priori bound of the absolute difference between the
+ * computed and the exact sum.
+ * <p>
+ * The bound is an absolute tolerance in the sense of
+ * {@link PrecisionAssert#equals(double, double, double)}, which
+ * {@link #isConsistentWith(double)} applies to a reference value.
+ * </p>
+ */
+public final class SumResult {
+
+	/** The computed sum. */
+	private final double sum;
+
+	/** Number of values summed. */
+	private final long count;
+
+	/** Bound of the absolute error of {@link #sum}. */
+	private final double errorBound;
+
+	SumResult(double sum, long count, double errorBound) {
+		this.sum = sum;
+		this.count = count;
+		this.errorBound = errorBound;
+	}
+
+	/**
+	 * Returns the computed sum.
+	 *
+	 * @return the sum.
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the number of values summed.
+	 *
+	 * @return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns an upper bound of the absolute difference between
+	 * {@link #getSum()} and the exact sum.
+	 *
+	 * @return the error bound.
+	 */
+	public double getErrorBound() {
+		return errorBound;
+	}
+
+	/**
+	 * Returns the mean, i.e. the sum divided by the count.
+	 *
+	 * @return the mean, or NaN if no value was summed.
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum
+				/ count;
+	}
+
+	/**
+	 * Returns an upper bound of the absolute difference between
+	 * {@link #getMean()} and the exact mean, including the rounding of the
+	 * division.
+	 *
+	 * @return the error bound of the mean, or NaN if no value was summed.
+	 */
+	public double getMeanErrorBound() {
+		final double mean = getMean();
+		return errorBound
+				/ count
+				+ PrecisionConstants.EPSILON
+						* Math.abs(mean);
+	}
+
+	/**
+	 * Returns whether a reference value, such as the exact sum, lies within
+	 * the error bound of the computed sum as defined by
+	 * {@link PrecisionAssert#equals(double, double, double)}.
+	 *
+	 * @param reference
+	 *            the reference value.
+	 * @return {@code true} if the reference is within the error bound.
+	 */
+	public boolean isConsistentWith(double reference) {
+		return PrecisionAssert.equals(sum, reference, errorBound);
+	}
+
+	@Override
+	public String toString() {
+		return "SumResult[sum="
+				+ sum
+				+ ", count="
+				+ count
+				+ ", errorBound="
+				+ errorBound
+				+ "]";
+	}
+
+	/**
+	 * Returns {@code gamma(n) = n * EPSILON / (1 - n * EPSILON)}, the bound of
+	 * the relative error of {@code n} successive roundings.
+	 *
+	 * @return gamma, or infinity if {@code n * EPSILON >= 1}.
+	 */
+	static double gamma(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		final double ne = n
+				* PrecisionConstants.EPSILON;
+		return ne < 1 ? ne
+				/ (1
+						- ne)
+				: Double.POSITIVE_INFINITY;
+	}
+}
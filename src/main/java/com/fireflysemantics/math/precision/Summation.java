@@ -0,0 +1,361 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums, means and dot products of double arrays with a-priori error bounds.
+ * <p>
+ * The compensated methods accumulate into a {@link CompensatedSum}. The
+ * pairwise methods sum recursively halved ranges, which is cheaper and has
+ * an error growing with {@code log2(n)} instead of {@code n}. The parallel
+ * methods split the range in halves down to a fixed threshold and merge the
+ * partial sums in the same order, so their result does not depend on the
+ * number of threads or on scheduling.
+ * </p>
+ */
+public class Summation {
+
+	/**
+	 * Default number of elements below which the parallel methods stop
+	 * splitting.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+	/** Number of elements below which pairwise summation sums in a loop. */
+	static final int PAIRWISE_BLOCK = 128;
+
+	/**
+	 * Private constructor.
+	 */
+	private Summation() {
+	}
+
+	/**
+	 * Computes the compensated sum of an array as defined by
+	 * {@link CompensatedSum}.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @return the sum and its error bound.
+	 */
+	public static SumResult sum(double[] values) {
+		return sum(values, 0, values.length);
+	}
+
+	/**
+	 * Computes the compensated sum of {@code length} elements of
+	 * {@code values} starting at {@code offset}.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @param offset
+	 *            index of the first value to sum.
+	 * @param length
+	 *            number of values to sum.
+	 * @return the sum and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public static SumResult sum(double[] values, int offset, int length) {
+		final CompensatedSum sum = new CompensatedSum();
+		sum.add(values, offset, length);
+		return sum.getResult();
+	}
+
+	/**
+	 * Computes the compensated mean of an array. The mean and its error bound
+	 * are {@link SumResult#getMean()} and
+	 * {@link SumResult#getMeanErrorBound()} of the result.
+	 *
+	 * @param values
+	 *            the values to average.
+	 * @return the mean, NaN for an empty array.
+	 */
+	public static double mean(double[] values) {
+		return sum(values).getMean();
+	}
+
+	/**
+	 * Computes the compensated dot product of two arrays. The result is as
+	 * accurate as if it had been computed in twice the working precision, with
+	 * the bound {@code EPSILON * |dot| + gamma(n)^2 * sum(|x * y|)}.
+	 *
+	 * @param x
+	 *            the first vector.
+	 * @param y
+	 *            the second vector, at least as long as {@code x}.
+	 * @return the dot product and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code y} is shorter than {@code x}.
+	 */
+	public static SumResult dot(double[] x, double[] y) {
+		return dot(x, 0, y, 0, x.length);
+	}
+
+	/**
+	 * Computes the compensated dot product of {@code length} elements of
+	 * {@code x} and {@code y} starting at the given offsets.
+	 *
+	 * @param x
+	 *            the first vector.
+	 * @param xOffset
+	 *            index of the first element of {@code x}.
+	 * @param y
+	 *            the second vector.
+	 * @param yOffset
+	 *            index of the first element of {@code y}.
+	 * @param length
+	 *            number of elements.
+	 * @return the dot product and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static SumResult dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		final CompensatedSum sum = new CompensatedSum();
+		sum.addProducts(x, xOffset, y, yOffset, length);
+		return sum.getResult();
+	}
+
+	/**
+	 * Computes the pairwise sum of an array, with the bound
+	 * {@code gamma(b - 1 + ceil(log2(n / b))) * sum(|x|)} where {@code b} is
+	 * the block size below which values are summed in a loop.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @return the sum and its error bound.
+	 */
+	public static SumResult sumPairwise(double[] values) {
+		return sumPairwise(values, 0, values.length);
+	}
+
+	/**
+	 * Computes the pairwise sum of {@code length} elements of {@code values}
+	 * starting at {@code offset}.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @param offset
+	 *            index of the first value to sum.
+	 * @param length
+	 *            number of values to sum.
+	 * @return the sum and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public static SumResult sumPairwise(double[] values, int offset, int length) {
+		ArrayRange.check(values.length, offset, length);
+		final double sum = pairwise(values, offset, length, false);
+		final double sumAbs = pairwise(values, offset, length, true);
+		final double gamma = SumResult.gamma(pairwiseDepth(length));
+		// sumAbs is itself rounded with a relative error of at most gamma
+		return new SumResult(sum, length, gamma
+				* (sumAbs
+						/ (1
+								- gamma)));
+	}
+
+	/**
+	 * Computes the compensated sum of an array as defined by
+	 * {@link #sum(double[])}, splitting the work across the common
+	 * {@link java.util.concurrent.ForkJoinPool ForkJoinPool} in chunks of at
+	 * most {@link #DEFAULT_PARALLEL_THRESHOLD} elements.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @return the sum and its error bound.
+	 */
+	public static SumResult sumParallel(double[] values) {
+		return sumParallel(values, 0, values.length, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Computes the compensated sum of {@code length} elements of
+	 * {@code values} starting at {@code offset}, splitting the work across the
+	 * common {@link java.util.concurrent.ForkJoinPool ForkJoinPool}. The
+	 * result only depends on the values and the threshold.
+	 *
+	 * @param values
+	 *            the values to sum.
+	 * @param offset
+	 *            index of the first value to sum.
+	 * @param length
+	 *            number of values to sum.
+	 * @param threshold
+	 *            Number of elements below which a chunk is summed
+	 *            sequentially.
+	 * @return the sum and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public static SumResult sumParallel(double[] values, int offset, int length, int threshold) {
+		ArrayRange.check(values.length, offset, length);
+		checkThreshold(threshold);
+		return new SumTask(values, offset, null, 0, length, threshold).invoke()
+				.getResult();
+	}
+
+	/**
+	 * Computes the compensated dot product of two arrays as defined by
+	 * {@link #dot(double[], double[])}, splitting the work across the common
+	 * {@link java.util.concurrent.ForkJoinPool ForkJoinPool} in chunks of at
+	 * most {@link #DEFAULT_PARALLEL_THRESHOLD} elements.
+	 *
+	 * @param x
+	 *            the first vector.
+	 * @param y
+	 *            the second vector, at least as long as {@code x}.
+	 * @return the dot product and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code y} is shorter than {@code x}.
+	 */
+	public static SumResult dotParallel(double[] x, double[] y) {
+		return dotParallel(x, 0, y, 0, x.length, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Computes the compensated dot product of {@code length} elements of
+	 * {@code x} and {@code y} starting at the given offsets, splitting the
+	 * work across the common {@link java.util.concurrent.ForkJoinPool
+	 * ForkJoinPool}. The result only depends on the values and the threshold.
+	 *
+	 * @param x
+	 *            the first vector.
+	 * @param xOffset
+	 *            index of the first element of {@code x}.
+	 * @param y
+	 *            the second vector.
+	 * @param yOffset
+	 *            index of the first element of {@code y}.
+	 * @param length
+	 *            number of elements.
+	 * @param threshold
+	 *            Number of elements below which a chunk is summed
+	 *            sequentially.
+	 * @return the dot product and its error bound.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public static SumResult dotParallel(double[] x, int xOffset, double[] y, int yOffset, int length,
+			int threshold) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		checkThreshold(threshold);
+		return new SumTask(x, xOffset, y, yOffset, length, threshold).invoke()
+				.getResult();
+	}
+
+	private static void checkThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive: "
+					+ threshold);
+		}
+	}
+
+	/**
+	 * Sums a checked range, or the magnitudes of its values, pairwise.
+	 */
+	private static double pairwise(double[] values, int offset, int length, boolean abs) {
+		if (length <= PAIRWISE_BLOCK) {
+			double sum = 0;
+			for (int i = offset; i < offset
+					+ length; i++) {
+				sum += abs ? Math.abs(values[i]) : values[i];
+			}
+			return sum;
+		}
+		final int half = length >>> 1;
+		return pairwise(values, offset, half, abs)
+				+ pairwise(values, offset
+						+ half,
+						length
+								- half,
+						abs);
+	}
+
+	/**
+	 * Returns the largest number of roundings any value goes through in
+	 * {@link #pairwise(double[], int, int, boolean)}.
+	 */
+	static int pairwiseDepth(int length) {
+		if (length <= PAIRWISE_BLOCK) {
+			return Math.max(0, length
+					- 1);
+		}
+		// the larger half determines the depth
+		return 1
+				+ pairwiseDepth(length
+						- (length >>> 1));
+	}
+
+	/**
+	 * Splits a compensated sum or dot product in halves until each chunk is
+	 * no larger than the threshold, and merges the partial sums from left to
+	 * right.
+	 */
+	private static final class SumTask extends RecursiveTask<CompensatedSum> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] x;
+		private final int xOffset;
+		/** The second vector of a dot product, {@code null} for a sum. */
+		private final double[] y;
+		private final int yOffset;
+		private final int length;
+		private final int threshold;
+
+		SumTask(double[] x, int xOffset, double[] y, int yOffset, int length, int threshold) {
+			this.x = x;
+			this.xOffset = xOffset;
+			this.y = y;
+			this.yOffset = yOffset;
+			this.length = length;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected CompensatedSum compute() {
+			if (length <= threshold) {
+				final CompensatedSum sum = new CompensatedSum();
+				if (y == null) {
+					sum.addRange(x, xOffset, length);
+				} else {
+					sum.addProducts(x, xOffset, y, yOffset, length);
+				}
+				return sum;
+			}
+			final int half = length >>> 1;
+			final SumTask left = new SumTask(x, xOffset, y, yOffset, half, threshold);
+			final SumTask right = new SumTask(x, xOffset
+					+ half, y, yOffset
+							+ half,
+					length
+							- half,
+					threshold);
+			right.fork();
+			final CompensatedSum sum = left.compute();
+			sum.merge(right.join());
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,548 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * An immutable tolerance deciding whether two double values are equal.
+ * <p>
+ * A tolerance is created once, for example per column of a data set, and
+ * applied to any number of values. The implementations are final and their
+ * bulk kernels call their own scalar {@link #test(double, double)}, so every
+ * loop stays monomorphic and can be inlined and unrolled by the JIT instead
+ * of branching on the kind of tolerance per value.
+ * </p>
+ * <p>
+ * Unless {@link #includingNaN()} is used NaN is not equal to anything,
+ * itself included, as in {@link PrecisionAssert}.
+ * </p>
+ */
+public abstract class Tolerance {
+
+	/** Whether two NaN values are equal. */
+	final boolean nanEqual;
+
+	/**
+	 * Restricts the implementations to this package.
+	 */
+	Tolerance(boolean nanEqual) {
+		this.nanEqual = nanEqual;
+	}
+
+	/**
+	 * Returns a tolerance equivalent to
+	 * {@link PrecisionAssert#equals(double, double, double) equals(x, y,
+	 * eps)}.
+	 *
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public static Absolute absolute(double eps) {
+		checkEps(eps);
+		return new Absolute(eps, false);
+	}
+
+	/**
+	 * Returns a tolerance equivalent to
+	 * {@link PrecisionAssert#equalsWithRelativeTolerance(double, double, double)
+	 * equalsWithRelativeTolerance(x, y, eps)}.
+	 *
+	 * @param eps
+	 *            Amount of allowed relative error.
+	 * @return the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public static Relative relative(double eps) {
+		checkEps(eps);
+		return new Relative(eps, false);
+	}
+
+	/**
+	 * Returns a tolerance equivalent to
+	 * {@link PrecisionAssert#equals(double, double, int) equals(x, y,
+	 * maxUlps)}.
+	 *
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between two equal values.
+	 * @return the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxUlps} is negative.
+	 */
+	public static Ulps ulps(int maxUlps) {
+		if (maxUlps < 0) {
+			throw new IllegalArgumentException("maxUlps must not be negative: "
+					+ maxUlps);
+		}
+		return new Ulps(maxUlps, false);
+	}
+
+	/**
+	 * Returns a tolerance under which two values are equal if they are equal
+	 * under any of the absolute, relative or ulp tolerances.
+	 *
+	 * @param absoluteEps
+	 *            Amount of allowed absolute error.
+	 * @param relativeEps
+	 *            Amount of allowed relative error.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between two equal values.
+	 * @return the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if an eps is negative or NaN, or {@code maxUlps} is
+	 *             negative.
+	 */
+	public static Combined combined(double absoluteEps, double relativeEps, int maxUlps) {
+		checkEps(absoluteEps);
+		checkEps(relativeEps);
+		if (maxUlps < 0) {
+			throw new IllegalArgumentException("maxUlps must not be negative: "
+					+ maxUlps);
+		}
+		return new Combined(absoluteEps, relativeEps, maxUlps, false);
+	}
+
+	/**
+	 * Returns the same tolerance under which two NaN values are equal, like
+	 * the {@code equalsIncludingNaN} methods of {@link PrecisionAssert}.
+	 *
+	 * @return the tolerance including NaN.
+	 */
+	public abstract Tolerance includingNaN();
+
+	/**
+	 * Returns whether two NaN values are equal under this tolerance.
+	 *
+	 * @return {@code true} if NaN is equal to NaN.
+	 */
+	public boolean isNaNEqual() {
+		return nanEqual;
+	}
+
+	/**
+	 * Returns whether two values are equal under this tolerance.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 * @return {@code true} if the values are equal.
+	 */
+	public abstract boolean test(double x, double y);
+
+	/**
+	 * Returns true if both arrays have the same length and every pair of
+	 * elements is equal under this tolerance.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @return {@code true} if the arrays are element-wise equal.
+	 */
+	public final boolean test(double[] x, double[] y) {
+		return x.length == y.length
+				&& mismatchRange(x, 0, y, 0, x.length) < 0;
+	}
+
+	/**
+	 * Finds the first pair of elements in the given ranges that is not equal
+	 * under this tolerance.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @return the index of the first mismatch relative to the offsets, or -1
+	 *         if there is none.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public final int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		ArrayRange.check(x.length, xOffset, length);
+		ArrayRange.check(y.length, yOffset, length);
+		return mismatchRange(x, xOffset, y, yOffset, length);
+	}
+
+	/**
+	 * Finds the first mismatch in ranges that have already been checked.
+	 * Every implementation loops over its own final
+	 * {@link #test(double, double)}.
+	 */
+	abstract int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * Decides a comparison involving NaN.
+	 */
+	final boolean testNaN(double x, double y) {
+		return nanEqual
+				&& x != x
+				&& y != y;
+	}
+
+	/**
+	 * Returns the suffix appended by {@link #toString()} for a tolerance
+	 * including NaN.
+	 */
+	final String nanSuffix() {
+		return nanEqual ? ", includingNaN" : "";
+	}
+
+	private static void checkEps(double eps) {
+		if (!(eps >= 0)) {
+			throw new IllegalArgumentException("eps must not be negative: "
+					+ eps);
+		}
+	}
+
+	/**
+	 * Values are equal if they are adjacent or within an absolute error.
+	 */
+	public static final class Absolute extends Tolerance {
+
+		private final double eps;
+
+		Absolute(double eps, boolean nanEqual) {
+			super(nanEqual);
+			this.eps = eps;
+		}
+
+		/**
+		 * Returns the amount of allowed absolute error.
+		 *
+		 * @return the eps.
+		 */
+		public double getEps() {
+			return eps;
+		}
+
+		@Override
+		public Absolute includingNaN() {
+			return new Absolute(eps, true);
+		}
+
+		@Override
+		public boolean test(double x, double y) {
+			if (x != x
+					|| y != y) {
+				return testNaN(x, y);
+			}
+			return PrecisionAssert.equals(x, y, eps);
+		}
+
+		@Override
+		int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length) {
+			for (int i = 0; i < length; i++) {
+				if (!test(x[xOffset
+						+ i],
+						y[yOffset
+								+ i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Absolute
+					&& Double.compare(eps, ((Absolute) o).eps) == 0
+					&& nanEqual == ((Absolute) o).nanEqual;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31
+					* Double.hashCode(eps)
+					+ Boolean.hashCode(nanEqual);
+		}
+
+		@Override
+		public String toString() {
+			return "Absolute[eps="
+					+ eps
+					+ nanSuffix()
+					+ "]";
+		}
+	}
+
+	/**
+	 * Values are equal if they are adjacent or within a relative error.
+	 */
+	public static final class Relative extends Tolerance {
+
+		private final double eps;
+
+		Relative(double eps, boolean nanEqual) {
+			super(nanEqual);
+			this.eps = eps;
+		}
+
+		/**
+		 * Returns the amount of allowed relative error.
+		 *
+		 * @return the eps.
+		 */
+		public double getEps() {
+			return eps;
+		}
+
+		@Override
+		public Relative includingNaN() {
+			return new Relative(eps, true);
+		}
+
+		@Override
+		public boolean test(double x, double y) {
+			if (x != x
+					|| y != y) {
+				return testNaN(x, y);
+			}
+			return PrecisionAssert.equalsWithRelativeTolerance(x, y, eps);
+		}
+
+		@Override
+		int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length) {
+			for (int i = 0; i < length; i++) {
+				if (!test(x[xOffset
+						+ i],
+						y[yOffset
+								+ i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Relative
+					&& Double.compare(eps, ((Relative) o).eps) == 0
+					&& nanEqual == ((Relative) o).nanEqual;
+		}
+
+		@Override
+		public int hashCode() {
+			return 37
+					* Double.hashCode(eps)
+					+ Boolean.hashCode(nanEqual);
+		}
+
+		@Override
+		public String toString() {
+			return "Relative[eps="
+					+ eps
+					+ nanSuffix()
+					+ "]";
+		}
+	}
+
+	/**
+	 * Values are equal if they are at most a number of ulps apart.
+	 */
+	public static final class Ulps extends Tolerance {
+
+		private final int maxUlps;
+
+		Ulps(int maxUlps, boolean nanEqual) {
+			super(nanEqual);
+			this.maxUlps = maxUlps;
+		}
+
+		/**
+		 * Returns the allowed distance in ulps.
+		 *
+		 * @return the maximal distance.
+		 */
+		public int getMaxUlps() {
+			return maxUlps;
+		}
+
+		@Override
+		public Ulps includingNaN() {
+			return new Ulps(maxUlps, true);
+		}
+
+		@Override
+		public boolean test(double x, double y) {
+			if (x != x
+					|| y != y) {
+				return testNaN(x, y);
+			}
+			return PrecisionAssert.equals(x, y, maxUlps);
+		}
+
+		@Override
+		int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length) {
+			if (!nanEqual) {
+				// same predicate, vectorized where available
+				return UlpKernel.mismatch(x, xOffset, y, yOffset, length, maxUlps);
+			}
+			for (int i = 0; i < length; i++) {
+				if (!test(x[xOffset
+						+ i],
+						y[yOffset
+								+ i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Ulps
+					&& maxUlps == ((Ulps) o).maxUlps
+					&& nanEqual == ((Ulps) o).nanEqual;
+		}
+
+		@Override
+		public int hashCode() {
+			return 41
+					* maxUlps
+					+ Boolean.hashCode(nanEqual);
+		}
+
+		@Override
+		public String toString() {
+			return "Ulps[maxUlps="
+					+ maxUlps
+					+ nanSuffix()
+					+ "]";
+		}
+	}
+
+	/**
+	 * Values are equal if they are equal under an absolute, a relative or an
+	 * ulp tolerance, as defined by
+	 * {@link PrecisionAssert#equals(double, double, double, double, int)}.
+	 */
+	public static final class Combined extends Tolerance {
+
+		private final double absoluteEps;
+		private final double relativeEps;
+		private final int maxUlps;
+
+		Combined(double absoluteEps, double relativeEps, int maxUlps, boolean nanEqual) {
+			super(nanEqual);
+			this.absoluteEps = absoluteEps;
+			this.relativeEps = relativeEps;
+			this.maxUlps = maxUlps;
+		}
+
+		/**
+		 * Returns the amount of allowed absolute error.
+		 *
+		 * @return the absolute eps.
+		 */
+		public double getAbsoluteEps() {
+			return absoluteEps;
+		}
+
+		/**
+		 * Returns the amount of allowed relative error.
+		 *
+		 * @return the relative eps.
+		 */
+		public double getRelativeEps() {
+			return relativeEps;
+		}
+
+		/**
+		 * Returns the allowed distance in ulps.
+		 *
+		 * @return the maximal distance.
+		 */
+		public int getMaxUlps() {
+			return maxUlps;
+		}
+
+		@Override
+		public Combined includingNaN() {
+			return new Combined(absoluteEps, relativeEps, maxUlps, true);
+		}
+
+		@Override
+		public boolean test(double x, double y) {
+			if (x != x
+					|| y != y) {
+				return testNaN(x, y);
+			}
+			return PrecisionAssert.equals(x, y, absoluteEps, relativeEps, maxUlps);
+		}
+
+		@Override
+		int mismatchRange(double[] x, int xOffset, double[] y, int yOffset, int length) {
+			if (!nanEqual) {
+				// same predicate without the NaN branch
+				return PrecisionAssert.mismatchRange(x, xOffset, y, yOffset, length, absoluteEps, relativeEps,
+						maxUlps);
+			}
+			for (int i = 0; i < length; i++) {
+				if (!test(x[xOffset
+						+ i],
+						y[yOffset
+								+ i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Combined)) {
+				return false;
+			}
+			final Combined other = (Combined) o;
+			return Double.compare(absoluteEps, other.absoluteEps) == 0
+					&& Double.compare(relativeEps, other.relativeEps) == 0
+					&& maxUlps == other.maxUlps
+					&& nanEqual == other.nanEqual;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((43
+					* Double.hashCode(absoluteEps)
+					+ Double.hashCode(relativeEps))
+					* 31
+					+ maxUlps)
+					* 31
+					+ Boolean.hashCode(nanEqual);
+		}
+
+		@Override
+		public String toString() {
+			return "Combined[absoluteEps="
+					+ absoluteEps
+					+ ", relativeEps="
+					+ relativeEps
+					+ ", maxUlps="
+					+ maxUlps
+					+ nanSuffix()
+					+ "]";
+		}
+	}
+}
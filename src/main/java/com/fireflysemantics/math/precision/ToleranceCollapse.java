@@ -0,0 +1,227 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Sorts double arrays in place and collapses runs of values that are equal
+ * within a {@link Tolerance}, without boxing.
+ * <p>
+ * After sorting into the order of {@link Double#compare(double, double)}, the
+ * smallest value of a run is its representative, and every following value
+ * that is equal to the representative under the tolerance belongs to the
+ * run. The representatives are moved to the front of the range and their
+ * number is returned; the elements after them are unspecified. NaN values
+ * sort last and each forms a run of its own, unless the tolerance
+ * {@link Tolerance#includingNaN() includes NaN}.
+ * </p>
+ * <p>
+ * The sequential methods use no memory beyond {@code O(log n)} stack, see
+ * {@link DoubleSort}. The parallel methods sort the two sides of large
+ * partitions on the common {@link java.util.concurrent.ForkJoinPool
+ * ForkJoinPool}, in place as well.
+ * </p>
+ */
+public final class ToleranceCollapse {
+
+	/**
+	 * Default number of elements below which the parallel methods sort
+	 * sequentially.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Private constructor.
+	 */
+	private ToleranceCollapse() {
+	}
+
+	/**
+	 * Sorts an array and collapses runs of values that are equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, double)}.
+	 *
+	 * @param values
+	 *            the values, sorted and collapsed in place.
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public static int sortAndCollapse(double[] values, double eps) {
+		return sortAndCollapse(values, 0, values.length, Tolerance.absolute(eps), null);
+	}
+
+	/**
+	 * Sorts an array and collapses runs of values that are equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, int)}.
+	 *
+	 * @param values
+	 *            the values, sorted and collapsed in place.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between two values of a run and its representative.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxUlps} is negative.
+	 */
+	public static int sortAndCollapse(double[] values, int maxUlps) {
+		return sortAndCollapse(values, 0, values.length, Tolerance.ulps(maxUlps), null);
+	}
+
+	/**
+	 * Sorts {@code length} elements of {@code values} starting at
+	 * {@code offset} and collapses runs of values that are equal under a
+	 * tolerance.
+	 *
+	 * @param values
+	 *            the values, sorted and collapsed in place.
+	 * @param offset
+	 *            index of the first value.
+	 * @param length
+	 *            number of values.
+	 * @param tolerance
+	 *            the tolerance.
+	 * @param runCounts
+	 *            array receiving the number of values in each run, or
+	 *            {@code null}. It needs one element per run; an array of
+	 *            {@code length} elements always suffices.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds, or if {@code runCounts} is
+	 *             shorter than the number of runs.
+	 */
+	public static int sortAndCollapse(double[] values, int offset, int length, Tolerance tolerance,
+			int[] runCounts) {
+		ArrayRange.check(values.length, offset, length);
+		DoubleSort.sort(values, offset, offset
+				+ length);
+		return collapseRange(values, offset, length, tolerance, runCounts);
+	}
+
+	/**
+	 * Sorts an array in parallel and collapses runs of values that are equal
+	 * under a tolerance, as defined by
+	 * {@link #sortAndCollapse(double[], int, int, Tolerance, int[])}.
+	 *
+	 * @param values
+	 *            the values, sorted and collapsed in place.
+	 * @param tolerance
+	 *            the tolerance.
+	 * @param runCounts
+	 *            array receiving the number of values in each run, or
+	 *            {@code null}.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code runCounts} is shorter than the number of runs.
+	 */
+	public static int sortAndCollapseParallel(double[] values, Tolerance tolerance, int[] runCounts) {
+		return sortAndCollapseParallel(values, 0, values.length, tolerance, runCounts,
+				DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Sorts {@code length} elements of {@code values} starting at
+	 * {@code offset} in parallel and collapses runs of values that are equal
+	 * under a tolerance. The result is the same as
+	 * {@link #sortAndCollapse(double[], int, int, Tolerance, int[])}.
+	 *
+	 * @param values
+	 *            the values, sorted and collapsed in place.
+	 * @param offset
+	 *            index of the first value.
+	 * @param length
+	 *            number of values.
+	 * @param tolerance
+	 *            the tolerance.
+	 * @param runCounts
+	 *            array receiving the number of values in each run, or
+	 *            {@code null}.
+	 * @param threshold
+	 *            Number of elements below which a partition is sorted
+	 *            sequentially.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds, or if {@code runCounts} is
+	 *             shorter than the number of runs.
+	 * @throws IllegalArgumentException
+	 *             if {@code threshold} is not positive.
+	 */
+	public static int sortAndCollapseParallel(double[] values, int offset, int length, Tolerance tolerance,
+			int[] runCounts, int threshold) {
+		ArrayRange.check(values.length, offset, length);
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive: "
+					+ threshold);
+		}
+		DoubleSort.parallelSort(values, offset, offset
+				+ length, threshold);
+		return collapseRange(values, offset, length, tolerance, runCounts);
+	}
+
+	/**
+	 * Collapses runs of an already sorted range as defined by
+	 * {@link #sortAndCollapse(double[], int, int, Tolerance, int[])}.
+	 *
+	 * @param values
+	 *            the values, sorted as by
+	 *            {@link java.util.Arrays#sort(double[])}, collapsed in place.
+	 * @param offset
+	 *            index of the first value.
+	 * @param length
+	 *            number of values.
+	 * @param tolerance
+	 *            the tolerance.
+	 * @param runCounts
+	 *            array receiving the number of values in each run, or
+	 *            {@code null}.
+	 * @return the number of runs, i.e. the new logical length.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the range is out of bounds, or if {@code runCounts} is
+	 *             shorter than the number of runs.
+	 */
+	public static int collapseSorted(double[] values, int offset, int length, Tolerance tolerance,
+			int[] runCounts) {
+		ArrayRange.check(values.length, offset, length);
+		return collapseRange(values, offset, length, tolerance, runCounts);
+	}
+
+	/**
+	 * Collapses a checked, sorted range.
+	 */
+	private static int collapseRange(double[] values, int offset, int length, Tolerance tolerance,
+			int[] runCounts) {
+		final int end = offset
+				+ length;
+		int runs = 0;
+		int i = offset;
+		while (i < end) {
+			final double representative = values[i];
+			int j = i
+					+ 1;
+			while (j < end
+					&& tolerance.test(representative, values[j])) {
+				j++;
+			}
+			if (runCounts != null) {
+				runCounts[runs] = j
+						- i;
+			}
+			values[offset
+					+ runs] = representative;
+			runs++;
+			i = j;
+		}
+		return runs;
+	}
+}
@@ -0,0 +1,451 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Groups double values that are equal within a tolerance, as defined by
+ * {@link PrecisionAssert#equals(double, double, double)} or
+ * {@link PrecisionAssert#equals(double, double, int)}, without boxing.
+ * <p>
+ * The first value inserted into a group becomes its representative. A value
+ * belongs to the group of the closest representative it is equal to; if there
+ * is none it starts a new group. Group ids are assigned consecutively from 0.
+ * Since tolerance equality is not transitive the groups depend on the
+ * insertion order.
+ * </p>
+ * <p>
+ * Representatives are bucketed into grid cells such that equal values always
+ * fall into the same or adjacent cells, so a lookup probes three cells of an
+ * open addressing hash table. For an absolute tolerance the cells are
+ * {@code 2 * eps} wide up to the magnitude where adjacent doubles are more
+ * than {@code eps} apart, and one ulp wide beyond it. For an ulp tolerance the
+ * cells are {@code maxUlps} ulps wide.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class ToleranceDoubleIndex {
+
+	/** Initial number of hash table slots. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Multiplier used to spread cell keys over the table. */
+	private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+	/** Marks an empty slot or the end of a cell's list. */
+	private static final int NONE = -1;
+
+	/** Whether the tolerance is in ulps. */
+	private final boolean ulps;
+
+	/** The absolute tolerance, unused for an ulp tolerance. */
+	private final double eps;
+
+	/** The ulp tolerance, unused for an absolute tolerance. */
+	private final int maxUlps;
+
+	/** Width of a cell, in value units or ulps. */
+	private final double width;
+
+	/** Width of a cell in ulps. */
+	private final long ulpWidth;
+
+	/** Magnitude from which cells are one ulp wide. */
+	private final double threshold;
+
+	/** Bits of {@link #threshold}. */
+	private final long thresholdBits;
+
+	/** Cell of {@link #threshold}. */
+	private final long upperCell;
+
+	/** Cell of {@code -threshold}. */
+	private final long lowerCell;
+
+	/** Cell key of each slot. */
+	private long[] keys;
+
+	/** First representative of each slot, or {@link #NONE}. */
+	private int[] heads;
+
+	/** Number of occupied slots. */
+	private int occupied;
+
+	/** Representative of each group. */
+	private double[] values;
+
+	/** Number of values inserted into each group. */
+	private long[] counts;
+
+	/** Next representative in the same cell. */
+	private int[] next;
+
+	/** Number of groups. */
+	private int size;
+
+	/**
+	 * Creates an index for an absolute or ulp tolerance.
+	 */
+	private ToleranceDoubleIndex(boolean ulps, double eps, int maxUlps) {
+		this.ulps = ulps;
+		this.eps = eps;
+		this.maxUlps = maxUlps;
+		this.ulpWidth = Math.max(1, maxUlps);
+		if (ulps
+				|| eps < Double.MIN_VALUE) {
+			// every value is in the ulp grid
+			this.width = 0;
+			this.threshold = 0;
+		} else {
+			this.width = 2
+					* eps;
+			this.threshold = Math.scalb(1.0, ceilLog2(eps)
+					+ 52);
+		}
+		this.thresholdBits = Double.doubleToRawLongBits(threshold);
+		this.upperCell = width == 0 ? 0 : (long) Math.floor(threshold
+				/ width);
+		this.lowerCell = width == 0 ? 0 : (long) Math.floor(-threshold
+				/ width);
+		clear();
+	}
+
+	/**
+	 * Creates an index grouping values equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, double) equals(x, y,
+	 * eps)}.
+	 *
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return an empty index.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative, infinite or NaN.
+	 */
+	public static ToleranceDoubleIndex absolute(double eps) {
+		if (!(eps >= 0)
+				|| Double.isInfinite(eps)) {
+			throw new IllegalArgumentException("eps must be finite and non-negative: "
+					+ eps);
+		}
+		return new ToleranceDoubleIndex(false, eps, 1);
+	}
+
+	/**
+	 * Creates an index grouping values equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, int) equals(x, y,
+	 * maxUlps)}.
+	 *
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between two equal values.
+	 * @return an empty index.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxUlps} is negative.
+	 */
+	public static ToleranceDoubleIndex ulps(int maxUlps) {
+		if (maxUlps < 0) {
+			throw new IllegalArgumentException("maxUlps must not be negative: "
+					+ maxUlps);
+		}
+		return new ToleranceDoubleIndex(true, 0, maxUlps);
+	}
+
+	/**
+	 * Adds a value to the group of the closest equal representative, or
+	 * starts a new group.
+	 *
+	 * @param x
+	 *            the value to add.
+	 * @return the id of the group the value was added to.
+	 * @throws IllegalArgumentException
+	 *             if {@code x} is NaN, which is not equal to any value.
+	 */
+	public int insert(double x) {
+		if (Double.isNaN(x)) {
+			throw new IllegalArgumentException("NaN cannot be grouped");
+		}
+		final long cell = cell(x);
+		final int id = find(x, cell);
+		if (id != NONE) {
+			counts[id]++;
+			return id;
+		}
+		if (size == values.length) {
+			final int capacity = 2
+					* size;
+			values = Arrays.copyOf(values, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			next = Arrays.copyOf(next, capacity);
+		}
+		if (2
+				* (occupied
+						+ 1) > keys.length) {
+			rehash(2
+					* keys.length);
+		}
+		final int group = size++;
+		values[group] = x;
+		counts[group] = 1;
+		final int slot = slot(cell);
+		if (heads[slot] == NONE) {
+			keys[slot] = cell;
+			occupied++;
+		}
+		next[group] = heads[slot];
+		heads[slot] = group;
+		return group;
+	}
+
+	/**
+	 * Returns whether a representative equal to {@code x} exists.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return {@code true} if {@code x} belongs to a group.
+	 */
+	public boolean contains(double x) {
+		return groupId(x) != NONE;
+	}
+
+	/**
+	 * Returns the id of the group of the closest representative equal to
+	 * {@code x}.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the group id, or -1 if no representative is equal to {@code x}.
+	 */
+	public int groupId(double x) {
+		if (Double.isNaN(x)) {
+			return NONE;
+		}
+		return find(x, cell(x));
+	}
+
+	/**
+	 * Returns the number of groups.
+	 *
+	 * @return the number of groups.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the representative of a group, i.e. the first value inserted
+	 * into it.
+	 *
+	 * @param groupId
+	 *            the group id.
+	 * @return the representative.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such group.
+	 */
+	public double get(int groupId) {
+		checkGroup(groupId);
+		return values[groupId];
+	}
+
+	/**
+	 * Returns the number of values inserted into a group.
+	 *
+	 * @param groupId
+	 *            the group id.
+	 * @return the number of values.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such group.
+	 */
+	public long getCount(int groupId) {
+		checkGroup(groupId);
+		return counts[groupId];
+	}
+
+	/**
+	 * Returns the representatives ordered by group id.
+	 *
+	 * @return a new array of length {@link #size()}.
+	 */
+	public double[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Returns an iterator over the representatives ordered by group id.
+	 *
+	 * @return an iterator that does not box the values.
+	 */
+	public PrimitiveIterator.OfDouble iterator() {
+		return new PrimitiveIterator.OfDouble() {
+
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public double nextDouble() {
+				if (index >= size) {
+					throw new NoSuchElementException();
+				}
+				return values[index++];
+			}
+		};
+	}
+
+	/**
+	 * Removes all groups.
+	 */
+	public void clear() {
+		keys = new long[INITIAL_CAPACITY];
+		heads = new int[INITIAL_CAPACITY];
+		Arrays.fill(heads, NONE);
+		occupied = 0;
+		values = new double[INITIAL_CAPACITY];
+		counts = new long[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Finds the closest equal representative in the cell of {@code x} and its
+	 * neighbours.
+	 */
+	private int find(double x, long cell) {
+		int best = NONE;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (long c = cell
+				- 1; c <= cell
+						+ 1; c++) {
+			final int slot = slot(c);
+			for (int id = heads[slot]; id != NONE; id = next[id]) {
+				final double r = values[id];
+				if (ulps ? PrecisionAssert.equals(x, r, maxUlps) : PrecisionAssert.equals(x, r, eps)) {
+					final double distance = ulps ? PrecisionAssert.ulpDistance(x, r)
+							: Math.abs(x
+									- r);
+					if (best == NONE
+							|| distance < bestDistance
+							|| (distance == bestDistance
+									&& id < best)) {
+						best = id;
+						bestDistance = distance;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the slot holding {@code cell}, or the empty slot where it
+	 * belongs.
+	 */
+	private int slot(long cell) {
+		final int mask = keys.length
+				- 1;
+		// the top bits of the product are the best mixed ones
+		int slot = (int) ((cell
+				* GOLDEN_RATIO) >>> Long.numberOfLeadingZeros(mask));
+		while (heads[slot] != NONE
+				&& keys[slot] != cell) {
+			slot = (slot
+					+ 1)
+					& mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Grows the hash table, keeping the lists of representatives per cell.
+	 */
+	private void rehash(int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldHeads = heads;
+		keys = new long[capacity];
+		heads = new int[capacity];
+		Arrays.fill(heads, NONE);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] != NONE) {
+				final int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+
+	/**
+	 * Maps a value to its grid cell. The mapping is monotone and values that
+	 * are equal within the tolerance map to cells at most one apart.
+	 */
+	long cell(double x) {
+		final long bits = Double.doubleToRawLongBits(x);
+		// order the bits like the doubles, with both zeros at 0
+		final long ordered = bits < 0 ? -(bits & Long.MAX_VALUE) : bits;
+		if (ulps) {
+			return Math.floorDiv(ordered, ulpWidth);
+		}
+		if (Math.abs(x) < threshold) {
+			return (long) Math.floor(x
+					/ width);
+		} else if (Double.isInfinite(threshold)) {
+			// huge eps, all finite values are in the value grid
+			return x > 0 ? (long) Math.floor(Double.MAX_VALUE
+					/ width)
+					+ 1
+					: (long) Math.floor(-Double.MAX_VALUE
+							/ width)
+							- 1;
+		} else if (ordered >= 0) {
+			return upperCell
+					+ (ordered
+							- thresholdBits);
+		}
+		return lowerCell
+				+ (ordered
+						+ thresholdBits);
+	}
+
+	/**
+	 * Returns the smallest {@code n} with {@code 2^n >= eps} for a positive
+	 * {@code eps}.
+	 */
+	private static int ceilLog2(double eps) {
+		final int floorLog2 = eps >= Double.MIN_NORMAL ? Math.getExponent(eps)
+				: Math.getExponent(eps
+						* 0x1p52)
+						- 52;
+		return Math.scalb(1.0, floorLog2) == eps ? floorLog2 : floorLog2
+				+ 1;
+	}
+
+	/**
+	 * Checks that a group exists.
+	 */
+	private void checkGroup(int groupId) {
+		if (groupId < 0
+				|| groupId >= size) {
+			throw new IndexOutOfBoundsException("No group "
+					+ groupId
+					+ ", size "
+					+ size);
+		}
+	}
+}
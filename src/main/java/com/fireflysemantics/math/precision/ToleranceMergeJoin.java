@@ -0,0 +1,295 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.nio.DoubleBuffer;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Joins two sorted columns of doubles, matching values that are equal within
+ * a {@link Tolerance}, in linear time and constant memory.
+ * <p>
+ * Both sides must be sorted in the order of
+ * {@link Double#compare(double, double)}, e.g. by
+ * {@link java.util.Arrays#sort(double[])}, and are consumed once. The join
+ * walks both sides together: if the two current values are equal under the
+ * tolerance they are reported as a match and both sides advance, otherwise
+ * the smaller value is reported as unmatched and its side advances. Every
+ * value is matched at most once. NaN values sort last and only match under a
+ * tolerance that {@link Tolerance#includingNaN() includes NaN}.
+ * </p>
+ * <p>
+ * Indices are zero based positions within each side, i.e. relative to the
+ * offset, the buffer position or the first value of the iterator.
+ * </p>
+ */
+public final class ToleranceMergeJoin {
+
+	/**
+	 * Receives the result of a join in ascending order of both sides.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called for a pair of values that are equal under the tolerance.
+		 *
+		 * @param leftIndex
+		 *            index of the left value.
+		 * @param rightIndex
+		 *            index of the right value.
+		 */
+		void matched(long leftIndex, long rightIndex);
+
+		/**
+		 * Called for a left value without a match. Does nothing by default.
+		 *
+		 * @param leftIndex
+		 *            index of the left value.
+		 */
+		default void leftOnly(long leftIndex) {
+		}
+
+		/**
+		 * Called for a right value without a match. Does nothing by default.
+		 *
+		 * @param rightIndex
+		 *            index of the right value.
+		 */
+		default void rightOnly(long rightIndex) {
+		}
+	}
+
+	/**
+	 * Private constructor.
+	 */
+	private ToleranceMergeJoin() {
+	}
+
+	/**
+	 * Joins two sorted arrays.
+	 *
+	 * @param left
+	 *            the sorted left values.
+	 * @param right
+	 *            the sorted right values.
+	 * @param tolerance
+	 *            the tolerance deciding matches.
+	 * @param listener
+	 *            receives the matched and unmatched indices.
+	 * @return the number of matches.
+	 * @throws IllegalArgumentException
+	 *             if a side is not sorted.
+	 */
+	public static long join(double[] left, double[] right, Tolerance tolerance, Listener listener) {
+		return join(left, 0, left.length, right, 0, right.length, tolerance, listener);
+	}
+
+	/**
+	 * Joins sorted ranges of two arrays.
+	 *
+	 * @param left
+	 *            the left values.
+	 * @param leftOffset
+	 *            index of the first left value.
+	 * @param leftLength
+	 *            number of left values, sorted.
+	 * @param right
+	 *            the right values.
+	 * @param rightOffset
+	 *            index of the first right value.
+	 * @param rightLength
+	 *            number of right values, sorted.
+	 * @param tolerance
+	 *            the tolerance deciding matches.
+	 * @param listener
+	 *            receives the matched and unmatched indices, relative to the
+	 *            offsets.
+	 * @return the number of matches.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 * @throws IllegalArgumentException
+	 *             if a side is not sorted.
+	 */
+	public static long join(double[] left, int leftOffset, int leftLength, double[] right, int rightOffset,
+			int rightLength, Tolerance tolerance, Listener listener) {
+		ArrayRange.check(left.length, leftOffset, leftLength);
+		ArrayRange.check(right.length, rightOffset, rightLength);
+		return join(new ArrayIterator(left, leftOffset, leftLength), new ArrayIterator(right, rightOffset,
+				rightLength), tolerance, listener);
+	}
+
+	/**
+	 * Joins the remaining elements of two sorted buffers, which may be views
+	 * of off-heap memory. The positions of the buffers are not changed.
+	 *
+	 * @param left
+	 *            the sorted left values.
+	 * @param right
+	 *            the sorted right values.
+	 * @param tolerance
+	 *            the tolerance deciding matches.
+	 * @param listener
+	 *            receives the matched and unmatched indices, relative to the
+	 *            positions.
+	 * @return the number of matches.
+	 * @throws IllegalArgumentException
+	 *             if a side is not sorted.
+	 */
+	public static long join(DoubleBuffer left, DoubleBuffer right, Tolerance tolerance, Listener listener) {
+		return join(new BufferIterator(left), new BufferIterator(right), tolerance, listener);
+	}
+
+	/**
+	 * Joins two sorted streams of values.
+	 *
+	 * @param left
+	 *            the sorted left values, consumed.
+	 * @param right
+	 *            the sorted right values, consumed.
+	 * @param tolerance
+	 *            the tolerance deciding matches.
+	 * @param listener
+	 *            receives the matched and unmatched indices.
+	 * @return the number of matches.
+	 * @throws IllegalArgumentException
+	 *             if a side is not sorted.
+	 */
+	public static long join(PrimitiveIterator.OfDouble left, PrimitiveIterator.OfDouble right,
+			Tolerance tolerance, Listener listener) {
+		final SortedCursor l = new SortedCursor(left, "left");
+		final SortedCursor r = new SortedCursor(right, "right");
+		long matches = 0;
+		while (l.valid
+				&& r.valid) {
+			if (tolerance.test(l.value, r.value)) {
+				listener.matched(l.index, r.index);
+				matches++;
+				l.advance();
+				r.advance();
+			} else if (Double.compare(l.value, r.value) < 0) {
+				listener.leftOnly(l.index);
+				l.advance();
+			} else {
+				listener.rightOnly(r.index);
+				r.advance();
+			}
+		}
+		while (l.valid) {
+			listener.leftOnly(l.index);
+			l.advance();
+		}
+		while (r.valid) {
+			listener.rightOnly(r.index);
+			r.advance();
+		}
+		return matches;
+	}
+
+	/**
+	 * The current value of one side, checking that the side is sorted.
+	 */
+	private static final class SortedCursor {
+
+		private final PrimitiveIterator.OfDouble values;
+		private final String side;
+		boolean valid;
+		double value;
+		long index = -1;
+
+		SortedCursor(PrimitiveIterator.OfDouble values, String side) {
+			this.values = values;
+			this.side = side;
+			advance();
+		}
+
+		void advance() {
+			if (!values.hasNext()) {
+				valid = false;
+				return;
+			}
+			final double next = values.nextDouble();
+			if (valid
+					&& Double.compare(next, value) < 0) {
+				throw new IllegalArgumentException(side
+						+ " side is not sorted at index "
+						+ (index
+								+ 1));
+			}
+			valid = true;
+			value = next;
+			index++;
+		}
+	}
+
+	/**
+	 * Iterates over a range of an array.
+	 */
+	private static final class ArrayIterator implements PrimitiveIterator.OfDouble {
+
+		private final double[] values;
+		private int index;
+		private final int end;
+
+		ArrayIterator(double[] values, int offset, int length) {
+			this.values = values;
+			this.index = offset;
+			this.end = offset
+					+ length;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < end;
+		}
+
+		@Override
+		public double nextDouble() {
+			if (index >= end) {
+				throw new NoSuchElementException();
+			}
+			return values[index++];
+		}
+	}
+
+	/**
+	 * Iterates over the remaining elements of a buffer with absolute reads.
+	 */
+	private static final class BufferIterator implements PrimitiveIterator.OfDouble {
+
+		private final DoubleBuffer values;
+		private int index;
+		private final int end;
+
+		BufferIterator(DoubleBuffer values) {
+			this.values = values;
+			this.index = values.position();
+			this.end = values.limit();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < end;
+		}
+
+		@Override
+		public double nextDouble() {
+			if (index >= end) {
+				throw new NoSuchElementException();
+			}
+			return values.get(index++);
+		}
+	}
+}
@@ -0,0 +1,504 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sorted set of double values supporting nearest neighbour and
+ * tolerance window lookups, without boxing.
+ * <p>
+ * The values are stored as order preserving long keys: the bits of a
+ * non-negative double, or the bits with the magnitude inverted for a negative
+ * one. Lookups binary search the keys with integer comparisons only. The order
+ * is the one of {@link Double#compare(double, double)}, so {@code -0.0} is
+ * smaller than {@code 0.0} and both may be members. NaN is never a member.
+ * </p>
+ */
+public final class ToleranceSortedDoubleSet {
+
+	/** The empty set. */
+	private static final ToleranceSortedDoubleSet EMPTY = new ToleranceSortedDoubleSet(new long[0]);
+
+	/** Sorted distinct keys of the values. */
+	private final long[] keys;
+
+	/**
+	 * Creates a set from sorted distinct keys.
+	 */
+	private ToleranceSortedDoubleSet(long[] keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * Creates a set of the given values. Duplicates are removed.
+	 *
+	 * @param values
+	 *            the values, in any order.
+	 * @return a new set.
+	 * @throws IllegalArgumentException
+	 *             if a value is NaN.
+	 */
+	public static ToleranceSortedDoubleSet of(double... values) {
+		if (values.length == 0) {
+			return EMPTY;
+		}
+		final long[] keys = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (Double.isNaN(values[i])) {
+				throw new IllegalArgumentException("NaN at index "
+						+ i);
+			}
+			keys[i] = key(values[i]);
+		}
+		Arrays.sort(keys);
+		int size = 1;
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i] != keys[size
+					- 1]) {
+				keys[size++] = keys[i];
+			}
+		}
+		return new ToleranceSortedDoubleSet(size == keys.length ? keys : Arrays.copyOf(keys, size));
+	}
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return the number of values.
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the value at a position in ascending order.
+	 *
+	 * @param index
+	 *            the position.
+	 * @return the value.
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if {@code index} is not in {@code [0, size())}.
+	 */
+	public double get(int index) {
+		return value(keys[index]);
+	}
+
+	/**
+	 * Returns the values in ascending order.
+	 *
+	 * @return a new array of length {@link #size()}.
+	 */
+	public double[] toArray() {
+		final double[] values = new double[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = value(keys[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns whether the value is a member, comparing bit patterns.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return {@code true} if {@code x} is a member.
+	 */
+	public boolean contains(double x) {
+		return !Double.isNaN(x)
+				&& Arrays.binarySearch(keys, key(x)) >= 0;
+	}
+
+	/**
+	 * Returns the position of the greatest value less than or equal to
+	 * {@code x}.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the position, or -1 if there is none or {@code x} is NaN.
+	 */
+	public int floorIndex(double x) {
+		if (Double.isNaN(x)) {
+			return -1;
+		}
+		return upperBound(key(x))
+				- 1;
+	}
+
+	/**
+	 * Returns the position of the least value greater than or equal to
+	 * {@code x}.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the position, or -1 if there is none or {@code x} is NaN.
+	 */
+	public int ceilingIndex(double x) {
+		if (Double.isNaN(x)) {
+			return -1;
+		}
+		final int index = lowerBound(key(x));
+		return index < keys.length ? index : -1;
+	}
+
+	/**
+	 * Returns the position of the value closest to {@code x}. If two values
+	 * are equally close the smaller one is chosen.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the position, or -1 if the set is empty or {@code x} is NaN.
+	 */
+	public int nearestIndex(double x) {
+		if (Double.isNaN(x)) {
+			return -1;
+		}
+		final long key = key(x);
+		final int ceiling = lowerBound(key);
+		if (ceiling == keys.length) {
+			return ceiling
+					- 1;
+		}
+		if (ceiling == 0
+				|| keys[ceiling] == key) {
+			return ceiling;
+		}
+		final int floor = ceiling
+				- 1;
+		return x
+				- get(floor) <= get(ceiling)
+						- x ? floor : ceiling;
+	}
+
+	/**
+	 * Returns the greatest value less than or equal to {@code x}.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the value, or NaN if there is none or {@code x} is NaN.
+	 */
+	public double floor(double x) {
+		return valueAt(floorIndex(x));
+	}
+
+	/**
+	 * Returns the least value greater than or equal to {@code x}.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the value, or NaN if there is none or {@code x} is NaN.
+	 */
+	public double ceiling(double x) {
+		return valueAt(ceilingIndex(x));
+	}
+
+	/**
+	 * Returns the value closest to {@code x}. If two values are equally close
+	 * the smaller one is returned.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @return the value, or NaN if the set is empty or {@code x} is NaN.
+	 */
+	public double nearest(double x) {
+		return valueAt(nearestIndex(x));
+	}
+
+	/**
+	 * Returns the position of the smallest value {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, double) equals(x, y, eps)}
+	 * holds. The values equal to {@code x} are contiguous and there are
+	 * {@link #countWithin(double, double)} of them.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return the position, or -1 if no value is equal to {@code x}.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public int firstIndexWithin(double x, double eps) {
+		final int from = fromWithin(x, eps);
+		return from < toWithin(x, eps) ? from : -1;
+	}
+
+	/**
+	 * Returns the number of values {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, double) equals(x, y, eps)}
+	 * holds.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return the number of equal values.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public int countWithin(double x, double eps) {
+		return Math.max(0, toWithin(x, eps)
+				- fromWithin(x, eps));
+	}
+
+	/**
+	 * Returns the values {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, double) equals(x, y, eps)}
+	 * holds.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param eps
+	 *            Amount of allowed absolute error.
+	 * @return a new array of the equal values in ascending order.
+	 * @throws IllegalArgumentException
+	 *             if {@code eps} is negative or NaN.
+	 */
+	public double[] rangeWithin(double x, double eps) {
+		return range(fromWithin(x, eps), toWithin(x, eps));
+	}
+
+	/**
+	 * Returns the position of the smallest value {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, int) equals(x, y,
+	 * maxUlps)} holds. The values equal to {@code x} are contiguous and there
+	 * are {@link #countWithin(double, int)} of them.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}.
+	 * @return the position, or -1 if no value is equal to {@code x}.
+	 */
+	public int firstIndexWithin(double x, int maxUlps) {
+		final int from = fromWithin(x, maxUlps);
+		return from < toWithin(x, maxUlps) ? from : -1;
+	}
+
+	/**
+	 * Returns the number of values {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, int) equals(x, y,
+	 * maxUlps)} holds.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}.
+	 * @return the number of equal values.
+	 */
+	public int countWithin(double x, int maxUlps) {
+		return Math.max(0, toWithin(x, maxUlps)
+				- fromWithin(x, maxUlps));
+	}
+
+	/**
+	 * Returns the values {@code y} for which
+	 * {@link PrecisionAssert#equals(double, double, int) equals(x, y,
+	 * maxUlps)} holds.
+	 *
+	 * @param x
+	 *            the value to look up.
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}.
+	 * @return a new array of the equal values in ascending order.
+	 */
+	public double[] rangeWithin(double x, int maxUlps) {
+		return range(fromWithin(x, maxUlps), toWithin(x, maxUlps));
+	}
+
+	/**
+	 * Returns the start of the positions of values within {@code eps} of
+	 * {@code x}.
+	 */
+	private int fromWithin(double x, double eps) {
+		checkEps(eps);
+		if (Double.isNaN(x)) {
+			return 0;
+		}
+		// the rounded bound is within an ulp of the exact one, so only the
+		// values next to the boundary need the exact predicate
+		int from = lowerBound(key(x
+				- eps));
+		final long key = key(x);
+		while (from < keys.length
+				&& keys[from] < key
+				&& !PrecisionAssert.equals(x, get(from), eps)) {
+			from++;
+		}
+		while (from > 0
+				&& PrecisionAssert.equals(x, get(from
+						- 1), eps)) {
+			from--;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the end of the positions of values within {@code eps} of
+	 * {@code x}.
+	 */
+	private int toWithin(double x, double eps) {
+		checkEps(eps);
+		if (Double.isNaN(x)) {
+			return 0;
+		}
+		int to = upperBound(key(x
+				+ eps));
+		final long key = key(x);
+		while (to > 0
+				&& keys[to
+						- 1] > key
+				&& !PrecisionAssert.equals(x, get(to
+						- 1), eps)) {
+			to--;
+		}
+		while (to < keys.length
+				&& PrecisionAssert.equals(x, get(to), eps)) {
+			to++;
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the start of the positions of values within {@code maxUlps} of
+	 * {@code x}.
+	 */
+	private int fromWithin(double x, int maxUlps) {
+		if (Double.isNaN(x)) {
+			return 0;
+		}
+		// PrecisionAssert counts both zeros as the same point, the keys
+		// place -0.0 one below 0.0
+		final long bound = ulps(key(x))
+				- maxUlps;
+		return lowerBound(bound > 0 ? bound : bound
+				- 1);
+	}
+
+	/**
+	 * Returns the end of the positions of values within {@code maxUlps} of
+	 * {@code x}.
+	 */
+	private int toWithin(double x, int maxUlps) {
+		if (Double.isNaN(x)) {
+			return 0;
+		}
+		final long bound = ulps(key(x))
+				+ maxUlps;
+		return upperBound(bound >= 0 ? bound : bound
+				- 1);
+	}
+
+	/**
+	 * Returns the first position with a key not less than {@code key}.
+	 */
+	private int lowerBound(long key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			final int mid = (low
+					+ high) >>> 1;
+			if (keys[mid] < key) {
+				low = mid
+						+ 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the first position with a key greater than {@code key}.
+	 */
+	private int upperBound(long key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			final int mid = (low
+					+ high) >>> 1;
+			if (keys[mid] <= key) {
+				low = mid
+						+ 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the values at positions {@code [from, to)}, or none if the
+	 * range is empty.
+	 */
+	private double[] range(int from, int to) {
+		if (from >= to) {
+			return new double[0];
+		}
+		final double[] values = new double[to
+				- from];
+		for (int i = from; i < to; i++) {
+			values[i
+					- from] = value(keys[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the value at a position, or NaN for -1.
+	 */
+	private double valueAt(int index) {
+		return index < 0 ? Double.NaN : get(index);
+	}
+
+	/**
+	 * Maps a value to its order preserving key.
+	 */
+	private static long key(double x) {
+		final long bits = Double.doubleToRawLongBits(x);
+		return bits < 0 ? bits
+				^ Long.MAX_VALUE : bits;
+	}
+
+	/**
+	 * Maps a key back to its value.
+	 */
+	private static double value(long key) {
+		return Double.longBitsToDouble(key < 0 ? key
+				^ Long.MAX_VALUE : key);
+	}
+
+	/**
+	 * Maps a key to the signed ulp count used by
+	 * {@link PrecisionAssert#ulpDistance(double, double)}, where both zeros
+	 * are 0.
+	 */
+	private static long ulps(long key) {
+		return key < 0 ? key
+				+ 1 : key;
+	}
+
+	/**
+	 * Checks that an absolute tolerance is usable.
+	 */
+	private static void checkEps(double eps) {
+		if (!(eps >= 0)) {
+			throw new IllegalArgumentException("eps must not be negative: "
+					+ eps);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+
+/**
+ * Streaming histogram of ulp distances as computed by
+ * {@link PrecisionAssert#ulpDistance(double, double)}.
+ * <p>
+ * Distances are counted in logarithmic buckets: distances below
+ * {@value #SUB_BUCKETS} have a bucket of their own, larger distances share a
+ * bucket with the distances that agree in the {@code 4} most significant bits,
+ * i.e. each power of two is split into {@value #SUB_BUCKETS} buckets. The
+ * memory used is constant no matter how many distances are recorded, and
+ * percentiles are reported with a relative error of at most 1/16.
+ * </p>
+ * <p>
+ * Instances are not thread safe. Record into one histogram per thread and
+ * {@link #merge(UlpHistogram) merge} them afterwards.
+ * </p>
+ */
+public class UlpHistogram {
+
+	/** log<sub>2</sub> of {@link #SUB_BUCKETS}. */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/** Number of buckets per power of two. */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Number of buckets needed for all non-negative long distances. */
+	private static final int BUCKETS = SUB_BUCKETS
+			* (64
+					- SUB_BUCKET_BITS);
+
+	/** Count of distances per bucket. */
+	private final long[] counts = new long[BUCKETS];
+
+	/** Number of distances recorded. */
+	private long count;
+
+	/** Number of comparisons involving NaN. */
+	private long nanCount;
+
+	/** Largest distance recorded. */
+	private long max;
+
+	/**
+	 * Records the ulp distance between two values. Comparisons where either
+	 * value is NaN are only counted by {@link #getNaNCount()}.
+	 *
+	 * @param x
+	 *            first value
+	 * @param y
+	 *            second value
+	 */
+	public void record(double x, double y) {
+		if (Double.isNaN(x)
+				|| Double.isNaN(y)) {
+			nanCount++;
+		} else {
+			record(PrecisionAssert.ulpDistance(x, y));
+		}
+	}
+
+	/**
+	 * Records the ulp distances between the elements of two arrays with the
+	 * same index.
+	 *
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values, at least as long as {@code x}
+	 */
+	public void record(double[] x, double[] y) {
+		ArrayRange.check(y.length, 0, x.length);
+		for (int i = 0; i < x.length; i++) {
+			record(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Records a distance.
+	 *
+	 * @param distance
+	 *            the non-negative distance in ulps.
+	 * @throws IllegalArgumentException
+	 *             if {@code distance} is negative.
+	 */
+	public void record(long distance) {
+		if (distance < 0) {
+			throw new IllegalArgumentException("distance must not be negative: "
+					+ distance);
+		}
+		counts[bucket(distance)]++;
+		count++;
+		if (distance > max) {
+			max = distance;
+		}
+	}
+
+	/**
+	 * Adds the counts of another histogram to this one.
+	 *
+	 * @param other
+	 *            the histogram to merge, unchanged.
+	 */
+	public void merge(UlpHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		nanCount += other.nanCount;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Clears all counts.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		nanCount = 0;
+		max = 0;
+	}
+
+	/**
+	 * Returns the number of distances recorded, not including comparisons
+	 * involving NaN.
+	 *
+	 * @return the number of distances.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of comparisons where at least one value was NaN.
+	 *
+	 * @return the number of NaN comparisons.
+	 */
+	public long getNaNCount() {
+		return nanCount;
+	}
+
+	/**
+	 * Returns the largest distance recorded. This value is exact.
+	 *
+	 * @return the largest distance, or 0 if no distance has been recorded.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the number of distances that are at most {@code maxUlps}, i.e.
+	 * the number of pairs that are equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, int)}. Exact for
+	 * {@code maxUlps < }{@value #SUB_BUCKETS}, otherwise the count of the
+	 * bucket containing {@code maxUlps} is included in full.
+	 *
+	 * @param maxUlps
+	 *            the largest distance to count.
+	 * @return the number of distances at most {@code maxUlps}.
+	 */
+	public long getCountAtMost(long maxUlps) {
+		if (maxUlps < 0) {
+			return 0;
+		}
+		final int last = bucket(maxUlps);
+		long sum = 0;
+		for (int i = 0; i <= last; i++) {
+			sum += counts[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns an upper bound of the distance below which the given percentage
+	 * of the recorded distances fall. The bound is the largest distance of the
+	 * bucket containing the percentile, capped at {@link #getMax()}.
+	 *
+	 * @param percentile
+	 *            the percentile in {@code (0, 100]}.
+	 * @return the distance at the percentile, or -1 if no distance has been
+	 *         recorded.
+	 * @throws IllegalArgumentException
+	 *             if {@code percentile} is not in {@code (0, 100]}.
+	 */
+	public long getPercentile(double percentile) {
+		if (!(percentile > 0
+				&& percentile <= 100)) {
+			throw new IllegalArgumentException("percentile must be in (0, 100]: "
+					+ percentile);
+		}
+		if (count == 0) {
+			return -1;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile
+				/ 100
+				* count));
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			sum += counts[i];
+			if (sum >= rank) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Maps a distance to its bucket.
+	 */
+	static int bucket(long distance) {
+		if (distance < SUB_BUCKETS) {
+			return (int) distance;
+		}
+		final int shift = 63
+				- Long.numberOfLeadingZeros(distance)
+				- SUB_BUCKET_BITS;
+		return SUB_BUCKETS
+				* (shift
+						+ 1)
+				+ (int) ((distance >>> shift)
+						- SUB_BUCKETS);
+	}
+
+	/**
+	 * Returns the largest distance mapped to a bucket.
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket
+				/ SUB_BUCKETS
+				- 1;
+		final long lower = ((long) (SUB_BUCKETS
+				+ bucket % SUB_BUCKETS)) << shift;
+		return lower
+				+ ((1L << shift)
+						- 1);
+	}
+}
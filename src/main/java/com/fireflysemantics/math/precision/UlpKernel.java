@@ -0,0 +1,89 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Bulk ulp comparison of double arrays. This is the scalar implementation
+ * used on Java 8; the multi-release jar replaces it on newer runtimes with an
+ * implementation using the {@code jdk.incubator.vector} API when that module
+ * is available.
+ */
+final class UlpKernel {
+
+	/**
+	 * Private constructor.
+	 */
+	private UlpKernel() {
+	}
+
+	/**
+	 * Returns whether the comparison is vectorized on this runtime.
+	 *
+	 * @return {@code false}, this implementation is scalar.
+	 */
+	static boolean isVectorized() {
+		return false;
+	}
+
+	/**
+	 * Finds the first pair of values that are not equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, int)}. The ranges must
+	 * have been checked by the caller.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}.
+	 * @return the relative index of the first mismatch, or -1 if there is none.
+	 */
+	static int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length, int maxUlps) {
+		for (int i = 0; i < length; i++) {
+			if (!PrecisionAssert.withinUlps(x[xOffset
+					+ i], y[yOffset
+							+ i],
+					maxUlps)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first pair of values that are not equal as defined by
+	 * {@link PrecisionAssert#equals(float, float, int)}. The ranges must have
+	 * been checked by the caller.
+	 *
+	 * @return the relative index of the first mismatch, or -1 if there is none.
+	 */
+	static int mismatch(float[] x, int xOffset, float[] y, int yOffset, int length, int maxUlps) {
+		for (int i = 0; i < length; i++) {
+			if (!PrecisionAssert.equals(x[xOffset
+					+ i], y[yOffset
+							+ i],
+					maxUlps)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
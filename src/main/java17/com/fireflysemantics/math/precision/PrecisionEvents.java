@@ -0,0 +1,339 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.nio.DoubleBuffer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Hooks reporting slow paths and failed bulk comparisons as Java Flight
+ * Recorder events:
+ * <ul>
+ * <li>{@value #ROUNDING_SLOW_PATH} for every rounding that falls back to
+ * {@link java.math.BigDecimal} and takes longer than the default threshold of
+ * 1 ms, with the input, the scale, the rounding method and the duration,
+ * and</li>
+ * <li>{@value #ULP_MISMATCH} for every bulk double or float ulp comparison in
+ * {@link PrecisionAssert} that finds a mismatch, with the number of
+ * mismatches, the largest ulp distance, sample values and the duration of the
+ * comparison.</li>
+ * </ul>
+ * Float values are recorded widened to double, with their ulp distance in
+ * float ulps. Both events are enabled by default in every recording, e.g. one
+ * started with {@code -XX:StartFlightRecording}. The event objects are always
+ * allocated; when no recording is running they are never committed, escape
+ * analysis usually removes them, and the summary of a mismatch is not
+ * computed.
+ */
+final class PrecisionEvents {
+
+	/** Name of the rounding slow path event. */
+	static final String ROUNDING_SLOW_PATH = "com.fireflysemantics.math.precision.RoundingSlowPath";
+
+	/** Name of the bulk mismatch event. */
+	static final String ULP_MISMATCH = "com.fireflysemantics.math.precision.UlpMismatch";
+
+	/**
+	 * Private constructor.
+	 */
+	private PrecisionEvents() {
+	}
+
+	/**
+	 * Starts timing a {@link java.math.BigDecimal} rounding.
+	 *
+	 * @return the event token.
+	 */
+	static Object beginRounding() {
+		final RoundingSlowPathEvent event = new RoundingSlowPathEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Reports a {@link java.math.BigDecimal} rounding.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginRounding()}.
+	 * @param x
+	 *            the rounded value.
+	 * @param scale
+	 *            the scale.
+	 * @param roundingMethod
+	 *            the rounding method.
+	 */
+	static void endRounding(Object event, double x, int scale, int roundingMethod) {
+		final RoundingSlowPathEvent rounding = (RoundingSlowPathEvent) event;
+		rounding.end();
+		if (rounding.shouldCommit()) {
+			rounding.value = x;
+			rounding.scale = scale;
+			rounding.roundingMethod = roundingMethod;
+			rounding.commit();
+		}
+	}
+
+	/**
+	 * Starts timing a bulk ulp comparison.
+	 *
+	 * @return the event token.
+	 */
+	static Object beginMismatch() {
+		final UlpMismatchEvent event = new UlpMismatchEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of checked array ranges.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the relative index of the first mismatch, or -1.
+	 */
+	static void endMismatch(Object event, double[] x, int xOffset, double[] y, int yOffset, int length,
+			int maxUlps, int first) {
+		final UlpMismatchEvent mismatch = (UlpMismatchEvent) event;
+		mismatch.end();
+		if (first < 0
+				|| !mismatch.shouldCommit()) {
+			return;
+		}
+		final double firstX = x[xOffset
+				+ first];
+		final double firstY = y[yOffset
+				+ first];
+		mismatch.start(length, maxUlps, first, firstX, firstY, PrecisionAssert.ulpDistance(firstX, firstY));
+		for (int i = first
+				+ 1; i < length; i++) {
+			final double u = x[xOffset
+					+ i];
+			final double v = y[yOffset
+					+ i];
+			mismatch.add(i, u, v, PrecisionAssert.ulpDistance(u, v));
+		}
+		mismatch.commit();
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of checked float array ranges.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the relative index of the first mismatch, or -1.
+	 */
+	static void endMismatch(Object event, float[] x, int xOffset, float[] y, int yOffset, int length,
+			int maxUlps, int first) {
+		final UlpMismatchEvent mismatch = (UlpMismatchEvent) event;
+		mismatch.end();
+		if (first < 0
+				|| !mismatch.shouldCommit()) {
+			return;
+		}
+		final float firstX = x[xOffset
+				+ first];
+		final float firstY = y[yOffset
+				+ first];
+		mismatch.start(length, maxUlps, first, firstX, firstY, PrecisionAssert.ulpDistance(firstX, firstY));
+		for (int i = first
+				+ 1; i < length; i++) {
+			final float u = x[xOffset
+					+ i];
+			final float v = y[yOffset
+					+ i];
+			mismatch.add(i, u, v, PrecisionAssert.ulpDistance(u, v));
+		}
+		mismatch.commit();
+	}
+
+	/**
+	 * Reports a bulk ulp comparison of the remaining elements of two buffers.
+	 *
+	 * @param event
+	 *            the token returned by {@link #beginMismatch()}.
+	 * @param x
+	 *            first values
+	 * @param y
+	 *            second values
+	 * @param length
+	 *            number of pairs compared
+	 * @param maxUlps
+	 *            the tolerance of the comparison.
+	 * @param first
+	 *            the index of the first mismatch relative to the positions, or
+	 *            -1.
+	 */
+	static void endMismatch(Object event, DoubleBuffer x, DoubleBuffer y, int length, int maxUlps, int first) {
+		final UlpMismatchEvent mismatch = (UlpMismatchEvent) event;
+		mismatch.end();
+		if (first < 0
+				|| !mismatch.shouldCommit()) {
+			return;
+		}
+		final int xPosition = x.position();
+		final int yPosition = y.position();
+		final double firstX = x.get(xPosition
+				+ first);
+		final double firstY = y.get(yPosition
+				+ first);
+		mismatch.start(length, maxUlps, first, firstX, firstY, PrecisionAssert.ulpDistance(firstX, firstY));
+		for (int i = first
+				+ 1; i < length; i++) {
+			final double u = x.get(xPosition
+					+ i);
+			final double v = y.get(yPosition
+					+ i);
+			mismatch.add(i, u, v, PrecisionAssert.ulpDistance(u, v));
+		}
+		mismatch.commit();
+	}
+
+	/**
+	 * A rounding that fell back to {@link java.math.BigDecimal}.
+	 */
+	@Name(ROUNDING_SLOW_PATH)
+	@Label("Rounding Slow Path")
+	@Description("A double rounding that could not use the exact fast path and fell back to BigDecimal")
+	@Category({ "Firefly Math", "Precision" })
+	@StackTrace(true)
+	// a slow path rounding usually takes microseconds, so by default only
+	// the pathological ones are recorded
+	@Threshold("1 ms")
+	static final class RoundingSlowPathEvent extends Event {
+
+		@Label("Value")
+		double value;
+
+		@Label("Scale")
+		int scale;
+
+		@Label("Rounding Method")
+		@Description("The java.math.BigDecimal rounding method")
+		int roundingMethod;
+	}
+
+	/**
+	 * Summary of the mismatches found by one bulk ulp comparison.
+	 */
+	@Name(ULP_MISMATCH)
+	@Label("Ulp Mismatch")
+	@Description("A bulk ulp comparison of PrecisionAssert that found unequal values")
+	@Category({ "Firefly Math", "Precision" })
+	@StackTrace(true)
+	static final class UlpMismatchEvent extends Event {
+
+		@Label("Length")
+		@Description("Number of pairs compared")
+		int length;
+
+		@Label("Max Ulps")
+		int maxUlps;
+
+		@Label("Mismatches")
+		@Description("Number of pairs that are not equal")
+		int mismatches;
+
+		@Label("First Index")
+		int firstIndex;
+
+		@Label("First X")
+		double firstX;
+
+		@Label("First Y")
+		double firstY;
+
+		@Label("Max Ulp Distance")
+		@Description("Largest ulp distance of a pair, Long.MAX_VALUE for NaN")
+		long maxUlpDistance;
+
+		@Label("Max Index")
+		@Description("Index of the pair with the largest ulp distance")
+		int maxIndex;
+
+		@Label("Max X")
+		double maxX;
+
+		@Label("Max Y")
+		double maxY;
+
+		/**
+		 * Records the first mismatch, a pair {@code distance} ulps apart in
+		 * the precision of the compared values.
+		 */
+		void start(int length, int maxUlps, int first, double x, double y, long distance) {
+			this.length = length;
+			this.maxUlps = maxUlps;
+			this.mismatches = 1;
+			this.firstIndex = first;
+			this.firstX = x;
+			this.firstY = y;
+			this.maxUlpDistance = distance;
+			this.maxIndex = first;
+			this.maxX = x;
+			this.maxY = y;
+		}
+
+		/**
+		 * Records a pair after the first mismatch if it is not equal.
+		 */
+		void add(int index, double x, double y, long distance) {
+			// distance <= maxUlps is equivalent to
+			// PrecisionAssert.equals(x, y, maxUlps) and is not counted by
+			// PrecisionMetrics
+			if (distance <= maxUlps) {
+				return;
+			}
+			mismatches++;
+			if (distance > maxUlpDistance) {
+				maxUlpDistance = distance;
+				maxIndex = index;
+				maxX = x;
+				maxY = y;
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+/**
+ * Bulk ulp comparison of double arrays. On Java 17 and later the comparison
+ * is delegated to {@link VectorUlpKernel} when the
+ * {@code jdk.incubator.vector} module has been added to the runtime, e.g.
+ * with {@code --add-modules jdk.incubator.vector}. Otherwise the scalar loop
+ * is used.
+ */
+final class UlpKernel {
+
+	/** Name of the incubating Vector API module. */
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	/** Whether {@link VectorUlpKernel} can be used. */
+	private static final boolean VECTORIZED = vectorAvailable();
+
+	/**
+	 * Private constructor.
+	 */
+	private UlpKernel() {
+	}
+
+	/**
+	 * Returns whether the comparison is vectorized on this runtime.
+	 *
+	 * @return {@code true} if the Vector API is used.
+	 */
+	static boolean isVectorized() {
+		return VECTORIZED;
+	}
+
+	/**
+	 * Finds the first pair of values that are not equal as defined by
+	 * {@link PrecisionAssert#equals(double, double, int)}. The ranges must
+	 * have been checked by the caller.
+	 *
+	 * @param x
+	 *            first values
+	 * @param xOffset
+	 *            index of the first value in {@code x}
+	 * @param y
+	 *            second values
+	 * @param yOffset
+	 *            index of the first value in {@code y}
+	 * @param length
+	 *            number of pairs to compare
+	 * @param maxUlps
+	 *            {@code (maxUlps - 1)} is the number of floating point values
+	 *            between {@code x} and {@code y}.
+	 * @return the relative index of the first mismatch, or -1 if there is none.
+	 */
+	static int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length, int maxUlps) {
+		if (VECTORIZED
+				&& maxUlps >= 0) {
+			return VectorUlpKernel.mismatch(x, xOffset, y, yOffset, length, maxUlps);
+		}
+		return scalarMismatch(x, xOffset, y, yOffset, 0, length, maxUlps);
+	}
+
+	/**
+	 * Scalar comparison of the pairs {@code [from, length)}.
+	 */
+	static int scalarMismatch(double[] x, int xOffset, double[] y, int yOffset, int from, int length,
+			int maxUlps) {
+		for (int i = from; i < length; i++) {
+			if (!PrecisionAssert.withinUlps(x[xOffset
+					+ i], y[yOffset
+							+ i],
+					maxUlps)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first pair of values that are not equal as defined by
+	 * {@link PrecisionAssert#equals(float, float, int)}. The ranges must have
+	 * been checked by the caller.
+	 *
+	 * @return the relative index of the first mismatch, or -1 if there is none.
+	 */
+	static int mismatch(float[] x, int xOffset, float[] y, int yOffset, int length, int maxUlps) {
+		if (VECTORIZED
+				&& maxUlps >= 0) {
+			return VectorUlpKernel.mismatch(x, xOffset, y, yOffset, length, maxUlps);
+		}
+		return scalarMismatch(x, xOffset, y, yOffset, 0, length, maxUlps);
+	}
+
+	/**
+	 * Scalar comparison of the float pairs {@code [from, length)}.
+	 */
+	static int scalarMismatch(float[] x, int xOffset, float[] y, int yOffset, int from, int length,
+			int maxUlps) {
+		for (int i = from; i < length; i++) {
+			if (!PrecisionAssert.equals(x[xOffset
+					+ i], y[yOffset
+							+ i],
+					maxUlps)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks that the Vector API module is present and its classes link.
+	 */
+	private static boolean vectorAvailable() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return false;
+		}
+		try {
+			return VectorUlpKernel.LANES > 1;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
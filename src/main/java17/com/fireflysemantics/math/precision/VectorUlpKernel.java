@@ -0,0 +1,129 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized bulk ulp comparison using the {@code jdk.incubator.vector} API.
+ * Only referenced by {@link UlpKernel} once the module is known to be present.
+ * <p>
+ * The sign-split logic of {@link PrecisionAssert#equals(double, double, int)}
+ * is expressed branch free: both raw bit patterns are mapped to signed
+ * magnitudes, which are ordered like the doubles, and their distance is
+ * compared against {@code maxUlps}. The distance of two non-NaN values is at
+ * most twice the bits of infinity, so an overflow shows up as a negative
+ * distance, which is larger than any {@code maxUlps}.
+ * </p>
+ */
+final class VectorUlpKernel {
+
+	/** Preferred species for the loaded double values. */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/** Number of lanes compared per iteration. */
+	static final int LANES = SPECIES.length();
+
+	/** Preferred species for the loaded float values. */
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	/** Number of float lanes compared per iteration. */
+	private static final int FLOAT_LANES = FLOAT_SPECIES.length();
+
+	/** Clears the sign bit. */
+	private static final long MAGNITUDE_MASK = 0x7fffffffffffffffL;
+
+	/** Raw bits of positive infinity; larger magnitudes are NaN. */
+	private static final long INFINITY_BITS = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+
+	/** Clears the sign bit of a float. */
+	private static final int FLOAT_MAGNITUDE_MASK = 0x7fffffff;
+
+	/** Raw bits of positive float infinity; larger magnitudes are NaN. */
+	private static final int FLOAT_INFINITY_BITS = Float.floatToRawIntBits(Float.POSITIVE_INFINITY);
+
+	/**
+	 * Private constructor.
+	 */
+	private VectorUlpKernel() {
+	}
+
+	/**
+	 * Same contract as
+	 * {@link UlpKernel#mismatch(double[], int, double[], int, int, int)} for a
+	 * non-negative {@code maxUlps}.
+	 */
+	static int mismatch(double[] x, int xOffset, double[] y, int yOffset, int length, int maxUlps) {
+		final int upper = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upper; i += LANES) {
+			final LongVector xBits = DoubleVector.fromArray(SPECIES, x, xOffset
+					+ i).viewAsIntegralLanes();
+			final LongVector yBits = DoubleVector.fromArray(SPECIES, y, yOffset
+					+ i).viewAsIntegralLanes();
+			final LongVector xMagnitude = xBits.and(MAGNITUDE_MASK);
+			final LongVector yMagnitude = yBits.and(MAGNITUDE_MASK);
+			final VectorMask<Long> nan = xMagnitude.compare(VectorOperators.GT, INFINITY_BITS)
+					.or(yMagnitude.compare(VectorOperators.GT, INFINITY_BITS));
+			final LongVector xOrdered = xMagnitude.blend(xMagnitude.neg(), xBits.compare(VectorOperators.LT, 0));
+			final LongVector yOrdered = yMagnitude.blend(yMagnitude.neg(), yBits.compare(VectorOperators.LT, 0));
+			final LongVector distance = xOrdered.max(yOrdered).sub(xOrdered.min(yOrdered));
+			final VectorMask<Long> equal = distance.compare(VectorOperators.GE, 0)
+					.and(distance.compare(VectorOperators.LE, maxUlps))
+					.andNot(nan);
+			if (!equal.allTrue()) {
+				return i
+						+ equal.not().firstTrue();
+			}
+		}
+		return UlpKernel.scalarMismatch(x, xOffset, y, yOffset, i, length, maxUlps);
+	}
+
+	/**
+	 * Same contract as
+	 * {@link UlpKernel#mismatch(float[], int, float[], int, int, int)} for a
+	 * non-negative {@code maxUlps}.
+	 */
+	static int mismatch(float[] x, int xOffset, float[] y, int yOffset, int length, int maxUlps) {
+		final int upper = FLOAT_SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upper; i += FLOAT_LANES) {
+			final IntVector xBits = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset
+					+ i).viewAsIntegralLanes();
+			final IntVector yBits = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset
+					+ i).viewAsIntegralLanes();
+			final IntVector xMagnitude = xBits.and(FLOAT_MAGNITUDE_MASK);
+			final IntVector yMagnitude = yBits.and(FLOAT_MAGNITUDE_MASK);
+			final VectorMask<Integer> nan = xMagnitude.compare(VectorOperators.GT, FLOAT_INFINITY_BITS)
+					.or(yMagnitude.compare(VectorOperators.GT, FLOAT_INFINITY_BITS));
+			final IntVector xOrdered = xMagnitude.blend(xMagnitude.neg(), xBits.compare(VectorOperators.LT, 0));
+			final IntVector yOrdered = yMagnitude.blend(yMagnitude.neg(), yBits.compare(VectorOperators.LT, 0));
+			final IntVector distance = xOrdered.max(yOrdered).sub(xOrdered.min(yOrdered));
+			final VectorMask<Integer> equal = distance.compare(VectorOperators.GE, 0)
+					.and(distance.compare(VectorOperators.LE, maxUlps))
+					.andNot(nan);
+			if (!equal.allTrue()) {
+				return i
+						+ equal.not().firstTrue();
+			}
+		}
+		return UlpKernel.scalarMismatch(x, xOffset, y, yOffset, i, length, maxUlps);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompensatedSumTest {
+
+	@Test
+	public void testCancellation() {
+		final CompensatedSum sum = new CompensatedSum();
+		sum.add(1e100);
+		sum.add(1.0);
+		sum.add(-1e100);
+		Assert.assertEquals(1.0, sum.getSum(), 0.0);
+		Assert.assertEquals(3, sum.getCount());
+		Assert.assertTrue(sum.getResult()
+				.isConsistentWith(1.0));
+
+		sum.reset();
+		Assert.assertEquals(0.0, sum.getSum(), 0.0);
+		Assert.assertEquals(0, sum.getCount());
+		Assert.assertEquals(0.0, sum.getErrorBound(), 0.0);
+		Assert.assertTrue(Double.isNaN(sum.getResult()
+				.getMean()));
+	}
+
+	@Test
+	public void testRandom() {
+		final Random random = new Random(1089);
+		for (int n : new int[] { 1, 10, 1000, 100000 }) {
+			final double[] values = new double[n];
+			BigDecimal exact = BigDecimal.ZERO;
+			final CompensatedSum sum = new CompensatedSum();
+			for (int i = 0; i < n; i++) {
+				values[i] = (random.nextDouble()
+						- 0.5)
+						* Math.pow(10, random.nextInt(20)
+								- 10);
+				exact = exact.add(new BigDecimal(values[i]));
+				sum.add(values[i]);
+			}
+			final SumResult result = sum.getResult();
+			Assert.assertEquals(exact.doubleValue(), result.getSum(), 0.0);
+			Assert.assertTrue(exact.subtract(new BigDecimal(result.getSum()))
+					.abs()
+					.doubleValue() <= result.getErrorBound());
+			Assert.assertTrue(result.isConsistentWith(exact.doubleValue()));
+
+			final CompensatedSum array = new CompensatedSum();
+			array.add(values);
+			Assert.assertEquals(result.getSum(), array.getSum(), 0.0);
+			Assert.assertEquals(result.getErrorBound(), array.getErrorBound(), 0.0);
+		}
+	}
+
+	@Test
+	public void testMerge() {
+		final double[] values = { 1e16, 1, -1e16, 3, 1e-3, 2.5, -7 };
+		final CompensatedSum left = new CompensatedSum();
+		left.add(values, 0, 3);
+		final CompensatedSum right = new CompensatedSum();
+		right.add(values, 3, 4);
+		left.merge(right);
+		Assert.assertEquals(-0.499, left.getSum(), 1e-15);
+		Assert.assertEquals(7, left.getCount());
+		Assert.assertEquals(4, right.getCount());
+	}
+
+	@Test
+	public void testAddProduct() {
+		// 1 + 2^-30 squared is 1 + 2^-29 + 2^-60, whose last term is rounded
+		// off the product
+		final double x = 1
+				+ Math.scalb(1.0, -30);
+		final CompensatedSum sum = new CompensatedSum();
+		sum.addProduct(x, x);
+		sum.add(-1);
+		sum.add(-Math.scalb(1.0, -29));
+		Assert.assertEquals(Math.scalb(1.0, -60), sum.getSum(), 0.0);
+		Assert.assertEquals(0.0, CompensatedSum.productError(Double.MAX_VALUE, 2, Double.POSITIVE_INFINITY), 0.0);
+	}
+
+	@Test
+	public void testNonFinite() {
+		final CompensatedSum sum = new CompensatedSum();
+		sum.add(Double.POSITIVE_INFINITY);
+		sum.add(1);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, sum.getSum(), 0.0);
+		sum.add(Double.NEGATIVE_INFINITY);
+		Assert.assertTrue(Double.isNaN(sum.getSum()));
+		sum.reset();
+		sum.add(Double.NaN);
+		Assert.assertTrue(Double.isNaN(sum.getSum()));
+		Assert.assertTrue(Double.isNaN(sum.getErrorBound()));
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testAddOutOfBounds() {
+		new CompensatedSum().add(new double[4], 2, 3);
+	}
+
+	@Test
+	public void testDotBound() {
+		final Random random = new Random(1127);
+		for (int n : new int[] { 2, 100, 10000 }) {
+			final double[] x = new double[n];
+			final double[] y = new double[n];
+			BigDecimal exact = BigDecimal.ZERO;
+			BigDecimal exactAbs = BigDecimal.ZERO;
+			final CompensatedSum sum = new CompensatedSum();
+			for (int i = 0; i < n; i++) {
+				// large products that cancel, leaving a tiny dot product
+				x[i] = (random.nextDouble()
+						- 0.5)
+						* Math.pow(2, random.nextInt(60));
+				y[i] = i % 2 == 0 ? random.nextDouble() : -y[i
+						- 1]
+						* x[i
+								- 1]
+						/ x[i];
+				final BigDecimal product = new BigDecimal(x[i]).multiply(new BigDecimal(y[i]));
+				exact = exact.add(product);
+				exactAbs = exactAbs.add(product.abs());
+				sum.addProduct(x[i], y[i]);
+			}
+			final double gamma = SumResult.gamma(n);
+			final double bound = sum.getErrorBound();
+			Assert.assertTrue(exact.subtract(new BigDecimal(sum.getSum()))
+					.abs()
+					.compareTo(new BigDecimal(bound)) <= 0);
+			// the Dot2 bound for n products
+			Assert.assertTrue(bound >= gamma
+					* gamma
+					* exactAbs.doubleValue());
+		}
+	}
+
+	@Test
+	public void testDotBoundExceedsSumBound() {
+		final CompensatedSum sum = new CompensatedSum();
+		final CompensatedSum dot = new CompensatedSum();
+		for (int i = 0; i < 10; i++) {
+			sum.add(i
+					+ 0.1);
+			dot.addProduct(i
+					+ 0.1, 1);
+		}
+		Assert.assertEquals(sum.getSum(), dot.getSum(), 0.0);
+		Assert.assertTrue(dot.getErrorBound() > sum.getErrorBound());
+		// merging keeps the dot product bound
+		final CompensatedSum merged = new CompensatedSum();
+		merged.merge(dot);
+		Assert.assertEquals(dot.getErrorBound(), merged.getErrorBound(), 1e-28);
+	}
+}
@@ -0,0 +1,139 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoubleFileComparatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCompare() throws IOException {
+		final Random random = new Random(97);
+		final double[] x = new double[1000];
+		final double[] y = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = random.nextGaussian();
+			y[i] = x[i];
+		}
+		y[3] = Math.nextUp(Math.nextUp(x[3]));
+		y[10] = Double.NaN;
+		x[11] = Double.NaN;
+		y[11] = Double.NaN;
+		y[500] = x[500]
+				+ 1;
+		y[999] = Math.nextDown(x[999]);
+		final Path expected = write(x);
+		final Path actual = write(y);
+
+		// chunks of 5 values exercise the merging of chunk summaries
+		final DoubleFileComparator comparator = new DoubleFileComparator(Tolerance.ulps(1), 3, 40);
+		final DoubleFileComparison comparison = comparator.compare(expected, actual);
+		Assert.assertEquals(1000, comparison.getLength());
+		Assert.assertEquals(3, comparison.getMismatchCount());
+		Assert.assertEquals(1, comparison.getNaNDisagreementCount());
+		Assert.assertArrayEquals(new long[] { 3
+				* 8, 10
+						* 8,
+				500
+						* 8 },
+				comparison.getFirstMismatchOffsets());
+		Assert.assertEquals(PrecisionAssert.ulpDistance(x[500], y[500]), comparison.getMaxUlpDistance());
+		Assert.assertEquals(500
+				* 8, comparison.getMaxUlpOffset());
+		Assert.assertFalse(comparison.isMatch());
+
+		Assert.assertEquals(2, DoubleFileComparator.absolute(0.5)
+				.compare(expected, actual)
+				.getMismatchCount());
+		Assert.assertEquals(1, DoubleFileComparator.relative(10)
+				.compare(expected, actual)
+				.getMismatchCount());
+		Assert.assertTrue(DoubleFileComparator.ulps(0)
+				.compare(expected, expected)
+				.isMatch());
+		Assert.assertEquals(1, DoubleFileComparator.of(Tolerance.combined(0.5, 10, 2))
+				.compare(expected, actual)
+				.getMismatchCount());
+		Assert.assertEquals(0, DoubleFileComparator.ulps(0)
+				.withMaxOffsets(0)
+				.compare(expected, actual)
+				.getFirstMismatchOffsets().length);
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		final Path empty = write(new double[0]);
+		final DoubleFileComparison comparison = DoubleFileComparator.ulps(0)
+				.compare(empty, empty);
+		Assert.assertEquals(0, comparison.getLength());
+		Assert.assertEquals(-1, comparison.getMaxUlpOffset());
+		Assert.assertTrue(comparison.isMatch());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizeMismatch() throws IOException {
+		DoubleFileComparator.ulps(0)
+				.compare(write(new double[2]), write(new double[3]));
+	}
+
+	@Test
+	public void testCommandLine() throws IOException {
+		final String expected = write(new double[] { 1, 2, 3 }).toString();
+		final String actual = write(new double[] { 1, 2.5, 3 }).toString();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final PrintStream stream = new PrintStream(out, true);
+		Assert.assertEquals(0, DoubleFileComparator.run(new String[] { expected, actual, "--abs", "0.5" }, stream,
+				stream));
+		Assert.assertEquals(1, DoubleFileComparator.run(new String[] { expected, actual, "--rel", "0.1",
+				"--first", "1" }, stream, stream));
+		Assert.assertTrue(out.toString()
+				.contains("mismatches: 1"));
+		Assert.assertEquals(2, DoubleFileComparator.run(new String[] { expected }, stream, stream));
+		Assert.assertEquals(2, DoubleFileComparator.run(new String[] { expected, actual, "--ulps" }, stream,
+				stream));
+		Assert.assertEquals(2, DoubleFileComparator.run(new String[] { expected, actual, "--abs", "-1" },
+				stream, stream));
+		Assert.assertEquals(2, DoubleFileComparator.run(new String[] { expected, new File(folder.getRoot(),
+				"missing").toString() }, stream, stream));
+	}
+
+	private Path write(double[] values) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(values.length
+				* 8)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.asDoubleBuffer()
+				.put(values);
+		final Path path = folder.newFile()
+				.toPath();
+		Files.write(path, buffer.array());
+		return path;
+	}
+}
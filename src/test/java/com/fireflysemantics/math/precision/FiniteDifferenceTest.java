@@ -0,0 +1,150 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fireflysemantics.math.precision.FiniteDifference.Stencil;
+
+public class FiniteDifferenceTest {
+
+	@Test
+	public void testDerivative() {
+		final double[] tolerances = { 1e-7, 1e-7, 1e-9, 1e-11, 1e-12 };
+		for (Stencil stencil : Stencil.values()) {
+			final FiniteDifference difference = FiniteDifference.of(stencil);
+			Assert.assertEquals(stencil, difference.getStencil());
+			Assert.assertEquals(stencil.getDefaultStep(), difference.getStep(), 0.0);
+			for (double x : new double[] { -2, 0, 0.5, 3 }) {
+				Assert.assertEquals(stencil
+						+ " at "
+						+ x, Math.cos(x), difference.derivative(Math::sin, x), tolerances[stencil.ordinal()]);
+			}
+		}
+		// exact for polynomials up to the order of the stencil
+		Assert.assertEquals(3.0, FiniteDifference.of(Stencil.CENTRAL, 1e-3)
+				.derivative(x -> x
+						* x,
+						1.5),
+				1e-12);
+	}
+
+	@Test
+	public void testStepIsRepresentable() {
+		final FiniteDifference difference = FiniteDifference.of(Stencil.FORWARD, 1e-7);
+		for (double x : new double[] { 0.1, 1 / 3d, 12345.678, -7e10 }) {
+			final double h = difference.step(x);
+			Assert.assertEquals(h, x
+					+ h
+					- x, 0.0);
+			Assert.assertEquals(1e-7
+					* Math.max(Math.abs(x), 1), h, Math.ulp(x));
+		}
+	}
+
+	@Test
+	public void testGradient() {
+		final double[] x = { 1, -2, 0.5, 3 };
+		final double[] gradient = new double[x.length];
+		final double[] copy = x.clone();
+		final AtomicInteger evaluations = new AtomicInteger();
+		FiniteDifference.of(Stencil.FORWARD)
+				.gradient(p -> {
+					evaluations.incrementAndGet();
+					return sumOfCubes(p);
+				}, x, gradient);
+		Assert.assertArrayEquals(copy, x, 0.0);
+		// the unperturbed point is evaluated once
+		Assert.assertEquals(x.length
+				+ 1, evaluations.get());
+		for (int i = 0; i < x.length; i++) {
+			Assert.assertEquals(3
+					* x[i]
+					* x[i], gradient[i], 1e-6);
+		}
+	}
+
+	@Test
+	public void testGradientParallel() {
+		final Random random = new Random(1089);
+		final double[] x = new double[1000];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = random.nextDouble()
+					- 0.5;
+		}
+		for (Stencil stencil : Stencil.values()) {
+			final FiniteDifference difference = FiniteDifference.of(stencil);
+			final double[] expected = new double[x.length];
+			difference.gradient(FiniteDifferenceTest::sumOfCubes, x, expected);
+			final double[] actual = new double[x.length];
+			difference.gradientParallel(FiniteDifferenceTest::sumOfCubes, x, actual, 7);
+			Assert.assertArrayEquals(expected, actual, 0.0);
+			final double[] defaults = new double[x.length];
+			difference.gradientParallel(FiniteDifferenceTest::sumOfCubes, x, defaults);
+			Assert.assertArrayEquals(expected, defaults, 0.0);
+		}
+	}
+
+	@Test
+	public void testJacobian() {
+		// f(x, y) = (x * y, x + y^2, sin(x))
+		final FiniteDifference.VectorFunction f = (p, values) -> {
+			values[0] = p[0]
+					* p[1];
+			values[1] = p[0]
+					+ p[1]
+							* p[1];
+			values[2] = Math.sin(p[0]);
+		};
+		final double[] x = { 0.5, 2 };
+		final double[][] expected = { { 2, 0.5 }, { 1, 4 }, { Math.cos(0.5), 0 } };
+		for (Stencil stencil : Stencil.values()) {
+			final FiniteDifference difference = FiniteDifference.of(stencil);
+			final double[][] jacobian = new double[3][2];
+			difference.jacobian(f, x, jacobian);
+			final double[][] parallel = new double[3][2];
+			difference.jacobianParallel(f, x, parallel, 1);
+			for (int i = 0; i < expected.length; i++) {
+				Assert.assertArrayEquals(expected[i], jacobian[i], 1e-6);
+				Assert.assertArrayEquals(jacobian[i], parallel[i], 0.0);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidStep() {
+		FiniteDifference.of(Stencil.CENTRAL, 0);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testGradientTooShort() {
+		FiniteDifference.of(Stencil.CENTRAL)
+				.gradient(FiniteDifferenceTest::sumOfCubes, new double[3], new double[2]);
+	}
+
+	private static double sumOfCubes(double[] p) {
+		double sum = 0;
+		for (double v : p) {
+			sum += v
+					* v
+					* v;
+		}
+		return sum;
+	}
+}
@@ -17,6 +17,11 @@ package com.fireflysemantics.math.precision;
 import static com.fireflysemantics.math.precision.PrecisionConstants.EPSILON;
 import static com.fireflysemantics.math.precision.PrecisionConstants.SAFE_MIN;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;;
 
@@ -328,4 +333,370 @@ public class PrecisionAssertTest {
 		Assert.assertFalse(PrecisionAssert.equals(2.0f, -2.0f, 1));
 		Assert.assertTrue(PrecisionAssert.equals(0.0f, -0.0f, 0));
 	}
+
+	@Test
+	public void testArrayMismatch() {
+		final double[] special = { 0d, -0d, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN, 1d, -1d,
+				Double.longBitsToDouble(0x7ff0000000000001L), Double.longBitsToDouble(0xfff8000000000001L) };
+		final Random random = new Random(1127);
+		for (int length : new int[] { 0, 1, 3, 8, 17, 64, 1000 }) {
+			final double[] x = new double[length];
+			final double[] y = new double[length];
+			for (int trial = 0; trial < 200; trial++) {
+				for (int i = 0; i < length; i++) {
+					x[i] = random.nextInt(4) == 0 ? special[random.nextInt(special.length)]
+							: (random.nextDouble()
+									- 0.5)
+									* 10;
+					final int k = random.nextInt(8);
+					y[i] = k == 0 ? special[random.nextInt(special.length)]
+							: k == 1 ? -x[i]
+									: Double.longBitsToDouble(Double.doubleToRawLongBits(x[i])
+											+ random.nextInt(5)
+											- 2);
+					if (random.nextInt(length) > 2) {
+						y[i] = x[i] == x[i] ? x[i] : 0d;
+						x[i] = y[i];
+					}
+				}
+				for (int maxUlps : new int[] { -1, 0, 1, 2, 5 }) {
+					int expected = -1;
+					for (int i = 0; i < length; i++) {
+						if (!PrecisionAssert.equals(x[i], y[i], maxUlps)) {
+							expected = i;
+							break;
+						}
+					}
+					Assert.assertEquals(expected, PrecisionAssert.mismatch(x, y, maxUlps));
+					Assert.assertEquals(expected < 0, PrecisionAssert.equals(x, y, maxUlps));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testArrayMismatchLengthsAndOffsets() {
+		final double[] x = { 1d, 2d, 3d, 4d };
+		final double[] y = { 0d, 1d, 2d, Math.nextUp(3d) };
+		Assert.assertEquals(3, PrecisionAssert.mismatch(x, new double[] { 1d, 2d, 3d }, 1));
+		Assert.assertFalse(PrecisionAssert.equals(x, new double[] { 1d, 2d, 3d }, 1));
+		Assert.assertEquals(-1, PrecisionAssert.mismatch(x, 0, y, 1, 3, 1));
+		Assert.assertEquals(2, PrecisionAssert.mismatch(x, 0, y, 1, 3, 0));
+		Assert.assertEquals(0, PrecisionAssert.mismatch(x, 1, y, 1, 3, 1));
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testArrayMismatchOutOfBounds() {
+		PrecisionAssert.mismatch(new double[4], 2, new double[4], 0, 3, 1);
+	}
+
+	@Test
+	public void testBufferMismatch() {
+		final double[] x = { 1d, 2d, 3d, 4d };
+		final double[] y = { 0d, 1d, 2d, Math.nextUp(3d) };
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+			final DoubleBuffer direct = ByteBuffer.allocateDirect(y.length
+					* 8)
+					.order(order)
+					.asDoubleBuffer()
+					.put(y);
+			direct.position(1);
+			final DoubleBuffer heap = DoubleBuffer.wrap(x);
+			Assert.assertEquals(3, PrecisionAssert.mismatch(heap, direct, 1));
+			Assert.assertEquals(2, PrecisionAssert.mismatch(heap, direct, 0));
+			Assert.assertEquals(1, direct.position());
+			Assert.assertEquals(0, heap.position());
+
+			heap.limit(3);
+			Assert.assertEquals(-1, PrecisionAssert.mismatch(heap, direct, 1));
+			Assert.assertTrue(PrecisionAssert.equals(heap, direct.asReadOnlyBuffer(), 1));
+			Assert.assertFalse(PrecisionAssert.equals(heap, direct, 0));
+			heap.position(1);
+			Assert.assertEquals(0, PrecisionAssert.mismatch(heap, direct, 1));
+		}
+		Assert.assertEquals(-1, PrecisionAssert.mismatch(DoubleBuffer.wrap(x, 1, 2), DoubleBuffer.wrap(y, 2, 2), 1));
+		Assert.assertEquals(1, PrecisionAssert.mismatch(DoubleBuffer.wrap(x, 1, 2), DoubleBuffer.wrap(y, 2, 2), 0));
+	}
+
+	@Test
+	public void testUlpDistance() {
+		Assert.assertEquals(0, PrecisionAssert.ulpDistance(0.0, -0.0));
+		Assert.assertEquals(0, PrecisionAssert.ulpDistance(153.0, 153.0));
+		Assert.assertEquals(1, PrecisionAssert.ulpDistance(1.0, Math.nextUp(1.0)));
+		Assert.assertEquals(1, PrecisionAssert.ulpDistance(-128.0, -127.99999999999999));
+		Assert.assertEquals(2, PrecisionAssert.ulpDistance(-Double.MIN_VALUE, Double.MIN_VALUE));
+		Assert.assertEquals(1, PrecisionAssert.ulpDistance(Double.MAX_VALUE, Double.POSITIVE_INFINITY));
+		Assert.assertEquals(Long.MAX_VALUE,
+				PrecisionAssert.ulpDistance(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+		Assert.assertEquals(Long.MAX_VALUE, PrecisionAssert.ulpDistance(Double.NaN, Double.NaN));
+		Assert.assertEquals(Long.MAX_VALUE, PrecisionAssert.ulpDistance(1.0, Double.NaN));
+		Assert.assertEquals(Double.doubleToRawLongBits(Double.MAX_VALUE),
+				PrecisionAssert.ulpDistance(0.0, Double.MAX_VALUE));
+	}
+
+	@Test
+	public void testUlpDistanceMatchesEquals() {
+		final Random random = new Random(475);
+		final int[] maxUlps = { Integer.MIN_VALUE, -1, 0, 1, 2, 7, Integer.MAX_VALUE };
+		for (int i = 0; i < 100000; i++) {
+			final double x = random.nextBoolean() ? Double.longBitsToDouble(random.nextLong())
+					: random.nextInt(7)
+							- 3;
+			final double y = random.nextBoolean() ? Double.longBitsToDouble(random.nextLong())
+					: Double.longBitsToDouble(Double.doubleToRawLongBits(x)
+							+ random.nextInt(9)
+							- 4);
+			final long distance = PrecisionAssert.ulpDistance(x, y);
+			Assert.assertEquals(distance, PrecisionAssert.ulpDistance(y, x));
+			for (int ulps : maxUlps) {
+				Assert.assertEquals(PrecisionAssert.equals(x, y, ulps), distance <= ulps);
+			}
+		}
+	}
+
+	@Test
+	public void testFloatEqualsWithAllowedUlps() {
+		Assert.assertTrue(PrecisionAssert.equals(0.0f, -0.0f, 1));
+
+		final float nUp1 = Math.nextUp(1f);
+		final float nnUp1 = Math.nextUp(nUp1);
+		Assert.assertTrue(PrecisionAssert.equals(1.0f, nUp1, 1));
+		Assert.assertTrue(PrecisionAssert.equals(nUp1, nnUp1, 1));
+		Assert.assertFalse(PrecisionAssert.equals(1.0f, nnUp1, 1));
+		Assert.assertTrue(PrecisionAssert.equals(1.0f, nnUp1, 2));
+
+		Assert.assertTrue(PrecisionAssert.equals(0.0f, Float.MIN_VALUE, 1));
+		Assert.assertTrue(PrecisionAssert.equals(0.0f, -Float.MIN_VALUE, 1));
+		Assert.assertFalse(PrecisionAssert.equals(-Float.MIN_VALUE, Float.MIN_VALUE, 1));
+		Assert.assertTrue(PrecisionAssert.equals(-Float.MIN_VALUE, Float.MIN_VALUE, 2));
+
+		Assert.assertTrue(PrecisionAssert.equals(-128.0f, Math.nextUp(-128.0f), 1));
+		Assert.assertFalse(PrecisionAssert.equals(-128.0f, Math.nextUp(Math.nextUp(-128.0f)), 1));
+
+		Assert.assertTrue(PrecisionAssert.equals(Float.MAX_VALUE, Float.POSITIVE_INFINITY, 1));
+		Assert.assertTrue(PrecisionAssert.equals(-Float.MAX_VALUE, Float.NEGATIVE_INFINITY, 1));
+		Assert.assertFalse(PrecisionAssert.equals(Float.NaN, Float.NaN, 1));
+		Assert.assertFalse(PrecisionAssert.equals(Float.NaN, 0f, 0));
+		Assert.assertFalse(PrecisionAssert.equals(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, 100000));
+
+		// a float ulp is wider than a double ulp
+		Assert.assertTrue(PrecisionAssert.equals(1f, nUp1));
+		Assert.assertFalse(PrecisionAssert.equals((double) 1f, (double) nUp1));
+
+		Assert.assertTrue(PrecisionAssert.equalsIncludingNaN(Float.NaN, Float.NaN, 1));
+		Assert.assertFalse(PrecisionAssert.equalsIncludingNaN(Float.NaN, 1f, 1));
+		Assert.assertTrue(PrecisionAssert.equalsIncludingNaN(1.0f, nUp1, 1));
+		Assert.assertTrue(PrecisionAssert.equalsIncludingNaN(Float.NaN, Float.NaN));
+		Assert.assertFalse(PrecisionAssert.equalsIncludingNaN(1f, Float.NaN));
+	}
+
+	@Test
+	public void testFloatEqualsWithAllowedDelta() {
+		Assert.assertTrue(PrecisionAssert.equals(153.0000f, 153.0625f, .0625f));
+		Assert.assertFalse(PrecisionAssert.equals(153.0000f, 153.0625f, .0624f));
+		Assert.assertFalse(PrecisionAssert.equals(Float.NaN, Float.NaN, 1.0f));
+		Assert.assertTrue(PrecisionAssert.equals(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, 1.0f));
+		Assert.assertTrue(PrecisionAssert.equalsIncludingNaN(Float.NaN, Float.NaN, 1.0f));
+		Assert.assertTrue(PrecisionAssert.equalsIncludingNaN(152.9375f, 153.0000f, .0625f));
+		Assert.assertFalse(PrecisionAssert.equalsIncludingNaN(152.9374f, 153.0000f, .0625f));
+
+		Assert.assertEquals(0, PrecisionAssert.compareTo(152.33f, 152.32f, .011f));
+		Assert.assertTrue(PrecisionAssert.compareTo(152.308f, 152.32f, .011f) < 0);
+		Assert.assertTrue(PrecisionAssert.compareTo(152.33f, 152.318f, .011f) > 0);
+		Assert.assertEquals(0, PrecisionAssert.compareTo(Float.MIN_VALUE, -0.0f, 1));
+		Assert.assertEquals(-1, PrecisionAssert.compareTo(-Float.MIN_VALUE, Float.MIN_VALUE, 1));
+		Assert.assertEquals(+1, PrecisionAssert.compareTo(Float.NaN, Float.MAX_VALUE, Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testFloatEqualsWithRelativeTolerance() {
+		Assert.assertTrue(PrecisionAssert.equalsWithRelativeTolerance(0f, -0f, 0f));
+		final float eps = 1e-6f;
+		Assert.assertTrue(PrecisionAssert.equalsWithRelativeTolerance(1.0000005f, 1f, eps));
+		Assert.assertFalse(PrecisionAssert.equalsWithRelativeTolerance(1.000002f, 1f, eps));
+		Assert.assertFalse(PrecisionAssert.equalsWithRelativeTolerance(Float.NEGATIVE_INFINITY, 1.23f, eps));
+		Assert.assertTrue(PrecisionAssert.equalsWithRelativeTolerance(Float.POSITIVE_INFINITY,
+				Float.POSITIVE_INFINITY, eps));
+		Assert.assertFalse(PrecisionAssert.equalsWithRelativeTolerance(Float.NaN, Float.NaN, eps));
+	}
+
+	@Test
+	public void testFloatUlpDistanceAndMismatch() {
+		Assert.assertEquals(0, PrecisionAssert.ulpDistance(0f, -0f));
+		Assert.assertEquals(2, PrecisionAssert.ulpDistance(-Float.MIN_VALUE, Float.MIN_VALUE));
+		Assert.assertEquals(2L
+				* Float.floatToRawIntBits(Float.POSITIVE_INFINITY),
+				PrecisionAssert.ulpDistance(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY));
+		Assert.assertEquals(Long.MAX_VALUE, PrecisionAssert.ulpDistance(Float.NaN, 1f));
+
+		final Random random = new Random(1127);
+		for (int length : new int[] { 0, 1, 7, 16, 33, 1000 }) {
+			final float[] x = new float[length];
+			final float[] y = new float[length];
+			for (int trial = 0; trial < 200; trial++) {
+				for (int i = 0; i < length; i++) {
+					x[i] = random.nextInt(10) == 0 ? Float.intBitsToFloat(random.nextInt()) : random.nextFloat();
+					y[i] = random.nextInt(length) > 2 ? x[i]
+							: Float.intBitsToFloat(Float.floatToRawIntBits(x[i])
+									+ random.nextInt(5)
+									- 2);
+					if (x[i] != x[i]) {
+						x[i] = y[i] = 1f;
+					}
+				}
+				for (int maxUlps : new int[] { -1, 0, 1, 2 }) {
+					int expected = -1;
+					for (int i = 0; i < length; i++) {
+						Assert.assertEquals(PrecisionAssert.equals(x[i], y[i], maxUlps),
+								PrecisionAssert.ulpDistance(x[i], y[i]) <= maxUlps);
+						if (expected < 0
+								&& !PrecisionAssert.equals(x[i], y[i], maxUlps)) {
+							expected = i;
+						}
+					}
+					Assert.assertEquals(expected, PrecisionAssert.mismatch(x, y, maxUlps));
+					Assert.assertEquals(expected < 0, PrecisionAssert.equals(x, y, maxUlps));
+				}
+			}
+		}
+		Assert.assertEquals(2, PrecisionAssert.mismatch(new float[] { 1f, 2f }, new float[] { 1f, 2f, 3f }, 0));
+		Assert.assertEquals(-1, PrecisionAssert.mismatch(new float[] { 0f, 1f, 2f }, 1, new float[] { 1f, 2f }, 0,
+				2, 0));
+	}
+
+	@Test
+	public void testEqualsCombined() {
+		final double inf = Double.POSITIVE_INFINITY;
+		Assert.assertTrue(PrecisionAssert.equals(1, 1.0005, 1e-3, 0, 0));
+		Assert.assertTrue(PrecisionAssert.equals(1000, 1000.5, 0, 1e-3, 0));
+		Assert.assertFalse(PrecisionAssert.equals(1000, 1002, 1, 1e-3, 0));
+		Assert.assertTrue(PrecisionAssert.equals(1, Math.nextUp(1d), 0, 0, 0));
+		Assert.assertTrue(PrecisionAssert.equals(1, 1
+				+ 3
+						* Math.ulp(1d),
+				0, 0, 3));
+		Assert.assertFalse(PrecisionAssert.equals(1, 1
+				+ 3
+						* Math.ulp(1d),
+				0, 0, 2));
+		Assert.assertTrue(PrecisionAssert.equals(0d, -0d, 0, 0, 0));
+		Assert.assertTrue(PrecisionAssert.equals(Double.MIN_VALUE, -Double.MIN_VALUE, 0, 0, 2));
+		Assert.assertFalse(PrecisionAssert.equals(Double.NaN, Double.NaN, inf, inf, Integer.MAX_VALUE));
+		Assert.assertFalse(PrecisionAssert.equals(1, Double.NaN, inf, inf, Integer.MAX_VALUE));
+		Assert.assertTrue(PrecisionAssert.equals(inf, inf, 0, 0, 0));
+		Assert.assertTrue(PrecisionAssert.equals(inf, Double.MAX_VALUE, 0, 0, 0));
+		Assert.assertFalse(PrecisionAssert.equals(inf, -inf, 0, inf, 0));
+		Assert.assertFalse(PrecisionAssert.equals(inf, 1, 0, inf, 0));
+		Assert.assertTrue(PrecisionAssert.equals(inf, 1, inf, 0, 0));
+		// the difference overflows
+		Assert.assertFalse(PrecisionAssert.equals(Double.MAX_VALUE, -Double.MAX_VALUE, 0, 1.5, 0));
+		Assert.assertTrue(PrecisionAssert.equals(Double.MAX_VALUE, Double.MAX_VALUE
+				/ 2, 0, 1.5, 0));
+	}
+
+	@Test
+	public void testEqualsCombinedUsesQuotient() {
+		final double inf = Double.POSITIVE_INFINITY;
+		final double min = Double.MIN_VALUE;
+		// 0.46 * 10 * MIN_VALUE rounds to 5 * MIN_VALUE, the relative
+		// difference is 0.5
+		Assert.assertFalse(PrecisionAssert.equalsWithRelativeTolerance(10
+				* min, 5
+						* min,
+				0.46));
+		Assert.assertFalse(PrecisionAssert.equals(10
+				* min, 5
+						* min,
+				0, 0.46, 1));
+		Assert.assertTrue(PrecisionAssert.equals(10
+				* min, 5
+						* min,
+				0, 0.5, 1));
+		// an infinite relative tolerance accepts finite values whose
+		// difference overflows
+		Assert.assertTrue(PrecisionAssert.equalsWithRelativeTolerance(1e308, -1e308, inf));
+		Assert.assertTrue(PrecisionAssert.equals(1e308, -1e308, 0, inf, 1));
+		Assert.assertTrue(PrecisionAssert.equals(1, -1, 0, inf, 1));
+		Assert.assertTrue(Tolerance.combined(0, inf, 1)
+				.test(1e308, -1e308));
+		Assert.assertFalse(Tolerance.combined(0, 0.46, 1)
+				.test(10
+						* min, 5
+								* min));
+		// subnormal values and an infinite tolerance match the chained methods
+		// exactly
+		final Random random = new Random(4711);
+		final double[] eps = { 0, 0.1, 0.46, 0.5, 2, inf };
+		for (int n = 0; n < 10000; n++) {
+			final double x = (random.nextInt(2000)
+					- 1000)
+					* min;
+			final double y = (random.nextInt(2000)
+					- 1000)
+					* min;
+			final double relativeEps = eps[random.nextInt(eps.length)];
+			Assert.assertEquals(x
+					+ " "
+					+ y,
+					PrecisionAssert.equalsWithRelativeTolerance(x, y, relativeEps)
+							|| PrecisionAssert.equals(x, y, 1),
+					PrecisionAssert.equals(x, y, -1, relativeEps, 1));
+		}
+	}
+
+	@Test
+	public void testEqualsCombinedMatchesChained() {
+		final Random random = new Random(843);
+		final double[] eps = { 0, 1e-15, 1e-9, 1e-3, 0.5, 2 };
+		for (int n = 0; n < 100000; n++) {
+			final double x = random.nextInt(10) == 0 ? Double.longBitsToDouble(random.nextLong())
+					: (random.nextDouble()
+							- 0.5)
+							* Math.pow(10, random.nextInt(20)
+									- 10);
+			final double y = random.nextBoolean() ? x
+					* (1
+							+ (random.nextDouble()
+									- 0.5)
+									* Math.pow(10, -random.nextInt(16)))
+					: Double.longBitsToDouble(Double.doubleToRawLongBits(x)
+							+ random.nextInt(7)
+							- 3);
+			final double absoluteEps = eps[random.nextInt(eps.length)];
+			final double relativeEps = eps[random.nextInt(eps.length)];
+			final int maxUlps = random.nextInt(4);
+			final boolean expected = PrecisionAssert.equals(x, y, absoluteEps)
+					|| PrecisionAssert.equalsWithRelativeTolerance(x, y, relativeEps)
+					|| PrecisionAssert.equals(x, y, maxUlps);
+			final boolean actual = PrecisionAssert.equals(x, y, absoluteEps, relativeEps, maxUlps);
+			if (expected != actual) {
+				// only the rounding of the quotient and the product differ
+				final double relative = Math.abs(x
+						- y)
+						/ Math.max(Math.abs(x), Math.abs(y));
+				Assert.assertEquals(x
+						+ " "
+						+ y, relativeEps, relative, 4
+								* Math.ulp(relativeEps));
+			}
+		}
+	}
+
+	@Test
+	public void testArrayMismatchCombined() {
+		final double[] x = { 1, 2, 3, 1000, Double.NaN };
+		final double[] y = { 1.0005, 2, 3 + Math.ulp(3d), 1000.5, Double.NaN };
+		Assert.assertEquals(4, PrecisionAssert.mismatch(x, 0, y, 0, 5, 1e-3, 1e-3, 0));
+		Assert.assertEquals(-1, PrecisionAssert.mismatch(x, 0, y, 0, 4, 1e-3, 1e-3, 0));
+		Assert.assertEquals(3, PrecisionAssert.mismatch(x, 0, y, 0, 4, 1e-3, 0, 0));
+		Assert.assertEquals(2, PrecisionAssert.mismatch(x, 1, y, 1, 3, 1e-3, 0, 0));
+		Assert.assertTrue(PrecisionAssert.equals(new double[] { 1, 2 }, new double[] { 1, 2.001 }, 0, 1e-3, 0));
+		Assert.assertFalse(PrecisionAssert.equals(new double[] { 1, 2 }, new double[] { 1 }, 1, 1, 1));
+		Assert.assertEquals(4, Tolerance.combined(1e-3, 1e-3, 0)
+				.mismatch(x, 0, y, 0, 5));
+		Assert.assertEquals(-1, Tolerance.combined(1e-3, 1e-3, 0)
+				.includingNaN()
+				.mismatch(x, 0, y, 0, 5));
+	}
 }
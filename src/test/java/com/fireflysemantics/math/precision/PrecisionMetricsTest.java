@@ -0,0 +1,114 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fireflysemantics.math.precision.PrecisionMetrics.Path;
+
+public class PrecisionMetricsTest {
+
+	@Test
+	public void testDecisionPaths() {
+		PrecisionMetrics.reset();
+		final double x = 1.0;
+		PrecisionAssert.equals(x, Math.nextUp(x), 0.0);
+		PrecisionAssert.equals(x, 1.05, 0.1);
+		PrecisionAssert.equals(x, 2.0, 0.1);
+		PrecisionAssert.equalsWithRelativeTolerance(x, 1.05, 0.1);
+		PrecisionAssert.equals(-x, x, 1);
+		PrecisionAssert.equals(Double.NaN, x, 1);
+		final PrecisionMetrics.Snapshot snapshot = PrecisionMetrics.snapshotAndReset();
+		if (!PrecisionMetrics.isEnabled()) {
+			// disabled by default: nothing is counted
+			for (Path path : Path.values()) {
+				Assert.assertEquals(0, snapshot.get(path));
+			}
+			return;
+		}
+		Assert.assertEquals(1, snapshot.get(Path.ABSOLUTE_ULP));
+		Assert.assertEquals(1, snapshot.get(Path.ABSOLUTE_EPS));
+		Assert.assertEquals(1, snapshot.get(Path.ABSOLUTE_FAIL));
+		Assert.assertEquals(1, snapshot.get(Path.RELATIVE_EPS));
+		Assert.assertEquals(1, snapshot.get(Path.ULPS_OPPOSITE_SIGN));
+		Assert.assertEquals(1, snapshot.get(Path.ULPS_NAN));
+		// the 1-ulp checks of the tolerance paths are not ulp comparisons
+		Assert.assertEquals(0, snapshot.get(Path.ULPS_SAME_SIGN));
+	}
+
+	@Test
+	public void testBulkNotCounted() {
+		PrecisionMetrics.reset();
+		final double[] x = new double[10];
+		final double[] y = new double[10];
+		y[9] = -1;
+		Assert.assertTrue(PrecisionAssert.equals(x, x, 1));
+		Assert.assertEquals(9, PrecisionAssert.mismatch(x, y, 1));
+		Assert.assertEquals(9, PrecisionAssert.mismatch(x, 0, y, 0, 10, 1));
+		Assert.assertEquals(-1, PrecisionAssert.mismatch(DoubleBuffer.wrap(x), DoubleBuffer.wrap(x), 1));
+		// buffers without an array use the scalar loop
+		final DoubleBuffer direct = ByteBuffer.allocateDirect(80)
+				.asDoubleBuffer();
+		Assert.assertEquals(9, PrecisionAssert.mismatch(direct, DoubleBuffer.wrap(y), 1));
+		for (Path path : Path.values()) {
+			Assert.assertEquals(path.name(), 0, PrecisionMetrics.snapshot()
+					.get(path));
+		}
+	}
+
+	@Test
+	public void testSnapshotAndReset() {
+		PrecisionMetrics.reset();
+		PrecisionMetrics.record(Path.ABSOLUTE_EPS);
+		PrecisionMetrics.record(Path.ABSOLUTE_EPS);
+		PrecisionMetrics.recordUlps(-1, 1);
+		PrecisionMetrics.recordUlps(1, Double.NaN);
+		PrecisionMetrics.recordUlps(-0d, -1);
+		final PrecisionMetrics.Snapshot snapshot = PrecisionMetrics.snapshot();
+		Assert.assertEquals(2, snapshot.get(Path.ABSOLUTE_EPS));
+		Assert.assertEquals(1, snapshot.get(Path.ULPS_OPPOSITE_SIGN));
+		Assert.assertEquals(1, snapshot.get(Path.ULPS_NAN));
+		Assert.assertEquals(1, snapshot.get(Path.ULPS_SAME_SIGN));
+		Assert.assertEquals(Long.valueOf(2), snapshot.toMap()
+				.get(Path.ABSOLUTE_EPS));
+		Assert.assertEquals(2, PrecisionMetrics.snapshotAndReset()
+				.get(Path.ABSOLUTE_EPS));
+		Assert.assertEquals(0, PrecisionMetrics.snapshot()
+				.get(Path.ABSOLUTE_EPS));
+		// a snapshot does not change after the counters do
+		Assert.assertEquals(2, snapshot.get(Path.ABSOLUTE_EPS));
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		PrecisionMetrics.reset();
+		final ObjectName name = PrecisionMetrics.registerMBean();
+		Assert.assertEquals(name, PrecisionMetrics.registerMBean());
+		PrecisionMetrics.record(Path.RELATIVE_FAIL);
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Assert.assertEquals(1L, server.getAttribute(name, "RelativeFailCount"));
+		Assert.assertEquals(PrecisionMetrics.isEnabled(), server.getAttribute(name, "Enabled"));
+		server.invoke(name, "reset", null, null);
+		Assert.assertEquals(0L, server.getAttribute(name, "RelativeFailCount"));
+	}
+}
@@ -0,0 +1,217 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantizedDoubleCodecTest {
+
+	@Test
+	public void testRoundTripPrices() {
+		final Random random = new Random(42);
+		final double[] values = new double[10000];
+		double price = 100;
+		for (int i = 0; i < values.length; i++) {
+			price += (random.nextInt(21)
+					- 10)
+					* 0.01;
+			values[i] = price
+					+ random.nextDouble()
+							* 1e-3;
+		}
+		final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(2, RoundingMode.HALF_UP, 256);
+		final ByteBuffer buffer = ByteBuffer.allocate((int) codec.maxEncodedLength(values.length));
+		final int length = codec.encode(values, 0, values.length, buffer);
+		Assert.assertEquals(length, buffer.position());
+		// small price moves take one byte per value
+		Assert.assertTrue(length < values.length
+				* 8
+				/ 6);
+		buffer.flip();
+		final QuantizedDoubleColumn column = QuantizedDoubleColumn.read(buffer);
+		Assert.assertEquals(length, buffer.position());
+		Assert.assertEquals(2, column.getScale());
+		Assert.assertEquals(values.length, column.size());
+		Assert.assertEquals(40, column.getBlockCount());
+		Assert.assertEquals(16, column.blockLength(39));
+		assertRounded(codec.getContext(), values, 0, column.toArray());
+	}
+
+	@Test
+	public void testSpecialValues() {
+		final double[] values = { Double.NaN, 1.5, Double.POSITIVE_INFINITY, -0.001, -0d, 0d, 2.25,
+				Double.NEGATIVE_INFINITY, 1e300, -1e300, Double.MAX_VALUE, Double.MIN_VALUE, -Double.MIN_VALUE,
+				9.2e18, -9.2e18, 4e15, 9.0071992547409e15, -7.5 };
+		for (int scale = -3; scale <= 4; scale++) {
+			for (RoundingMode mode : new RoundingMode[] { RoundingMode.HALF_EVEN, RoundingMode.DOWN,
+					RoundingMode.CEILING }) {
+				final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(scale, mode, 5);
+				final ByteBuffer buffer = ByteBuffer.allocate((int) codec.maxEncodedLength(values.length));
+				codec.encode(values, 0, values.length, buffer);
+				buffer.flip();
+				final QuantizedDoubleColumn column = QuantizedDoubleColumn.read(buffer);
+				assertRounded(codec.getContext(), values, 0, column.toArray());
+				for (int i = 0; i < values.length; i++) {
+					Assert.assertEquals(Double.doubleToRawLongBits(codec.getContext()
+							.round(values[i])), Double.doubleToRawLongBits(column.get(i)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRandomRoundTrip() {
+		final Random random = new Random(7);
+		final double[] values = new double[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (random.nextDouble()
+					- 0.5)
+					* Math.pow(10, random.nextInt(40)
+							- 20);
+		}
+		for (int scale : new int[] { -5, 0, 3, 8, 17, 25 }) {
+			final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(scale, RoundingMode.HALF_EVEN, 100);
+			final ByteBuffer buffer = ByteBuffer.allocateDirect((int) codec.maxEncodedLength(values.length))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			codec.encode(values, 0, values.length, buffer);
+			buffer.flip();
+			assertRounded(codec.getContext(), values, 0, QuantizedDoubleColumn.read(buffer)
+					.toArray());
+		}
+	}
+
+	@Test
+	public void testLargeDeltas() {
+		final double[] values = { 9e18, -9e18, 9e18, 0, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+		final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(0, RoundingMode.HALF_UP);
+		final ByteBuffer buffer = ByteBuffer.allocate(1000);
+		codec.encodeBlock(values, 0, values.length, buffer);
+		buffer.flip();
+		final double[] decoded = new double[values.length];
+		Assert.assertEquals(values.length, codec.decodeBlock(buffer, decoded, 0));
+		assertRounded(codec.getContext(), values, 0, decoded);
+	}
+
+	@Test
+	public void testStreamBlocks() {
+		final double[] values = { 1.234, 1.235, 1.236, -4.5, 7, 7, 7.001 };
+		final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(2, RoundingMode.HALF_EVEN);
+		final ByteBuffer buffer = ByteBuffer.allocate(100);
+		// the length, 123 in two bytes and two deltas of one
+		Assert.assertEquals(5, codec.encodeBlock(values, 0, 3, buffer));
+		codec.encodeBlock(values, 3, 4, buffer);
+		codec.encodeBlock(values, 7, 0, buffer);
+		buffer.flip();
+		final double[] decoded = new double[values.length];
+		Assert.assertEquals(3, QuantizedDoubleCodec.blockLength(buffer));
+		Assert.assertEquals(0, buffer.position());
+		Assert.assertEquals(3, codec.decodeBlock(buffer, decoded, 0));
+		Assert.assertEquals(4, codec.decodeBlock(buffer, decoded, 3));
+		Assert.assertEquals(0, codec.decodeBlock(buffer, decoded, 7));
+		Assert.assertFalse(buffer.hasRemaining());
+		assertRounded(codec.getContext(), values, 0, decoded);
+	}
+
+	@Test
+	public void testOverflow() {
+		final double[] values = { 1, 2, 3, 1e10 };
+		final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(2, RoundingMode.HALF_EVEN);
+		final ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.position(1);
+		try {
+			codec.encodeBlock(values, 0, values.length, buffer);
+			Assert.fail();
+		} catch (BufferOverflowException ex) {
+			Assert.assertEquals(1, buffer.position());
+		}
+		try {
+			codec.encode(values, 0, values.length, buffer);
+			Assert.fail();
+		} catch (BufferOverflowException ex) {
+			Assert.assertEquals(1, buffer.position());
+		}
+		buffer.clear();
+		codec.encodeBlock(values, 0, 3, buffer);
+		buffer.flip();
+		try {
+			codec.decodeBlock(buffer, new double[2], 0);
+			Assert.fail();
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			Assert.assertEquals(0, buffer.position());
+		}
+	}
+
+	@Test
+	public void testSeveralColumns() {
+		final double[] x = { 1.5, 2.5 };
+		final double[] y = { 0.125, 0.25, 0.375 };
+		final QuantizedDoubleCodec codec = QuantizedDoubleCodec.of(3, RoundingMode.HALF_EVEN, 2);
+		final ByteBuffer buffer = ByteBuffer.allocate(100);
+		codec.encode(x, 0, x.length, buffer);
+		codec.encode(y, 0, y.length, buffer);
+		codec.encode(y, 0, 0, buffer);
+		buffer.flip();
+		Assert.assertArrayEquals(x, QuantizedDoubleColumn.read(buffer)
+				.toArray(), 0);
+		final QuantizedDoubleColumn column = QuantizedDoubleColumn.read(buffer);
+		Assert.assertArrayEquals(y, column.toArray(), 0);
+		Assert.assertEquals(0.375, column.get(2), 0);
+		Assert.assertEquals(0, QuantizedDoubleColumn.read(buffer)
+				.size());
+		Assert.assertFalse(buffer.hasRemaining());
+		try {
+			column.get(3);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException ex) {
+			// expected
+		}
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testUnnecessary() {
+		QuantizedDoubleCodec.of(1, RoundingMode.UNNECESSARY)
+				.encodeBlock(new double[] { 1.25 }, 0, 1, ByteBuffer.allocate(100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBlockSize() {
+		QuantizedDoubleCodec.of(1, RoundingMode.HALF_UP, 0);
+	}
+
+	@Test
+	public void testZigzag() {
+		for (long v : new long[] { 0, -1, 1, Long.MAX_VALUE, Long.MIN_VALUE, 12345, -12345 }) {
+			Assert.assertEquals(v, QuantizedDoubleCodec.unzigzag(QuantizedDoubleCodec.zigzag(v)));
+		}
+		Assert.assertEquals(3, QuantizedDoubleCodec.zigzag(-2));
+	}
+
+	private static void assertRounded(RoundingContext context, double[] values, int offset, double[] decoded) {
+		for (int i = 0; i < decoded.length; i++) {
+			final double expected = context.round(values[offset
+					+ i]);
+			Assert.assertEquals("index "
+					+ i
+					+ " of "
+					+ context, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(decoded[i]));
+		}
+	}
+}
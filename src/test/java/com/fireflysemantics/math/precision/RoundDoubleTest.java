@@ -15,6 +15,14 @@
 package com.fireflysemantics.math.precision;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -134,6 +142,387 @@ public class RoundDoubleTest {
 		Assert.assertEquals("-0.0", Double.toString(RoundDouble.round(-1e-10, 0)));
 	}
 
+	/** All rounding methods defined in {@link BigDecimal}. */
+	private static final int[] ROUNDING_METHODS = { BigDecimal.ROUND_UP, BigDecimal.ROUND_DOWN,
+			BigDecimal.ROUND_CEILING, BigDecimal.ROUND_FLOOR, BigDecimal.ROUND_HALF_UP, BigDecimal.ROUND_HALF_DOWN,
+			BigDecimal.ROUND_HALF_EVEN, BigDecimal.ROUND_UNNECESSARY };
+
+	@Test
+	public void testFastPathShortDecimals() {
+		// decimals with few digits exercise the exact tie and integer checks
+		final Random random = new Random(1089);
+		for (int i = 0; i < 20000; i++) {
+			final long unscaled = random.nextInt(2000001)
+					- 1000000;
+			final double x = new BigDecimal(unscaled).scaleByPowerOfTen(-random.nextInt(12)).doubleValue();
+			assertRoundingEquivalence(x, random.nextInt(12)
+					- 2);
+		}
+	}
+
+	@Test
+	public void testFastPathTies() {
+		for (int scale = -3; scale < 20; scale++) {
+			for (long unscaled = -200; unscaled <= 200; unscaled++) {
+				final double tie = new BigDecimal(10
+						* unscaled
+						+ 5).scaleByPowerOfTen(-scale
+								- 1)
+						.doubleValue();
+				assertRoundingEquivalence(tie, scale);
+				assertRoundingEquivalence(Math.nextUp(tie), scale);
+				assertRoundingEquivalence(Math.nextDown(tie), scale);
+			}
+		}
+	}
+
+	@Test
+	public void testFastPathRandomBits() {
+		final Random random = new Random(151);
+		for (int i = 0; i < 20000; i++) {
+			final double x = Double.longBitsToDouble(random.nextLong());
+			assertRoundingEquivalence(x, random.nextInt(50)
+					- 25);
+		}
+	}
+
+	@Test
+	public void testFastPathRandomMagnitudes() {
+		final Random random = new Random(35904);
+		for (int i = 0; i < 20000; i++) {
+			final double x = (random.nextDouble()
+					- 0.5)
+					* Math.pow(10, random.nextInt(40)
+							- 20);
+			assertRoundingEquivalence(x, random.nextInt(30)
+					- 4);
+		}
+	}
+
+	@Test
+	public void testFastPathSpecialValues() {
+		final double[] values = { 0d, -0d, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE,
+				-Double.MAX_VALUE, 4503599627370495.5, -4503599627370495.5, 4503599627370496d, 1e15, 1e15
+						+ 0.5,
+				0.5, -0.5, 1.5, 2.5, -2.5, 1e-22, 5e-23, 1e22 };
+		for (double x : values) {
+			for (int scale = -25; scale <= 25; scale++) {
+				assertRoundingEquivalence(x, scale);
+			}
+		}
+	}
+
+	@Test
+	public void testRoundArray() {
+		final double[] src = { 1.2345, -1.2345, -1e-10, -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, 39.245, 30.095 };
+		final double[] dst = new double[src.length];
+		RoundDouble.round(src, 2, BigDecimal.ROUND_HALF_UP, dst);
+		for (int i = 0; i < src.length; i++) {
+			Assert.assertEquals(Double.doubleToRawLongBits(RoundDouble.round(src[i], 2)),
+					Double.doubleToRawLongBits(dst[i]));
+		}
+		Assert.assertEquals("-0.0", Double.toString(dst[2]));
+
+		final double[] inPlace = src.clone();
+		RoundDouble.round(inPlace, 2, BigDecimal.ROUND_HALF_UP);
+		Assert.assertArrayEquals(dst, inPlace, 0.0);
+
+		final double[] offset = new double[src.length
+				+ 2];
+		RoundDouble.round(src, 3, offset, 1, 4, 2, BigDecimal.ROUND_HALF_UP);
+		Assert.assertEquals(0.0, offset[0], 0.0);
+		Assert.assertEquals(-0.0, offset[1], 0.0);
+		Assert.assertTrue(Double.isNaN(offset[3]));
+		Assert.assertEquals(Double.POSITIVE_INFINITY, offset[4], 0.0);
+		Assert.assertEquals(0.0, offset[5], 0.0);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testRoundArrayOutOfBounds() {
+		RoundDouble.round(new double[4], 2, new double[4], 0, 3, 2, BigDecimal.ROUND_HALF_UP);
+	}
+
+	@Test
+	public void testRoundBuffer() {
+		final double[] src = { 1.2345, -1.2345, -1e-10, Double.NaN, 39.245, 30.095 };
+		final double[] expected = new double[src.length];
+		RoundDouble.round(src, 2, BigDecimal.ROUND_HALF_UP, expected);
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+			final DoubleBuffer direct = ByteBuffer.allocateDirect(src.length
+					* 8)
+					.order(order)
+					.asDoubleBuffer()
+					.put(src);
+			direct.position(1);
+			RoundDouble.round(direct, 2, BigDecimal.ROUND_HALF_UP);
+			Assert.assertEquals(1, direct.position());
+			Assert.assertEquals(src[0], direct.get(0), 0.0);
+			for (int i = 1; i < src.length; i++) {
+				Assert.assertEquals(Double.doubleToRawLongBits(expected[i]), Double.doubleToRawLongBits(direct.get(i)));
+			}
+
+			final DoubleBuffer dst = DoubleBuffer.allocate(src.length
+					+ 2);
+			dst.position(2);
+			RoundDouble.round(DoubleBuffer.wrap(src)
+					.asReadOnlyBuffer(), 2, BigDecimal.ROUND_HALF_UP, dst.slice());
+			Assert.assertArrayEquals(expected, Arrays.copyOfRange(dst.array(), 2, src.length
+					+ 2), 0.0);
+		}
+		final double[] heap = src.clone();
+		RoundDouble.round(DoubleBuffer.wrap(heap, 2, 3), 2, BigDecimal.ROUND_HALF_UP);
+		Assert.assertEquals(src[1], heap[1], 0.0);
+		Assert.assertEquals("-0.0", Double.toString(heap[2]));
+		Assert.assertEquals(expected[4], heap[4], 0.0);
+		Assert.assertEquals(src[5], heap[5], 0.0);
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void testRoundBufferOverflow() {
+		RoundDouble.round(DoubleBuffer.allocate(3), 2, BigDecimal.ROUND_HALF_UP, DoubleBuffer.allocate(2));
+	}
+
+	@Test(expected = ReadOnlyBufferException.class)
+	public void testRoundReadOnlyBuffer() {
+		RoundDouble.round(DoubleBuffer.allocate(3)
+				.asReadOnlyBuffer(), 2, BigDecimal.ROUND_HALF_UP);
+	}
+
+	@Test
+	public void testRoundSignificant() {
+		Assert.assertEquals(1.23e-7, RoundDouble.roundSignificant(1.2345e-7, 3, RoundingMode.HALF_UP), 0.0);
+		Assert.assertEquals(1.24e12, RoundDouble.roundSignificant(1.235e12, 3, RoundingMode.HALF_EVEN), 0.0);
+		Assert.assertEquals(10.0, RoundDouble.roundSignificant(9.96, 2, RoundingMode.HALF_UP), 0.0);
+		Assert.assertEquals(-0.001, RoundDouble.roundSignificant(-0.00099999, 3, RoundingMode.HALF_UP), 0.0);
+		Assert.assertEquals(0.3, RoundDouble.roundSignificant(0.1
+				+ 0.2, 15, RoundingMode.HALF_EVEN), 0.0);
+		Assert.assertEquals("-0.0", Double.toString(RoundDouble.roundSignificant(-0.0, 2, RoundingMode.UP)));
+		Assert.assertTrue(Double.isNaN(RoundDouble.roundSignificant(Double.NaN, 2, RoundingMode.UP)));
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, RoundDouble.roundSignificant(Double.NEGATIVE_INFINITY, 2,
+				RoundingMode.UP), 0.0);
+		Assert.assertEquals(Double.MIN_VALUE, RoundDouble.roundSignificant(Double.MIN_VALUE, 1,
+				RoundingMode.HALF_UP), 0.0);
+		Assert.assertEquals(1.5, RoundDouble.roundSignificant(1.5, Integer.MAX_VALUE, RoundingMode.UNNECESSARY),
+				0.0);
+
+		final double[] values = { 123.456, -0.0, 9.999e-12 };
+		final double[] rounded = new double[4];
+		RoundDouble.roundSignificant(values, 0, rounded, 1, 3, 2, RoundingMode.DOWN);
+		Assert.assertArrayEquals(new double[] { 0.0, 120.0, -0.0, 9.9e-12 }, rounded, 0.0);
+		RoundDouble.roundSignificant(values, 1, RoundingMode.CEILING);
+		Assert.assertArrayEquals(new double[] { 200.0, -0.0, 1e-11 }, values, 0.0);
+	}
+
+	@Test
+	public void testDecimalExponent() {
+		for (int e = -323; e <= 308; e++) {
+			final double power = Double.parseDouble("1e"
+					+ e);
+			assertDecimalExponent(power);
+			assertDecimalExponent(Math.nextUp(power));
+			assertDecimalExponent(Math.nextDown(power));
+		}
+		assertDecimalExponent(Double.MIN_VALUE);
+		assertDecimalExponent(Double.MAX_VALUE);
+	}
+
+	@Test
+	public void testRoundSignificantMatchesBigDecimal() {
+		final Random random = new Random(9001);
+		for (int i = 0; i < 50000; i++) {
+			final double x;
+			switch (random.nextInt(3)) {
+			case 0:
+				x = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				x = (random.nextInt(20001)
+						- 10000)
+						* Math.pow(10, random.nextInt(30)
+								- 15);
+				break;
+			default:
+				x = (random.nextDouble()
+						- 0.5)
+						* Math.pow(10, random.nextInt(26)
+								- 12);
+			}
+			final int digits = 1
+					+ random.nextInt(18);
+			for (RoundingMode mode : RoundingMode.values()) {
+				double expected;
+				try {
+					expected = RoundDouble.roundSignificantBigDecimal(x, digits, mode);
+				} catch (ArithmeticException e) {
+					try {
+						RoundDouble.roundSignificant(x, digits, mode);
+						Assert.fail("expected ArithmeticException for "
+								+ x);
+					} catch (ArithmeticException ignored) {
+						// expected
+					}
+					continue;
+				}
+				Assert.assertEquals(x
+						+ " "
+						+ digits
+						+ " "
+						+ mode, Double.doubleToRawLongBits(expected),
+						Double.doubleToRawLongBits(RoundDouble.roundSignificant(x, digits, mode)));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRoundSignificantNoDigits() {
+		RoundDouble.roundSignificant(1.0, 0, RoundingMode.HALF_UP);
+	}
+
+	@Test
+	public void testRoundParallel() {
+		final Random random = new Random(1089);
+		final double[] src = new double[100000];
+		for (int i = 0; i < src.length; i++) {
+			src[i] = (random.nextDouble()
+					- 0.5)
+					* 1000;
+		}
+		final double[] expected = new double[src.length];
+		RoundDouble.round(src, 3, BigDecimal.ROUND_HALF_EVEN, expected);
+
+		final double[] actual = new double[src.length];
+		RoundDouble.roundParallel(src, 0, actual, 0, src.length, 3, BigDecimal.ROUND_HALF_EVEN, 1000);
+		Assert.assertArrayEquals(expected, actual, 0.0);
+
+		RoundDouble.roundParallel(src, 3, BigDecimal.ROUND_HALF_EVEN, src);
+		Assert.assertArrayEquals(expected, src, 0.0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testRoundParallelUnnecessary() {
+		final double[] src = new double[10000];
+		src[9999] = 1.234;
+		RoundDouble.roundParallel(src, 0, src, 0, src.length, 2, BigDecimal.ROUND_UNNECESSARY, 100);
+	}
+
+	@Test
+	public void testToScaledLong() {
+		Assert.assertEquals(3925L, RoundDouble.toScaledLong(39.245, 2, RoundingMode.HALF_UP));
+		Assert.assertEquals(3924L, RoundDouble.toScaledLong(39.245, 2, RoundingMode.HALF_EVEN));
+		Assert.assertEquals(-100501L, RoundDouble.toScaledLong(-1.005005, 5, RoundingMode.HALF_UP));
+		Assert.assertEquals(0L, RoundDouble.toScaledLong(-1e-10, 2, RoundingMode.HALF_UP));
+		Assert.assertEquals(12L, RoundDouble.toScaledLong(1234, -2, RoundingMode.HALF_UP));
+		Assert.assertEquals(1234567890123456770L, RoundDouble.toScaledLong(1.2345678901234568e18, 0,
+				RoundingMode.HALF_UP));
+		Assert.assertEquals(39.25, RoundDouble.fromScaledLong(3925L, 2), 0.0);
+		Assert.assertEquals(1200.0, RoundDouble.fromScaledLong(12L, -2), 0.0);
+		Assert.assertEquals(9.223372036854776E-12, RoundDouble.fromScaledLong(Long.MAX_VALUE, 30), 0.0);
+
+		final Random random = new Random(1089);
+		for (int i = 0; i < 20000; i++) {
+			final double x = (random.nextDouble()
+					- 0.5)
+					* Math.pow(10, random.nextInt(12)
+							- 6);
+			final int scale = random.nextInt(12);
+			for (RoundingMode mode : new RoundingMode[] { RoundingMode.HALF_UP, RoundingMode.HALF_EVEN,
+					RoundingMode.DOWN, RoundingMode.CEILING }) {
+				final long unscaled = RoundDouble.toScaledLong(x, scale, mode);
+				Assert.assertEquals(new BigDecimal(Double.toString(x)).setScale(scale, mode)
+						.unscaledValue()
+						.longValue(), unscaled);
+				// equal as doubles: a negative value rounded to zero loses its
+				// sign
+				Assert.assertEquals(RoundDouble.round(x, scale, mode), RoundDouble.fromScaledLong(unscaled, scale),
+						0.0);
+			}
+		}
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testToScaledLongOverflow() {
+		RoundDouble.toScaledLong(1e12, 8, RoundingMode.HALF_UP);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testToScaledLongNaN() {
+		RoundDouble.toScaledLong(Double.NaN, 2, RoundingMode.HALF_UP);
+	}
+
+	@Test
+	public void testToScaledLongArray() {
+		final double[] src = { 1.2345, -1.2345, -1e-10, 0.0, 39.245, 30.095, 1e9 };
+		final long[] unscaled = new long[src.length];
+		RoundDouble.toScaledLong(src, 2, RoundingMode.HALF_UP, unscaled);
+		Assert.assertArrayEquals(new long[] { 123, -123, 0, 0, 3925, 3010, 100000000000L }, unscaled);
+
+		final long[] offset = new long[src.length
+				+ 2];
+		RoundDouble.toScaledLong(src, 4, offset, 1, 3, 6, RoundingMode.HALF_UP);
+		Assert.assertArrayEquals(new long[] { 0, 39245000, 30095000, 1000000000000000L, 0, 0, 0, 0, 0 }, offset);
+
+		final double[] restored = new double[src.length];
+		RoundDouble.fromScaledLong(unscaled, 2, restored);
+		for (int i = 0; i < src.length; i++) {
+			Assert.assertEquals(RoundDouble.round(src[i], 2), restored[i], 0.0);
+		}
+		final double[] restoredOffset = new double[4];
+		RoundDouble.fromScaledLong(offset, 1, restoredOffset, 1, 3, 6);
+		Assert.assertArrayEquals(new double[] { 0, 39.245, 30.095, 1e9 }, restoredOffset, 0.0);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testToScaledLongArrayOutOfBounds() {
+		RoundDouble.toScaledLong(new double[4], 2, new long[4], 0, 3, 2, RoundingMode.HALF_UP);
+	}
+
+	private static void assertDecimalExponent(double x) {
+		final BigDecimal decimal = new BigDecimal(Double.toString(x));
+		Assert.assertEquals(Double.toString(x), decimal.precision()
+				- decimal.scale()
+				- 1, RoundDouble.decimalExponent(x));
+		Assert.assertEquals(RoundDouble.decimalExponent(x), RoundDouble.decimalExponent(-x));
+	}
+
+	/**
+	 * Asserts that {@link RoundDouble#round(double, int, int)} is bit identical
+	 * to the {@link BigDecimal} reference for every rounding method, including
+	 * the exceptions thrown.
+	 */
+	private static void assertRoundingEquivalence(double x, int scale) {
+		for (int method : ROUNDING_METHODS) {
+			double expected;
+			try {
+				expected = RoundDouble.roundBigDecimal(x, scale, method);
+			} catch (ArithmeticException ex) {
+				try {
+					RoundDouble.round(x, scale, method);
+					Assert.fail("expected ArithmeticException for "
+							+ x
+							+ " scale "
+							+ scale);
+				} catch (ArithmeticException expectedEx) {
+					// expected
+				}
+				continue;
+			}
+			final double actual = RoundDouble.round(x, scale, method);
+			if (Double.doubleToRawLongBits(expected) != Double.doubleToRawLongBits(actual)) {
+				Assert.fail("round("
+						+ x
+						+ ", "
+						+ scale
+						+ ", "
+						+ method
+						+ ") expected "
+						+ expected
+						+ " but was "
+						+ actual);
+			}
+		}
+	}
+
 	/**
 	 * Verifies that expected and actual are within delta, or are both NaN or
 	 * infinities of the same sign.
@@ -0,0 +1,165 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundFloatTest {
+
+	/** All rounding methods defined in {@link BigDecimal}. */
+	private static final int[] ROUNDING_METHODS = { BigDecimal.ROUND_UP, BigDecimal.ROUND_DOWN,
+			BigDecimal.ROUND_CEILING, BigDecimal.ROUND_FLOOR, BigDecimal.ROUND_HALF_UP, BigDecimal.ROUND_HALF_DOWN,
+			BigDecimal.ROUND_HALF_EVEN, BigDecimal.ROUND_UNNECESSARY };
+
+	@Test
+	public void testRoundFloat() {
+		final float x = 1.234567890f;
+		Assert.assertEquals(1.23f, RoundFloat.round(x, 2), 0.0f);
+		Assert.assertEquals(1.235f, RoundFloat.round(x, 3), 0.0f);
+		Assert.assertEquals(1.2346f, RoundFloat.round(x, 4), 0.0f);
+
+		// BZ 35904
+		Assert.assertEquals(30.1f, RoundFloat.round(30.095f, 2), 0.0f);
+		Assert.assertEquals(30.1f, RoundFloat.round(30.095f, 1), 0.0f);
+		Assert.assertEquals(50.09f, RoundFloat.round(50.085f, 2), 0.0f);
+		Assert.assertEquals(50.19f, RoundFloat.round(50.185f, 2), 0.0f);
+		Assert.assertEquals(50.01f, RoundFloat.round(50.005f, 2), 0.0f);
+		Assert.assertEquals(30.01f, RoundFloat.round(30.005f, 2), 0.0f);
+		Assert.assertEquals(30.65f, RoundFloat.round(30.645f, 2), 0.0f);
+
+		Assert.assertEquals(1.24f, RoundFloat.round(x, 2, BigDecimal.ROUND_CEILING), 0.0f);
+		Assert.assertEquals(-1.23f, RoundFloat.round(-x, 2, BigDecimal.ROUND_CEILING), 0.0f);
+		Assert.assertEquals(1.23f, RoundFloat.round(x, 2, BigDecimal.ROUND_DOWN), 0.0f);
+		Assert.assertEquals(-1.24f, RoundFloat.round(-x, 2, BigDecimal.ROUND_FLOOR), 0.0f);
+		Assert.assertEquals(1.234f, RoundFloat.round(1.2345f, 3, BigDecimal.ROUND_HALF_DOWN), 0.0f);
+		Assert.assertEquals(1.234f, RoundFloat.round(1.2345f, 3, BigDecimal.ROUND_HALF_EVEN), 0.0f);
+		Assert.assertEquals(1.236f, RoundFloat.round(1.2355f, 3, BigDecimal.ROUND_HALF_EVEN), 0.0f);
+		Assert.assertEquals(-1.235f, RoundFloat.round(-1.2345f, 3, BigDecimal.ROUND_HALF_UP), 0.0f);
+		Assert.assertEquals(-1.24f, RoundFloat.round(-x, 2, BigDecimal.ROUND_UP), 0.0f);
+		Assert.assertEquals(1.23f, RoundFloat.round(1.23f, 2, BigDecimal.ROUND_UNNECESSARY), 0.0f);
+
+		try {
+			RoundFloat.round(1.234f, 2, BigDecimal.ROUND_UNNECESSARY);
+			Assert.fail();
+		} catch (ArithmeticException ex) {
+			// expected
+		}
+
+		try {
+			RoundFloat.round(1.234f, 2, 1923);
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+
+		// special values
+		Assert.assertTrue(Float.isNaN(RoundFloat.round(Float.NaN, 2)));
+		Assert.assertEquals(0.0f, RoundFloat.round(0.0f, 2), 0.0f);
+		Assert.assertEquals(Float.POSITIVE_INFINITY, RoundFloat.round(Float.POSITIVE_INFINITY, 2), 0.0f);
+		Assert.assertEquals(Float.NEGATIVE_INFINITY, RoundFloat.round(Float.NEGATIVE_INFINITY, 2), 0.0f);
+		Assert.assertEquals("-0.0", Float.toString(RoundFloat.round(-0.0f, 0)));
+		Assert.assertEquals("-0.0", Float.toString(RoundFloat.round(-1e-10f, 0)));
+	}
+
+	@Test
+	public void testRoundArray() {
+		final float[] src = { 1.2345f, -1e-10f, Float.NaN, Float.NEGATIVE_INFINITY, 30.095f };
+		final float[] dst = new float[src.length];
+		RoundFloat.round(src, 2, BigDecimal.ROUND_HALF_UP, dst);
+		for (int i = 0; i < src.length; i++) {
+			Assert.assertEquals(Float.floatToRawIntBits(RoundFloat.round(src[i], 2)), Float.floatToRawIntBits(dst[i]));
+		}
+		RoundFloat.round(src, 2, BigDecimal.ROUND_HALF_UP);
+		Assert.assertArrayEquals(dst, src, 0.0f);
+	}
+
+	@Test
+	public void testFastPathShortDecimals() {
+		final Random random = new Random(1089);
+		for (int i = 0; i < 20000; i++) {
+			final long unscaled = random.nextInt(20001)
+					- 10000;
+			final float x = new BigDecimal(unscaled).scaleByPowerOfTen(-random.nextInt(8)).floatValue();
+			assertRoundingEquivalence(x, random.nextInt(10)
+					- 2);
+		}
+	}
+
+	@Test
+	public void testFastPathTies() {
+		for (int scale = -3; scale < 10; scale++) {
+			for (long unscaled = -200; unscaled <= 200; unscaled++) {
+				final float tie = new BigDecimal(10
+						* unscaled
+						+ 5).scaleByPowerOfTen(-scale
+								- 1)
+						.floatValue();
+				assertRoundingEquivalence(tie, scale);
+				assertRoundingEquivalence(Math.nextUp(tie), scale);
+				assertRoundingEquivalence(Math.nextDown(tie), scale);
+			}
+		}
+	}
+
+	@Test
+	public void testFastPathRandomBits() {
+		final Random random = new Random(151);
+		for (int i = 0; i < 20000; i++) {
+			assertRoundingEquivalence(Float.intBitsToFloat(random.nextInt()), random.nextInt(30)
+					- 15);
+		}
+	}
+
+	/**
+	 * Asserts that {@link RoundFloat#round(float, int, int)} is bit identical
+	 * to the {@link BigDecimal} reference for every rounding method.
+	 */
+	private static void assertRoundingEquivalence(float x, int scale) {
+		for (int method : ROUNDING_METHODS) {
+			float expected;
+			try {
+				expected = RoundFloat.roundBigDecimal(x, scale, method);
+			} catch (ArithmeticException ex) {
+				try {
+					RoundFloat.round(x, scale, method);
+					Assert.fail("expected ArithmeticException for "
+							+ x
+							+ " scale "
+							+ scale);
+				} catch (ArithmeticException expectedEx) {
+					// expected
+				}
+				continue;
+			}
+			final float actual = RoundFloat.round(x, scale, method);
+			if (Float.floatToRawIntBits(expected) != Float.floatToRawIntBits(actual)) {
+				Assert.fail("round("
+						+ x
+						+ ", "
+						+ scale
+						+ ", "
+						+ method
+						+ ") expected "
+						+ expected
+						+ " but was "
+						+ actual);
+			}
+		}
+	}
+}
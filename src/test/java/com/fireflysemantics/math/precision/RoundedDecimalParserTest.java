@@ -0,0 +1,156 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundedDecimalParserTest {
+
+	@Test
+	public void testParse() {
+		final RoundedDecimalParser parser = RoundedDecimalParser.of(2, RoundingMode.HALF_UP);
+		Assert.assertEquals(39.25, parser.parse("39.245"), 0.0);
+		Assert.assertEquals(-39.25, parser.parse("-39.245"), 0.0);
+		Assert.assertEquals(1.5, parser.parse("+1.5"), 0.0);
+		Assert.assertEquals(1200.0, parser.parse("1.2e3"), 0.0);
+		Assert.assertEquals(0.01, parser.parse("5E-3"), 0.0);
+		Assert.assertEquals(0.5, parser.parse(".5"), 0.0);
+		Assert.assertEquals(5.0, parser.parse("5."), 0.0);
+		Assert.assertEquals(100.0, parser.parse("100.00000000000000000000"), 0.0);
+		Assert.assertEquals("-0.0", Double.toString(parser.parse("-0.001")));
+		Assert.assertEquals("-0.0", Double.toString(parser.parse("-0")));
+		Assert.assertTrue(Double.isNaN(parser.parse("NaN")));
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, parser.parse("-Infinity"), 0.0);
+		Assert.assertEquals(1.25, parser.parse(" 1.245 "), 0.0);
+		Assert.assertEquals(1.25, parser.parse("1.245d"), 0.0);
+		Assert.assertEquals(1.25, parser.parse("x1.245;", 1, 6), 0.0);
+		Assert.assertEquals("RoundedDecimalParser[scale=2, mode=HALF_UP]", parser.toString());
+
+		// parse then round: the 22nd digit is lost when parsing
+		Assert.assertEquals(0.12, RoundedDecimalParser.of(2, RoundingMode.HALF_EVEN)
+				.parse("0.125000000000000000001"), 0.0);
+
+		final byte[] bytes = "a-2.675b".getBytes(StandardCharsets.US_ASCII);
+		Assert.assertEquals(-2.68, parser.parse(bytes, 1, 6), 0.0);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		Assert.assertEquals(-2.68, parser.parse(buffer, 1, 6), 0.0);
+		Assert.assertEquals(bytes.length, buffer.position());
+	}
+
+	@Test
+	public void testParseDelimited() {
+		final RoundedDecimalParser parser = RoundedDecimalParser.of(1, RoundingMode.HALF_EVEN);
+		final double[] values = new double[5];
+		Assert.assertEquals(4, parser.parseDelimited("id,1.25,-3.35,7,0.05,x", 3, 20, ',', values, 1));
+		Assert.assertArrayEquals(new double[] { 0, 1.2, -3.4, 7, 0.0 }, values, 0.0);
+
+		final byte[] bytes = "1.05\n2.15\n1e1".getBytes(StandardCharsets.US_ASCII);
+		Assert.assertEquals(3, parser.parseDelimited(bytes, 0, bytes.length, (byte) '\n', values, 0));
+		Assert.assertEquals(RoundDouble.round(1.05, 1, RoundingMode.HALF_EVEN), values[0], 0.0);
+		Assert.assertEquals(RoundDouble.round(2.15, 1, RoundingMode.HALF_EVEN), values[1], 0.0);
+		Assert.assertEquals(10.0, values[2], 0.0);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalid() {
+		RoundedDecimalParser.of(2, RoundingMode.HALF_UP)
+				.parse("1.2.3");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testEmptyField() {
+		RoundedDecimalParser.of(2, RoundingMode.HALF_UP)
+				.parseDelimited("1,,2", 0, 4, ',', new double[3], 0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testUnnecessary() {
+		RoundedDecimalParser.of(1, RoundingMode.UNNECESSARY)
+				.parse("1.25");
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testRangeOutOfBounds() {
+		RoundedDecimalParser.of(1, RoundingMode.UP)
+				.parse(ByteBuffer.allocate(4), 2, 3);
+	}
+
+	@Test
+	public void testMatchesParseThenRound() {
+		final Random random = new Random(77);
+		final RoundingMode[] modes = RoundingMode.values();
+		for (int i = 0; i < 200000; i++) {
+			final String text = sample(random);
+			final int scale = random.nextInt(30)
+					- 8;
+			final RoundingMode mode = modes[random.nextInt(modes.length)];
+			String expected;
+			try {
+				expected = Long.toString(Double.doubleToRawLongBits(RoundDouble.round(Double.parseDouble(text),
+						scale, mode)));
+			} catch (ArithmeticException e) {
+				expected = "ArithmeticException";
+			}
+			String actual;
+			try {
+				actual = Long.toString(Double.doubleToRawLongBits(RoundedDecimalParser.of(scale, mode)
+						.parse(text)));
+			} catch (ArithmeticException e) {
+				actual = "ArithmeticException";
+			}
+			Assert.assertEquals(text
+					+ " "
+					+ scale
+					+ " "
+					+ mode, expected, actual);
+		}
+	}
+
+	/**
+	 * Returns decimal text of varying length, exponent notation and zeros.
+	 */
+	private static String sample(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return Double.toString(Double.longBitsToDouble(random.nextLong()));
+		case 1:
+			return new BigDecimal(random.nextLong()
+					>> random.nextInt(64)).scaleByPowerOfTen(-random.nextInt(25))
+							.toPlainString();
+		case 2:
+			return (random.nextBoolean() ? "-" : "")
+					+ random.nextInt(1000)
+					+ "."
+					+ "0000".substring(random.nextInt(5))
+					+ random.nextInt(100000)
+					+ "0000".substring(random.nextInt(5))
+					+ (random.nextBoolean() ? "" : "e"
+							+ (random.nextInt(40)
+									- 20));
+		default:
+			return Double.toString((random.nextInt(2000001)
+					- 1000000)
+					/ Math.pow(10, random.nextInt(10)));
+		}
+	}
+}
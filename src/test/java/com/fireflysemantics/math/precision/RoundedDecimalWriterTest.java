@@ -0,0 +1,180 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundedDecimalWriterTest {
+
+	@Test
+	public void testFormat() {
+		final RoundedDecimalWriter writer = RoundedDecimalWriter.of(2, RoundingMode.HALF_UP);
+		Assert.assertEquals("1.50", writer.toString(1.5));
+		Assert.assertEquals("39.25", writer.toString(39.245));
+		Assert.assertEquals("-0.05", writer.toString(-0.049));
+		Assert.assertEquals("0.00", writer.toString(0.0));
+		Assert.assertEquals("-0.00", writer.toString(-1e-10));
+		Assert.assertEquals("123456789.00", writer.toString(123456789));
+		Assert.assertEquals("NaN", writer.toString(Double.NaN));
+		Assert.assertEquals("-Infinity", writer.toString(Double.NEGATIVE_INFINITY));
+		Assert.assertEquals("1200", RoundedDecimalWriter.of(-2, RoundingMode.HALF_UP)
+				.toString(1234));
+		Assert.assertEquals("0", RoundedDecimalWriter.of(-2, RoundingMode.HALF_UP)
+				.toString(12));
+		Assert.assertEquals("-0", RoundedDecimalWriter.of(0, RoundingMode.DOWN)
+				.toString(-0.5));
+		Assert.assertEquals("0.000000000000000000001", RoundedDecimalWriter.of(21, RoundingMode.UP)
+				.toString(1e-25));
+		Assert.assertEquals(new BigDecimal("1E+300").toPlainString(), RoundedDecimalWriter.of(0,
+				RoundingMode.HALF_UP)
+				.toString(1e300));
+		Assert.assertEquals("-0.0", RoundedDecimalWriter.of(1, RoundingMode.HALF_UP)
+				.toString(-0.0));
+		Assert.assertEquals("RoundedDecimalWriter[scale=2, mode=HALF_UP]", writer.toString());
+	}
+
+	@Test
+	public void testTargets() throws IOException {
+		final RoundedDecimalWriter writer = RoundedDecimalWriter.of(3, RoundingMode.HALF_EVEN);
+		final StringBuilder sb = new StringBuilder("x=");
+		Assert.assertSame(sb, writer.append(sb, -2.0005));
+		Assert.assertEquals("x=-2.000", sb.toString());
+
+		final StringWriter out = writer.append(new StringWriter(), 1e18);
+		Assert.assertEquals("1000000000000000000.000", out.toString());
+
+		final char[] chars = new char[10];
+		Assert.assertEquals(5, writer.write(3.14159, chars, 2));
+		Assert.assertEquals("3.142", new String(chars, 2, 5));
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+		buffer.put((byte) ',');
+		Assert.assertEquals(6, writer.write(-0.0625, buffer));
+		Assert.assertEquals(7, buffer.position());
+		buffer.flip();
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		Assert.assertEquals(",-0.062", new String(bytes, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testOverflowWritesNothing() {
+		final RoundedDecimalWriter writer = RoundedDecimalWriter.of(2, RoundingMode.HALF_UP);
+		final ByteBuffer buffer = ByteBuffer.allocate(4);
+		try {
+			writer.write(12.5, buffer);
+			Assert.fail();
+		} catch (BufferOverflowException e) {
+			Assert.assertEquals(0, buffer.position());
+		}
+		final char[] chars = new char[5];
+		try {
+			writer.write(12.5, chars, 1);
+			Assert.fail();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			Assert.assertArrayEquals(new char[5], chars);
+		}
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testUnnecessary() {
+		RoundedDecimalWriter.of(1, RoundingMode.UNNECESSARY)
+				.toString(1.25);
+	}
+
+	@Test
+	public void testMatchesBigDecimal() {
+		final Random random = new Random(314);
+		final char[] chars = new char[512];
+		for (int i = 0; i < 50000; i++) {
+			final double x;
+			switch (random.nextInt(3)) {
+			case 0:
+				x = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				x = (random.nextInt(2000001)
+						- 1000000)
+						/ Math.pow(10, random.nextInt(8));
+				break;
+			default:
+				x = (random.nextDouble()
+						- 0.5)
+						* Math.pow(10, random.nextInt(40)
+								- 20);
+			}
+			final int scale = random.nextInt(30)
+					- 8;
+			final RoundingMode mode = RoundingMode.values()[random.nextInt(RoundingMode.values().length)];
+			final RoundedDecimalWriter writer = RoundedDecimalWriter.of(scale, mode);
+			String expected;
+			try {
+				expected = reference(x, scale, mode);
+			} catch (ArithmeticException e) {
+				expected = "ArithmeticException";
+			}
+			String actual;
+			try {
+				actual = new String(chars, 0, writer.write(x, chars, 0));
+			} catch (ArithmeticException e) {
+				actual = "ArithmeticException";
+			}
+			Assert.assertEquals(x
+					+ " "
+					+ scale
+					+ " "
+					+ mode, expected, actual);
+			if (!Double.isNaN(x)
+					&& !actual.startsWith("A")) {
+				Assert.assertEquals(Double.doubleToRawLongBits(RoundDouble.round(x, scale, mode)), Double
+						.doubleToRawLongBits(Double.parseDouble(actual)));
+			}
+		}
+	}
+
+	/**
+	 * Formats with {@link BigDecimal}, keeping the sign of a negative value
+	 * rounded to zero.
+	 */
+	private static String reference(double x, int scale, RoundingMode mode) {
+		if (Double.isNaN(x)
+				|| Double.isInfinite(x)) {
+			return Double.toString(x);
+		}
+		final BigDecimal rounded = new BigDecimal(Double.toString(x)).setScale(scale, mode);
+		if (rounded.signum() != 0) {
+			return rounded.toPlainString();
+		}
+		final StringBuilder zero = new StringBuilder(Double.doubleToRawLongBits(x) < 0 ? "-0"
+				: "0");
+		if (scale > 0) {
+			zero.append('.');
+			for (int i = 0; i < scale; i++) {
+				zero.append('0');
+			}
+		}
+		return zero.toString();
+	}
+}
@@ -0,0 +1,163 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+package com.fireflysemantics.math.precision;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundingCacheTest {
+
+	@Test
+	public void testRound() {
+		final RoundingCache cache = RoundingCache.of(2, RoundingMode.HALF_UP, 64);
+		final double[] values = { 1.005, -1.005, 2.5, -0.001, -0d, 0d, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, 1e300, Double.MIN_VALUE };
+		for (int repeat = 0; repeat < 3; repeat++) {
+			for (double x : values) {
+				Assert.assertEquals(Double.doubleToRawLongBits(cache.getContext()
+						.round(x)), Double.doubleToRawLongBits(cache.round(x)));
+			}
+		}
+		// every value but NaN is a hit after the first round
+		Assert.assertEquals(2
+				* (values.length
+						- 1),
+				cache.getHitCount());
+		Assert.assertEquals(values.length
+				+ 2, cache.getMissCount());
+		Assert.assertEquals(0, cache.getEvictionCount());
+		cache.resetStatistics();
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertTrue(Double.isNaN(cache.getHitRate()));
+	}
+
+	@Test
+	public void testEviction() {
+		final RoundingCache cache = RoundingCache.of(3, RoundingMode.HALF_EVEN, 16);
+		Assert.assertEquals(16, cache.getCapacity());
+		final Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final double x = random.nextDouble()
+					* 100;
+			Assert.assertEquals(cache.getContext()
+					.round(x), cache.round(x), 0);
+		}
+		Assert.assertEquals(10000, cache.getMissCount());
+		Assert.assertTrue(cache.getEvictionCount() > 9900);
+	}
+
+	@Test
+	public void testClockKeepsRepeatedValues() {
+		final RoundingCache cache = RoundingCache.of(1, RoundingMode.HALF_UP, 8);
+		// a single bucket of hot values, read between one-off values
+		for (int i = 0; i < 4; i++) {
+			cache.round(i);
+		}
+		cache.resetStatistics();
+		for (int i = 100; i < 200; i++) {
+			cache.round(i
+					+ 0.01);
+			for (int j = 0; j < 4; j++) {
+				cache.round(j);
+			}
+		}
+		Assert.assertEquals(400, cache.getHitCount());
+		Assert.assertEquals(100, cache.getMissCount());
+	}
+
+	@Test
+	public void testClear() {
+		final RoundingCache cache = RoundingCache.of(0, RoundingMode.FLOOR, 100);
+		Assert.assertEquals(128, cache.getCapacity());
+		cache.round(1.5);
+		cache.round(1.5);
+		Assert.assertEquals(1, cache.getHitCount());
+		cache.clear();
+		cache.round(1.5);
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1 / 3d, cache.getHitRate(), 0);
+	}
+
+	@Test
+	public void testBulk() {
+		final RoundingCache cache = RoundingCache.of(25, RoundingMode.HALF_EVEN, 1024);
+		final double[] values = new double[1000];
+		final Random random = new Random(3);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(50)
+					/ 7.0;
+		}
+		final double[] expected = values.clone();
+		cache.getContext()
+				.round(expected);
+		cache.round(values);
+		Assert.assertArrayEquals(expected, values, 0);
+		Assert.assertEquals(50, cache.getMissCount());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final RoundingCache cache = RoundingCache.of(30, RoundingMode.HALF_UP, 64);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				final long seed = t;
+				results.add(executor.submit(new Callable<Boolean>() {
+
+					@Override
+					public Boolean call() {
+						final Random random = new Random(seed);
+						for (int i = 0; i < 100000; i++) {
+							final double x = random.nextInt(200)
+									/ 3.0;
+							if (cache.round(x) != cache.getContext()
+									.round(x)) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(400000, cache.getHitCount()
+				+ cache.getMissCount());
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testUnnecessary() {
+		RoundingCache.of(1, RoundingMode.UNNECESSARY, 8)
+				.round(1.25);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacity() {
+		RoundingCache.of(1, RoundingMode.HALF_UP, 0);
+	}
+}
@@ -0,0 +1,140 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundingContextTest {
+
+	@Test
+	public void testCache() {
+		Assert.assertSame(RoundingContext.of(2, RoundingMode.HALF_EVEN), RoundingContext.of(2,
+				RoundingMode.HALF_EVEN));
+		Assert.assertSame(RoundingContext.of(-22, RoundingMode.UP), RoundingContext.of(-22, RoundingMode.UP));
+		Assert.assertNotSame(RoundingContext.of(2, RoundingMode.HALF_EVEN), RoundingContext.of(2,
+				RoundingMode.HALF_UP));
+		final RoundingContext context = RoundingContext.of(40, RoundingMode.FLOOR);
+		Assert.assertEquals(40, context.getScale());
+		Assert.assertEquals(RoundingMode.FLOOR, context.getRoundingMode());
+		Assert.assertEquals("RoundingContext[scale=40, mode=FLOOR]", context.toString());
+	}
+
+	@Test
+	public void testRound() {
+		final RoundingContext context = RoundingContext.of(2, RoundingMode.HALF_UP);
+		Assert.assertEquals(39.25, context.round(39.245), 0.0);
+		Assert.assertEquals(-39.25, context.round(-39.245), 0.0);
+		Assert.assertEquals("-0.0", Double.toString(context.round(-1e-10)));
+		Assert.assertTrue(Double.isNaN(context.round(Double.NaN)));
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, context.round(Double.NEGATIVE_INFINITY), 0.0);
+		Assert.assertEquals(39.24, RoundDouble.round(39.245, 2, RoundingMode.DOWN), 0.0);
+		Assert.assertEquals(1.5, RoundingContext.of(1, RoundingMode.UNNECESSARY)
+				.round(1.5), 0.0);
+
+		final double[] values = { 1.005, 2.675, -0.125, Double.NaN };
+		final double[] expected = new double[values.length];
+		RoundDouble.round(values, 2, BigDecimal.ROUND_HALF_EVEN, expected);
+		final double[] actual = new double[values.length
+				+ 1];
+		RoundingContext.of(2, RoundingMode.HALF_EVEN)
+				.round(values, 0, actual, 1, values.length);
+		for (int i = 0; i < values.length; i++) {
+			Assert.assertEquals(expected[i], actual[i
+					+ 1], 0.0);
+		}
+		RoundingContext.of(2, RoundingMode.HALF_EVEN)
+				.round(values);
+		Assert.assertArrayEquals(expected, values, 0.0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testUnnecessary() {
+		RoundingContext.of(1, RoundingMode.UNNECESSARY)
+				.round(1.25);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testRoundOutOfBounds() {
+		RoundingContext.of(1, RoundingMode.UP)
+				.round(new double[4], 2, new double[4], 0, 3);
+	}
+
+	@Test
+	public void testMatchesRoundDouble() {
+		final Random random = new Random(5501);
+		for (int i = 0; i < 100000; i++) {
+			final double x;
+			switch (random.nextInt(3)) {
+			case 0:
+				x = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				// short decimals, exercising ties and exact integers
+				x = (random.nextInt(2000001)
+						- 1000000)
+						/ Math.pow(10, random.nextInt(8));
+				break;
+			default:
+				x = (random.nextDouble()
+						- 0.5)
+						* Math.pow(10, random.nextInt(40)
+								- 20);
+			}
+			final int scale = random.nextInt(50)
+					- 25;
+			for (RoundingMode mode : RoundingMode.values()) {
+				assertSameResult(x, scale, mode);
+			}
+		}
+	}
+
+	/**
+	 * Asserts that the context rounds bit identically to the
+	 * {@link BigDecimal} reference, including the exceptions thrown.
+	 */
+	private static void assertSameResult(double x, int scale, RoundingMode mode) {
+		double expected;
+		try {
+			// the ordinals of RoundingMode are the BigDecimal.ROUND_* constants
+			expected = RoundDouble.roundBigDecimal(x, scale, mode.ordinal());
+		} catch (ArithmeticException e) {
+			try {
+				RoundingContext.of(scale, mode)
+						.round(x);
+				Assert.fail("expected ArithmeticException for "
+						+ x
+						+ " "
+						+ scale
+						+ " "
+						+ mode);
+			} catch (ArithmeticException ignored) {
+				// expected
+			}
+			return;
+		}
+		Assert.assertEquals(x
+				+ " "
+				+ scale
+				+ " "
+				+ mode, Double.doubleToRawLongBits(expected),
+				Double.doubleToRawLongBits(RoundingContext.of(scale, mode)
+						.round(x)));
+	}
+}
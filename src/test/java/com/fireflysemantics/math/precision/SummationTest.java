@@ -0,0 +1,138 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SummationTest {
+
+	@Test
+	public void testSum() {
+		final double[] values = randomValues(new Random(151), 10000);
+		final BigDecimal exact = exactSum(values, 0, values.length);
+		final SumResult result = Summation.sum(values);
+		Assert.assertEquals(exact.doubleValue(), result.getSum(), 0.0);
+		Assert.assertEquals(values.length, result.getCount());
+		assertWithinBound(exact, result);
+		Assert.assertEquals(result.getMean(), Summation.mean(values), 0.0);
+		Assert.assertTrue(Math.abs(exact.doubleValue()
+				/ values.length
+				- result.getMean()) <= result.getMeanErrorBound());
+
+		final SumResult range = Summation.sum(values, 100, 50);
+		Assert.assertEquals(exactSum(values, 100, 50).doubleValue(), range.getSum(), 0.0);
+		Assert.assertEquals(50, range.getCount());
+		Assert.assertTrue(Double.isNaN(Summation.mean(new double[0])));
+	}
+
+	@Test
+	public void testSumPairwise() {
+		final Random random = new Random(35904);
+		for (int n : new int[] { 0, 1, 128, 129, 1000, 100000 }) {
+			final double[] values = randomValues(random, n);
+			final SumResult result = Summation.sumPairwise(values);
+			Assert.assertEquals(n, result.getCount());
+			assertWithinBound(exactSum(values, 0, n), result);
+		}
+		Assert.assertEquals(0, Summation.pairwiseDepth(1));
+		Assert.assertEquals(127, Summation.pairwiseDepth(128));
+		Assert.assertEquals(65, Summation.pairwiseDepth(129));
+		Assert.assertEquals(6.0, Summation.sumPairwise(new double[] { 0, 1, 2, 3, 4 }, 1, 3)
+				.getSum(), 0.0);
+	}
+
+	@Test
+	public void testDot() {
+		final Random random = new Random(1089);
+		final double[] x = randomValues(random, 5000);
+		final double[] y = randomValues(random, 5001);
+		BigDecimal exact = BigDecimal.ZERO;
+		for (int i = 0; i < x.length; i++) {
+			exact = exact.add(new BigDecimal(x[i]).multiply(new BigDecimal(y[i
+					+ 1])));
+		}
+		final SumResult result = Summation.dot(x, 0, y, 1, x.length);
+		Assert.assertEquals(exact.doubleValue(), result.getSum(), 0.0);
+		assertWithinBound(exact, result);
+
+		Assert.assertEquals(32.0, Summation.dot(new double[] { 1, 2, 3 }, new double[] { 4, 5, 6 })
+				.getSum(), 0.0);
+	}
+
+	@Test
+	public void testParallelIsReproducible() {
+		final Random random = new Random(1);
+		final double[] x = randomValues(random, 200000);
+		final double[] y = randomValues(random, 200000);
+		final SumResult sum = Summation.sumParallel(x, 0, x.length, 1000);
+		assertWithinBound(exactSum(x, 0, x.length), sum);
+		Assert.assertEquals(Summation.sum(x)
+				.getSum(), sum.getSum(), 0.0);
+		for (int i = 0; i < 5; i++) {
+			final SumResult again = Summation.sumParallel(x, 0, x.length, 1000);
+			Assert.assertEquals(Double.doubleToLongBits(sum.getSum()), Double.doubleToLongBits(again.getSum()));
+			Assert.assertEquals(sum.getErrorBound(), again.getErrorBound(), 0.0);
+		}
+		Assert.assertEquals(x.length, Summation.sumParallel(x)
+				.getCount());
+
+		final SumResult dot = Summation.dotParallel(x, 0, y, 0, x.length, 1000);
+		Assert.assertEquals(Summation.dot(x, y)
+				.getSum(), dot.getSum(), 0.0);
+		Assert.assertEquals(dot.getSum(), Summation.dotParallel(x, y)
+				.getSum(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelThreshold() {
+		Summation.sumParallel(new double[4], 0, 4, 0);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testDotOutOfBounds() {
+		Summation.dot(new double[4], new double[3]);
+	}
+
+	private static double[] randomValues(Random random, int n) {
+		final double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = (random.nextDouble()
+					- 0.5)
+					* Math.pow(10, random.nextInt(12)
+							- 6);
+		}
+		return values;
+	}
+
+	private static BigDecimal exactSum(double[] values, int offset, int length) {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = offset; i < offset
+				+ length; i++) {
+			sum = sum.add(new BigDecimal(values[i]));
+		}
+		return sum;
+	}
+
+	private static void assertWithinBound(BigDecimal exact, SumResult result) {
+		final double error = exact.subtract(new BigDecimal(result.getSum()))
+				.abs()
+				.doubleValue();
+		Assert.assertTrue(result.toString(), error <= result.getErrorBound());
+	}
+}
@@ -0,0 +1,171 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToleranceCollapseTest {
+
+	@Test
+	public void testSortMatchesArraysSort() {
+		final Random random = new Random(1089);
+		for (int n : new int[] { 0, 1, 2, 31, 33, 1000, 100000 }) {
+			final double[] values = new double[n];
+			for (int i = 0; i < n; i++) {
+				switch (random.nextInt(8)) {
+				case 0:
+					values[i] = Double.NaN;
+					break;
+				case 1:
+					values[i] = random.nextBoolean() ? 0d : -0d;
+					break;
+				case 2:
+					values[i] = random.nextInt(5);
+					break;
+				default:
+					values[i] = random.nextGaussian();
+				}
+			}
+			final double[] expected = values.clone();
+			Arrays.sort(expected);
+			final double[] actual = values.clone();
+			DoubleSort.sort(actual, 0, n);
+			assertBitsEqual(expected, actual);
+			final double[] parallel = values.clone();
+			DoubleSort.parallelSort(parallel, 0, n, 100);
+			assertBitsEqual(expected, parallel);
+		}
+	}
+
+	@Test
+	public void testSortAdversarialInputs() {
+		final int n = 50000;
+		final double[] ascending = new double[n];
+		final double[] organPipe = new double[n];
+		for (int i = 0; i < n; i++) {
+			ascending[i] = i;
+			organPipe[i] = Math.min(i, n
+					- i);
+		}
+		for (double[] values : new double[][] { ascending, organPipe, new double[n] }) {
+			final double[] expected = values.clone();
+			Arrays.sort(expected);
+			final double[] reversed = new double[n];
+			for (int i = 0; i < n; i++) {
+				reversed[i] = values[n
+						- 1
+						- i];
+			}
+			DoubleSort.sort(values, 0, n);
+			DoubleSort.sort(reversed, 0, n);
+			assertBitsEqual(expected, values);
+			assertBitsEqual(expected, reversed);
+		}
+	}
+
+	@Test
+	public void testSortAndCollapse() {
+		final double[] values = { 1.03, 1.0, 2.0, 1.01, 1.04, 2.0, 3.5, 1.06 };
+		final int[] runCounts = new int[values.length];
+		final int runs = ToleranceCollapse.sortAndCollapse(values, 0, values.length, Tolerance.absolute(0.05),
+				runCounts);
+		Assert.assertEquals(4, runs);
+		Assert.assertArrayEquals(new double[] { 1.0, 1.06, 2.0, 3.5 }, Arrays.copyOf(values, runs), 0.0);
+		Assert.assertArrayEquals(new int[] { 4, 1, 2, 1 }, Arrays.copyOf(runCounts, runs));
+
+		Assert.assertEquals(2, ToleranceCollapse.sortAndCollapse(new double[] { 5, 1, 5, 1, 1 }, 0.0));
+		final double x = 0.1;
+		final double[] ulps = { Math.nextUp(x), x, Math.nextUp(Math.nextUp(x)), -x };
+		Assert.assertEquals(3, ToleranceCollapse.sortAndCollapse(ulps.clone(), 1));
+		Assert.assertEquals(2, ToleranceCollapse.sortAndCollapse(ulps, 2));
+		Assert.assertEquals(-x, ulps[0], 0.0);
+		Assert.assertEquals(0, ToleranceCollapse.sortAndCollapse(new double[0], 1));
+	}
+
+	@Test
+	public void testNaN() {
+		final double[] values = { Double.NaN, 1, Double.NaN, -0d, 0d };
+		Assert.assertEquals(4, ToleranceCollapse.sortAndCollapse(values.clone(), 0, values.length,
+				Tolerance.ulps(0), null));
+		final int[] runCounts = new int[2];
+		Assert.assertEquals(2, ToleranceCollapse.sortAndCollapse(values.clone(), 0, values.length,
+				Tolerance.absolute(1)
+						.includingNaN(),
+				runCounts));
+		Assert.assertArrayEquals(new int[] { 3, 2 }, runCounts);
+		Assert.assertEquals(4, ToleranceCollapse.sortAndCollapse(values, 0.5));
+		Assert.assertEquals("-0.0", Double.toString(values[0]));
+	}
+
+	@Test
+	public void testParallel() {
+		final Random random = new Random(35904);
+		final double[] values = new double[200000];
+		for (int i = 0; i < values.length; i++) {
+			// ticks on a grid of 0.01 with representation noise
+			values[i] = random.nextInt(5000)
+					* 0.01
+					+ (random.nextDouble()
+							- 0.5)
+							* 1e-9;
+		}
+		final double[] sequential = values.clone();
+		final int[] sequentialCounts = new int[values.length];
+		final int runs = ToleranceCollapse.sortAndCollapse(sequential, 0, values.length, Tolerance.absolute(1e-6),
+				sequentialCounts);
+		final double[] parallel = values.clone();
+		final int[] parallelCounts = new int[values.length];
+		Assert.assertEquals(runs, ToleranceCollapse.sortAndCollapseParallel(parallel, 0, values.length,
+				Tolerance.absolute(1e-6), parallelCounts, 1000));
+		Assert.assertTrue(runs <= 5000);
+		Assert.assertArrayEquals(Arrays.copyOf(sequential, runs), Arrays.copyOf(parallel, runs), 0.0);
+		Assert.assertArrayEquals(sequentialCounts, parallelCounts);
+		int total = 0;
+		for (int i = 0; i < runs; i++) {
+			total += sequentialCounts[i];
+		}
+		Assert.assertEquals(values.length, total);
+		Assert.assertEquals(runs, ToleranceCollapse.sortAndCollapseParallel(values, Tolerance.absolute(1e-6), null));
+	}
+
+	@Test
+	public void testCollapseSorted() {
+		final double[] values = { 0, 1, 1, 1, 2, 9 };
+		Assert.assertEquals(2, ToleranceCollapse.collapseSorted(values, 1, 4, Tolerance.ulps(0), null));
+		Assert.assertArrayEquals(new double[] { 0, 1, 2, 1, 2, 9 }, values, 0.0);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testRunCountsTooShort() {
+		ToleranceCollapse.sortAndCollapse(new double[] { 1, 2, 3 }, 0, 3, Tolerance.ulps(0), new int[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelThreshold() {
+		ToleranceCollapse.sortAndCollapseParallel(new double[4], 0, 4, Tolerance.ulps(0), null, 0);
+	}
+
+	private static void assertBitsEqual(double[] expected, double[] actual) {
+		Assert.assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals("at "
+					+ i, Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+		}
+	}
+}
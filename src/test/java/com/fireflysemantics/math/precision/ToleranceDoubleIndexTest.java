@@ -0,0 +1,185 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToleranceDoubleIndexTest {
+
+	@Test
+	public void testGrouping() {
+		final ToleranceDoubleIndex index = ToleranceDoubleIndex.absolute(0.01);
+		Assert.assertEquals(0, index.insert(1.0));
+		Assert.assertEquals(0, index.insert(1.005));
+		Assert.assertEquals(1, index.insert(1.02));
+		Assert.assertEquals(1, index.insert(1.011));
+		Assert.assertEquals(0, index.insert(0.995));
+		Assert.assertEquals(2, index.insert(-1.0));
+		Assert.assertEquals(3, index.insert(0.0));
+		Assert.assertEquals(3, index.insert(-0.0));
+
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals(1.0, index.get(0), 0.0);
+		Assert.assertEquals(3, index.getCount(0));
+		Assert.assertEquals(2, index.getCount(1));
+		Assert.assertTrue(index.contains(1.009));
+		Assert.assertFalse(index.contains(1.5));
+		Assert.assertFalse(index.contains(Double.NaN));
+		Assert.assertEquals(-1, index.groupId(0.5));
+		Assert.assertEquals(2, index.groupId(-1.005));
+
+		final PrimitiveIterator.OfDouble iterator = index.iterator();
+		final double[] values = index.toArray();
+		for (double value : values) {
+			Assert.assertEquals(value, iterator.nextDouble(), 0.0);
+		}
+		Assert.assertFalse(iterator.hasNext());
+
+		index.clear();
+		Assert.assertEquals(0, index.size());
+		Assert.assertFalse(index.contains(1.0));
+	}
+
+	@Test
+	public void testAdjacentDoublesAboveTolerance() {
+		// adjacent doubles are equal even when further apart than eps
+		final ToleranceDoubleIndex index = ToleranceDoubleIndex.absolute(1e-9);
+		final double big = 1e10;
+		Assert.assertEquals(0, index.insert(big));
+		Assert.assertEquals(0, index.insert(Math.nextUp(big)));
+		Assert.assertEquals(0, index.insert(Math.nextDown(big)));
+		Assert.assertEquals(1, index.insert(Math.nextUp(Math.nextUp(big))));
+		Assert.assertEquals(2, index.insert(Double.POSITIVE_INFINITY));
+		Assert.assertEquals(2, index.insert(Double.MAX_VALUE));
+		Assert.assertEquals(3, index.insert(Double.NEGATIVE_INFINITY));
+	}
+
+	@Test
+	public void testUlps() {
+		final ToleranceDoubleIndex index = ToleranceDoubleIndex.ulps(2);
+		Assert.assertEquals(0, index.insert(1.0));
+		Assert.assertEquals(0, index.insert(Math.nextUp(Math.nextUp(1.0))));
+		Assert.assertEquals(1, index.insert(Math.nextUp(Math.nextUp(Math.nextUp(1.0)))));
+		Assert.assertEquals(2, index.insert(Double.MIN_VALUE));
+		Assert.assertEquals(2, index.insert(-Double.MIN_VALUE));
+		Assert.assertEquals(3, index.insert(-3
+				* Double.MIN_VALUE));
+	}
+
+	@Test
+	public void testCellsOfEqualValuesAreAdjacent() {
+		final Random random = new Random(1089);
+		final double[] tolerances = { 0, Double.MIN_VALUE, 3
+				* Double.MIN_VALUE, 1e-300, 1e-9, 0.01, 0.75, 1, 3e5, 1e300 };
+		for (double eps : tolerances) {
+			final ToleranceDoubleIndex index = ToleranceDoubleIndex.absolute(eps);
+			for (int i = 0; i < 20000; i++) {
+				final double x;
+				switch (random.nextInt(3)) {
+				case 0:
+					x = Double.longBitsToDouble(random.nextLong());
+					break;
+				case 1:
+					x = (random.nextDouble()
+							- 0.5)
+							* eps
+							* Math.scalb(1.0, random.nextInt(60));
+					break;
+				default:
+					x = random.nextBoolean() ? eps : -eps;
+				}
+				if (Double.isNaN(x)) {
+					continue;
+				}
+				final double[] others = { Math.nextUp(x), Math.nextDown(x), x
+						+ eps,
+						x
+								- eps,
+						x
+								+ random.nextDouble()
+										* eps };
+				for (double y : others) {
+					if (PrecisionAssert.equals(x, y, eps)) {
+						Assert.assertTrue(eps
+								+ " "
+								+ x
+								+ " "
+								+ y, Math.abs(index.cell(x)
+										- index.cell(y)) <= 1);
+					}
+					if (x < y) {
+						Assert.assertTrue(index.cell(x) <= index.cell(y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesBruteForce() {
+		final Random random = new Random(151);
+		for (int trial = 0; trial < 2; trial++) {
+			final boolean ulps = trial == 1;
+			final double eps = 0.05;
+			final int maxUlps = 1 << 44;
+			final ToleranceDoubleIndex index = ulps ? ToleranceDoubleIndex.ulps(maxUlps)
+					: ToleranceDoubleIndex.absolute(eps);
+			final double[] representatives = new double[5000];
+			int size = 0;
+			for (int i = 0; i < 5000; i++) {
+				final double x = Math.round(random.nextGaussian()
+						* 100)
+						/ 10.0
+						+ random.nextDouble()
+								* 0.01;
+				int expected = -1;
+				double best = Double.POSITIVE_INFINITY;
+				for (int id = 0; id < size; id++) {
+					final double r = representatives[id];
+					if (ulps ? PrecisionAssert.equals(x, r, maxUlps) : PrecisionAssert.equals(x, r, eps)) {
+						final double distance = ulps ? PrecisionAssert.ulpDistance(x, r)
+								: Math.abs(x
+										- r);
+						if (distance < best) {
+							best = distance;
+							expected = id;
+						}
+					}
+				}
+				Assert.assertEquals(expected, index.groupId(x));
+				if (expected < 0) {
+					representatives[size] = x;
+					expected = size++;
+				}
+				Assert.assertEquals(expected, index.insert(x));
+			}
+			Assert.assertEquals(size, index.size());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInsertNaN() {
+		ToleranceDoubleIndex.absolute(1).insert(Double.NaN);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeEps() {
+		ToleranceDoubleIndex.absolute(-1);
+	}
+}
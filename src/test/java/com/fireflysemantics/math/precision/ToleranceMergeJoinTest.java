@@ -0,0 +1,166 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToleranceMergeJoinTest {
+
+	@Test
+	public void testJoin() {
+		final double[] left = { 1.0, 2.0, 3.0, 4.0, 7.0 };
+		final double[] right = { 0.5, 2.0001, 3.0, 5.0, 6.9999, 8.0 };
+		final Recorder recorder = new Recorder();
+		Assert.assertEquals(3, ToleranceMergeJoin.join(left, right, Tolerance.absolute(1e-3), recorder));
+		Assert.assertEquals(Arrays.asList("r0", "l0", "m1-1", "m2-2", "l3", "r3", "m4-4", "r5"), recorder.events);
+	}
+
+	@Test
+	public void testUlps() {
+		final double x = 0.1;
+		final double[] left = { x, 1 };
+		final double[] right = { Math.nextUp(x), Math.nextUp(1d) };
+		Assert.assertEquals(0, ToleranceMergeJoin.join(left, right, Tolerance.ulps(0), (l, r) -> {
+		}));
+		Assert.assertEquals(2, ToleranceMergeJoin.join(left, right, Tolerance.ulps(1), (l, r) -> {
+		}));
+	}
+
+	@Test
+	public void testNaN() {
+		final double[] left = { 1, Double.NaN };
+		final double[] right = { 1, Double.NaN, Double.NaN };
+		Recorder recorder = new Recorder();
+		Assert.assertEquals(1, ToleranceMergeJoin.join(left, right, Tolerance.ulps(0), recorder));
+		Assert.assertEquals(Arrays.asList("m0-0", "r1", "r2", "l1"), recorder.events);
+		recorder = new Recorder();
+		Assert.assertEquals(2, ToleranceMergeJoin.join(left, right, Tolerance.ulps(0)
+				.includingNaN(), recorder));
+		Assert.assertEquals(Arrays.asList("m0-0", "m1-1", "r2"), recorder.events);
+	}
+
+	@Test
+	public void testSourcesAgree() {
+		final Random random = new Random(1089);
+		final double[] left = new double[10000];
+		final double[] right = new double[12000];
+		for (int i = 0; i < left.length; i++) {
+			left[i] = random.nextInt(20000)
+					* 0.01;
+		}
+		for (int i = 0; i < right.length; i++) {
+			right[i] = random.nextInt(20000)
+					* 0.01
+					+ 1e-9;
+		}
+		Arrays.sort(left);
+		Arrays.sort(right);
+		final Tolerance tolerance = Tolerance.absolute(1e-6);
+		final Recorder arrays = new Recorder();
+		final long matches = ToleranceMergeJoin.join(left, right, tolerance, arrays);
+		Assert.assertTrue(matches > 0);
+
+		final DoubleBuffer leftBuffer = ByteBuffer.allocateDirect(8
+				* (left.length
+						+ 1))
+				.asDoubleBuffer();
+		leftBuffer.put(-1d)
+				.put(left)
+				.position(1);
+		final Recorder buffers = new Recorder();
+		Assert.assertEquals(matches, ToleranceMergeJoin.join(leftBuffer, DoubleBuffer.wrap(right), tolerance,
+				buffers));
+		Assert.assertEquals(1, leftBuffer.position());
+		Assert.assertEquals(arrays.events, buffers.events);
+
+		final Recorder iterators = new Recorder();
+		Assert.assertEquals(matches, ToleranceMergeJoin.join(Arrays.stream(left)
+				.iterator(),
+				Arrays.stream(right)
+						.iterator(),
+				tolerance, iterators));
+		Assert.assertEquals(arrays.events, iterators.events);
+
+		// every index is reported exactly once on each side
+		int leftEvents = 0;
+		int rightEvents = 0;
+		for (String event : arrays.events) {
+			if (event.startsWith("m")) {
+				leftEvents++;
+				rightEvents++;
+			} else if (event.startsWith("l")) {
+				leftEvents++;
+			} else {
+				rightEvents++;
+			}
+		}
+		Assert.assertEquals(left.length, leftEvents);
+		Assert.assertEquals(right.length, rightEvents);
+	}
+
+	@Test
+	public void testRanges() {
+		final double[] left = { 9, 1, 2, 9 };
+		final double[] right = { 2, 3 };
+		final Recorder recorder = new Recorder();
+		Assert.assertEquals(1, ToleranceMergeJoin.join(left, 1, 2, right, 0, 2, Tolerance.ulps(0), recorder));
+		Assert.assertEquals(Arrays.asList("l0", "m1-0", "r1"), recorder.events);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsorted() {
+		ToleranceMergeJoin.join(new double[] { 1, 3, 2 }, new double[] { 5 }, Tolerance.ulps(0), (l, r) -> {
+		});
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		ToleranceMergeJoin.join(new double[2], 1, 2, new double[2], 0, 2, Tolerance.ulps(0), (l, r) -> {
+		});
+	}
+
+	private static final class Recorder implements ToleranceMergeJoin.Listener {
+
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public void matched(long leftIndex, long rightIndex) {
+			events.add("m"
+					+ leftIndex
+					+ "-"
+					+ rightIndex);
+		}
+
+		@Override
+		public void leftOnly(long leftIndex) {
+			events.add("l"
+					+ leftIndex);
+		}
+
+		@Override
+		public void rightOnly(long rightIndex) {
+			events.add("r"
+					+ rightIndex);
+		}
+	}
+}
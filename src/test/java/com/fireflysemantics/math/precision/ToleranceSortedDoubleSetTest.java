@@ -0,0 +1,145 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToleranceSortedDoubleSetTest {
+
+	@Test
+	public void testLookups() {
+		final ToleranceSortedDoubleSet set = ToleranceSortedDoubleSet.of(3.0, 1.0, 2.0, 1.0, -0.0, 0.0);
+		Assert.assertEquals(5, set.size());
+		Assert.assertArrayEquals(new double[] { -0.0, 0.0, 1.0, 2.0, 3.0 }, set.toArray(), 0.0);
+		Assert.assertTrue(set.contains(2.0));
+		Assert.assertFalse(set.contains(2.5));
+		Assert.assertFalse(set.contains(Double.NaN));
+
+		Assert.assertEquals(2.0, set.floor(2.5), 0.0);
+		Assert.assertEquals(3.0, set.ceiling(2.5), 0.0);
+		Assert.assertEquals(2.0, set.floor(2.0), 0.0);
+		Assert.assertTrue(Double.isNaN(set.floor(-1.0)));
+		Assert.assertTrue(Double.isNaN(set.ceiling(3.5)));
+		Assert.assertEquals(-1, set.ceilingIndex(Double.POSITIVE_INFINITY));
+
+		Assert.assertEquals(2.0, set.nearest(2.4), 0.0);
+		Assert.assertEquals(3.0, set.nearest(2.6), 0.0);
+		Assert.assertEquals(1.0, set.nearest(1.5), 0.0);
+		Assert.assertEquals(3.0, set.nearest(1e300), 0.0);
+		Assert.assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(set.nearest(-1.0)));
+		Assert.assertTrue(Double.isNaN(set.nearest(Double.NaN)));
+		Assert.assertTrue(Double.isNaN(ToleranceSortedDoubleSet.of().nearest(1.0)));
+
+		Assert.assertArrayEquals(new double[] { 1.0, 2.0 }, set.rangeWithin(1.5, 0.5), 0.0);
+		Assert.assertEquals(0, set.countWithin(2.5, 0.4));
+		Assert.assertEquals(-1, set.firstIndexWithin(2.5, 0.4));
+		Assert.assertEquals(2, set.firstIndexWithin(1.0, 1));
+		Assert.assertArrayEquals(new double[] { -0.0, 0.0 }, set.rangeWithin(Double.MIN_VALUE, 1), 0.0);
+		Assert.assertEquals(0, set.countWithin(Double.MIN_VALUE, 0));
+		Assert.assertEquals(0, set.countWithin(1.0, -1));
+	}
+
+	@Test
+	public void testMatchesTreeSet() {
+		final Random random = new Random(4711);
+		final double[] values = new double[2000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = sample(random);
+		}
+		values[0] = Double.POSITIVE_INFINITY;
+		values[1] = Double.NEGATIVE_INFINITY;
+		values[2] = -0.0;
+		final ToleranceSortedDoubleSet set = ToleranceSortedDoubleSet.of(values);
+		final TreeSet<Double> reference = new TreeSet<>();
+		for (double value : values) {
+			reference.add(value);
+		}
+		Assert.assertEquals(reference.size(), set.size());
+
+		for (int i = 0; i < 20000; i++) {
+			final double x = random.nextInt(10) == 0 ? values[random.nextInt(values.length)] : sample(random);
+			final Double floor = reference.floor(x);
+			final Double ceiling = reference.ceiling(x);
+			Assert.assertEquals(floor == null ? Double.NaN : floor, set.floor(x), 0.0);
+			Assert.assertEquals(ceiling == null ? Double.NaN : ceiling, set.ceiling(x), 0.0);
+			Assert.assertEquals(reference.contains(x), set.contains(x));
+
+			final double eps = Math.scalb(random.nextDouble(), random.nextInt(20)
+					- 10);
+			final int maxUlps = random.nextInt(10) == 0 ? random.nextInt(4) : random.nextInt(1 << 30);
+			int countEps = 0;
+			int countUlps = 0;
+			int firstEps = -1;
+			int firstUlps = -1;
+			int index = 0;
+			for (double y : reference) {
+				if (PrecisionAssert.equals(x, y, eps)) {
+					firstEps = countEps++ == 0 ? index : firstEps;
+				}
+				if (PrecisionAssert.equals(x, y, maxUlps)) {
+					firstUlps = countUlps++ == 0 ? index : firstUlps;
+				}
+				index++;
+			}
+			Assert.assertEquals(x
+					+ " "
+					+ eps, countEps, set.countWithin(x, eps));
+			Assert.assertEquals(firstEps, set.firstIndexWithin(x, eps));
+			Assert.assertEquals(x
+					+ " "
+					+ maxUlps, countUlps, set.countWithin(x, maxUlps));
+			Assert.assertEquals(firstUlps, set.firstIndexWithin(x, maxUlps));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNaN() {
+		ToleranceSortedDoubleSet.of(1.0, Double.NaN);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeEps() {
+		ToleranceSortedDoubleSet.of(1.0).countWithin(1.0, -1.0);
+	}
+
+	/**
+	 * Returns values clustered around zero, with some of them a few ulps
+	 * apart.
+	 */
+	private static double sample(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return random.nextGaussian()
+					* 10;
+		case 1:
+			return Math.round(random.nextGaussian()
+					* 100)
+					/ 10.0;
+		case 2:
+			return Double.MIN_VALUE
+					* (random.nextInt(21)
+							- 10);
+		default:
+			return Math.scalb(1.0, random.nextInt(40)
+					- 20)
+					+ Math.ulp(1.0)
+							* random.nextInt(5);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToleranceTest {
+
+	@Test
+	public void testMatchesPrecisionAssert() {
+		final Random random = new Random(2024);
+		final Tolerance absolute = Tolerance.absolute(1e-3);
+		final Tolerance relative = Tolerance.relative(1e-6);
+		final Tolerance ulps = Tolerance.ulps(4);
+		final Tolerance combined = Tolerance.combined(1e-3, 1e-6, 4);
+		for (int i = 0; i < 100000; i++) {
+			final double x = sample(random);
+			final double y = random.nextBoolean() ? sample(random)
+					: x
+							+ (random.nextDouble()
+									- 0.5)
+									* Math.ulp(x)
+									* (1 << random.nextInt(30));
+			Assert.assertEquals(PrecisionAssert.equals(x, y, 1e-3), absolute.test(x, y));
+			Assert.assertEquals(PrecisionAssert.equalsWithRelativeTolerance(x, y, 1e-6), relative.test(x, y));
+			Assert.assertEquals(PrecisionAssert.equals(x, y, 4), ulps.test(x, y));
+			Assert.assertEquals(x
+					+ " "
+					+ y,
+					PrecisionAssert.equals(x, y, 1e-3)
+							|| PrecisionAssert.equalsWithRelativeTolerance(x, y, 1e-6)
+							|| PrecisionAssert.equals(x, y, 4),
+					combined.test(x, y));
+			Assert.assertEquals(PrecisionAssert.equalsIncludingNaN(x, y, 1e-3), absolute.includingNaN()
+					.test(x, y));
+			Assert.assertEquals(PrecisionAssert.equalsIncludingNaN(x, y, 4), ulps.includingNaN()
+					.test(x, y));
+		}
+	}
+
+	@Test
+	public void testNaN() {
+		final Tolerance[] tolerances = { Tolerance.absolute(1), Tolerance.relative(1), Tolerance.ulps(1),
+				Tolerance.combined(1, 1, 1) };
+		for (Tolerance tolerance : tolerances) {
+			Assert.assertFalse(tolerance.isNaNEqual());
+			Assert.assertFalse(tolerance.test(Double.NaN, Double.NaN));
+			Assert.assertFalse(tolerance.test(Double.NaN, 1));
+			Assert.assertTrue(tolerance.includingNaN()
+					.isNaNEqual());
+			Assert.assertTrue(tolerance.includingNaN()
+					.test(Double.NaN, Double.NaN));
+			Assert.assertFalse(tolerance.includingNaN()
+					.test(1, Double.NaN));
+			Assert.assertTrue(tolerance.includingNaN()
+					.test(1, 1));
+		}
+	}
+
+	@Test
+	public void testBulk() {
+		final Random random = new Random(7);
+		final Tolerance[] tolerances = { Tolerance.absolute(1e-9), Tolerance.relative(1e-12), Tolerance.ulps(2),
+				Tolerance.ulps(2)
+						.includingNaN(),
+				Tolerance.combined(0, 1e-12, 2) };
+		for (Tolerance tolerance : tolerances) {
+			for (int trial = 0; trial < 200; trial++) {
+				final double[] x = new double[1
+						+ random.nextInt(100)];
+				final double[] y = new double[x.length];
+				for (int i = 0; i < x.length; i++) {
+					x[i] = sample(random);
+					y[i] = random.nextInt(50) == 0 ? sample(random)
+							: Math.nextUp(x[i]);
+				}
+				int expected = -1;
+				for (int i = 0; i < x.length; i++) {
+					if (!tolerance.test(x[i], y[i])) {
+						expected = i;
+						break;
+					}
+				}
+				Assert.assertEquals(tolerance.toString(), expected, tolerance.mismatch(x, 0, y, 0, x.length));
+				Assert.assertEquals(expected < 0, tolerance.test(x, y));
+			}
+		}
+		Assert.assertFalse(Tolerance.ulps(0)
+				.test(new double[2], new double[3]));
+		Assert.assertEquals(-1, Tolerance.absolute(0.5)
+				.mismatch(new double[] { 1, 2 }, 1, new double[] { 2.25 }, 0, 1));
+	}
+
+	@Test
+	public void testValueSemantics() {
+		Assert.assertEquals(Tolerance.absolute(0.1), Tolerance.absolute(0.1));
+		Assert.assertEquals(Tolerance.absolute(0.1)
+				.hashCode(),
+				Tolerance.absolute(0.1)
+						.hashCode());
+		Assert.assertNotEquals(Tolerance.absolute(0.1), Tolerance.relative(0.1));
+		Assert.assertNotEquals(Tolerance.ulps(1), Tolerance.ulps(1)
+				.includingNaN());
+		Assert.assertEquals(Tolerance.combined(1, 2, 3), Tolerance.combined(1, 2, 3));
+		Assert.assertEquals("Ulps[maxUlps=3, includingNaN]", Tolerance.ulps(3)
+				.includingNaN()
+				.toString());
+		Assert.assertEquals(3, Tolerance.ulps(3)
+				.getMaxUlps());
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testMismatchOutOfBounds() {
+		Tolerance.ulps(1)
+				.mismatch(new double[4], 2, new double[4], 0, 3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeEps() {
+		Tolerance.relative(-1e-3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeUlps() {
+		Tolerance.combined(0, 0, -1);
+	}
+
+	private static double sample(Random random) {
+		switch (random.nextInt(8)) {
+		case 0:
+			return Double.NaN;
+		case 1:
+			return random.nextBoolean() ? 0.0 : -0.0;
+		case 2:
+			return Double.longBitsToDouble(random.nextLong());
+		case 3:
+			return random.nextBoolean() ? Double.POSITIVE_INFINITY : Double.MIN_VALUE;
+		default:
+			return random.nextGaussian()
+					* 1e-3;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UlpHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		long previous = -1;
+		for (int bucket = 0; bucket < UlpHistogram.SUB_BUCKETS
+				* 60; bucket++) {
+			final long upper = UlpHistogram.upperBound(bucket);
+			Assert.assertEquals(bucket, UlpHistogram.bucket(previous
+					+ 1));
+			Assert.assertEquals(bucket, UlpHistogram.bucket(upper));
+			Assert.assertTrue(upper > previous);
+			previous = upper;
+		}
+		Assert.assertEquals(Long.MAX_VALUE, previous);
+	}
+
+	@Test
+	public void testPercentiles() {
+		final UlpHistogram histogram = new UlpHistogram();
+		Assert.assertEquals(-1, histogram.getPercentile(50));
+		for (long distance = 0; distance < 100; distance++) {
+			histogram.record(distance);
+		}
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(99, histogram.getMax());
+		Assert.assertEquals(0, histogram.getPercentile(1));
+		Assert.assertEquals(15, histogram.getPercentile(16));
+		final long median = histogram.getPercentile(50);
+		Assert.assertTrue(median >= 49
+				&& median <= 49
+						+ 49
+								/ UlpHistogram.SUB_BUCKETS);
+		Assert.assertEquals(99, histogram.getPercentile(100));
+		Assert.assertEquals(8, histogram.getCountAtMost(7));
+		Assert.assertEquals(0, histogram.getCountAtMost(-1));
+	}
+
+	@Test
+	public void testRecordPairs() {
+		final UlpHistogram histogram = new UlpHistogram();
+		histogram.record(new double[] { 1d, 0d, Double.NaN, 2d, -Double.MIN_VALUE },
+				new double[] { Math.nextUp(1d), -0d, 1d, 2d, Double.MIN_VALUE });
+		Assert.assertEquals(4, histogram.getCount());
+		Assert.assertEquals(1, histogram.getNaNCount());
+		Assert.assertEquals(2, histogram.getMax());
+		Assert.assertEquals(2, histogram.getCountAtMost(0));
+		Assert.assertEquals(3, histogram.getCountAtMost(1));
+	}
+
+	@Test
+	public void testMerge() {
+		final Random random = new Random(1127);
+		final UlpHistogram all = new UlpHistogram();
+		final UlpHistogram first = new UlpHistogram();
+		final UlpHistogram second = new UlpHistogram();
+		final long[] distances = new long[10000];
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = random.nextLong() >>> (1
+					+ random.nextInt(63));
+			all.record(distances[i]);
+			(i % 2 == 0 ? first : second).record(distances[i]);
+		}
+		first.merge(second);
+		Arrays.sort(distances);
+		for (double percentile : new double[] { 10, 50, 90, 99, 99.9, 100 }) {
+			final long actual = first.getPercentile(percentile);
+			Assert.assertEquals(all.getPercentile(percentile), actual);
+			final long exact = distances[(int) Math.ceil(percentile
+					/ 100
+					* distances.length)
+					- 1];
+			Assert.assertTrue(actual >= exact);
+			Assert.assertTrue(actual
+					- exact <= exact
+							/ UlpHistogram.SUB_BUCKETS);
+		}
+		Assert.assertEquals(distances[distances.length
+				- 1], first.getMax());
+		first.reset();
+		Assert.assertEquals(0, first.getCount());
+		Assert.assertEquals(-1, first.getPercentile(50));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDistance() {
+		new UlpHistogram().record(-1L);
+	}
+}
@@ -0,0 +1,156 @@
+/**
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *  http://www.apache.org/licenses/LICENSE-2.0
+  *
+  *  Unless required by applicable law or agreed to in writing, software
+  *  distributed under the License is distributed on an "AS IS" BASIS,
+  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  *  See the License for the specific language governing permissions and
+  *  limitations under the License.
+  */
+
+package com.fireflysemantics.math.precision;
+
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.SettingDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class PrecisionEventsTest {
+
+	// the tests compile against the Java 8 classes, which do not name the
+	// events
+	private static final String ROUNDING_SLOW_PATH = "com.fireflysemantics.math.precision.RoundingSlowPath";
+
+	private static final String ULP_MISMATCH = "com.fireflysemantics.math.precision.UlpMismatch";
+
+	@Test
+	public void testRoundingSlowPath() throws IOException {
+		assumeMultiRelease();
+		final List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			// below the default threshold
+			recording.enable(ROUNDING_SLOW_PATH)
+					.withThreshold(Duration.ZERO);
+			recording.start();
+			RoundDouble.roundBigDecimal(1.2345, 2, RoundingMode.HALF_UP.ordinal());
+			recording.stop();
+			events = events(recording, ROUNDING_SLOW_PATH);
+		}
+		Assert.assertEquals(1, events.size());
+		final RecordedEvent event = events.get(0);
+		Assert.assertEquals(1.2345, event.getDouble("value"), 0.0);
+		Assert.assertEquals(2, event.getInt("scale"));
+		Assert.assertEquals(RoundingMode.HALF_UP.ordinal(), event.getInt("roundingMethod"));
+	}
+
+	@Test
+	public void testRoundingSlowPathThreshold() {
+		assumeMultiRelease();
+		for (EventType type : FlightRecorder.getFlightRecorder()
+				.getEventTypes()) {
+			if (ROUNDING_SLOW_PATH.equals(type.getName())) {
+				for (SettingDescriptor setting : type.getSettingDescriptors()) {
+					if ("threshold".equals(setting.getName())) {
+						Assert.assertEquals("1 ms", setting.getDefaultValue());
+						return;
+					}
+				}
+			}
+		}
+		Assert.fail("no threshold");
+	}
+
+	@Test
+	public void testUlpMismatch() throws IOException {
+		assumeMultiRelease();
+		final List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.enable(ULP_MISMATCH);
+			recording.start();
+			// an equal comparison commits no event
+			Assert.assertEquals(-1, PrecisionAssert.mismatch(new double[] { 1, 2 }, new double[] { 1, 2 }, 1));
+			Assert.assertEquals(1, PrecisionAssert.mismatch(new double[] { 1, 2, 3, 4 },
+					new double[] { 1, 2.5, 3, Double.NaN }, 1));
+			recording.stop();
+			events = events(recording, ULP_MISMATCH);
+		}
+		Assert.assertEquals(1, events.size());
+		final RecordedEvent event = events.get(0);
+		Assert.assertEquals(4, event.getInt("length"));
+		Assert.assertEquals(1, event.getInt("maxUlps"));
+		Assert.assertEquals(2, event.getInt("mismatches"));
+		Assert.assertEquals(1, event.getInt("firstIndex"));
+		Assert.assertEquals(2.0, event.getDouble("firstX"), 0.0);
+		Assert.assertEquals(2.5, event.getDouble("firstY"), 0.0);
+		Assert.assertEquals(Long.MAX_VALUE, event.getLong("maxUlpDistance"));
+		Assert.assertEquals(3, event.getInt("maxIndex"));
+	}
+
+	@Test
+	public void testFloatUlpMismatch() throws IOException {
+		assumeMultiRelease();
+		final List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.enable(ULP_MISMATCH);
+			recording.start();
+			Assert.assertFalse(PrecisionAssert.equals(new float[] { 1f, 2f, 3f },
+					new float[] { 1f, Math.nextUp(Math.nextUp(2f)), 3f }, 1));
+			recording.stop();
+			events = events(recording, ULP_MISMATCH);
+		}
+		Assert.assertEquals(1, events.size());
+		final RecordedEvent event = events.get(0);
+		Assert.assertEquals(3, event.getInt("length"));
+		Assert.assertEquals(1, event.getInt("mismatches"));
+		Assert.assertEquals(1, event.getInt("firstIndex"));
+		Assert.assertEquals(Math.nextUp(Math.nextUp(2f)), event.getDouble("firstY"), 0.0);
+		// in float ulps
+		Assert.assertEquals(2, event.getLong("maxUlpDistance"));
+	}
+
+	/**
+	 * Skips the test unless the Java 17 {@link PrecisionEvents} is loaded, as
+	 * it is when the tests run against the multi-release jar.
+	 */
+	private static void assumeMultiRelease() {
+		Assume.assumeTrue(PrecisionEvents.beginMismatch() != null);
+	}
+
+	/**
+	 * Reads the events of the given type from a stopped recording.
+	 */
+	private static List<RecordedEvent> events(Recording recording, String name) throws IOException {
+		final Path file = Files.createTempFile("precision-events", ".jfr");
+		try {
+			recording.dump(file);
+			final List<RecordedEvent> events = new ArrayList<>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				if (name.equals(event.getEventType()
+						.getName())) {
+					events.add(event);
+				}
+			}
+			return events;
+		} finally {
+			Files.delete(file);
+		}
+	}
+}